@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import static it.infn.mw.iam.benchmarks.TokenFixtures.SCOPES;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.service.UserInfoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import com.google.common.collect.Sets;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import it.infn.mw.iam.core.oauth.profile.JWTAccessTokenBuilder;
+import it.infn.mw.iam.core.oauth.profile.JWTProfile;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessTokenBuilderBenchmark {
+
+  @Param({"iam", "wlcg", "aarc"})
+  public String profile;
+
+  JWTAccessTokenBuilder builder;
+  OAuth2AccessTokenEntity token;
+  OAuth2Authentication authentication;
+  UserInfo userInfo;
+
+  @Setup(Level.Trial)
+  public void setup(IamBenchmarkContext context) {
+    String username = context.getFixtures().getUsername();
+
+    builder =
+        context.getBean(profile + "JwtProfile", JWTProfile.class).getAccessTokenBuilder();
+
+    userInfo = context.getBean(UserInfoService.class)
+      .getByUsernameAndClientId(username, TokenFixtures.CLIENT_ID);
+
+    Sets.SetView<String> scopes = Sets.union(SCOPES, Sets.newHashSet("wlcg.groups"));
+    token = TokenFixtures.accessToken(TokenFixtures.loadClient(context), scopes);
+    authentication = TokenFixtures.userAuthentication(username, scopes);
+  }
+
+  @Benchmark
+  public JWTClaimsSet buildAccessToken() {
+    return builder.buildAccessToken(token, authentication, userInfo, Instant.now());
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.infn.mw.iam.api.scim.updater.UpdaterType;
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.account.AccountUpdatedEvent;
+import it.infn.mw.iam.audit.events.account.group.GroupMembershipAddedEvent;
+import it.infn.mw.iam.audit.utils.Jackson2AuditDataSerializer;
+import it.infn.mw.iam.persistence.model.IamAccount;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuditDataSerializerBenchmark {
+
+  @Param({"account-updated", "group-membership-added"})
+  public String eventType;
+
+  Jackson2AuditDataSerializer serializer;
+  IamAuditApplicationEvent event;
+
+  @Setup(Level.Trial)
+  public void setup(IamBenchmarkContext context) {
+    serializer = context.getBean(Jackson2AuditDataSerializer.class);
+
+    IamAccount account = context.getFixtures().loadAccount();
+
+    if ("account-updated".equals(eventType)) {
+      event = new AccountUpdatedEvent(this, account, UpdaterType.ACCOUNT_REPLACE_GIVEN_NAME,
+          "Account updated");
+    } else {
+      event = new GroupMembershipAddedEvent(this, account, account.getGroups());
+    }
+  }
+
+  @Benchmark
+  public String serialize() {
+    return serializer.serialize(event);
+  }
+}
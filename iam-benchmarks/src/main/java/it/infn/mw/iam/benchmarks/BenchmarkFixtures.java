@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import static java.lang.String.format;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.core.group.IamGroupService;
+import it.infn.mw.iam.core.user.IamAccountService;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+import it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy;
+import it.infn.mw.iam.persistence.model.PolicyRule;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+
+/**
+ * Generates the groups, group scope policies and the account used by the benchmarks in the
+ * (H2) database of a running IAM application context.
+ */
+public class BenchmarkFixtures {
+
+  public static final String STORAGE_READ_SCOPE = "storage.read:/%s";
+  public static final String STORAGE_MODIFY_SCOPE = "storage.modify:/%s/protected";
+  public static final String COMPUTE_SCOPE_REGEXP = "compute\\.create:%s-.*";
+  public static final String GROUP_SCOPE = "%s.scope";
+
+  private final ApplicationContext context;
+  private final TransactionTemplate tx;
+  private final String prefix = "bench-" + UUID.randomUUID().toString().substring(0, 8);
+
+  private final List<IamGroup> groups = Lists.newArrayList();
+  private String username;
+
+  private BenchmarkFixtures(ApplicationContext context) {
+    this.context = context;
+    this.tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+  }
+
+  public static BenchmarkFixtures generate(ApplicationContext context, int groupCount,
+      int membershipsPerAccount, int policiesPerGroup) {
+
+    BenchmarkFixtures fixtures = new BenchmarkFixtures(context);
+
+    fixtures.tx.execute(s -> {
+      fixtures.createGroups(groupCount, policiesPerGroup);
+      fixtures.createAccount(membershipsPerAccount);
+      return null;
+    });
+
+    return fixtures;
+  }
+
+  public String groupName(int index) {
+    return format("%s-group-%d", prefix, index);
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public List<IamGroup> getGroups() {
+    return groups;
+  }
+
+  /**
+   * Loads the benchmark account, with all its collections, so that it can be used outside of a
+   * transaction.
+   */
+  public IamAccount loadAccount() {
+    return tx.execute(s -> {
+      IamAccount account = context.getBean(IamAccountRepository.class)
+        .findByUsername(username)
+        .orElseThrow(() -> new IllegalStateException("Benchmark account not found"));
+
+      account.getGroups().forEach(g -> g.getLabels().size());
+      account.getAuthorities().size();
+      account.getAttributes().size();
+      account.getLabels().size();
+      account.getSshKeys().size();
+      account.getX509Certificates().size();
+      account.getOidcIds().size();
+      account.getSamlIds().size();
+
+      return account;
+    });
+  }
+
+  private void createGroups(int groupCount, int policiesPerGroup) {
+    IamGroupService groupService = context.getBean(IamGroupService.class);
+    IamScopePolicyRepository policyRepo = context.getBean(IamScopePolicyRepository.class);
+
+    for (int i = 0; i < groupCount; i++) {
+      IamGroup group = new IamGroup();
+      group.setName(groupName(i));
+      group.setDescription("Benchmark group");
+
+      // Groups are organized in a two-level hierarchy, with ten subgroups per root group
+      if (i % 10 != 0) {
+        group.setParentGroup(groups.get(i - i % 10));
+      }
+
+      group = groupService.createGroup(group);
+      groups.add(group);
+
+      for (int j = 0; j < policiesPerGroup; j++) {
+        policyRepo.save(groupPolicy(group, j));
+      }
+    }
+  }
+
+  private IamScopePolicy groupPolicy(IamGroup group, int index) {
+    IamScopePolicy policy = new IamScopePolicy();
+    Date now = new Date();
+    policy.setCreationTime(now);
+    policy.setLastUpdateTime(now);
+    policy.setDescription("Benchmark policy");
+
+    switch (index % 4) {
+      case 0:
+        policy.setRule(PolicyRule.PERMIT);
+        policy.setMatchingPolicy(MatchingPolicy.PATH);
+        policy.setScopes(Sets.newHashSet(format(STORAGE_READ_SCOPE, group.getName())));
+        break;
+      case 1:
+        policy.setRule(PolicyRule.DENY);
+        policy.setMatchingPolicy(MatchingPolicy.PATH);
+        policy.setScopes(Sets.newHashSet(format(STORAGE_MODIFY_SCOPE, group.getName())));
+        break;
+      case 2:
+        policy.setRule(PolicyRule.PERMIT);
+        policy.setMatchingPolicy(MatchingPolicy.REGEXP);
+        policy.setScopes(Sets.newHashSet(format(COMPUTE_SCOPE_REGEXP, group.getName())));
+        break;
+      default:
+        policy.setRule(PolicyRule.DENY);
+        policy.setMatchingPolicy(MatchingPolicy.EQ);
+        policy.setScopes(Sets.newHashSet(format(GROUP_SCOPE, group.getName())));
+    }
+
+    policy.linkGroup(group);
+    return policy;
+  }
+
+  private void createAccount(int membershipsPerAccount) {
+    IamAccount account = IamAccount.newAccount();
+    username = prefix + "-user";
+
+    account.setUsername(username);
+    account.setActive(true);
+    account.getUserInfo().setGivenName("Benchmark");
+    account.getUserInfo().setFamilyName("User");
+    account.getUserInfo().setEmail(username + "@example.org");
+    account.linkMembers(groups.subList(0, Math.min(membershipsPerAccount, groups.size())));
+
+    context.getBean(IamAccountService.class).createAccount(account);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.infn.mw.iam.IamLoginService;
+
+/**
+ * Starts the IAM login service against the in-memory H2 database (h2-test profile) and generates
+ * the benchmark fixtures, once per trial.
+ *
+ * The fixture size can be changed from the JMH command line, e.g.
+ * <code>-p groupCount=1000 -p membershipsPerAccount=50</code>.
+ */
+@State(Scope.Benchmark)
+public class IamBenchmarkContext {
+
+  @Param({"100"})
+  public int groupCount;
+
+  @Param({"20"})
+  public int membershipsPerAccount;
+
+  @Param({"4"})
+  public int policiesPerGroup;
+
+  private ConfigurableApplicationContext context;
+  private BenchmarkFixtures fixtures;
+
+  @Setup(Level.Trial)
+  public void startContext() {
+    context = new SpringApplicationBuilder(IamLoginService.class).profiles("h2-test")
+      .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN")
+      .run();
+
+    fixtures = BenchmarkFixtures.generate(context, groupCount, membershipsPerAccount,
+        policiesPerGroup);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopContext() {
+    context.close();
+  }
+
+  public <T> T getBean(Class<T> beanClass) {
+    return context.getBean(beanClass);
+  }
+
+  public <T> T getBean(String name, Class<T> beanClass) {
+    return context.getBean(name, beanClass);
+  }
+
+  public BenchmarkFixtures getFixtures() {
+    return fixtures;
+  }
+}
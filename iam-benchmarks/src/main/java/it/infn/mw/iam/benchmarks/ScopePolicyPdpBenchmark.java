@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import static it.infn.mw.iam.benchmarks.BenchmarkFixtures.GROUP_SCOPE;
+import static it.infn.mw.iam.benchmarks.BenchmarkFixtures.STORAGE_MODIFY_SCOPE;
+import static it.infn.mw.iam.benchmarks.BenchmarkFixtures.STORAGE_READ_SCOPE;
+import static java.lang.String.format;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicyPDP;
+import it.infn.mw.iam.persistence.model.IamAccount;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScopePolicyPdpBenchmark {
+
+  ScopePolicyPDP pdp;
+  IamAccount account;
+  Set<String> requestedScopes;
+
+  @Setup(Level.Trial)
+  public void setup(IamBenchmarkContext context) {
+    pdp = context.getBean(ScopePolicyPDP.class);
+    account = context.getFixtures().loadAccount();
+
+    BenchmarkFixtures fixtures = context.getFixtures();
+
+    requestedScopes = Sets.newHashSet("openid", "profile", "email", "offline_access",
+        format(STORAGE_READ_SCOPE, fixtures.groupName(0)) + "/data",
+        format(STORAGE_MODIFY_SCOPE, fixtures.groupName(1)) + "/file",
+        format("compute.create:%s-job", fixtures.groupName(2)),
+        format(GROUP_SCOPE, fixtures.groupName(3)));
+  }
+
+  @Benchmark
+  public Set<String> filterScopes() {
+    return pdp.filterScopes(requestedScopes, account);
+  }
+}
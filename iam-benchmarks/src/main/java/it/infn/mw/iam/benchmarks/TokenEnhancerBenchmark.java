@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import static it.infn.mw.iam.benchmarks.TokenFixtures.SCOPES;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Measures access token issuance in {@link it.infn.mw.iam.core.oauth.profile.IamTokenEnhancer}:
+ * user info resolution, scope filtering, claims building and JWT signing.
+ *
+ * The openid scope is not requested, so that ID token creation is not included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenEnhancerBenchmark {
+
+  TokenEnhancer tokenEnhancer;
+  ClientDetailsEntity client;
+  OAuth2Authentication authentication;
+
+  @Setup(Level.Trial)
+  public void setup(IamBenchmarkContext context) {
+    tokenEnhancer = context.getBean("iamTokenEnhancer", TokenEnhancer.class);
+    client = TokenFixtures.loadClient(context);
+    authentication = TokenFixtures.userAuthentication(context.getFixtures().getUsername(),
+        Sets.difference(SCOPES, Sets.newHashSet("openid")));
+  }
+
+  @Benchmark
+  public OAuth2AccessToken enhance() {
+    return tokenEnhancer.enhance(
+        TokenFixtures.accessToken(client, authentication.getOAuth2Request().getScope()),
+        authentication);
+  }
+}
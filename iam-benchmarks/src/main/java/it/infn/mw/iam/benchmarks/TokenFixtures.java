@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Builds access tokens and authentications for the benchmark account and the <code>client</code>
+ * client of the test data set.
+ */
+public class TokenFixtures {
+
+  public static final String CLIENT_ID = "client";
+
+  public static final Set<String> SCOPES =
+      Sets.newHashSet("openid", "profile", "email", "offline_access");
+
+  private TokenFixtures() {
+    // prevent instantiation
+  }
+
+  public static ClientDetailsEntity loadClient(IamBenchmarkContext context) {
+    return context.getBean(ClientDetailsEntityService.class).loadClientByClientId(CLIENT_ID);
+  }
+
+  public static OAuth2Authentication userAuthentication(String username, Set<String> scopes) {
+    OAuth2Request request = new OAuth2Request(emptyMap(), CLIENT_ID, emptyList(), true,
+        Sets.newHashSet(scopes), emptySet(), null, emptySet(), emptyMap());
+
+    UsernamePasswordAuthenticationToken userAuthn = new UsernamePasswordAuthenticationToken(
+        username, null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+    return new OAuth2Authentication(request, userAuthn);
+  }
+
+  public static OAuth2AccessTokenEntity accessToken(ClientDetailsEntity client,
+      Set<String> scopes) {
+    OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+    token.setClient(client);
+    token.setScope(Sets.newHashSet(scopes));
+    token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    return token;
+  }
+}
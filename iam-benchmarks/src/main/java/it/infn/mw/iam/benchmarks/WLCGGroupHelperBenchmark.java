@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.benchmarks;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.core.oauth.profile.wlcg.WLCGGroupHelper;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WLCGGroupHelperBenchmark {
+
+  @Param({"20"})
+  public int groupCount;
+
+  @Param({"openid wlcg.groups", "openid wlcg.groups:/group-3 wlcg.groups:/group-7",
+      "openid wlcg.groups:/group-3"})
+  public String scopes;
+
+  WLCGGroupHelper helper = new WLCGGroupHelper();
+  OAuth2AccessTokenEntity token;
+  UserInfoSnapshot userInfo;
+
+  @Setup
+  public void setup() {
+    IamAccount account = IamAccount.newAccount();
+    account.setUuid(UUID.randomUUID().toString());
+    account.setUsername("benchmark");
+
+    for (int i = 0; i < groupCount; i++) {
+      IamGroup group = new IamGroup();
+      group.setUuid(UUID.randomUUID().toString());
+      group.setName("group-" + i);
+      account.getGroups().add(group);
+    }
+
+    userInfo = UserInfoSnapshot.forAccount(account);
+
+    token = new OAuth2AccessTokenEntity();
+    token.setScope(Sets.newLinkedHashSet(Splitter.on(' ').split(scopes)));
+  }
+
+  @Benchmark
+  public Set<String> resolveGroupNames() {
+    return helper.resolveGroupNames(token, userInfo);
+  }
+}
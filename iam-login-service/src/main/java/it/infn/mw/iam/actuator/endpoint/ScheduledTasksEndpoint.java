@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.endpoint;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import it.infn.mw.iam.core.task.IamTaskScheduler;
+import it.infn.mw.iam.core.task.ManagedTask;
+import it.infn.mw.iam.core.task.TaskFamily;
+import it.infn.mw.iam.core.task.TaskTimeHistogram;
+
+/**
+ * Reports the status of the scheduled background tasks: scheduler pools, leadership and, for each
+ * task, its schedule, run counts and run duration and lag statistics.
+ */
+@ConfigurationProperties(prefix = "endpoints.tasks")
+public class ScheduledTasksEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+  public static final String ENDPOINT_ID = "tasks";
+
+  private final IamTaskScheduler scheduler;
+
+  public ScheduledTasksEndpoint(IamTaskScheduler scheduler) {
+    super(ENDPOINT_ID, true);
+    this.scheduler = scheduler;
+  }
+
+  private static Date toDate(long time) {
+    return time > 0 ? new Date(time) : null;
+  }
+
+  private static Map<String, Object> histogramStatus(TaskTimeHistogram histogram) {
+    Map<String, Object> status = Maps.newLinkedHashMap();
+    status.put("count", histogram.getCount());
+    status.put("meanMsec", histogram.getMeanMsec());
+    status.put("maxMsec", histogram.getMaxMsec());
+    status.put("buckets", histogram.getBuckets());
+    return status;
+  }
+
+  private static Map<String, Object> taskStatus(ManagedTask task) {
+    Map<String, Object> status = Maps.newLinkedHashMap();
+    status.put("name", task.getName());
+    status.put("family", task.getFamily());
+    status.put("schedule", task.getSchedule());
+    status.put("running", task.isRunning());
+    status.put("nextRunTime", toDate(task.getScheduledTime()));
+    status.put("lastStartTime", toDate(task.getLastStartTime()));
+    status.put("lastDurationMsec", task.getLastDurationMsec());
+    status.put("lastError", task.getLastError());
+    status.put("runs", task.getRunCount());
+    status.put("failures", task.getFailureCount());
+    status.put("skippedOverlapping", task.getOverlapSkipCount());
+    status.put("skippedNotLeader", task.getNotLeaderSkipCount());
+    status.put("duration", histogramStatus(task.getDuration()));
+    status.put("lag", histogramStatus(task.getLag()));
+    return status;
+  }
+
+  @Override
+  public Map<String, Object> invoke() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("nodeId", scheduler.getLeaderElection().getNodeId());
+    result.put("leader", scheduler.getLeaderElection().isLeader());
+
+    Map<TaskFamily, Integer> pools = Maps.newEnumMap(TaskFamily.class);
+    for (TaskFamily f : TaskFamily.values()) {
+      pools.put(f, scheduler.getPoolSize(f));
+    }
+    result.put("poolSizes", pools);
+
+    List<Map<String, Object>> tasks = Lists.newArrayList();
+    scheduler.getTasks().forEach(t -> tasks.add(taskStatus(t)));
+    result.put("tasks", tasks);
+
+    return result;
+  }
+}
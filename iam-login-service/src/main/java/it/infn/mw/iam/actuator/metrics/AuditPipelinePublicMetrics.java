@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline;
+import it.infn.mw.iam.audit.pipeline.AuditEventPipeline;
+import it.infn.mw.iam.audit.pipeline.AuditEventSinkWriter;
+
+/**
+ * Exposes the audit pipeline counters on the metrics endpoint, under the
+ * <code>audit.pipeline</code> prefix.
+ */
+public class AuditPipelinePublicMetrics implements PublicMetrics {
+
+  public static final String PREFIX = "audit.pipeline.";
+
+  private final AuditEventSinkWriter writer;
+  private final AuditEventPipeline pipeline;
+
+  public AuditPipelinePublicMetrics(AuditEventSinkWriter writer, AuditEventPipeline pipeline) {
+    this.writer = writer;
+    this.pipeline = pipeline;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<Long>(PREFIX + "written.count", writer.getWrittenEventsCount()));
+    metrics.add(new Metric<Long>(PREFIX + "sink-errors.count", writer.getSinkErrorsCount()));
+
+    if (pipeline instanceof AsyncAuditEventPipeline) {
+      AsyncAuditEventPipeline asyncPipeline = (AsyncAuditEventPipeline) pipeline;
+      metrics.add(new Metric<Long>(PREFIX + "submitted.count",
+          asyncPipeline.getSubmittedEventsCount()));
+      metrics.add(new Metric<Long>(PREFIX + "dropped.count",
+          asyncPipeline.getDroppedEventsCount()));
+      metrics.add(new Metric<Long>(PREFIX + "blocked.count",
+          asyncPipeline.getBlockedSubmissionsCount()));
+      metrics.add(new Metric<Long>(PREFIX + "caller-runs.count",
+          asyncPipeline.getCallerRunsEventsCount()));
+      metrics.add(new Metric<Integer>(PREFIX + "queue.size", asyncPipeline.getQueueSize()));
+      metrics.add(new Metric<Integer>(PREFIX + "queue.capacity",
+          asyncPipeline.getQueueCapacity()));
+    }
+
+    return metrics;
+  }
+
+}
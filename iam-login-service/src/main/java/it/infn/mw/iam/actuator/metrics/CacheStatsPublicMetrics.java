@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+
+/**
+ * Exposes the statistics of a Guava cache on the metrics endpoint, under the
+ * <code>cache.&lt;name&gt;</code> prefix.
+ */
+public class CacheStatsPublicMetrics implements PublicMetrics {
+
+  private final String prefix;
+  private final Cache<?, ?> cache;
+
+  public CacheStatsPublicMetrics(String cacheName, Cache<?, ?> cache) {
+    this.prefix = String.format("cache.%s.", cacheName);
+    this.cache = cache;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    CacheStats stats = cache.stats();
+
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<Long>(prefix + "size", cache.size()));
+    metrics.add(new Metric<Long>(prefix + "hit.count", stats.hitCount()));
+    metrics.add(new Metric<Long>(prefix + "miss.count", stats.missCount()));
+    metrics.add(new Metric<Double>(prefix + "hit.ratio", stats.hitRate()));
+    metrics.add(new Metric<Long>(prefix + "eviction.count", stats.evictionCount()));
+
+    return metrics;
+  }
+
+}
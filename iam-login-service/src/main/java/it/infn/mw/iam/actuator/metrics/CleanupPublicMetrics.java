@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.core.cleanup.CleanupTarget;
+import it.infn.mw.iam.core.cleanup.CleanupTargetStats;
+import it.infn.mw.iam.core.cleanup.ExpiredEntitiesCleanupEngine;
+
+/**
+ * Exposes the expired entities cleanup counters on the metrics endpoint, under the
+ * <code>cleanup</code> prefix.
+ */
+public class CleanupPublicMetrics implements PublicMetrics {
+
+  public static final String PREFIX = "cleanup.";
+
+  private final ExpiredEntitiesCleanupEngine engine;
+
+  public CleanupPublicMetrics(ExpiredEntitiesCleanupEngine engine) {
+    this.engine = engine;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    for (CleanupTarget target : CleanupTarget.values()) {
+      final String prefix = PREFIX + target.getMetricName() + ".";
+      CleanupTargetStats stats = engine.getStats(target);
+
+      metrics.add(new Metric<Long>(prefix + "deleted.count", stats.getDeletedCount()));
+      metrics.add(new Metric<Long>(prefix + "runs.count", stats.getRunCount()));
+      metrics.add(new Metric<Long>(prefix + "last-run.deleted", stats.getLastRunDeletedCount()));
+      metrics.add(new Metric<Long>(prefix + "last-run.duration-msec",
+          stats.getLastRunDurationMsec()));
+      metrics.add(new Metric<Double>(prefix + "last-run.rows-per-sec",
+          stats.getLastRunRowsPerSecond()));
+    }
+
+    return metrics;
+  }
+}
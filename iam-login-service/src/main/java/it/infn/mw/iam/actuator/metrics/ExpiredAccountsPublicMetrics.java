@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler;
+import it.infn.mw.iam.core.lifecycle.ExpiredAccountsStats;
+
+/**
+ * Exposes the expired accounts handler counters on the metrics endpoint, under the
+ * <code>lifecycle.expired-accounts</code> prefix.
+ */
+public class ExpiredAccountsPublicMetrics implements PublicMetrics {
+
+  public static final String PREFIX = "lifecycle.expired-accounts.";
+
+  private final ExpiredAccountsHandler handler;
+
+  public ExpiredAccountsPublicMetrics(ExpiredAccountsHandler handler) {
+    this.handler = handler;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    ExpiredAccountsStats stats = handler.getStats();
+
+    metrics.add(new Metric<Integer>(PREFIX + "running", stats.isRunning() ? 1 : 0));
+    metrics.add(new Metric<Long>(PREFIX + "runs.count", stats.getRunCount()));
+    metrics.add(
+        new Metric<Long>(PREFIX + "pending-suspension.count", stats.getPendingSuspensionCount()));
+    metrics.add(new Metric<Long>(PREFIX + "suspended.count", stats.getSuspendedCount()));
+    metrics.add(new Metric<Long>(PREFIX + "removed.count", stats.getRemovedCount()));
+    metrics.add(new Metric<Long>(PREFIX + "current-run.processed",
+        stats.getCurrentRunProcessedCount()));
+    metrics.add(
+        new Metric<Long>(PREFIX + "last-run.processed", stats.getLastRunProcessedCount()));
+    metrics.add(
+        new Metric<Long>(PREFIX + "last-run.duration-msec", stats.getLastRunDurationMsec()));
+    metrics.add(new Metric<Double>(PREFIX + "last-run.accounts-per-sec",
+        stats.getLastRunAccountsPerSecond()));
+
+    return metrics;
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.notification.NotificationDelivery;
+import it.infn.mw.iam.notification.service.JavaMailNotificationDelivery;
+
+/**
+ * Exposes the email notification delivery counters on the metrics endpoint, under the
+ * <code>notification.delivery</code> prefix.
+ */
+public class NotificationDeliveryPublicMetrics implements PublicMetrics {
+
+  public static final String PREFIX = "notification.delivery.";
+
+  private final NotificationDelivery delivery;
+
+  public NotificationDeliveryPublicMetrics(NotificationDelivery delivery) {
+    this.delivery = delivery;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    if (delivery instanceof JavaMailNotificationDelivery) {
+      JavaMailNotificationDelivery mailDelivery = (JavaMailNotificationDelivery) delivery;
+      metrics.add(new Metric<Long>(PREFIX + "delivered.count", mailDelivery.getDeliveredCount()));
+      metrics.add(new Metric<Long>(PREFIX + "failed.count", mailDelivery.getFailedCount()));
+      metrics.add(new Metric<Long>(PREFIX + "last-run.delivered",
+          mailDelivery.getLastRunDeliveredCount()));
+      metrics.add(new Metric<Long>(PREFIX + "last-run.duration-msec",
+          mailDelivery.getLastRunDurationMsec()));
+      metrics.add(new Metric<Double>(PREFIX + "last-run.messages-per-sec",
+          mailDelivery.getLastRunMessagesPerSecond()));
+    }
+
+    return metrics;
+  }
+}
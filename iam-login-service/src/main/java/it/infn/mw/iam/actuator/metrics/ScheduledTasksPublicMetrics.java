@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.actuator.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.core.task.IamTaskScheduler;
+import it.infn.mw.iam.core.task.ManagedTask;
+import it.infn.mw.iam.core.task.TaskTimeHistogram;
+
+/**
+ * Exposes the scheduled task counters and run duration and lag histograms on the metrics
+ * endpoint, under the <code>task</code> prefix.
+ */
+public class ScheduledTasksPublicMetrics implements PublicMetrics {
+
+  public static final String PREFIX = "task.";
+
+  private final IamTaskScheduler scheduler;
+
+  public ScheduledTasksPublicMetrics(IamTaskScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  private static void addHistogram(List<Metric<?>> metrics, String prefix,
+      TaskTimeHistogram histogram) {
+    metrics.add(new Metric<Long>(prefix + "count", histogram.getCount()));
+    metrics.add(new Metric<Long>(prefix + "sum-msec", histogram.getSumMsec()));
+    metrics.add(new Metric<Long>(prefix + "max-msec", histogram.getMaxMsec()));
+    histogram.getBuckets()
+      .forEach((bound, count) -> metrics.add(new Metric<Long>(prefix + "le." + bound, count)));
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    metrics.add(new Metric<Integer>(PREFIX + "leader",
+        scheduler.getLeaderElection().isLeader() ? 1 : 0));
+
+    for (ManagedTask task : scheduler.getTasks()) {
+      final String prefix = PREFIX + task.getName() + ".";
+
+      metrics.add(new Metric<Integer>(prefix + "running", task.isRunning() ? 1 : 0));
+      metrics.add(new Metric<Long>(prefix + "runs.count", task.getRunCount()));
+      metrics.add(new Metric<Long>(prefix + "failures.count", task.getFailureCount()));
+      metrics.add(
+          new Metric<Long>(prefix + "skipped-overlapping.count", task.getOverlapSkipCount()));
+      metrics.add(
+          new Metric<Long>(prefix + "skipped-not-leader.count", task.getNotLeaderSkipCount()));
+      metrics.add(new Metric<Long>(prefix + "last-run.duration-msec", task.getLastDurationMsec()));
+      addHistogram(metrics, prefix + "duration.", task.getDuration());
+      addHistogram(metrics, prefix + "lag.", task.getLag());
+    }
+
+    return metrics;
+  }
+}
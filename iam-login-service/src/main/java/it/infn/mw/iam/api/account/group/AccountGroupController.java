@@ -18,12 +18,14 @@ package it.infn.mw.iam.api.account.group;
 import static it.infn.mw.iam.api.account.group.ErrorSuppliers.noSuchAccount;
 import static it.infn.mw.iam.api.account.group.ErrorSuppliers.noSuchGroup;
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -34,6 +36,8 @@ import org.springframework.web.bind.annotation.RestController;
 
 import it.infn.mw.iam.api.common.ErrorDTO;
 import it.infn.mw.iam.api.common.NoSuchAccountError;
+import it.infn.mw.iam.audit.events.account.group.GroupMembershipAddedEvent;
+import it.infn.mw.iam.audit.events.account.group.GroupMembershipRemovedEvent;
 import it.infn.mw.iam.core.group.error.NoSuchGroupError;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamGroup;
@@ -45,11 +49,14 @@ public class AccountGroupController {
 
   final IamAccountRepository accountRepo;
   final IamGroupRepository groupRepo;
+  final ApplicationEventPublisher eventPublisher;
 
   @Autowired
-  public AccountGroupController(IamAccountRepository accountRepo, IamGroupRepository groupRepo) {
+  public AccountGroupController(IamAccountRepository accountRepo, IamGroupRepository groupRepo,
+      ApplicationEventPublisher eventPublisher) {
     this.accountRepo = accountRepo;
     this.groupRepo = groupRepo;
+    this.eventPublisher = eventPublisher;
   }
 
 
@@ -72,6 +79,8 @@ public class AccountGroupController {
 
     accountRepo.save(account);
     groupRepo.save(group);
+
+    eventPublisher.publishEvent(new GroupMembershipAddedEvent(this, account, asList(group)));
   }
 
   @RequestMapping(value = "/iam/account/{accountUuid}/groups/{groupUuid}", method = DELETE)
@@ -93,6 +102,8 @@ public class AccountGroupController {
 
     accountRepo.save(account);
     groupRepo.save(group);
+
+    eventPublisher.publishEvent(new GroupMembershipRemovedEvent(this, account, asList(group)));
   }
   
   @ResponseStatus(value = HttpStatus.BAD_REQUEST)
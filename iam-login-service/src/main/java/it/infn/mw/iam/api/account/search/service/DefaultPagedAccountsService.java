@@ -15,11 +15,25 @@
  */
 package it.infn.mw.iam.api.account.search.service;
 
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.ACCOUNTS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.key;
+import static java.util.Objects.isNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+
 import it.infn.mw.iam.api.common.PagedResourceService;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
+import it.infn.mw.iam.core.user.search.AccountSearchIndex;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
@@ -29,10 +43,18 @@ public class DefaultPagedAccountsService implements PagedResourceService<IamAcco
   @Autowired
   private IamAccountRepository accountRepository;
 
+  @Autowired(required = false)
+  private AccountSearchIndex searchIndex;
+
+  @Autowired
+  private TotalCountStrategy countStrategy;
+
   @Override
   public Page<IamAccount> getPage(Pageable op) {
 
-    return accountRepository.findAll(op);
+    List<IamAccount> content = accountRepository.listAccounts(op);
+    return new PageImpl<>(content, op,
+        countStrategy.pageTotal(ACCOUNTS_KEY, op, content.size(), accountRepository::count));
   }
 
   @Override
@@ -44,13 +66,35 @@ public class DefaultPagedAccountsService implements PagedResourceService<IamAcco
   @Override
   public Page<IamAccount> getPage(Pageable op, String filter) {
 
-    return accountRepository.findByFilter(filter, op);
+    if (isNull(searchIndex)) {
+      List<IamAccount> content = accountRepository.listAccountsByFilter(filter, op);
+      return new PageImpl<>(content, op, countStrategy.pageTotal(key(ACCOUNTS_KEY, filter), op,
+          content.size(), () -> accountRepository.countByFilter(filter)));
+    }
+
+    Page<Long> ids = searchIndex.search(filter, op);
+
+    Map<Long, IamAccount> accounts = Maps.newHashMap();
+    accountRepository.findAll(ids.getContent()).forEach(a -> accounts.put(a.getId(), a));
+
+    // Keep the order of the search results, skipping accounts removed in the meantime
+    List<IamAccount> content = ids.getContent()
+      .stream()
+      .map(accounts::get)
+      .filter(a -> !isNull(a))
+      .collect(Collectors.toList());
+
+    return new PageImpl<>(content, op, ids.getTotalElements());
   }
 
   @Override
   public long count(String filter) {
 
-    return accountRepository.countByFilter(filter);
+    if (isNull(searchIndex)) {
+      return accountRepository.countByFilter(filter);
+    }
+
+    return searchIndex.count(filter);
   }
 
 }
@@ -15,11 +15,18 @@
  */
 package it.infn.mw.iam.api.account.search.service;
 
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.GROUPS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.key;
+
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import it.infn.mw.iam.api.common.PagedResourceService;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
 import it.infn.mw.iam.persistence.model.IamGroup;
 import it.infn.mw.iam.persistence.repository.IamGroupRepository;
 
@@ -29,9 +36,15 @@ public class DefaultPagedGroupsService implements PagedResourceService<IamGroup>
   @Autowired
   private IamGroupRepository groupRepository;
 
+  @Autowired
+  private TotalCountStrategy countStrategy;
+
   @Override
   public Page<IamGroup> getPage(Pageable op) {
-    return groupRepository.findAll(op);
+
+    List<IamGroup> content = groupRepository.listGroups(op);
+    return new PageImpl<>(content, op,
+        countStrategy.pageTotal(GROUPS_KEY, op, content.size(), groupRepository::count));
   }
 
   @Override
@@ -42,7 +55,9 @@ public class DefaultPagedGroupsService implements PagedResourceService<IamGroup>
   @Override
   public Page<IamGroup> getPage(Pageable op, String filter) {
 
-    return groupRepository.findByNameIgnoreCaseContainingOrUuidIgnoreCaseContaining(filter, filter, op);
+    List<IamGroup> content = groupRepository.listGroupsByFilter(filter, op);
+    return new PageImpl<>(content, op, countStrategy.pageTotal(key(GROUPS_KEY, filter), op,
+        content.size(), () -> count(filter)));
   }
 
   @Override
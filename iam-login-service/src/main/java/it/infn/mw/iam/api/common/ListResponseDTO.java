@@ -32,17 +32,20 @@ public class ListResponseDTO<T> {
   private final Integer itemsPerPage;
   private final Integer startIndex;
   private final List<T> resources;
+  private final String nextCursor;
 
   @JsonCreator
   public ListResponseDTO(@JsonProperty("totalResults") Long totalResults,
       @JsonProperty("itemsPerPage") Integer itemsPerPage,
       @JsonProperty("startIndex") Integer startIndex,
-      @JsonProperty("Resources") List<T> resources) {
+      @JsonProperty("Resources") List<T> resources,
+      @JsonProperty("nextCursor") String nextCursor) {
 
     this.totalResults = totalResults;
     this.itemsPerPage = itemsPerPage;
     this.startIndex = startIndex;
     this.resources = resources;
+    this.nextCursor = nextCursor;
   }
 
   protected ListResponseDTO(Builder<T> builder) {
@@ -50,6 +53,7 @@ public class ListResponseDTO<T> {
     this.startIndex = builder.startIndex;
     this.itemsPerPage = builder.itemsPerPage;
     this.resources = builder.resources;
+    this.nextCursor = builder.nextCursor;
   }
 
   public Long getTotalResults() {
@@ -69,6 +73,10 @@ public class ListResponseDTO<T> {
     return resources;
   }
 
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
   public static <T> Builder<T> builder() {
     return new Builder<>();
   }
@@ -80,6 +88,7 @@ public class ListResponseDTO<T> {
     private Integer itemsPerPage = null;
     private Integer startIndex = null;
     private List<T> resources = null;
+    private String nextCursor = null;
 
     public <S> Builder<T> fromPage(Page<S> page, Pageable op) {
       this.totalResults = page.getTotalElements();
@@ -108,6 +117,11 @@ public class ListResponseDTO<T> {
       return this;
     }
 
+    public Builder<T> nextCursor(String nextCursor) {
+      this.nextCursor = nextCursor;
+      return this;
+    }
+
     public ListResponseDTO<T> build() {
       return new ListResponseDTO<>(this);
     }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.common.count;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.updateAfterCommit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.springframework.context.ApplicationListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.account.AccountCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountRemovedEvent;
+import it.infn.mw.iam.audit.events.account.AccountsCreatedEvent;
+import it.infn.mw.iam.audit.events.group.GroupCreatedEvent;
+import it.infn.mw.iam.audit.events.group.GroupRemovedEvent;
+
+/**
+ * A {@link TotalCountStrategy} that caches counts for a configurable time, so that paging
+ * through a listing computes its count at most once per cache period.
+ *
+ * Counts below the exact count threshold are cheap to compute and are always recomputed, so
+ * that small listings report exact totals. The cached account and group counts are kept up to
+ * date with the accounts and groups created and removed in the meantime, once the change is
+ * committed. Since it's not known whether a created or removed account or group matches a filter,
+ * the filtered counts of the resource are evicted instead, both right away and when the
+ * transaction completes.
+ */
+public class CachedTotalCountStrategy
+    implements TotalCountStrategy, ApplicationListener<IamAuditApplicationEvent> {
+
+  private final Cache<String, Long> counts;
+  private final long exactCountThreshold;
+
+  public CachedTotalCountStrategy(long maxSize, long ttlSecs, long exactCountThreshold) {
+    this.counts = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+      .build();
+    this.exactCountThreshold = exactCountThreshold;
+  }
+
+  @Override
+  public long count(String key, LongSupplier exactCount) {
+
+    Long cachedCount = counts.getIfPresent(key);
+
+    if (cachedCount != null && cachedCount >= exactCountThreshold) {
+      return cachedCount;
+    }
+
+    final long count = exactCount.getAsLong();
+    counts.put(key, count);
+    return count;
+  }
+
+  protected void adjust(String key, long delta) {
+    counts.asMap().computeIfPresent(key, (k, count) -> Math.max(0, count + delta));
+  }
+
+  protected void evictFilteredCounts(String resource) {
+    final String filteredKeyPrefix = TotalCountStrategy.key(resource, "");
+    counts.asMap().keySet().removeIf(k -> k.startsWith(filteredKeyPrefix));
+  }
+
+  private void resourceCountChanged(String resource, long delta) {
+    evictNowAndAfterCompletion(() -> evictFilteredCounts(resource));
+    updateAfterCommit(() -> adjust(resource, delta));
+  }
+
+  @Override
+  public void onApplicationEvent(IamAuditApplicationEvent event) {
+
+    if (event instanceof AccountCreatedEvent) {
+      resourceCountChanged(ACCOUNTS_KEY, 1);
+    } else if (event instanceof AccountsCreatedEvent) {
+      resourceCountChanged(ACCOUNTS_KEY, ((AccountsCreatedEvent) event).getAccounts().size());
+    } else if (event instanceof AccountRemovedEvent) {
+      resourceCountChanged(ACCOUNTS_KEY, -1);
+    } else if (event instanceof GroupCreatedEvent) {
+      resourceCountChanged(GROUPS_KEY, 1);
+    } else if (event instanceof GroupRemovedEvent) {
+      resourceCountChanged(GROUPS_KEY, -1);
+    }
+  }
+}
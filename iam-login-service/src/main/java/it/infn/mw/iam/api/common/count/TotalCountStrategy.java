@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.common.count;
+
+import java.util.function.LongSupplier;
+
+import org.springframework.data.domain.Pageable;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Computes the total number of results reported by paged listings.
+ *
+ * Counts are identified by a key that describes the listed resources and the filter applied,
+ * so that implementations can reuse a count across pages of the same listing instead of
+ * running a count query next to every page query.
+ */
+public interface TotalCountStrategy {
+
+  String ACCOUNTS_KEY = "accounts";
+  String GROUPS_KEY = "groups";
+  String ACCESS_TOKENS_KEY = "access-tokens";
+  String REFRESH_TOKENS_KEY = "refresh-tokens";
+
+  /**
+   * Returns the total count for the given key, possibly an approximate one.
+   *
+   * @param key the key identifying the count
+   * @param exactCount computes the exact count, when needed
+   */
+  long count(String key, LongSupplier exactCount);
+
+  /**
+   * Returns the total count reported with a page of results.
+   *
+   * When the page is the last one, the total is derived from the page itself and no count is
+   * computed; otherwise the count returned by {@link #count(String, LongSupplier)} is adjusted
+   * so that it is consistent with the page content.
+   */
+  default long pageTotal(String key, Pageable op, int contentSize, LongSupplier exactCount) {
+
+    final long offset = op.getOffset();
+
+    if (contentSize < op.getPageSize() && (contentSize > 0 || offset == 0)) {
+      return offset + contentSize;
+    }
+
+    final long total = count(key, exactCount);
+
+    if (contentSize == 0) {
+      return Math.min(total, offset);
+    }
+
+    return Math.max(total, offset + contentSize);
+  }
+
+  static String key(String resource, String... qualifiers) {
+    return Joiner.on(':').useForNull("").join(Lists.asList(resource, qualifiers));
+  }
+}
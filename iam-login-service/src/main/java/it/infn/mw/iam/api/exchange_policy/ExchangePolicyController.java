@@ -26,6 +26,7 @@ import java.util.Optional;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -39,6 +40,8 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import it.infn.mw.iam.api.common.ErrorDTO;
+import it.infn.mw.iam.audit.events.exchange_policy.ExchangePolicyCreatedEvent;
+import it.infn.mw.iam.audit.events.exchange_policy.ExchangePolicyDeletedEvent;
 import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
 import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyRepository;
 
@@ -50,13 +53,15 @@ public class ExchangePolicyController {
   final IamTokenExchangePolicyRepository repo;
   final ExchangePolicyConverter converter;
   final Clock clock;
+  final ApplicationEventPublisher eventPublisher;
 
   @Autowired
   public ExchangePolicyController(Clock clock, IamTokenExchangePolicyRepository repo,
-      ExchangePolicyConverter converter) {
+      ExchangePolicyConverter converter, ApplicationEventPublisher eventPublisher) {
     this.clock = clock;
     this.repo = repo;
     this.converter = converter;
+    this.eventPublisher = eventPublisher;
   }
 
   private ExchangePolicyNotFoundError notFoundError(Long id) {
@@ -80,6 +85,7 @@ public class ExchangePolicyController {
     IamTokenExchangePolicyEntity p =
         Optional.ofNullable(repo.findOne(id)).orElseThrow(() -> notFoundError(id));
     repo.delete(p.getId());
+    eventPublisher.publishEvent(new ExchangePolicyDeletedEvent(this, p.getId()));
   }
 
   @RequestMapping(value = "/policies", method = RequestMethod.POST)
@@ -98,7 +104,8 @@ public class ExchangePolicyController {
     policy.setCreationTime(now);
     policy.setLastUpdateTime(now);
 
-    repo.save(policy);
+    policy = repo.save(policy);
+    eventPublisher.publishEvent(new ExchangePolicyCreatedEvent(this, policy.getId()));
   }
 
   @ResponseStatus(value = HttpStatus.NOT_FOUND)
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.controller;
+
+import static it.infn.mw.iam.api.scim.controller.utils.ValidationHelper.handleValidationError;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import it.infn.mw.iam.api.scim.exception.ScimPayloadTooLargeException;
+import it.infn.mw.iam.api.scim.model.ScimBulkRequest;
+import it.infn.mw.iam.api.scim.model.ScimBulkResponse;
+import it.infn.mw.iam.api.scim.model.ScimConstants;
+import it.infn.mw.iam.api.scim.provisioning.ScimBulkProvisioning;
+
+@RestController
+@RequestMapping("/scim/Bulk")
+@Transactional
+public class ScimBulkController extends ScimControllerSupport {
+
+  @Autowired
+  ScimBulkProvisioning bulkProvisioning;
+
+  @PreAuthorize("#oauth2.hasScope('scim:write') or hasRole('ADMIN')")
+  @RequestMapping(method = RequestMethod.POST, consumes = ScimConstants.SCIM_CONTENT_TYPE,
+      produces = ScimConstants.SCIM_CONTENT_TYPE)
+  @ResponseStatus(HttpStatus.OK)
+  public ScimBulkResponse bulk(@RequestBody @Validated final ScimBulkRequest request,
+      final BindingResult validationResult) {
+
+    handleValidationError("Invalid Scim Bulk Request", validationResult);
+
+    if (request.getOperations().size() > SCIM_BULK_MAX_OPERATIONS) {
+      throw new ScimPayloadTooLargeException(String.format(
+          "The number of operations exceeds the maximum allowed (%d)", SCIM_BULK_MAX_OPERATIONS));
+    }
+
+    return bulkProvisioning.execute(request);
+  }
+}
@@ -15,6 +15,12 @@
  */
 package it.infn.mw.iam.api.scim.controller;
 
+import java.util.Locale;
+
+import it.infn.mw.iam.api.scim.exception.ScimValidationException;
+import it.infn.mw.iam.api.scim.provisioning.DefaultScimQuery;
+import it.infn.mw.iam.api.scim.provisioning.ScimQuery;
+import it.infn.mw.iam.api.scim.provisioning.ScimQuery.SortOrder;
 import it.infn.mw.iam.api.scim.provisioning.paging.DefaultScimPageRequest;
 import it.infn.mw.iam.api.scim.provisioning.paging.ScimPageRequest;
 
@@ -22,6 +28,9 @@ public class ScimControllerSupport {
 
   protected static final int SCIM_USER_MAX_PAGE_SIZE = 100;
   protected static final int SCIM_GROUP_MAX_PAGE_SIZE = 10;
+  protected static final int SCIM_USER_MAX_CURSOR_PAGE_SIZE = 1000;
+  protected static final int SCIM_GROUP_MEMBERS_MAX_PAGE_SIZE = 1000;
+  protected static final int SCIM_BULK_MAX_OPERATIONS = 1000;
 
   protected ScimPageRequest buildUserPageRequest(Integer count, Integer startIndex) {
     return buildPageRequest(count, startIndex, SCIM_USER_MAX_PAGE_SIZE);
@@ -31,21 +40,59 @@ public class ScimControllerSupport {
     return buildPageRequest(count, startIndex, SCIM_GROUP_MAX_PAGE_SIZE);
   }
 
-  private ScimPageRequest buildPageRequest(Integer count, Integer startIndex, int maxPageSize) {
+  protected ScimPageRequest buildGroupMembersPageRequest(Integer count, Integer startIndex) {
+    return buildPageRequest(count, startIndex, SCIM_GROUP_MEMBERS_MAX_PAGE_SIZE);
+  }
 
-    int validCount = 0;
-    int validStartIndex = 1;
+  protected ScimQuery buildUserQuery(Integer count, Integer startIndex, String filter,
+      String sortBy, String sortOrder) {
+    return buildQuery(buildUserPageRequest(count, startIndex), filter, sortBy, sortOrder);
+  }
 
-    if (count == null) {
-      validCount = maxPageSize;
-    } else {
-      validCount = count;
-      if (count < 0) {
-        validCount = 0;
-      } else if (count > maxPageSize) {
-        validCount = maxPageSize;
-      }
+  protected ScimQuery buildGroupQuery(Integer count, Integer startIndex, String filter,
+      String sortBy, String sortOrder) {
+    return buildQuery(buildGroupPageRequest(count, startIndex), filter, sortBy, sortOrder);
+  }
+
+  protected int buildUserCursorPageCount(Integer count) {
+    return validPageCount(count, SCIM_USER_MAX_CURSOR_PAGE_SIZE);
+  }
+
+  private int validPageCount(Integer count, int maxPageSize) {
+    if (count == null || count > maxPageSize) {
+      return maxPageSize;
+    }
+
+    return count < 0 ? 0 : count;
+  }
+
+  private SortOrder parseSortOrder(String sortOrder) {
+    if (sortOrder == null) {
+      return SortOrder.ascending;
+    }
+
+    try {
+      return SortOrder.valueOf(sortOrder.toLowerCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ScimValidationException("Invalid sortOrder: " + sortOrder);
     }
+  }
+
+  private ScimQuery buildQuery(ScimPageRequest pr, String filter, String sortBy,
+      String sortOrder) {
+
+    return new DefaultScimQuery.Builder().count(pr.getCount())
+      .startIndex(pr.getStartIndex())
+      .filter(filter)
+      .sortBy(sortBy)
+      .sortOrder(parseSortOrder(sortOrder))
+      .build();
+  }
+
+  private ScimPageRequest buildPageRequest(Integer count, Integer startIndex, int maxPageSize) {
+
+    int validCount = validPageCount(count, maxPageSize);
+    int validStartIndex = 1;
 
     // SCIM pages index is 1-based
     if (startIndex == null) {
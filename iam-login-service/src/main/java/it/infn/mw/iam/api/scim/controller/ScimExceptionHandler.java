@@ -28,6 +28,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import it.infn.mw.iam.api.scim.exception.IllegalArgumentException;
 import it.infn.mw.iam.api.scim.exception.ScimException;
 import it.infn.mw.iam.api.scim.exception.ScimPatchOperationNotSupported;
+import it.infn.mw.iam.api.scim.exception.ScimPayloadTooLargeException;
 import it.infn.mw.iam.api.scim.exception.ScimResourceExistsException;
 import it.infn.mw.iam.api.scim.exception.ScimResourceNotFoundException;
 import it.infn.mw.iam.api.scim.exception.ScimValidationException;
@@ -96,6 +97,13 @@ public class ScimExceptionHandler extends ResponseEntityExceptionHandler {
     return buildErrorResponse(HttpStatus.CONFLICT, e.getMessage());
   }
 
+  @ResponseStatus(code = HttpStatus.PAYLOAD_TOO_LARGE)
+  @ExceptionHandler(ScimPayloadTooLargeException.class)
+  @ResponseBody
+  public ScimErrorResponse handlePayloadTooLarge(ScimPayloadTooLargeException e) {
+    return buildErrorResponse(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+  }
+
   @ResponseStatus(code = HttpStatus.BAD_REQUEST)
   @ExceptionHandler(ScimPatchOperationNotSupported.class)
   @ResponseBody
@@ -47,8 +47,8 @@ import it.infn.mw.iam.api.scim.model.ScimConstants;
 import it.infn.mw.iam.api.scim.model.ScimGroup;
 import it.infn.mw.iam.api.scim.model.ScimGroupPatchRequest;
 import it.infn.mw.iam.api.scim.model.ScimListResponse;
+import it.infn.mw.iam.api.scim.model.ScimMemberRef;
 import it.infn.mw.iam.api.scim.provisioning.ScimGroupProvisioning;
-import it.infn.mw.iam.api.scim.provisioning.paging.ScimPageRequest;
 
 @RestController
 @RequestMapping("/scim/Groups")
@@ -77,19 +77,36 @@ public class ScimGroupController extends ScimControllerSupport{
   @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN') or #iam.isGroupManager(#id)")
   @RequestMapping(value = "/{id}", method = RequestMethod.GET,
       produces = ScimConstants.SCIM_CONTENT_TYPE)
-  public ScimGroup getGroup(@PathVariable final String id) {
+  public ScimGroup getGroup(@PathVariable final String id,
+      @RequestParam(required = false) final String excludedAttributes) {
 
-    return groupProvisioningService.getById(id);
+    boolean includeMembers = !parseAttributes(excludedAttributes).contains("members");
+
+    return groupProvisioningService.getById(id, includeMembers);
+  }
+
+  @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN') or #iam.isGroupManager(#id)")
+  @RequestMapping(value = "/{id}/members", method = RequestMethod.GET,
+      produces = ScimConstants.SCIM_CONTENT_TYPE)
+  public ScimListResponse<ScimMemberRef> listGroupMembers(@PathVariable final String id,
+      @RequestParam(required = false) final Integer count,
+      @RequestParam(required = false) final Integer startIndex) {
+
+    return groupProvisioningService.listMembers(id,
+        buildGroupMembersPageRequest(count, startIndex));
   }
 
   @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN')")
   @RequestMapping(method = RequestMethod.GET, produces = ScimConstants.SCIM_CONTENT_TYPE)
   public MappingJacksonValue listGroups(@RequestParam(required = false) final Integer count,
       @RequestParam(required = false) final Integer startIndex,
-      @RequestParam(required = false) final String attributes) {
+      @RequestParam(required = false) final String attributes,
+      @RequestParam(required = false) final String filter,
+      @RequestParam(required = false) final String sortBy,
+      @RequestParam(required = false) final String sortOrder) {
 
-    ScimPageRequest pr = buildGroupPageRequest(count, startIndex);
-    ScimListResponse<ScimGroup> result = groupProvisioningService.list(pr);
+    ScimListResponse<ScimGroup> result = groupProvisioningService
+      .list(buildGroupQuery(count, startIndex, filter, sortBy, sortOrder));
 
     MappingJacksonValue wrapper = new MappingJacksonValue(result);
 
@@ -17,9 +17,14 @@ package it.infn.mw.iam.api.scim.controller;
 
 import static it.infn.mw.iam.api.scim.controller.utils.ValidationHelper.handleValidationError;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.json.MappingJacksonValue;
@@ -35,6 +40,9 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
@@ -43,21 +51,28 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 
+import it.infn.mw.iam.api.scim.exception.ScimValidationException;
 import it.infn.mw.iam.api.scim.model.ScimConstants;
 import it.infn.mw.iam.api.scim.model.ScimListResponse;
 import it.infn.mw.iam.api.scim.model.ScimUser;
 import it.infn.mw.iam.api.scim.model.ScimUserPatchRequest;
 import it.infn.mw.iam.api.scim.provisioning.ScimUserProvisioning;
-import it.infn.mw.iam.api.scim.provisioning.paging.ScimPageRequest;
 
 @RestController
 @RequestMapping("/scim/Users")
 @Transactional
 public class ScimUserController extends ScimControllerSupport{
 
+  public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+  protected static final int SCIM_USER_EXPORT_CHUNK_SIZE = 500;
+
   @Autowired
   ScimUserProvisioning userProvisioningService;
 
+  @Autowired
+  ObjectMapper mapper;
+
   FilterProvider excludePasswordFilter = new SimpleFilterProvider().addFilter("passwordFilter",
       SimpleBeanPropertyFilter.serializeAllExcept("password"));
 
@@ -75,27 +90,75 @@ public class ScimUserController extends ScimControllerSupport{
     return result;
   }
 
+  private FilterProvider attributeFilterProvider(final String attributes) {
+    Set<String> includeAttributes = parseAttributes(attributes);
+
+    return new SimpleFilterProvider().addFilter("attributeFilter",
+        SimpleBeanPropertyFilter.filterOutAllExcept(includeAttributes));
+  }
+
   @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN')")
   @RequestMapping(method = RequestMethod.GET, produces = ScimConstants.SCIM_CONTENT_TYPE)
   public MappingJacksonValue listUsers(@RequestParam(required = false) final Integer count,
       @RequestParam(required = false) final Integer startIndex,
-      @RequestParam(required = false) final String attributes) {
-
-    ScimPageRequest pr = buildUserPageRequest(count, startIndex);
-    ScimListResponse<ScimUser> result = userProvisioningService.list(pr);
+      @RequestParam(required = false) final String attributes,
+      @RequestParam(required = false) final String cursor,
+      @RequestParam(required = false) final String filter,
+      @RequestParam(required = false) final String sortBy,
+      @RequestParam(required = false) final String sortOrder) {
+
+    ScimListResponse<ScimUser> result;
+
+    if (cursor != null) {
+      if (filter != null || sortBy != null) {
+        throw new ScimValidationException("filter and sortBy are not supported with cursor");
+      }
+      result = userProvisioningService.listByCursor(cursor, buildUserCursorPageCount(count));
+    } else {
+      result = userProvisioningService
+        .list(buildUserQuery(count, startIndex, filter, sortBy, sortOrder));
+    }
 
     MappingJacksonValue wrapper = new MappingJacksonValue(result);
 
     if (attributes != null) {
-      Set<String> includeAttributes = parseAttributes(attributes);
+      wrapper.setFilters(attributeFilterProvider(attributes));
+    }
 
-      FilterProvider filterProvider = new SimpleFilterProvider().addFilter("attributeFilter",
-          SimpleBeanPropertyFilter.filterOutAllExcept(includeAttributes));
+    return wrapper;
+  }
+
+  @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN')")
+  @RequestMapping(value = "/export", method = RequestMethod.GET, produces = NDJSON_CONTENT_TYPE)
+  @Transactional(readOnly = true)
+  public void exportUsers(@RequestParam(required = false) final String attributes,
+      final HttpServletResponse response) throws IOException {
+
+    SimpleFilterProvider filterProvider = new SimpleFilterProvider().setFailOnUnknownId(false)
+      .addFilter("passwordFilter", SimpleBeanPropertyFilter.serializeAllExcept("password"));
 
-      wrapper.setFilters(filterProvider);
+    if (attributes != null) {
+      filterProvider.addFilter("attributeFilter",
+          SimpleBeanPropertyFilter.filterOutAllExcept(parseAttributes(attributes)));
     }
 
-    return wrapper;
+    ObjectWriter writer = mapper.writer(filterProvider);
+
+    response.setContentType(NDJSON_CONTENT_TYPE);
+    OutputStream out = response.getOutputStream();
+
+    userProvisioningService.exportUsers(SCIM_USER_EXPORT_CHUNK_SIZE, user -> {
+      try {
+        out.write(writer.writeValueAsBytes(user));
+        out.write('\n');
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException("Error serializing user " + user.getId(), e);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+
+    out.flush();
   }
 
   @PreAuthorize("#oauth2.hasScope('scim:read') or hasRole('ADMIN')")
@@ -22,25 +22,34 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
+import it.infn.mw.iam.api.common.OffsetPageable;
 import it.infn.mw.iam.api.scim.model.ScimGroup;
 import it.infn.mw.iam.api.scim.model.ScimGroupRef;
 import it.infn.mw.iam.api.scim.model.ScimIndigoGroup;
 import it.infn.mw.iam.api.scim.model.ScimMemberRef;
 import it.infn.mw.iam.api.scim.model.ScimMeta;
-import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamGroupMemberRef;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @Service
 public class GroupConverter implements Converter<ScimGroup, IamGroup> {
 
   private final ScimResourceLocationProvider resourceLocationProvider;
+  private final IamAccountRepository accountRepository;
+  private final int inlineMembersLimit;
 
   @Autowired
-  public GroupConverter(ScimResourceLocationProvider rlp) {
+  public GroupConverter(ScimResourceLocationProvider rlp, IamAccountRepository accountRepository,
+      @Value("${iam.scim.group.inline-members-limit:100}") int inlineMembersLimit) {
 
     this.resourceLocationProvider = rlp;
+    this.accountRepository = accountRepository;
+    this.inlineMembersLimit = inlineMembersLimit;
   }
 
   /**
@@ -65,8 +74,26 @@ public class GroupConverter implements Converter<ScimGroup, IamGroup> {
     return group;
   }
 
+  public ScimMemberRef memberRef(IamGroupMemberRef member) {
+    return new ScimMemberRef.Builder().value(member.getUuid())
+      .display(member.getName())
+      .ref(resourceLocationProvider.userLocation(member.getUuid()))
+      .build();
+  }
+
   @Override
   public ScimGroup dtoFromEntity(IamGroup entity) {
+    return dtoFromEntity(entity, true);
+  }
+
+  /**
+   * Converts a group, optionally leaving out its member accounts. Member accounts are read with
+   * a projection query, rather than by loading the accounts linked to the group, and at most
+   * <code>iam.scim.group.inline-members-limit</code> of them are included. When a group has more
+   * members, the indigo group extension reports the member count and the location of the
+   * <code>/members</code> sub-resource, where all members can be listed a page at a time.
+   */
+  public ScimGroup dtoFromEntity(IamGroup entity, boolean includeMemberAccounts) {
 
     ScimMeta meta = ScimMeta.builder(entity.getCreationTime(), entity.getLastUpdateTime())
       .location(resourceLocationProvider.groupLocation(entity.getUuid()))
@@ -74,13 +101,20 @@ public class GroupConverter implements Converter<ScimGroup, IamGroup> {
       .build();
 
     Set<ScimMemberRef> members = new HashSet<>();
+    ScimIndigoGroup.Builder scimIndigoGroup = ScimIndigoGroup.getBuilder();
 
-    for (IamAccount account : entity.getAccounts()) {
-      ScimMemberRef memberRef = new ScimMemberRef.Builder().value(account.getUuid())
-        .display(account.getUserInfo().getName())
-        .ref(resourceLocationProvider.userLocation(account.getUuid()))
-        .build();
-      members.add(memberRef);
+    if (includeMemberAccounts && entity.getId() != null) {
+      Page<IamGroupMemberRef> memberPage = accountRepository.findGroupMemberRefs(entity.getId(),
+          new OffsetPageable(0, inlineMembersLimit));
+
+      for (IamGroupMemberRef member : memberPage.getContent()) {
+        members.add(memberRef(member));
+      }
+
+      if (memberPage.hasNext()) {
+        scimIndigoGroup.memberCount(memberPage.getTotalElements())
+          .membersLocation(resourceLocationProvider.groupLocation(entity.getUuid()) + "/members");
+      }
     }
 
     for (IamGroup subgroup : entity.getChildrenGroups()) {
@@ -92,7 +126,6 @@ public class GroupConverter implements Converter<ScimGroup, IamGroup> {
     }
 
     IamGroup iamParentGroup = entity.getParentGroup();
-    ScimIndigoGroup.Builder scimIndigoGroup = ScimIndigoGroup.getBuilder();
 
     if (iamParentGroup != null) {
       
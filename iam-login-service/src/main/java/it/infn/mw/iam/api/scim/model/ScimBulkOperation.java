@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.model;
+
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotBlank;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ScimBulkOperation {
+
+  @NotBlank
+  private final String method;
+
+  private final String bulkId;
+
+  @NotBlank
+  private final String path;
+
+  @NotNull
+  private final JsonNode data;
+
+  @JsonCreator
+  public ScimBulkOperation(@JsonProperty("method") String method,
+      @JsonProperty("bulkId") String bulkId, @JsonProperty("path") String path,
+      @JsonProperty("data") JsonNode data) {
+
+    this.method = method;
+    this.bulkId = bulkId;
+    this.path = path;
+    this.data = data;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getBulkId() {
+    return bulkId;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public JsonNode getData() {
+    return data;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+@JsonInclude(Include.NON_NULL)
+public class ScimBulkOperationResult {
+
+  private final String method;
+  private final String bulkId;
+  private final String location;
+  private final String status;
+  private final ScimErrorResponse response;
+
+  private ScimBulkOperationResult(String method, String bulkId, String location, int status,
+      ScimErrorResponse response) {
+    this.method = method;
+    this.bulkId = bulkId;
+    this.location = location;
+    this.status = Integer.toString(status);
+    this.response = response;
+  }
+
+  public static ScimBulkOperationResult success(ScimBulkOperation op, int status,
+      String location) {
+    return new ScimBulkOperationResult(op.getMethod(), op.getBulkId(), location, status, null);
+  }
+
+  public static ScimBulkOperationResult error(ScimBulkOperation op, int status,
+      String detail) {
+    return new ScimBulkOperationResult(op.getMethod(), op.getBulkId(), null, status,
+        new ScimErrorResponse(status, detail));
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getBulkId() {
+    return bulkId;
+  }
+
+  public String getLocation() {
+    return location;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public ScimErrorResponse getResponse() {
+    return response;
+  }
+}
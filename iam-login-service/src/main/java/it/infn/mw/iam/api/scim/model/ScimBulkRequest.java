@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.model;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Sets;
+
+@JsonInclude(Include.NON_EMPTY)
+public class ScimBulkRequest {
+
+  public static final String BULK_REQUEST_SCHEMA =
+      "urn:ietf:params:scim:api:messages:2.0:BulkRequest";
+
+  private final Set<String> schemas;
+
+  @Min(1)
+  private final Integer failOnErrors;
+
+  @NotEmpty
+  @Valid
+  private final List<ScimBulkOperation> operations;
+
+  @JsonCreator
+  public ScimBulkRequest(@JsonProperty("schemas") Set<String> schemas,
+      @JsonProperty("failOnErrors") Integer failOnErrors,
+      @JsonProperty("Operations") List<ScimBulkOperation> operations) {
+
+    this.schemas = schemas == null ? Sets.newHashSet(BULK_REQUEST_SCHEMA) : schemas;
+    this.failOnErrors = failOnErrors;
+    this.operations = operations;
+  }
+
+  public Set<String> getSchemas() {
+    return schemas;
+  }
+
+  public Integer getFailOnErrors() {
+    return failOnErrors;
+  }
+
+  @JsonProperty("Operations")
+  public List<ScimBulkOperation> getOperations() {
+    return operations;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ScimBulkResponse {
+
+  public static final String BULK_RESPONSE_SCHEMA =
+      "urn:ietf:params:scim:api:messages:2.0:BulkResponse";
+
+  private final String[] schemas = {BULK_RESPONSE_SCHEMA};
+
+  private final List<ScimBulkOperationResult> operations;
+
+  public ScimBulkResponse(List<ScimBulkOperationResult> operations) {
+    this.operations = operations;
+  }
+
+  public String[] getSchemas() {
+    return Arrays.copyOf(schemas, schemas.length);
+  }
+
+  @JsonProperty("Operations")
+  public List<ScimBulkOperationResult> getOperations() {
+    return operations;
+  }
+}
@@ -16,6 +16,8 @@
 package it.infn.mw.iam.api.scim.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 
@@ -25,16 +27,29 @@ public class ScimIndigoGroup {
   
   private String description;
 
+  // Only set when the members listed in the group are a subset of its members
+  @JsonInclude(Include.NON_NULL)
+  private Long memberCount;
+
+  @JsonInclude(Include.NON_NULL)
+  private String membersLocation;
+
   @JsonCreator
   private ScimIndigoGroup(@JsonProperty("parentGroup") ScimGroupRef parentGroup,
-      @JsonProperty("description") String description) {
+      @JsonProperty("description") String description,
+      @JsonProperty("memberCount") Long memberCount,
+      @JsonProperty("membersLocation") String membersLocation) {
     this.parentGroup = parentGroup;
     this.description = description;
+    this.memberCount = memberCount;
+    this.membersLocation = membersLocation;
   }
 
   private ScimIndigoGroup(Builder builder) {
     this.parentGroup = builder.parentGroup;
     this.description = builder.description;
+    this.memberCount = builder.memberCount;
+    this.membersLocation = builder.membersLocation;
   }
 
   public ScimGroupRef getParentGroup() {
@@ -44,6 +59,14 @@ public class ScimIndigoGroup {
   public String getDescription() {
     return description;
   }
+
+  public Long getMemberCount() {
+    return memberCount;
+  }
+
+  public String getMembersLocation() {
+    return membersLocation;
+  }
   
   public static Builder getBuilder() {
     return new Builder();
@@ -54,6 +77,10 @@ public class ScimIndigoGroup {
     
     private String description;
 
+    private Long memberCount;
+
+    private String membersLocation;
+
     public Builder parentGroup(ScimGroupRef parentGroup) {
       this.parentGroup = parentGroup;
       return this;
@@ -64,6 +91,16 @@ public class ScimIndigoGroup {
       return this;
     }
 
+    public Builder memberCount(Long memberCount) {
+      this.memberCount = memberCount;
+      return this;
+    }
+
+    public Builder membersLocation(String membersLocation) {
+      this.membersLocation = membersLocation;
+      return this;
+    }
+
     public ScimIndigoGroup build() {
 
       return new ScimIndigoGroup(this);
@@ -19,6 +19,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import it.infn.mw.iam.api.common.ListResponseDTO;
 
 public class ScimListResponse<T> extends ListResponseDTO<T> {
@@ -27,12 +31,16 @@ public class ScimListResponse<T> extends ListResponseDTO<T> {
 
   private final Set<String> schemas = new HashSet<>(Collections.singletonList(SCHEMA));
 
+  private final String nextCursor;
+
   public ScimListResponse(long totalResults, int itemsPerPage, int startIndex, List<T> resources) {
     super(totalResults, itemsPerPage, startIndex, resources);
+    this.nextCursor = null;
   }
 
   private ScimListResponse(ScimListResponseBuilder<T> builder) {
     super(builder);
+    this.nextCursor = builder.nextCursor;
   }
 
   public Set<String> getSchemas() {
@@ -40,6 +48,11 @@ public class ScimListResponse<T> extends ListResponseDTO<T> {
     return schemas;
   }
 
+  @JsonInclude(Include.NON_NULL)
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
   public static <T> ScimListResponseBuilder<T> builder() {
     return new ScimListResponseBuilder<>();
   }
@@ -47,6 +60,13 @@ public class ScimListResponse<T> extends ListResponseDTO<T> {
 
   public static class ScimListResponseBuilder<T> extends ListResponseDTO.Builder<T> {
 
+    private String nextCursor = null;
+
+    public ScimListResponseBuilder<T> nextCursor(String nextCursor) {
+      this.nextCursor = nextCursor;
+      return this;
+    }
+
     @Override
     public ScimListResponse<T> build() {
       return new ScimListResponse<>(this);
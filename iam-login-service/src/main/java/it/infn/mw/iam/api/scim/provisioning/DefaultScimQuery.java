@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning;
+
+public class DefaultScimQuery implements ScimQuery {
+
+  private final int count;
+  private final int startIndex;
+  private final String filter;
+  private final String sortBy;
+  private final SortOrder sortOrder;
+
+  private DefaultScimQuery(Builder b) {
+    this.count = b.count;
+    this.startIndex = b.startIndex;
+    this.filter = b.filter;
+    this.sortBy = b.sortBy;
+    this.sortOrder = b.sortOrder;
+  }
+
+  @Override
+  public int getCount() {
+
+    return count;
+  }
+
+  @Override
+  public int getStartIndex() {
+
+    return startIndex;
+  }
+
+  @Override
+  public String getFilter() {
+
+    return filter;
+  }
+
+  @Override
+  public String getSortBy() {
+
+    return sortBy;
+  }
+
+  @Override
+  public SortOrder getSortOder() {
+
+    return sortOrder;
+  }
+
+  public static class Builder {
+
+    private int count;
+    private int startIndex;
+    private String filter;
+    private String sortBy;
+    private SortOrder sortOrder = SortOrder.ascending;
+
+    public Builder count(int count) {
+
+      this.count = count;
+      return this;
+    }
+
+    public Builder startIndex(int startIndex) {
+
+      this.startIndex = startIndex;
+      return this;
+    }
+
+    public Builder filter(String filter) {
+
+      this.filter = filter;
+      return this;
+    }
+
+    public Builder sortBy(String sortBy) {
+
+      this.sortBy = sortBy;
+      return this;
+    }
+
+    public Builder sortOrder(SortOrder sortOrder) {
+
+      this.sortOrder = sortOrder;
+      return this;
+    }
+
+    public DefaultScimQuery build() {
+
+      return new DefaultScimQuery(this);
+    }
+  }
+}
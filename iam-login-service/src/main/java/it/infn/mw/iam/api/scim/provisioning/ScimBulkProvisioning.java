@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.api.scim.converter.ScimResourceLocationProvider;
+import it.infn.mw.iam.api.scim.converter.UserConverter;
+import it.infn.mw.iam.api.scim.exception.ScimValidationException;
+import it.infn.mw.iam.api.scim.model.ScimBulkOperation;
+import it.infn.mw.iam.api.scim.model.ScimBulkOperationResult;
+import it.infn.mw.iam.api.scim.model.ScimBulkRequest;
+import it.infn.mw.iam.api.scim.model.ScimBulkResponse;
+import it.infn.mw.iam.api.scim.model.ScimUser;
+import it.infn.mw.iam.core.user.IamAccountService;
+import it.infn.mw.iam.core.user.exception.CredentialAlreadyBoundException;
+import it.infn.mw.iam.core.user.exception.UserAlreadyExistsException;
+import it.infn.mw.iam.persistence.model.IamAccount;
+
+/**
+ * Executes SCIM bulk requests (RFC 7644, section 3.7).
+ *
+ * Only user creation (POST /Users) is supported. The operations are converted and checked up
+ * front, with a fixed number of queries for the whole request, and the valid accounts are then
+ * created together, so that a bulk request costs far less than the equivalent sequence of
+ * single requests. As mandated by the RFC, operations are processed in order and processing
+ * stops after <code>failOnErrors</code> errors; the accounts of the operations that precede that
+ * point are created anyway.
+ */
+@Service
+public class ScimBulkProvisioning {
+
+  public static final String USERS_PATH = "/Users";
+
+  private final IamAccountService accountService;
+  private final UserConverter userConverter;
+  private final ScimResourceLocationProvider locationProvider;
+  private final ObjectMapper mapper;
+  private final Validator validator;
+
+  @Autowired
+  public ScimBulkProvisioning(IamAccountService accountService, UserConverter userConverter,
+      ScimResourceLocationProvider locationProvider, ObjectMapper mapper) {
+    this.accountService = accountService;
+    this.userConverter = userConverter;
+    this.locationProvider = locationProvider;
+    this.mapper = mapper;
+    this.validator = Validation.buildDefaultValidatorFactory().getValidator();
+  }
+
+  private static int errorStatus(RuntimeException e) {
+    if (e instanceof UserAlreadyExistsException || e instanceof CredentialAlreadyBoundException) {
+      return HttpStatus.CONFLICT.value();
+    }
+
+    return HttpStatus.BAD_REQUEST.value();
+  }
+
+  private ScimUser readUser(ScimBulkOperation op) {
+
+    ScimUser user;
+
+    try {
+      user = mapper.treeToValue(op.getData(), ScimUser.class);
+    } catch (JsonProcessingException e) {
+      throw new ScimValidationException("Invalid Scim User: " + e.getOriginalMessage(), e);
+    }
+
+    Set<ConstraintViolation<ScimUser>> violations =
+        validator.validate(user, ScimUser.NewUserValidation.class);
+
+    if (!violations.isEmpty()) {
+      throw new ScimValidationException(violations.stream()
+        .map(v -> String.format("[scimUser.%s : %s]", v.getPropertyPath(), v.getMessage()))
+        .collect(Collectors.joining(",", "Invalid Scim User: ", "")));
+    }
+
+    return user;
+  }
+
+  private IamAccount convertOperation(ScimBulkOperation op, Set<String> bulkIds) {
+
+    if (!HttpMethod.POST.name().equalsIgnoreCase(op.getMethod())
+        || !USERS_PATH.equals(op.getPath())) {
+      throw new ScimValidationException(String.format(
+          "Unsupported bulk operation '%s %s': only POST %s is supported", op.getMethod(),
+          op.getPath(), USERS_PATH));
+    }
+
+    if (op.getBulkId() == null) {
+      throw new ScimValidationException("bulkId is required for POST operations");
+    }
+
+    if (!bulkIds.add(op.getBulkId())) {
+      throw new ScimValidationException("Duplicate bulkId: " + op.getBulkId());
+    }
+
+    return userConverter.entityFromDto(readUser(op));
+  }
+
+  public ScimBulkResponse execute(ScimBulkRequest request) {
+
+    final List<ScimBulkOperation> ops = request.getOperations();
+    final int maxErrors =
+        request.getFailOnErrors() == null ? Integer.MAX_VALUE : request.getFailOnErrors();
+
+    Map<Integer, RuntimeException> errors = Maps.newHashMap();
+    Map<Integer, Integer> accountIndexes = Maps.newHashMap();
+    List<IamAccount> accounts = Lists.newArrayList();
+    Set<String> bulkIds = Sets.newHashSet();
+
+    for (int i = 0; i < ops.size(); i++) {
+      try {
+        IamAccount account = convertOperation(ops.get(i), bulkIds);
+        accountIndexes.put(i, accounts.size());
+        accounts.add(account);
+      } catch (RuntimeException e) {
+        errors.put(i, e);
+      }
+    }
+
+    Map<Integer, RuntimeException> accountErrors = accountService.validateNewAccounts(accounts);
+
+    List<ScimBulkOperationResult> results = Lists.newArrayList();
+    Map<Integer, IamAccount> accountsToCreate = Maps.newLinkedHashMap();
+    int errorCount = 0;
+
+    for (int i = 0; i < ops.size() && errorCount < maxErrors; i++) {
+
+      RuntimeException error = errors.get(i);
+
+      if (error == null) {
+        error = accountErrors.get(accountIndexes.get(i));
+      }
+
+      if (error != null) {
+        errorCount++;
+        int status = errorStatus(error);
+        results.add(ScimBulkOperationResult.error(ops.get(i), status, error.getMessage()));
+      } else {
+        accountsToCreate.put(results.size(), accounts.get(accountIndexes.get(i)));
+        results.add(null);
+      }
+    }
+
+    accountService.createAccounts(Lists.newArrayList(accountsToCreate.values()));
+
+    accountsToCreate.forEach((resultIndex, account) -> {
+      String location = locationProvider.userLocation(account.getUuid());
+      ScimBulkOperation op = ops.get(resultIndex);
+      results.set(resultIndex,
+          ScimBulkOperationResult.success(op, HttpStatus.CREATED.value(), location));
+    });
+
+    return new ScimBulkResponse(results);
+  }
+}
@@ -17,19 +17,21 @@ package it.infn.mw.iam.api.scim.provisioning;
 
 import static java.lang.String.format;
 
-import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 
 import it.infn.mw.iam.api.common.OffsetPageable;
 import it.infn.mw.iam.api.scim.converter.GroupConverter;
@@ -42,41 +44,38 @@ import it.infn.mw.iam.api.scim.model.ScimListResponse;
 import it.infn.mw.iam.api.scim.model.ScimListResponse.ScimListResponseBuilder;
 import it.infn.mw.iam.api.scim.model.ScimMemberRef;
 import it.infn.mw.iam.api.scim.model.ScimPatchOperation;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterSchema;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimQueryPlan;
 import it.infn.mw.iam.api.scim.provisioning.paging.ScimPageRequest;
-import it.infn.mw.iam.api.scim.updater.AccountUpdater;
-import it.infn.mw.iam.api.scim.updater.factory.DefaultGroupMembershipUpdaterFactory;
+import it.infn.mw.iam.core.group.IamGroupMembershipService;
 import it.infn.mw.iam.core.group.IamGroupService;
-import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
 import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamGroupMemberRef;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @Service
-public class ScimGroupProvisioning
-    implements ScimProvisioning<ScimGroup, List<ScimMemberRef>>, ApplicationEventPublisherAware {
+public class ScimGroupProvisioning implements ScimProvisioning<ScimGroup, List<ScimMemberRef>> {
 
   private static final int GROUP_NAME_MAX_LENGTH = 50;
   private static final int GROUP_FULLNAME_MAX_LENGTH = 512;
+  private static final int MEMBER_QUERY_BATCH_SIZE = 500;
 
   private final IamGroupService groupService;
   private final IamAccountRepository accountRepository;
-  private final Clock clock;
 
   private final GroupConverter converter;
 
-  private final DefaultGroupMembershipUpdaterFactory groupUpdaterFactory;
-  private ApplicationEventPublisher eventPublisher;
+  private final IamGroupMembershipService membershipService;
 
   @Autowired
   public ScimGroupProvisioning(IamGroupService groupService, IamAccountRepository accountRepository,
-      GroupConverter converter, Clock clock) {
+      IamGroupMembershipService membershipService, GroupConverter converter) {
 
     this.accountRepository = accountRepository;
     this.groupService = groupService;
+    this.membershipService = membershipService;
     this.converter = converter;
-    this.clock = clock;
-
-    this.groupUpdaterFactory = new DefaultGroupMembershipUpdaterFactory(accountRepository);
-
   }
 
   private void checkUnsupportedPath(ScimPatchOperation<List<ScimMemberRef>> op) {
@@ -148,36 +147,65 @@ public class ScimGroupProvisioning
     }
   }
 
-  private void executePatchOperation(IamGroup group, ScimPatchOperation<List<ScimMemberRef>> op) {
+  /**
+   * Resolves the accounts referenced by a patch operation with set queries. Each account is
+   * returned once, in the order in which it is first referenced.
+   */
+  private List<IamAccountIds> resolveMemberRefs(List<ScimMemberRef> members) {
 
-    checkUnsupportedPath(op);
+    if (members == null || members.isEmpty()) {
+      return Collections.emptyList();
+    }
 
-    List<AccountUpdater> updaters = groupUpdaterFactory.getUpdatersForPatchOperation(group, op);
-    List<AccountUpdater> updatesToPublish = new ArrayList<>();
+    Set<String> uuids = new LinkedHashSet<>();
+    members.forEach(m -> uuids.add(m.getValue()));
 
-    boolean hasChanged = false;
+    Map<String, IamAccountIds> accounts = new HashMap<>();
 
-    for (AccountUpdater u : updaters) {
-      if (u.update()) {
-        IamAccount a = u.getAccount();
-        a.touch();
-        accountRepository.save(a);
-        hasChanged = true;
-        updatesToPublish.add(u);
-      }
+    for (List<String> chunk : Iterables.partition(uuids, MEMBER_QUERY_BATCH_SIZE)) {
+      accountRepository.findAccountIdsByUuid(chunk).forEach(a -> accounts.put(a.getUuid(), a));
     }
 
-    if (hasChanged) {
+    List<IamAccountIds> result = new ArrayList<>();
 
-      group.touch(clock);
-      groupService.save(group);
-      for (AccountUpdater u : updatesToPublish) {
-        u.publishUpdateEvent(this, eventPublisher);
+    for (String uuid : uuids) {
+      IamAccountIds account = accounts.get(uuid);
+      if (account == null) {
+        throw new ScimResourceNotFoundException("User UUID " + uuid + " not found");
       }
+      result.add(account);
     }
+
+    return result;
   }
 
+  private void executePatchOperation(IamGroup group, ScimPatchOperation<List<ScimMemberRef>> op) {
+
+    checkUnsupportedPath(op);
+
+    List<IamAccountIds> members = resolveMemberRefs(op.getValue());
+
+    switch (op.getOp()) {
+      case add:
+        membershipService.addMembers(group, members);
+        break;
+
+      case remove:
+        if (members.isEmpty()) {
+          membershipService.removeAllMembers(group);
+        } else {
+          membershipService.removeMembers(group, members);
+        }
+        break;
 
+      case replace:
+        membershipService.replaceMembers(group, members);
+        break;
+
+      default:
+        throw new ScimPatchOperationNotSupported(op.getOp() + " is not currently supported");
+    }
+  }
 
   private void fullNameSanityChecks(String displayName) {
     if (displayName.length() > GROUP_FULLNAME_MAX_LENGTH) {
@@ -193,11 +221,48 @@ public class ScimGroupProvisioning
   @Override
   public ScimGroup getById(String id) {
 
+    return getById(id, true);
+  }
+
+  public ScimGroup getById(String id, boolean includeMemberAccounts) {
+
+    idSanityChecks(id);
+
+    IamGroup group = groupService.findByUuid(id).orElseThrow(() -> noGroupMappedToId(id));
+
+    return converter.dtoFromEntity(group, includeMemberAccounts);
+  }
+
+  /**
+   * Lists the accounts that are members of a group, a page at a time. Subgroups are not listed.
+   */
+  public ScimListResponse<ScimMemberRef> listMembers(String id, ScimPageRequest params) {
+
     idSanityChecks(id);
 
     IamGroup group = groupService.findByUuid(id).orElseThrow(() -> noGroupMappedToId(id));
 
-    return converter.dtoFromEntity(group);
+    ScimListResponseBuilder<ScimMemberRef> builder = ScimListResponse.builder();
+
+    if (params.getCount() == 0) {
+
+      builder.totalResults(accountRepository.countByGroupId(group.getId()));
+
+    } else {
+
+      OffsetPageable op = new OffsetPageable(params.getStartIndex(), params.getCount());
+
+      Page<IamGroupMemberRef> results = accountRepository.findGroupMemberRefs(group.getId(), op);
+
+      List<ScimMemberRef> resources = new ArrayList<>();
+
+      results.getContent().forEach(m -> resources.add(converter.memberRef(m)));
+
+      builder.resources(resources);
+      builder.fromPage(results, op);
+    }
+
+    return builder.build();
   }
 
   private void idSanityChecks(String id) {
@@ -219,18 +284,27 @@ public class ScimGroupProvisioning
   @Override
   public ScimListResponse<ScimGroup> list(ScimPageRequest params) {
 
+    return list(new DefaultScimQuery.Builder().count(params.getCount())
+      .startIndex(params.getStartIndex())
+      .build());
+  }
+
+  public ScimListResponse<ScimGroup> list(ScimQuery query) {
+
+    ScimQueryPlan<IamGroup> plan = ScimQueryPlan.build(ScimFilterSchema.GROUPS, query);
+
     ScimListResponseBuilder<ScimGroup> builder = ScimListResponse.builder();
 
-    if (params.getCount() == 0) {
+    if (plan.getCount() == 0) {
 
-      long totalResults = groupService.countAllGroups();
+      long totalResults = groupService.count(plan.getSpecification());
       builder.totalResults(totalResults);
 
     } else {
 
-      OffsetPageable op = new OffsetPageable(params.getStartIndex(), params.getCount());
+      OffsetPageable op = plan.getPageable();
 
-      Page<IamGroup> results = groupService.findAll(op);
+      Page<IamGroup> results = groupService.findAll(plan.getSpecification(), op);
 
       List<ScimGroup> resources = new ArrayList<>();
 
@@ -266,10 +340,6 @@ public class ScimGroupProvisioning
     return converter.dtoFromEntity(newGroup);
   }
 
-  public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
-    this.eventPublisher = publisher;
-  }
-
   @Override
   public void update(String id, List<ScimPatchOperation<List<ScimMemberRef>>> operations) {
 
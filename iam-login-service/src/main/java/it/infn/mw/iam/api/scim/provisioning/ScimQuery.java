@@ -25,6 +25,8 @@ public interface ScimQuery extends ScimPageRequest {
 
   String getFilter();
 
+  String getSortBy();
+
   SortOrder getSortOder();
 
 }
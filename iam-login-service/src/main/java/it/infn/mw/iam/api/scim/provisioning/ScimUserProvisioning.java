@@ -15,6 +15,8 @@
  */
 package it.infn.mw.iam.api.scim.provisioning;
 
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.ACCOUNTS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.key;
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_ADD_OIDC_ID;
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_ADD_SAML_ID;
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_ADD_SSH_KEY;
@@ -31,16 +33,27 @@ import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_GIVEN_
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_PASSWORD;
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_PICTURE;
 import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_USERNAME;
+
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+
+import com.google.common.base.Strings;
+
 import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
 import it.infn.mw.iam.api.scim.converter.OidcIdConverter;
 import it.infn.mw.iam.api.scim.converter.SamlIdConverter;
 import it.infn.mw.iam.api.scim.converter.SshKeyConverter;
@@ -54,6 +67,9 @@ import it.infn.mw.iam.api.scim.model.ScimListResponse;
 import it.infn.mw.iam.api.scim.model.ScimListResponse.ScimListResponseBuilder;
 import it.infn.mw.iam.api.scim.model.ScimPatchOperation;
 import it.infn.mw.iam.api.scim.model.ScimUser;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterSchema;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimQueryPlan;
+import it.infn.mw.iam.api.scim.provisioning.paging.ScimCursor;
 import it.infn.mw.iam.api.scim.provisioning.paging.ScimPageRequest;
 import it.infn.mw.iam.api.scim.updater.AccountUpdater;
 import it.infn.mw.iam.api.scim.updater.UpdaterType;
@@ -80,20 +96,26 @@ public class ScimUserProvisioning
   private final IamAccountRepository accountRepository;
   private final UserConverter userConverter;
   private final DefaultAccountUpdaterFactory updatersFactory;
+  private final TotalCountStrategy countStrategy;
 
   private ApplicationEventPublisher eventPublisher;
 
+  @PersistenceContext
+  private EntityManager entityManager;
+
   @Autowired
   public ScimUserProvisioning(IamAccountService accountService,
       IamAccountRepository accountRepository, PasswordEncoder passwordEncoder,
       UserConverter userConverter, OidcIdConverter oidcIdConverter, SamlIdConverter samlIdConverter,
-      SshKeyConverter sshKeyConverter, X509CertificateConverter x509CertificateConverter) {
+      SshKeyConverter sshKeyConverter, X509CertificateConverter x509CertificateConverter,
+      TotalCountStrategy countStrategy) {
 
     this.accountService = accountService;
     this.accountRepository = accountRepository;
     this.userConverter = userConverter;
     this.updatersFactory = new DefaultAccountUpdaterFactory(passwordEncoder, accountRepository,
         oidcIdConverter, samlIdConverter, sshKeyConverter, x509CertificateConverter);
+    this.countStrategy = countStrategy;
   }
 
   public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
@@ -167,30 +189,105 @@ public class ScimUserProvisioning
   @Override
   public ScimListResponse<ScimUser> list(final ScimPageRequest params) {
 
+    return list(new DefaultScimQuery.Builder().count(params.getCount())
+      .startIndex(params.getStartIndex())
+      .build());
+  }
+
+  private String countKey(final ScimQuery query) {
+
+    if (Strings.isNullOrEmpty(query.getFilter())) {
+      return ACCOUNTS_KEY;
+    }
+
+    return key(ACCOUNTS_KEY, "scim", query.getFilter());
+  }
+
+  public ScimListResponse<ScimUser> list(final ScimQuery query) {
+
+    ScimQueryPlan<IamAccount> plan = ScimQueryPlan.build(ScimFilterSchema.USERS, query);
+
     ScimListResponseBuilder<ScimUser> builder = ScimListResponse.builder();
 
-    if (params.getCount() == 0) {
+    if (plan.getCount() == 0) {
 
-      long totalResults = accountRepository.count();
+      long totalResults = accountRepository.count(plan.getSpecification());
       builder.totalResults(totalResults);
 
     } else {
 
-      OffsetPageable op = new OffsetPageable(params.getStartIndex(), params.getCount());
+      OffsetPageable op = plan.getPageable();
 
-      Page<IamAccount> results = accountRepository.findAll(op);
+      List<IamAccount> accounts =
+          accountRepository.listAccountsMatching(plan.getSpecification(), op);
+
+      long totalResults = countStrategy.pageTotal(countKey(query), op, accounts.size(),
+          () -> accountRepository.count(plan.getSpecification()));
 
       List<ScimUser> resources = new ArrayList<>();
 
-      results.getContent().forEach(a -> resources.add(userConverter.dtoFromEntity(a)));
+      accounts.forEach(a -> resources.add(userConverter.dtoFromEntity(a)));
 
       builder.resources(resources);
-      builder.fromPage(results, op);
+      builder.fromPage(new PageImpl<>(accounts, op, totalResults), op);
     }
 
     return builder.build();
   }
 
+  /**
+   * Lists users with keyset pagination: the page starts after the user identified by the given
+   * cursor, and the response includes the cursor for the next page, unless this is the last
+   * page.
+   */
+  public ScimListResponse<ScimUser> listByCursor(final String cursor, final int count) {
+
+    ScimListResponseBuilder<ScimUser> builder = ScimListResponse.builder();
+    builder.totalResults(countStrategy.count(ACCOUNTS_KEY, accountRepository::count));
+
+    if (count == 0) {
+      return builder.build();
+    }
+
+    List<IamAccount> accounts =
+        accountRepository.findAccountsAfterId(ScimCursor.decode(cursor), new PageRequest(0, count));
+
+    List<ScimUser> resources = new ArrayList<>(accounts.size());
+    accounts.forEach(a -> resources.add(userConverter.dtoFromEntity(a)));
+
+    builder.resources(resources);
+    builder.itemsPerPage(resources.size());
+
+    if (accounts.size() == count) {
+      builder.nextCursor(ScimCursor.encode(accounts.get(accounts.size() - 1).getId()));
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Passes all users, ordered by account id, to the given consumer. Accounts are loaded in
+   * keyset paginated chunks and detached from the persistence context after each chunk, so that
+   * memory usage does not grow with the number of exported users.
+   */
+  public void exportUsers(final int chunkSize, final Consumer<ScimUser> consumer) {
+
+    long lastId = 0L;
+    List<IamAccount> accounts;
+
+    do {
+      accounts = accountRepository.findAccountsAfterId(lastId, new PageRequest(0, chunkSize));
+
+      for (IamAccount a : accounts) {
+        consumer.accept(userConverter.dtoFromEntity(a));
+        lastId = a.getId();
+      }
+
+      entityManager.clear();
+
+    } while (accounts.size() == chunkSize);
+  }
+
   @Override
   public ScimUser replace(final String uuid, final ScimUser scimItemToBeUpdated) {
 
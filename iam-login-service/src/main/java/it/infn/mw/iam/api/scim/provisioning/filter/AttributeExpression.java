@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+/**
+ * An attribute comparison, like <code>userName eq "test"</code>, or presence test, like
+ * <code>title pr</code>. The value is a {@link String}, a {@link Boolean}, a {@link Number} or
+ * <code>null</code>.
+ */
+public class AttributeExpression implements ScimFilterExpression {
+
+  private final String attributePath;
+  private final ScimFilterOperator operator;
+  private final Object value;
+
+  public AttributeExpression(String attributePath, ScimFilterOperator operator, Object value) {
+    this.attributePath = attributePath;
+    this.operator = operator;
+    this.value = value;
+  }
+
+  public String getAttributePath() {
+    return attributePath;
+  }
+
+  public ScimFilterOperator getOperator() {
+    return operator;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  @Override
+  public <T> T accept(ScimFilterVisitor<T> visitor) {
+    return visitor.visitAttribute(this);
+  }
+
+  @Override
+  public String toString() {
+    if (ScimFilterOperator.PR.equals(operator)) {
+      return String.format("%s %s", attributePath, operator);
+    }
+    String v = value instanceof String ? "\"" + value + "\"" : String.valueOf(value);
+    return String.format("%s %s %s", attributePath, operator, v);
+  }
+}
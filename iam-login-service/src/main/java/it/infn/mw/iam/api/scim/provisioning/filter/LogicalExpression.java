@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+public class LogicalExpression implements ScimFilterExpression {
+
+  public enum Type {
+    AND, OR
+  }
+
+  private final Type type;
+  private final ScimFilterExpression left;
+  private final ScimFilterExpression right;
+
+  public LogicalExpression(Type type, ScimFilterExpression left, ScimFilterExpression right) {
+    this.type = type;
+    this.left = left;
+    this.right = right;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public ScimFilterExpression getLeft() {
+    return left;
+  }
+
+  public ScimFilterExpression getRight() {
+    return right;
+  }
+
+  @Override
+  public <T> T accept(ScimFilterVisitor<T> visitor) {
+    return visitor.visitLogical(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("(%s %s %s)", left, type.name().toLowerCase(), right);
+  }
+}
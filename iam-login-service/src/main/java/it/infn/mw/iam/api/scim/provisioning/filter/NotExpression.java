@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+public class NotExpression implements ScimFilterExpression {
+
+  private final ScimFilterExpression expression;
+
+  public NotExpression(ScimFilterExpression expression) {
+    this.expression = expression;
+  }
+
+  public ScimFilterExpression getExpression() {
+    return expression;
+  }
+
+  @Override
+  public <T> T accept(ScimFilterVisitor<T> visitor) {
+    return visitor.visitNot(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("not (%s)", expression);
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Path;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Maps a SCIM attribute to an entity property.
+ *
+ * Attributes of multi-valued SCIM attributes (e.g. <code>groups.value</code>) name the entity
+ * collection that must be joined to reach the property; the property path is then relative to
+ * the collection elements. An attribute is <em>indexed</em> when the database has an index that
+ * can serve equality, prefix and range comparisons on the mapped column. String comparisons on
+ * attributes that are not <em>case exact</em> (e.g. <code>userName</code>) ignore case.
+ */
+public class ScimFilterAttribute {
+
+  public enum Type {
+    STRING, BOOLEAN, DATE
+  }
+
+  private final String name;
+  private final Type type;
+  private final String collection;
+  private final String property;
+  private final boolean indexed;
+  private final boolean caseExact;
+
+  public ScimFilterAttribute(String name, Type type, String collection, String property,
+      boolean indexed, boolean caseExact) {
+    this.name = name;
+    this.type = type;
+    this.collection = collection;
+    this.property = property;
+    this.indexed = indexed;
+    this.caseExact = caseExact;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getCollection() {
+    return collection;
+  }
+
+  public String getProperty() {
+    return property;
+  }
+
+  public boolean isIndexed() {
+    return indexed;
+  }
+
+  public boolean isCaseExact() {
+    return caseExact;
+  }
+
+  public boolean isMultiValued() {
+    return collection != null;
+  }
+
+  public Path<?> path(From<?, ?> from) {
+    Path<?> path = from;
+    for (String p : Splitter.on('.').split(property)) {
+      path = path.get(p);
+    }
+    return path;
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import java.util.Locale;
+
+import it.infn.mw.iam.api.scim.exception.ScimInvalidFilterException;
+
+/**
+ * The attribute operators defined in RFC 7644, section 3.4.2.2.
+ */
+public enum ScimFilterOperator {
+
+  EQ, NE, CO, SW, EW, PR, GT, GE, LT, LE;
+
+  public static boolean isOperator(String token) {
+    try {
+      valueOf(token.toUpperCase(Locale.ROOT));
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  public static ScimFilterOperator fromString(String token) {
+    try {
+      return valueOf(token.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ScimInvalidFilterException("Unknown filter operator: " + token);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
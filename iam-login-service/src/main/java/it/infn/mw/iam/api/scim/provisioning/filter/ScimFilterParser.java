@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.api.scim.exception.ScimInvalidFilterException;
+import it.infn.mw.iam.api.scim.provisioning.filter.LogicalExpression.Type;
+
+/**
+ * A recursive descent parser for the SCIM filter syntax defined in RFC 7644, section 3.4.2.2.
+ *
+ * Logical operators have the precedence defined by the RFC (<code>not</code> binds tighter than
+ * <code>and</code>, which binds tighter than <code>or</code>), keywords and operators are case
+ * insensitive and value paths cannot be nested. The number of attribute expressions in a filter
+ * is limited, to bound the cost of the resulting query.
+ */
+public class ScimFilterParser {
+
+  public static final int MAX_FILTER_LENGTH = 1024;
+  public static final int MAX_ATTRIBUTE_EXPRESSIONS = 32;
+
+  private enum TokenType {
+    WORD, STRING, LPAREN, RPAREN, LBRACKET, RBRACKET, END
+  }
+
+  private static class Token {
+    final TokenType type;
+    final String text;
+    final int position;
+
+    Token(TokenType type, String text, int position) {
+      this.type = type;
+      this.text = text;
+      this.position = position;
+    }
+
+    boolean isKeyword(String keyword) {
+      return TokenType.WORD.equals(type) && keyword.equalsIgnoreCase(text);
+    }
+  }
+
+  private final String filter;
+  private final List<Token> tokens;
+  private int current = 0;
+  private int attributeExpressions = 0;
+  private boolean inValuePath = false;
+
+  private ScimFilterParser(String filter) {
+    this.filter = filter;
+    this.tokens = tokenize(filter);
+  }
+
+  public static ScimFilterExpression parse(String filter) {
+    if (Strings.isNullOrEmpty(filter) || filter.trim().isEmpty()) {
+      throw new ScimInvalidFilterException("Empty filter");
+    }
+
+    if (filter.length() > MAX_FILTER_LENGTH) {
+      throw new ScimInvalidFilterException(
+          String.format("Filter too long: max %d characters allowed", MAX_FILTER_LENGTH));
+    }
+
+    ScimFilterParser parser = new ScimFilterParser(filter);
+    ScimFilterExpression expression = parser.parseOr();
+    parser.expect(TokenType.END);
+    return expression;
+  }
+
+  private ScimInvalidFilterException error(Token token, String message) {
+    return new ScimInvalidFilterException(String.format("Invalid filter '%s': %s at position %d",
+        filter, message, token.position + 1));
+  }
+
+  private Token peek() {
+    return tokens.get(current);
+  }
+
+  private Token next() {
+    Token t = tokens.get(current);
+    if (!TokenType.END.equals(t.type)) {
+      current++;
+    }
+    return t;
+  }
+
+  private Token expect(TokenType type) {
+    Token t = next();
+    if (!type.equals(t.type)) {
+      String found = TokenType.END.equals(t.type) ? "end of filter" : "'" + t.text + "'";
+      throw error(t, String.format("unexpected %s", found));
+    }
+    return t;
+  }
+
+  private ScimFilterExpression parseOr() {
+    ScimFilterExpression left = parseAnd();
+
+    while (peek().isKeyword("or")) {
+      next();
+      left = new LogicalExpression(Type.OR, left, parseAnd());
+    }
+
+    return left;
+  }
+
+  private ScimFilterExpression parseAnd() {
+    ScimFilterExpression left = parseUnary();
+
+    while (peek().isKeyword("and")) {
+      next();
+      left = new LogicalExpression(Type.AND, left, parseUnary());
+    }
+
+    return left;
+  }
+
+  private ScimFilterExpression parseUnary() {
+    Token t = peek();
+
+    if (t.isKeyword("not")) {
+      next();
+      expect(TokenType.LPAREN);
+      ScimFilterExpression e = parseOr();
+      expect(TokenType.RPAREN);
+      return new NotExpression(e);
+    }
+
+    if (TokenType.LPAREN.equals(t.type)) {
+      next();
+      ScimFilterExpression e = parseOr();
+      expect(TokenType.RPAREN);
+      return e;
+    }
+
+    return parseAttributeOrValuePath();
+  }
+
+  private ScimFilterExpression parseAttributeOrValuePath() {
+    Token attribute = expect(TokenType.WORD);
+
+    if (TokenType.LBRACKET.equals(peek().type)) {
+      if (inValuePath) {
+        throw error(peek(), "nested value paths are not supported");
+      }
+      next();
+      inValuePath = true;
+      ScimFilterExpression e = parseOr();
+      inValuePath = false;
+      expect(TokenType.RBRACKET);
+      return new ValuePathExpression(attribute.text, e);
+    }
+
+    if (++attributeExpressions > MAX_ATTRIBUTE_EXPRESSIONS) {
+      throw error(attribute, String.format("too many conditions (max %d allowed)",
+          MAX_ATTRIBUTE_EXPRESSIONS));
+    }
+
+    Token op = expect(TokenType.WORD);
+
+    if (!ScimFilterOperator.isOperator(op.text)) {
+      throw error(op, String.format("unknown operator '%s'", op.text));
+    }
+
+    ScimFilterOperator operator = ScimFilterOperator.fromString(op.text);
+
+    if (ScimFilterOperator.PR.equals(operator)) {
+      return new AttributeExpression(attribute.text, operator, null);
+    }
+
+    return new AttributeExpression(attribute.text, operator, parseValue());
+  }
+
+  private Object parseValue() {
+    Token t = next();
+
+    if (TokenType.STRING.equals(t.type)) {
+      return t.text;
+    }
+
+    if (!TokenType.WORD.equals(t.type)) {
+      throw error(t, "a comparison value was expected");
+    }
+
+    String v = t.text.toLowerCase(Locale.ROOT);
+
+    if ("true".equals(v) || "false".equals(v)) {
+      return Boolean.valueOf(v);
+    }
+
+    if ("null".equals(v)) {
+      return null;
+    }
+
+    try {
+      return new BigDecimal(t.text);
+    } catch (NumberFormatException e) {
+      throw error(t, String.format("invalid comparison value '%s'", t.text));
+    }
+  }
+
+  private List<Token> tokenize(String input) {
+    List<Token> result = Lists.newArrayList();
+    int i = 0;
+
+    while (i < input.length()) {
+      char c = input.charAt(i);
+
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '(') {
+        result.add(new Token(TokenType.LPAREN, "(", i++));
+      } else if (c == ')') {
+        result.add(new Token(TokenType.RPAREN, ")", i++));
+      } else if (c == '[') {
+        result.add(new Token(TokenType.LBRACKET, "[", i++));
+      } else if (c == ']') {
+        result.add(new Token(TokenType.RBRACKET, "]", i++));
+      } else if (c == '"') {
+        i = readString(input, i, result);
+      } else {
+        int start = i;
+        while (i < input.length() && !isDelimiter(input.charAt(i))) {
+          i++;
+        }
+        result.add(new Token(TokenType.WORD, input.substring(start, i), start));
+      }
+    }
+
+    result.add(new Token(TokenType.END, "", input.length()));
+    return result;
+  }
+
+  private static boolean isDelimiter(char c) {
+    return Character.isWhitespace(c) || c == '(' || c == ')' || c == '[' || c == ']' || c == '"';
+  }
+
+  private int readString(String input, int start, List<Token> result) {
+    StringBuilder value = new StringBuilder();
+    int i = start + 1;
+
+    while (i < input.length()) {
+      char c = input.charAt(i++);
+
+      if (c == '"') {
+        result.add(new Token(TokenType.STRING, value.toString(), start));
+        return i;
+      }
+
+      if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+
+      if (i == input.length()) {
+        break;
+      }
+
+      char escaped = input.charAt(i++);
+
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          value.append(escaped);
+          break;
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'n':
+          value.append('\n');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'u':
+          if (i + 4 > input.length()) {
+            throw new ScimInvalidFilterException(
+                String.format("Invalid filter '%s': invalid unicode escape", filter));
+          }
+          try {
+            value.append((char) Integer.parseInt(input.substring(i, i + 4), 16));
+          } catch (NumberFormatException e) {
+            throw new ScimInvalidFilterException(
+                String.format("Invalid filter '%s': invalid unicode escape", filter));
+          }
+          i += 4;
+          break;
+        default:
+          throw new ScimInvalidFilterException(
+              String.format("Invalid filter '%s': invalid escape sequence '\\%c'", filter,
+                  escaped));
+      }
+    }
+
+    throw new ScimInvalidFilterException(
+        String.format("Invalid filter '%s': unterminated string at position %d", filter,
+            start + 1));
+  }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import static it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterAttribute.Type.BOOLEAN;
+import static it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterAttribute.Type.DATE;
+import static it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterAttribute.Type.STRING;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import it.infn.mw.iam.api.scim.exception.ScimInvalidFilterException;
+import it.infn.mw.iam.api.scim.model.ScimConstants;
+import it.infn.mw.iam.api.scim.model.ScimGroup;
+import it.infn.mw.iam.api.scim.model.ScimUser;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterAttribute.Type;
+
+/**
+ * The SCIM attributes that can be used in filters and as sort keys for a resource type, and the
+ * entity properties they map to.
+ *
+ * Attribute names are case insensitive and may be qualified with the URN of one of the schemas
+ * of the resource type. An attribute of a multi-valued complex attribute can be referenced
+ * without its sub-attribute, in which case the <code>value</code> sub-attribute is implied.
+ */
+public class ScimFilterSchema {
+
+  /**
+   * The maximum page size for filters that cannot be served by an index.
+   */
+  public static final int UNINDEXED_FILTER_MAX_PAGE_SIZE = 10;
+
+  private static final Set<ScimFilterOperator> INDEXABLE_OPERATORS =
+      EnumSet.of(ScimFilterOperator.EQ, ScimFilterOperator.SW, ScimFilterOperator.GT,
+          ScimFilterOperator.GE, ScimFilterOperator.LT, ScimFilterOperator.LE);
+
+  public static final ScimFilterSchema USERS = builder().schema(ScimUser.USER_SCHEMA)
+    .schema(ScimConstants.INDIGO_USER_SCHEMA)
+    .indexed("id", STRING, "uuid")
+    .indexed("userName", STRING, "username")
+    .attribute("active", BOOLEAN, "active")
+    .indexed("meta.created", DATE, "creationTime")
+    .indexed("meta.lastModified", DATE, "lastUpdateTime")
+    .indexed("name.givenName", STRING, "userInfo.givenName")
+    .attribute("name.familyName", STRING, "userInfo.familyName")
+    .indexed("emails.value", STRING, "userInfo.email")
+    .indexed("groups.value", STRING, "groups", "uuid")
+    .indexed("groups.display", STRING, "groups", "name")
+    .indexed("sshKeys.fingerprint", STRING, "sshKeys", "fingerprint")
+    .indexed("sshKeys.display", STRING, "sshKeys", "label")
+    .indexed("x509Certificates.subjectDn", STRING, "x509Certificates", "subjectDn")
+    .attribute("x509Certificates.issuerDn", STRING, "x509Certificates", "issuerDn")
+    .attribute("oidcIds.issuer", STRING, "oidcIds", "issuer")
+    .attribute("oidcIds.subject", STRING, "oidcIds", "subject")
+    .indexed("samlIds.idpId", STRING, "samlIds", "idpId")
+    .attribute("samlIds.userId", STRING, "samlIds", "userId")
+    .attribute("samlIds.attributeId", STRING, "samlIds", "attributeId")
+    .indexed("labels.prefix", STRING, "labels", "prefix")
+    .attribute("labels.name", STRING, "labels", "name")
+    .attribute("labels.value", STRING, "labels", "value")
+    .indexed("endTime", DATE, "endTime")
+    .caseInsensitive("userName", "emails.value")
+    .build();
+
+  public static final ScimFilterSchema GROUPS = builder().schema(ScimGroup.GROUP_SCHEMA)
+    .schema(ScimConstants.INDIGO_GROUP_SCHEMA)
+    .indexed("id", STRING, "uuid")
+    .indexed("displayName", STRING, "name")
+    .attribute("meta.created", DATE, "creationTime")
+    .attribute("meta.lastModified", DATE, "lastUpdateTime")
+    .indexed("members.value", STRING, "accounts", "uuid")
+    .indexed("members.display", STRING, "accounts", "username")
+    .indexed("labels.prefix", STRING, "labels", "prefix")
+    .attribute("labels.name", STRING, "labels", "name")
+    .attribute("labels.value", STRING, "labels", "value")
+    .build();
+
+  private final List<String> schemas;
+  private final Map<String, ScimFilterAttribute> attributes;
+  private final Map<String, String> collections;
+
+  private ScimFilterSchema(Builder builder) {
+    this.schemas = builder.schemas;
+    this.attributes = ImmutableMap.copyOf(builder.attributes);
+    // Single-valued complex attributes map to a null collection
+    this.collections = Collections.unmodifiableMap(builder.collections);
+  }
+
+  private static String key(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  private String unqualifiedName(String attributePath) {
+    String path = key(attributePath);
+
+    for (String schema : schemas) {
+      if (path.startsWith(schema + ":")) {
+        return path.substring(schema.length() + 1);
+      }
+    }
+
+    return path;
+  }
+
+  /**
+   * Resolves an attribute path, optionally relative to the attribute of a value path.
+   *
+   * @throws ScimInvalidFilterException if the attribute is not supported in filters
+   */
+  public ScimFilterAttribute resolve(String parentPath, String attributePath) {
+    String name = unqualifiedName(attributePath);
+
+    if (parentPath != null) {
+      name = unqualifiedName(parentPath) + "." + name;
+    }
+
+    ScimFilterAttribute attribute = attributes.get(name);
+
+    if (attribute == null) {
+      attribute = attributes.get(name + ".value");
+    }
+
+    if (attribute == null) {
+      throw new ScimInvalidFilterException(
+          String.format("Unsupported filter attribute: '%s'", attributePath));
+    }
+
+    return attribute;
+  }
+
+  public ScimFilterAttribute resolve(String attributePath) {
+    return resolve(null, attributePath);
+  }
+
+  /**
+   * Returns the entity collection joined by the sub-attributes of a multi-valued attribute, or
+   * <code>null</code> for single-valued complex attributes.
+   *
+   * @throws ScimInvalidFilterException if the attribute is not supported in filters
+   */
+  public String collectionFor(String attributePath) {
+    String name = unqualifiedName(attributePath);
+
+    if (!collections.containsKey(name)) {
+      throw new ScimInvalidFilterException(
+          String.format("Unsupported filter attribute: '%s'", attributePath));
+    }
+
+    return collections.get(name);
+  }
+
+  /**
+   * Tells whether the database can use an index to find the resources matching the filter. A
+   * conjunction is indexed if any of its terms is, a disjunction if all its terms are; negations
+   * and substring matches are never indexed.
+   */
+  public boolean isIndexed(ScimFilterExpression filter) {
+    return filter.accept(new IndexedFilterVisitor(null));
+  }
+
+  private class IndexedFilterVisitor implements ScimFilterVisitor<Boolean> {
+
+    private final String parentPath;
+
+    IndexedFilterVisitor(String parentPath) {
+      this.parentPath = parentPath;
+    }
+
+    @Override
+    public Boolean visitAttribute(AttributeExpression expression) {
+      ScimFilterAttribute attribute = resolve(parentPath, expression.getAttributePath());
+      return attribute.isIndexed() && expression.getValue() != null
+          && INDEXABLE_OPERATORS.contains(expression.getOperator());
+    }
+
+    @Override
+    public Boolean visitLogical(LogicalExpression expression) {
+      boolean left = expression.getLeft().accept(this);
+      boolean right = expression.getRight().accept(this);
+
+      if (LogicalExpression.Type.AND.equals(expression.getType())) {
+        return left || right;
+      }
+
+      return left && right;
+    }
+
+    @Override
+    public Boolean visitNot(NotExpression expression) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitValuePath(ValuePathExpression expression) {
+      return expression.getFilter()
+        .accept(new IndexedFilterVisitor(expression.getAttributePath()));
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private final List<String> schemas = Lists.newArrayList();
+    private final Map<String, ScimFilterAttribute> attributes = Maps.newHashMap();
+    private final Map<String, String> collections = Maps.newHashMap();
+
+    public Builder schema(String schema) {
+      schemas.add(key(schema));
+      return this;
+    }
+
+    private Builder add(String name, Type type, String collection, String property,
+        boolean indexed) {
+
+      attributes.put(key(name),
+          new ScimFilterAttribute(name, type, collection, property, indexed, true));
+
+      int dot = name.indexOf('.');
+
+      if (dot > 0) {
+        collections.put(key(name.substring(0, dot)), collection);
+      }
+
+      return this;
+    }
+
+    public Builder attribute(String name, Type type, String property) {
+      return add(name, type, null, property, false);
+    }
+
+    public Builder attribute(String name, Type type, String collection, String property) {
+      return add(name, type, collection, property, false);
+    }
+
+    public Builder indexed(String name, Type type, String property) {
+      return add(name, type, null, property, true);
+    }
+
+    public Builder indexed(String name, Type type, String collection, String property) {
+      return add(name, type, collection, property, true);
+    }
+
+    /**
+     * Makes string comparisons on the given attributes, which must have already been added,
+     * ignore case.
+     */
+    public Builder caseInsensitive(String... names) {
+      for (String name : names) {
+        ScimFilterAttribute a = attributes.get(key(name));
+        attributes.put(key(name), new ScimFilterAttribute(a.getName(), a.getType(),
+            a.getCollection(), a.getProperty(), a.isIndexed(), false));
+      }
+      return this;
+    }
+
+    public ScimFilterSchema build() {
+      return new ScimFilterSchema(this);
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import static java.lang.String.format;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Function;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import it.infn.mw.iam.api.scim.exception.ScimInvalidFilterException;
+
+/**
+ * Compiles a SCIM filter into a JPA criteria predicate, so that filtering happens in the
+ * database.
+ *
+ * Conditions on multi-valued attributes are translated into <code>id in (subquery)</code>
+ * predicates, which avoid duplicate rows in the results; all the conditions of a value path
+ * share the same subquery, so that they are evaluated against the same value. Substring
+ * comparisons are translated into <code>like</code> predicates. Equality and substring
+ * comparisons on attributes that are not case exact compare the lowercased column with the
+ * lowercased value.
+ */
+public class ScimFilterSpecification<E> implements Specification<E> {
+
+  private static final char LIKE_ESCAPE_CHAR = '!';
+
+  private final ScimFilterSchema schema;
+  private final ScimFilterExpression filter;
+
+  public ScimFilterSpecification(ScimFilterSchema schema, ScimFilterExpression filter) {
+    this.schema = schema;
+    this.filter = filter;
+  }
+
+  @Override
+  public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+    return filter.accept(new PredicateBuilder(root, query, cb, null, null));
+  }
+
+  static String escapeLikePattern(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (char c : value.toCharArray()) {
+      if (c == LIKE_ESCAPE_CHAR || c == '%' || c == '_') {
+        sb.append(LIKE_ESCAPE_CHAR);
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  static Date parseDate(ScimFilterAttribute attribute, Object value) {
+    if (!(value instanceof String)) {
+      throw new ScimInvalidFilterException(
+          format("Invalid value for attribute '%s': a date string was expected",
+              attribute.getName()));
+    }
+
+    try {
+      return Date.from(OffsetDateTime.parse((String) value).toInstant());
+    } catch (DateTimeParseException e) {
+      throw new ScimInvalidFilterException(
+          format("Invalid date for attribute '%s': '%s'", attribute.getName(), value));
+    }
+  }
+
+  private class PredicateBuilder implements ScimFilterVisitor<Predicate> {
+
+    private final Root<?> root;
+    private final CriteriaQuery<?> query;
+    private final CriteriaBuilder cb;
+    private final String parentPath;
+    private final From<?, ?> valuePathJoin;
+
+    PredicateBuilder(Root<?> root, CriteriaQuery<?> query, CriteriaBuilder cb, String parentPath,
+        From<?, ?> valuePathJoin) {
+      this.root = root;
+      this.query = query;
+      this.cb = cb;
+      this.parentPath = parentPath;
+      this.valuePathJoin = valuePathJoin;
+    }
+
+    private Predicate inSubquery(String collection, Function<Join<?, ?>, Predicate> restriction) {
+      Subquery<Long> subquery = query.subquery(Long.class);
+      Root<?> subqueryRoot = subquery.from(root.getJavaType());
+      Join<?, ?> join = subqueryRoot.join(collection);
+      subquery.select(subqueryRoot.<Long>get("id")).where(restriction.apply(join));
+      return root.get("id").in(subquery);
+    }
+
+    @Override
+    public Predicate visitAttribute(AttributeExpression expression) {
+      ScimFilterAttribute attribute = schema.resolve(parentPath, expression.getAttributePath());
+
+      if (valuePathJoin != null) {
+        return compare(attribute, attribute.path(valuePathJoin), expression);
+      }
+
+      if (!attribute.isMultiValued()) {
+        return compare(attribute, attribute.path(root), expression);
+      }
+
+      return inSubquery(attribute.getCollection(),
+          join -> compare(attribute, attribute.path(join), expression));
+    }
+
+    @Override
+    public Predicate visitLogical(LogicalExpression expression) {
+      Predicate left = expression.getLeft().accept(this);
+      Predicate right = expression.getRight().accept(this);
+
+      if (LogicalExpression.Type.AND.equals(expression.getType())) {
+        return cb.and(left, right);
+      }
+
+      return cb.or(left, right);
+    }
+
+    @Override
+    public Predicate visitNot(NotExpression expression) {
+      return cb.not(expression.getExpression().accept(this));
+    }
+
+    @Override
+    public Predicate visitValuePath(ValuePathExpression expression) {
+      final String path = expression.getAttributePath();
+      final String collection = schema.collectionFor(path);
+
+      if (collection == null) {
+        return expression.getFilter().accept(new PredicateBuilder(root, query, cb, path, null));
+      }
+
+      return inSubquery(collection, join -> expression.getFilter()
+        .accept(new PredicateBuilder(root, query, cb, path, join)));
+    }
+
+    private ScimInvalidFilterException unsupportedOperator(ScimFilterAttribute attribute,
+        ScimFilterOperator operator) {
+      return new ScimInvalidFilterException(
+          format("Operator '%s' is not supported for attribute '%s'", operator,
+              attribute.getName()));
+    }
+
+    private Predicate compare(ScimFilterAttribute attribute, Path<?> path,
+        AttributeExpression expression) {
+
+      final ScimFilterOperator operator = expression.getOperator();
+      final Object value = expression.getValue();
+
+      if (ScimFilterOperator.PR.equals(operator)) {
+        return present(attribute, path);
+      }
+
+      if (value == null) {
+        if (ScimFilterOperator.EQ.equals(operator)) {
+          return cb.isNull(path);
+        } else if (ScimFilterOperator.NE.equals(operator)) {
+          return cb.isNotNull(path);
+        }
+        throw unsupportedOperator(attribute, operator);
+      }
+
+      switch (attribute.getType()) {
+        case BOOLEAN:
+          return compareBoolean(attribute, path, operator, value);
+        case DATE:
+          return compareDate(attribute, path, operator, parseDate(attribute, value));
+        default:
+          return compareString(attribute, path, operator, value);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate present(ScimFilterAttribute attribute, Path<?> path) {
+      if (ScimFilterAttribute.Type.STRING.equals(attribute.getType())) {
+        return cb.and(cb.isNotNull(path), cb.notEqual((Expression<String>) path, ""));
+      }
+      return cb.isNotNull(path);
+    }
+
+    private Predicate compareBoolean(ScimFilterAttribute attribute, Path<?> path,
+        ScimFilterOperator operator, Object value) {
+
+      if (!(value instanceof Boolean)) {
+        throw new ScimInvalidFilterException(
+            format("Invalid value for attribute '%s': a boolean was expected",
+                attribute.getName()));
+      }
+
+      switch (operator) {
+        case EQ:
+          return cb.equal(path, value);
+        case NE:
+          return cb.notEqual(path, value);
+        default:
+          throw unsupportedOperator(attribute, operator);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate compareDate(ScimFilterAttribute attribute, Path<?> path,
+        ScimFilterOperator operator, Date value) {
+
+      Expression<Date> x = (Expression<Date>) path;
+
+      switch (operator) {
+        case EQ:
+          return cb.equal(x, value);
+        case NE:
+          return cb.notEqual(x, value);
+        case GT:
+          return cb.greaterThan(x, value);
+        case GE:
+          return cb.greaterThanOrEqualTo(x, value);
+        case LT:
+          return cb.lessThan(x, value);
+        case LE:
+          return cb.lessThanOrEqualTo(x, value);
+        default:
+          throw unsupportedOperator(attribute, operator);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate compareString(ScimFilterAttribute attribute, Path<?> path,
+        ScimFilterOperator operator, Object value) {
+
+      if (!(value instanceof String)) {
+        throw new ScimInvalidFilterException(
+            format("Invalid value for attribute '%s': a string was expected",
+                attribute.getName()));
+      }
+
+      Expression<String> x = (Expression<String>) path;
+      String v = (String) value;
+
+      Expression<String> lx = x;
+      String lv = v;
+
+      if (!attribute.isCaseExact()) {
+        lx = cb.lower(x);
+        lv = v.toLowerCase(Locale.ROOT);
+      }
+
+      switch (operator) {
+        case EQ:
+          return cb.equal(lx, lv);
+        case NE:
+          return cb.notEqual(lx, lv);
+        case CO:
+          return cb.like(lx, "%" + escapeLikePattern(lv) + "%", LIKE_ESCAPE_CHAR);
+        case SW:
+          return cb.like(lx, escapeLikePattern(lv) + "%", LIKE_ESCAPE_CHAR);
+        case EW:
+          return cb.like(lx, "%" + escapeLikePattern(lv), LIKE_ESCAPE_CHAR);
+        case GT:
+          return cb.greaterThan(x, v);
+        case GE:
+          return cb.greaterThanOrEqualTo(x, v);
+        case LT:
+          return cb.lessThan(x, v);
+        case LE:
+          return cb.lessThanOrEqualTo(x, v);
+        default:
+          throw unsupportedOperator(attribute, operator);
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+import static java.lang.Math.min;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.jpa.domain.Specification;
+
+import com.google.common.base.Strings;
+
+import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.scim.exception.ScimValidationException;
+import it.infn.mw.iam.api.scim.provisioning.ScimQuery;
+import it.infn.mw.iam.api.scim.provisioning.ScimQuery.SortOrder;
+
+/**
+ * The database query that implements a {@link ScimQuery}: the specification compiled from the
+ * filter, if any, and the page and sort order requested.
+ *
+ * Filters that cannot be served by an index have their page size capped to
+ * {@link ScimFilterSchema#UNINDEXED_FILTER_MAX_PAGE_SIZE}.
+ */
+public class ScimQueryPlan<E> {
+
+  private final Specification<E> specification;
+  private final int count;
+  private final int startIndex;
+  private final Sort sort;
+
+  private ScimQueryPlan(Specification<E> specification, int count, int startIndex, Sort sort) {
+    this.specification = specification;
+    this.count = count;
+    this.startIndex = startIndex;
+    this.sort = sort;
+  }
+
+  public static <E> ScimQueryPlan<E> build(ScimFilterSchema schema, ScimQuery query) {
+
+    Specification<E> specification = null;
+    int count = query.getCount();
+
+    if (!Strings.isNullOrEmpty(query.getFilter())) {
+      ScimFilterExpression filter = ScimFilterParser.parse(query.getFilter());
+      specification = new ScimFilterSpecification<>(schema, filter);
+
+      if (!schema.isIndexed(filter)) {
+        count = min(count, ScimFilterSchema.UNINDEXED_FILTER_MAX_PAGE_SIZE);
+      }
+    }
+
+    return new ScimQueryPlan<>(specification, count, query.getStartIndex(),
+        sort(schema, query));
+  }
+
+  private static Sort sort(ScimFilterSchema schema, ScimQuery query) {
+
+    if (Strings.isNullOrEmpty(query.getSortBy())) {
+      return null;
+    }
+
+    ScimFilterAttribute attribute = schema.resolve(query.getSortBy());
+
+    if (attribute.isMultiValued()) {
+      throw new ScimValidationException(
+          String.format("Unsupported sortBy attribute: '%s'", query.getSortBy()));
+    }
+
+    Direction direction =
+        SortOrder.descending.equals(query.getSortOder()) ? Direction.DESC : Direction.ASC;
+
+    return new Sort(direction, attribute.getProperty());
+  }
+
+  public Specification<E> getSpecification() {
+    return specification;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public OffsetPageable getPageable() {
+    return new OffsetPageable(startIndex, count, sort);
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.filter;
+
+/**
+ * A filter on the values of a multi-valued complex attribute, like
+ * <code>emails[type eq "work" and value co "@example.org"]</code>. All the conditions in the
+ * filter must be satisfied by the same value.
+ */
+public class ValuePathExpression implements ScimFilterExpression {
+
+  private final String attributePath;
+  private final ScimFilterExpression filter;
+
+  public ValuePathExpression(String attributePath, ScimFilterExpression filter) {
+    this.attributePath = attributePath;
+    this.filter = filter;
+  }
+
+  public String getAttributePath() {
+    return attributePath;
+  }
+
+  public ScimFilterExpression getFilter() {
+    return filter;
+  }
+
+  @Override
+  public <T> T accept(ScimFilterVisitor<T> visitor) {
+    return visitor.visitValuePath(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[%s]", attributePath, filter);
+  }
+}
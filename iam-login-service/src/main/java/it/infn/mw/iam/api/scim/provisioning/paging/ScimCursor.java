@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.scim.provisioning.paging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Base64;
+
+import com.google.common.base.Strings;
+
+import it.infn.mw.iam.api.scim.exception.ScimValidationException;
+
+/**
+ * An opaque continuation token for keyset paginated SCIM list requests. The token encodes the id
+ * of the last resource returned, so that the next page starts right after it.
+ */
+public class ScimCursor {
+
+  private static final String PREFIX = "id:";
+
+  private ScimCursor() {
+    // prevent instantiation
+  }
+
+  public static String encode(long lastId) {
+    return Base64.getUrlEncoder()
+      .withoutPadding()
+      .encodeToString((PREFIX + lastId).getBytes(UTF_8));
+  }
+
+  /**
+   * Decodes a continuation token. An empty token denotes the start of the list.
+   *
+   * @return the id of the last resource returned before this cursor
+   * @throws ScimValidationException if the token is invalid
+   */
+  public static long decode(String cursor) {
+    if (Strings.isNullOrEmpty(cursor)) {
+      return 0L;
+    }
+
+    try {
+      String value = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+
+      if (!value.startsWith(PREFIX)) {
+        throw new ScimValidationException("Invalid cursor: " + cursor);
+      }
+
+      return Long.parseLong(value.substring(PREFIX.length()));
+
+    } catch (IllegalArgumentException e) {
+      throw new ScimValidationException("Invalid cursor: " + cursor, e);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import it.infn.mw.iam.api.common.ErrorDTO;
 import it.infn.mw.iam.api.common.ListResponseDTO;
+import it.infn.mw.iam.api.tokens.exception.InvalidTokensCursorException;
 import it.infn.mw.iam.api.tokens.exception.TokenNotFoundException;
 import it.infn.mw.iam.api.tokens.model.RefreshToken;
 import it.infn.mw.iam.api.tokens.service.TokenService;
@@ -54,7 +55,13 @@ public class RefreshTokensController extends TokensControllerSupport {
       @RequestParam(required = false) Integer startIndex,
       @RequestParam(required = false) String userId,
       @RequestParam(required = false) String clientId,
-      @RequestParam(required = false) final String attributes) {
+      @RequestParam(required = false) final String attributes,
+      @RequestParam(required = false) final String cursor) {
+
+    if (cursor != null) {
+      return filterAttributes(tokenService.getTokensAfterCursor(cursor, userId, clientId,
+          buildTokensCursorPageCount(count)), attributes);
+    }
 
     TokensPageRequest pr = buildTokensPageRequest(count, startIndex);
     ListResponseDTO<RefreshToken> results = getFilteredList(pr, userId, clientId);
@@ -106,6 +113,13 @@ public class RefreshTokensController extends TokensControllerSupport {
     return ErrorDTO.fromString(ex.getMessage());
   }
 
+  @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+  @ExceptionHandler(InvalidTokensCursorException.class)
+  public ErrorDTO invalidCursorError(Exception ex) {
+
+    return ErrorDTO.fromString(ex.getMessage());
+  }
+
   @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
   @ExceptionHandler(IamAccountException.class)
   public ErrorDTO accountNotFoundError(Exception ex) {
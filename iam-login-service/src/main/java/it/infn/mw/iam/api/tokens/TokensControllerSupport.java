@@ -36,11 +36,21 @@ public class TokensControllerSupport {
 
   public static final String APPLICATION_JSON_CONTENT_TYPE = "application/json";
   public static final int TOKENS_MAX_PAGE_SIZE = 20;
+  public static final int TOKENS_MAX_CURSOR_PAGE_SIZE = 100;
 
   protected TokensPageRequest buildTokensPageRequest(Integer count, Integer startIndex) {
     return buildPageRequest(count, startIndex, TOKENS_MAX_PAGE_SIZE);
   }
 
+  protected int buildTokensCursorPageCount(Integer count) {
+
+    if (count == null || count > TOKENS_MAX_CURSOR_PAGE_SIZE) {
+      return TOKENS_MAX_CURSOR_PAGE_SIZE;
+    }
+
+    return count < 0 ? 0 : count;
+  }
+
   private TokensPageRequest buildPageRequest(Integer count, Integer startIndex, int maxPageSize) {
 
     int validCount = 0;
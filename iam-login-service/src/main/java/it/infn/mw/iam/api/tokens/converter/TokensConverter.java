@@ -22,6 +22,7 @@ import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
 import org.mitre.oauth2.model.SavedUserAuthentication;
 import org.mitre.oauth2.service.ClientDetailsEntityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import it.infn.mw.iam.api.scim.converter.ScimResourceLocationProvider;
@@ -37,6 +38,7 @@ import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 public class TokensConverter {
 
   @Autowired
+  @Qualifier("iamClientDetailsEntityService")
   private ClientDetailsEntityService clientDetailsService;
 
   @Autowired
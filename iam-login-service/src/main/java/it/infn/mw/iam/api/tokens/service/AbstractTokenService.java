@@ -45,4 +45,13 @@ public abstract class AbstractTokenService<T> implements TokenService<T> {
     builder.totalResults(totalElements);
     return builder.build();
   }
+
+  protected ListResponseDTO<T> buildCursorListResponse(List<T> resources, String nextCursor) {
+
+    ListResponseDTO.Builder<T> builder = ListResponseDTO.builder();
+    builder.itemsPerPage(resources.size());
+    builder.resources(resources);
+    builder.nextCursor(nextCursor);
+    return builder.build();
+  }
 }
@@ -15,23 +15,30 @@
  */
 package it.infn.mw.iam.api.tokens.service;
 
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.ACCESS_TOKENS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.key;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongSupplier;
+
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.service.impl.DefaultOAuth2ProviderTokenService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 import it.infn.mw.iam.api.common.ListResponseDTO;
 import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
 import it.infn.mw.iam.api.tokens.converter.TokensConverter;
 import it.infn.mw.iam.api.tokens.exception.TokenNotFoundException;
 import it.infn.mw.iam.api.tokens.model.AccessToken;
+import it.infn.mw.iam.api.tokens.service.paging.TokensCursor;
 import it.infn.mw.iam.api.tokens.service.paging.TokensPageRequest;
 import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+import it.infn.mw.iam.persistence.repository.TokenKeyset;
 
 @Service
 public class DefaultAccessTokenService extends AbstractTokenService<AccessToken> {
@@ -45,6 +52,9 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
   @Autowired
   private IamOAuthAccessTokenRepository tokenRepository;
 
+  @Autowired
+  private TotalCountStrategy countStrategy;
+
   @Override
   public AccessToken getTokenById(Long id) {
 
@@ -67,9 +77,9 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     return Optional.ofNullable(at);
   }
 
-  private Page<OAuth2AccessTokenEntity> getAllValidTokens(OffsetPageable op) {
+  private List<OAuth2AccessTokenEntity> getAllValidTokens(OffsetPageable op) {
 
-    return tokenRepository.findAllValidAccessTokens(new Date(), op);
+    return tokenRepository.listValidAccessTokens(new Date(), op);
   }
 
   private long countAllValidTokens() {
@@ -77,9 +87,15 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     return tokenRepository.countValidAccessTokens(new Date());
   }
 
-  private Page<OAuth2AccessTokenEntity> getAllValidTokensForUser(String userId, OffsetPageable op) {
+  private long countAllListableTokens() {
+
+    return tokenRepository.countListableValidAccessTokens(new Date());
+  }
+
+  private List<OAuth2AccessTokenEntity> getAllValidTokensForUser(String userId,
+      OffsetPageable op) {
 
-    return tokenRepository.findValidAccessTokensForUser(userId, new Date(), op);
+    return tokenRepository.listValidAccessTokensForUser(userId, new Date(), op);
   }
 
   private long countAllValidTokensForUser(String userId) {
@@ -87,10 +103,10 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     return tokenRepository.countValidAccessTokensForUser(userId, new Date());
   }
 
-  private Page<OAuth2AccessTokenEntity> getAllValidTokensForClient(String clientId,
+  private List<OAuth2AccessTokenEntity> getAllValidTokensForClient(String clientId,
       OffsetPageable op) {
 
-    return tokenRepository.findValidAccessTokensForClient(clientId, new Date(), op);
+    return tokenRepository.listValidAccessTokensForClient(clientId, new Date(), op);
   }
 
   private long countAllValidTokensForClient(String clientId) {
@@ -98,10 +114,10 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     return tokenRepository.countValidAccessTokensForClient(clientId, new Date());
   }
 
-  private Page<OAuth2AccessTokenEntity> getAllValidTokensForUserAndClient(String userId,
+  private List<OAuth2AccessTokenEntity> getAllValidTokensForUserAndClient(String userId,
       String clientId, OffsetPageable op) {
 
-    return tokenRepository.findValidAccessTokensForUserAndClient(userId, clientId, new Date(), op);
+    return tokenRepository.listValidAccessTokensForUserAndClient(userId, clientId, new Date(), op);
   }
 
   private long countAllValidTokensForUserAndClient(String userId, String clientId) {
@@ -115,11 +131,13 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
         .resources(Collections.emptyList()).startIndex(1).itemsPerPage(0).build();
   }
 
-  private ListResponseDTO<AccessToken> buildListResponse(Page<OAuth2AccessTokenEntity> entities, OffsetPageable op) {
+  private ListResponseDTO<AccessToken> buildListResponse(List<OAuth2AccessTokenEntity> entities,
+      OffsetPageable op, String countKey, LongSupplier exactCount) {
 
     List<AccessToken> resources = new ArrayList<>();
-    entities.getContent().forEach(a -> resources.add(tokensConverter.toAccessToken(a)));
-    return buildListResponse(resources, op, entities.getTotalElements());
+    entities.forEach(a -> resources.add(tokensConverter.toAccessToken(a)));
+    return buildListResponse(resources, op,
+        countStrategy.pageTotal(countKey, op, entities.size(), exactCount));
   }
 
   @Override
@@ -132,8 +150,8 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2AccessTokenEntity> entities = getAllValidTokens(op);
-    return buildListResponse(entities, op);
+    List<OAuth2AccessTokenEntity> entities = getAllValidTokens(op);
+    return buildListResponse(entities, op, ACCESS_TOKENS_KEY, this::countAllListableTokens);
   }
 
   @Override
@@ -147,8 +165,9 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2AccessTokenEntity> entities = getAllValidTokensForUser(userId, op);
-    return buildListResponse(entities, op);
+    List<OAuth2AccessTokenEntity> entities = getAllValidTokensForUser(userId, op);
+    return buildListResponse(entities, op, key(ACCESS_TOKENS_KEY, "user", userId),
+        () -> countAllValidTokensForUser(userId));
   }
 
   @Override
@@ -162,8 +181,9 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2AccessTokenEntity> entities = getAllValidTokensForClient(clientId, op);
-    return buildListResponse(entities, op);
+    List<OAuth2AccessTokenEntity> entities = getAllValidTokensForClient(clientId, op);
+    return buildListResponse(entities, op, key(ACCESS_TOKENS_KEY, "client", clientId),
+        () -> countAllValidTokensForClient(clientId));
   }
 
   @Override
@@ -177,9 +197,35 @@ public class DefaultAccessTokenService extends AbstractTokenService<AccessToken>
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2AccessTokenEntity> entities =
+    List<OAuth2AccessTokenEntity> entities =
         getAllValidTokensForUserAndClient(userId, clientId, op);
-    return buildListResponse(entities, op);
+    return buildListResponse(entities, op,
+        key(ACCESS_TOKENS_KEY, "user", userId, "client", clientId),
+        () -> countAllValidTokensForUserAndClient(userId, clientId));
+  }
+
+  @Override
+  public ListResponseDTO<AccessToken> getTokensAfterCursor(String cursor, String userId,
+      String clientId, int count) {
+
+    TokenKeyset after = TokensCursor.decode(cursor);
+
+    List<AccessToken> resources = new ArrayList<>();
+    String nextCursor = null;
+
+    if (count > 0) {
+      List<OAuth2AccessTokenEntity> entities =
+          tokenRepository.findValidAccessTokensAfter(after, userId, clientId, new Date(), count);
+
+      entities.forEach(t -> resources.add(tokensConverter.toAccessToken(t)));
+
+      if (entities.size() == count) {
+        OAuth2AccessTokenEntity last = entities.get(entities.size() - 1);
+        nextCursor = TokensCursor.encode(last.getExpiration(), last.getId());
+      }
+    }
+
+    return buildCursorListResponse(resources, nextCursor);
   }
 
   @Override
@@ -15,23 +15,30 @@
  */
 package it.infn.mw.iam.api.tokens.service;
 
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.REFRESH_TOKENS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.key;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongSupplier;
+
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
 import org.mitre.oauth2.service.impl.DefaultOAuth2ProviderTokenService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 import it.infn.mw.iam.api.common.ListResponseDTO;
 import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
 import it.infn.mw.iam.api.tokens.converter.TokensConverter;
 import it.infn.mw.iam.api.tokens.exception.TokenNotFoundException;
 import it.infn.mw.iam.api.tokens.model.RefreshToken;
+import it.infn.mw.iam.api.tokens.service.paging.TokensCursor;
 import it.infn.mw.iam.api.tokens.service.paging.TokensPageRequest;
 import it.infn.mw.iam.persistence.repository.IamOAuthRefreshTokenRepository;
+import it.infn.mw.iam.persistence.repository.TokenKeyset;
 
 @Service
 public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToken> {
@@ -45,6 +52,9 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
   @Autowired
   private IamOAuthRefreshTokenRepository tokenRepository;
 
+  @Autowired
+  private TotalCountStrategy countStrategy;
+
   @Override
   public RefreshToken getTokenById(Long id) {
 
@@ -67,9 +77,9 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     return Optional.ofNullable(at);
   }
 
-  private Page<OAuth2RefreshTokenEntity> getAllValidTokens(OffsetPageable op) {
+  private List<OAuth2RefreshTokenEntity> getAllValidTokens(OffsetPageable op) {
 
-    return tokenRepository.findAllValidRefreshTokens(new Date(), op);
+    return tokenRepository.listValidRefreshTokens(new Date(), op);
   }
 
   private long countAllValidTokens() {
@@ -77,10 +87,10 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     return tokenRepository.countValidRefreshTokens(new Date());
   }
 
-  private Page<OAuth2RefreshTokenEntity> getAllValidTokensForUser(String userId,
+  private List<OAuth2RefreshTokenEntity> getAllValidTokensForUser(String userId,
       OffsetPageable op) {
 
-    return tokenRepository.findValidRefreshTokensForUser(userId, new Date(), op);
+    return tokenRepository.listValidRefreshTokensForUser(userId, new Date(), op);
   }
 
   private long countAllValidTokensForUser(String userId) {
@@ -88,10 +98,10 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     return tokenRepository.countValidRefreshTokensForUser(userId, new Date());
   }
 
-  private Page<OAuth2RefreshTokenEntity> getAllValidTokensForClient(String clientId,
+  private List<OAuth2RefreshTokenEntity> getAllValidTokensForClient(String clientId,
       OffsetPageable op) {
 
-    return tokenRepository.findValidRefreshTokensForClient(clientId, new Date(), op);
+    return tokenRepository.listValidRefreshTokensForClient(clientId, new Date(), op);
   }
 
   private long countAllValidTokensForClient(String clientId) {
@@ -99,10 +109,10 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     return tokenRepository.countValidRefreshTokensForClient(clientId, new Date());
   }
 
-  private Page<OAuth2RefreshTokenEntity> getAllValidTokensForUserAndClient(String userId,
+  private List<OAuth2RefreshTokenEntity> getAllValidTokensForUserAndClient(String userId,
       String clientId, OffsetPageable op) {
 
-    return tokenRepository.findValidRefreshTokensForUserAndClient(userId, clientId, new Date(), op);
+    return tokenRepository.listValidRefreshTokensForUserAndClient(userId, clientId, new Date(), op);
   }
 
   private long countAllValidTokensForUserAndClient(String userId, String clientId) {
@@ -116,12 +126,13 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
         .resources(Collections.emptyList()).startIndex(1).itemsPerPage(0).build();
   }
 
-  private ListResponseDTO<RefreshToken> buildListResponse(Page<OAuth2RefreshTokenEntity> entities,
-      OffsetPageable op) {
+  private ListResponseDTO<RefreshToken> buildListResponse(List<OAuth2RefreshTokenEntity> entities,
+      OffsetPageable op, String countKey, LongSupplier exactCount) {
 
     List<RefreshToken> resources = new ArrayList<>();
-    entities.getContent().forEach(a -> resources.add(tokensConverter.toRefreshToken(a)));
-    return buildListResponse(resources, op, entities.getTotalElements());
+    entities.forEach(a -> resources.add(tokensConverter.toRefreshToken(a)));
+    return buildListResponse(resources, op,
+        countStrategy.pageTotal(countKey, op, entities.size(), exactCount));
   }
 
   @Override
@@ -134,8 +145,8 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2RefreshTokenEntity> entities = getAllValidTokens(op);
-    return buildListResponse(entities, op);
+    List<OAuth2RefreshTokenEntity> entities = getAllValidTokens(op);
+    return buildListResponse(entities, op, REFRESH_TOKENS_KEY, this::countAllValidTokens);
   }
 
   @Override
@@ -149,8 +160,9 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2RefreshTokenEntity> entities = getAllValidTokensForUser(userId, op);
-    return buildListResponse(entities, op);
+    List<OAuth2RefreshTokenEntity> entities = getAllValidTokensForUser(userId, op);
+    return buildListResponse(entities, op, key(REFRESH_TOKENS_KEY, "user", userId),
+        () -> countAllValidTokensForUser(userId));
   }
 
   @Override
@@ -164,8 +176,9 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2RefreshTokenEntity> entities = getAllValidTokensForClient(clientId, op);
-    return buildListResponse(entities, op);
+    List<OAuth2RefreshTokenEntity> entities = getAllValidTokensForClient(clientId, op);
+    return buildListResponse(entities, op, key(REFRESH_TOKENS_KEY, "client", clientId),
+        () -> countAllValidTokensForClient(clientId));
   }
 
   @Override
@@ -179,9 +192,35 @@ public class DefaultRefreshTokenService extends AbstractTokenService<RefreshToke
     }
 
     OffsetPageable op = getOffsetPageable(pageRequest);
-    Page<OAuth2RefreshTokenEntity> entities =
+    List<OAuth2RefreshTokenEntity> entities =
         getAllValidTokensForUserAndClient(userId, clientId, op);
-    return buildListResponse(entities, op);
+    return buildListResponse(entities, op,
+        key(REFRESH_TOKENS_KEY, "user", userId, "client", clientId),
+        () -> countAllValidTokensForUserAndClient(userId, clientId));
+  }
+
+  @Override
+  public ListResponseDTO<RefreshToken> getTokensAfterCursor(String cursor, String userId,
+      String clientId, int count) {
+
+    TokenKeyset after = TokensCursor.decode(cursor);
+
+    List<RefreshToken> resources = new ArrayList<>();
+    String nextCursor = null;
+
+    if (count > 0) {
+      List<OAuth2RefreshTokenEntity> entities =
+          tokenRepository.findValidRefreshTokensAfter(after, userId, clientId, new Date(), count);
+
+      entities.forEach(t -> resources.add(tokensConverter.toRefreshToken(t)));
+
+      if (entities.size() == count) {
+        OAuth2RefreshTokenEntity last = entities.get(entities.size() - 1);
+        nextCursor = TokensCursor.encode(last.getExpiration(), last.getId());
+      }
+    }
+
+    return buildCursorListResponse(resources, nextCursor);
   }
 
   @Override
@@ -30,6 +30,17 @@ public interface TokenService<T> {
   ListResponseDTO<T> getTokensForClientAndUser(final String userId, final String clientId,
       final TokensPageRequest pageRequest);
 
+  /**
+   * Lists valid tokens with keyset pagination: the page starts after the token identified by the
+   * given cursor, and the response includes the cursor for the next page, unless this is the
+   * last page.
+   *
+   * @param userId if not null, only the tokens issued to this user are listed
+   * @param clientId if not null, only the tokens issued to this client are listed
+   */
+  ListResponseDTO<T> getTokensAfterCursor(final String cursor, final String userId,
+      final String clientId, final int count);
+
   T getTokenById(Long id);
 
   void revokeTokenById(Long id);
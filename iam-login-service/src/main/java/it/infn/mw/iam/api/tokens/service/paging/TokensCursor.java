@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.tokens.service.paging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import it.infn.mw.iam.api.tokens.exception.InvalidTokensCursorException;
+import it.infn.mw.iam.persistence.repository.TokenKeyset;
+
+/**
+ * An opaque continuation token for keyset paginated token list requests. The token encodes the
+ * expiration time and id of the last token returned, so that the next page starts right after
+ * it.
+ */
+public class TokensCursor {
+
+  private static final String EXPIRING_PREFIX = "exp";
+  private static final String NON_EXPIRING_PREFIX = "id";
+
+  private TokensCursor() {
+    // prevent instantiation
+  }
+
+  public static String encode(Date lastExpiration, long lastId) {
+
+    String value = lastExpiration == null ? NON_EXPIRING_PREFIX + ":" + lastId
+        : EXPIRING_PREFIX + ":" + lastExpiration.getTime() + ":" + lastId;
+
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(UTF_8));
+  }
+
+  /**
+   * Decodes a continuation token. An empty token denotes the start of the list.
+   *
+   * @throws InvalidTokensCursorException if the token is invalid
+   */
+  public static TokenKeyset decode(String cursor) {
+
+    if (Strings.isNullOrEmpty(cursor)) {
+      return TokenKeyset.START;
+    }
+
+    try {
+      String value = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+      List<String> parts = Splitter.on(':').splitToList(value);
+
+      if (parts.size() == 3 && EXPIRING_PREFIX.equals(parts.get(0))) {
+        return new TokenKeyset(new Date(Long.parseLong(parts.get(1))),
+            Long.parseLong(parts.get(2)));
+      }
+
+      if (parts.size() == 2 && NON_EXPIRING_PREFIX.equals(parts.get(0))) {
+        return new TokenKeyset(null, Long.parseLong(parts.get(1)));
+      }
+
+      throw new InvalidTokensCursorException(cursor);
+
+    } catch (IllegalArgumentException e) {
+      throw new InvalidTokensCursorException(cursor, e);
+    }
+  }
+}
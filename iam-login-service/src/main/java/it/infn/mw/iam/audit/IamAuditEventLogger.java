@@ -15,6 +15,8 @@
  */
 package it.infn.mw.iam.audit;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
@@ -23,6 +25,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.pipeline.AuditEventPipeline;
 
 @Component
 public class IamAuditEventLogger implements AuditEventLogger {
@@ -31,28 +34,25 @@ public class IamAuditEventLogger implements AuditEventLogger {
   public static final Marker AUDIT_MARKER = MarkerFactory.getMarker(AUDIT_MARKER_STRING);
   
   public static final Logger LOG = LoggerFactory.getLogger(AUDIT_MARKER_STRING);
-  final AuditDataSerializer serializer;
+  final AuditEventPipeline pipeline;
   
-  private IamAuditApplicationEvent lastEvent;
+  private final AtomicReference<IamAuditApplicationEvent> lastEvent = new AtomicReference<>();
   
   @Autowired
-  public IamAuditEventLogger(AuditDataSerializer serializer) {
-    this.serializer = serializer;
+  public IamAuditEventLogger(AuditEventPipeline pipeline) {
+    this.pipeline = pipeline;
   }
 
   @Override
   public void logAuditEvent(IamAuditApplicationEvent event) {
-    lastEvent = event;
-    if (LOG.isInfoEnabled()){
-      final String serializedEvent = serializer.serialize(event);
-      LOG.info(AUDIT_MARKER, serializedEvent);
+    lastEvent.set(event);
+    if (LOG.isInfoEnabled() || pipeline.isEnabled()) {
+      pipeline.submit(event);
     }
   }
   
   public IamAuditApplicationEvent getLastEvent() {
-    IamAuditApplicationEvent e = lastEvent;
-    lastEvent = null;
-    return e;
+    return lastEvent.getAndSet(null);
   }
 
 }
@@ -41,7 +41,9 @@ public abstract class IamAuditApplicationEvent extends ApplicationEvent {
     AUTHORIZATION,
     SCOPE_POLICY,
     AUP,
-    MEMBERSHIP
+    MEMBERSHIP,
+    CLIENT,
+    EXCHANGE_POLICY
   }
 
   private static final long serialVersionUID = -6276169409979227109L;
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.events.account.label;
+
+import static java.lang.String.format;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import it.infn.mw.iam.audit.events.account.AccountsEvent;
+import it.infn.mw.iam.audit.utils.IamLabelSerializer;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamLabel;
+
+public class AccountsLabelSetEvent extends AccountsEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String MESSAGE = "Label '%s' set for %d accounts";
+
+  @JsonSerialize(using = IamLabelSerializer.class)
+  private final IamLabel label;
+
+  public AccountsLabelSetEvent(Object source, Collection<IamAccountIds> accounts,
+      IamLabel label) {
+    super(source, accounts, format(MESSAGE, label.qualifiedName(), accounts.size()));
+    this.label = label;
+  }
+
+  public IamLabel getLabel() {
+    return label;
+  }
+}
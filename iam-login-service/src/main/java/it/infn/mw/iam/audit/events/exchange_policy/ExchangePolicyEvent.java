@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.events.exchange_policy;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+
+public abstract class ExchangePolicyEvent extends IamAuditApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Long policyId;
+
+  protected ExchangePolicyEvent(Object source, Long policyId, String message) {
+    super(IamEventCategory.EXCHANGE_POLICY, source, message);
+    this.policyId = policyId;
+  }
+
+  public Long getPolicyId() {
+    return policyId;
+  }
+
+}
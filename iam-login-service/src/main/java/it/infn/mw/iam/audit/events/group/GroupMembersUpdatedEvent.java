@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.events.group;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import it.infn.mw.iam.audit.utils.IamAccountIdsCollectionSerializer;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+/**
+ * Published once for each update of the member accounts of a group, with the accounts added to
+ * and removed from the group.
+ */
+public class GroupMembersUpdatedEvent extends GroupEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  @JsonSerialize(using = IamAccountIdsCollectionSerializer.class)
+  private final Collection<IamAccountIds> addedMembers;
+
+  @JsonSerialize(using = IamAccountIdsCollectionSerializer.class)
+  private final Collection<IamAccountIds> removedMembers;
+
+  public GroupMembersUpdatedEvent(Object source, IamGroup group,
+      Collection<IamAccountIds> addedMembers, Collection<IamAccountIds> removedMembers) {
+    super(source, group, buildMessage(group, addedMembers, removedMembers));
+    this.addedMembers = addedMembers;
+    this.removedMembers = removedMembers;
+  }
+
+  public Collection<IamAccountIds> getAddedMembers() {
+    return addedMembers;
+  }
+
+  public Collection<IamAccountIds> getRemovedMembers() {
+    return removedMembers;
+  }
+
+  protected static String buildMessage(IamGroup group, Collection<IamAccountIds> addedMembers,
+      Collection<IamAccountIds> removedMembers) {
+    return String.format("Group '%s' members updated: %d added, %d removed", group.getName(),
+        addedMembers.size(), removedMembers.size());
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.singletonList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+
+/**
+ * An audit pipeline that moves sink I/O off the threads that submit events.
+ *
+ * The submitting thread only copies the scalar attributes of an event to an {@link AuditRecord};
+ * the event is serialized by the worker, right before the record is written. Events are not
+ * submitted at all when none of the sinks is enabled. Records are inserted in a bounded {@link AuditEventRingBuffer} and consumed in batches by a
+ * single worker thread. When the buffer is full, the configured {@link OverflowPolicy} decides
+ * whether the submitting thread waits for room in the buffer (for at most a configurable time,
+ * after which the event is dropped), drops the event or writes it itself.
+ */
+public class AsyncAuditEventPipeline implements AuditEventPipeline, DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AsyncAuditEventPipeline.class);
+
+  public static final String WORKER_THREAD_NAME = "iam-audit-pipeline";
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long SHUTDOWN_TIMEOUT_MSEC = TimeUnit.SECONDS.toMillis(10);
+  private static final long DROPPED_EVENTS_LOG_INTERVAL = 1000;
+
+  public enum OverflowPolicy {
+    BLOCK,
+    DROP,
+    CALLER_RUNS
+  }
+
+  private final AuditEventSinkWriter writer;
+  private final AuditEventRingBuffer<AuditRecord> buffer;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final long blockTimeoutNanos;
+
+  private final Thread worker;
+
+  private volatile boolean running;
+  private volatile boolean workerIdle;
+
+  private final LongAdder submittedEvents = new LongAdder();
+  private final AtomicLong droppedEvents = new AtomicLong();
+  private final LongAdder blockedSubmissions = new LongAdder();
+  private final LongAdder callerRunsEvents = new LongAdder();
+
+  public AsyncAuditEventPipeline(AuditEventSinkWriter writer, int bufferSize, int batchSize,
+      OverflowPolicy overflowPolicy, long blockTimeoutMsec) {
+    checkArgument(batchSize > 0, "batchSize must be a positive integer");
+    this.writer = writer;
+    this.buffer = new AuditEventRingBuffer<>(bufferSize);
+    this.batchSize = batchSize;
+    this.overflowPolicy = overflowPolicy;
+    this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMsec);
+    this.worker = new Thread(this::processEvents, WORKER_THREAD_NAME);
+    this.worker.setDaemon(true);
+  }
+
+  public synchronized void start() {
+    if (!running) {
+      running = true;
+      worker.start();
+    }
+  }
+
+  protected void processEvents() {
+    List<AuditRecord> batch = Lists.newArrayListWithCapacity(batchSize);
+
+    while (running || !buffer.isEmpty()) {
+
+      if (buffer.drainTo(batch, batchSize) == 0) {
+        waitForEvents();
+        continue;
+      }
+
+      try {
+        writer.writeRecords(batch);
+      } catch (RuntimeException e) {
+        LOG.error("Error writing audit events: {}", e.getMessage(), e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void waitForEvents() {
+    workerIdle = true;
+    if (running && buffer.isEmpty()) {
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+    workerIdle = false;
+  }
+
+  private void wakeUpWorker() {
+    if (workerIdle) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  private void writeOnCallerThread(AuditRecord record) {
+    callerRunsEvents.increment();
+    writer.writeRecords(singletonList(record));
+  }
+
+  private void drop(AuditRecord record) {
+    final long dropped = droppedEvents.incrementAndGet();
+
+    if (dropped == 1 || dropped % DROPPED_EVENTS_LOG_INTERVAL == 0) {
+      LOG.warn("Audit event buffer full, dropping event: {} ({} events dropped so far)",
+          record.getMessage(), dropped);
+    }
+  }
+
+  private boolean waitForRoom(AuditRecord record) {
+    blockedSubmissions.increment();
+    final long deadline = System.nanoTime() + blockTimeoutNanos;
+
+    while (running && System.nanoTime() - deadline < 0) {
+      wakeUpWorker();
+      LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+
+      if (buffer.offer(record)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return writer.isEnabled();
+  }
+
+  @Override
+  public void submit(IamAuditApplicationEvent event) {
+
+    if (!writer.isEnabled()) {
+      return;
+    }
+
+    final AuditRecord record = writer.toRecord(event);
+
+    if (!running) {
+      // Not started yet or shutting down: don't lose the event
+      writeOnCallerThread(record);
+      return;
+    }
+
+    submittedEvents.increment();
+
+    if (buffer.offer(record)) {
+      wakeUpWorker();
+      return;
+    }
+
+    switch (overflowPolicy) {
+      case CALLER_RUNS:
+        writeOnCallerThread(record);
+        break;
+
+      case BLOCK:
+        if (!waitForRoom(record)) {
+          drop(record);
+        }
+        break;
+
+      default:
+        drop(record);
+    }
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    synchronized (this) {
+      running = false;
+    }
+
+    LockSupport.unpark(worker);
+
+    if (worker.isAlive()) {
+      worker.join(SHUTDOWN_TIMEOUT_MSEC);
+    }
+
+    if (worker.isAlive()) {
+      LOG.warn("Audit pipeline worker did not terminate in {} msec, {} events may be lost",
+          SHUTDOWN_TIMEOUT_MSEC, buffer.size());
+    } else {
+      // Write the events submitted while the worker was terminating
+      List<AuditRecord> remaining = Lists.newArrayList();
+      buffer.drainTo(remaining, buffer.capacity());
+      writer.writeRecords(remaining);
+    }
+
+    writer.close();
+  }
+
+  public AuditEventSinkWriter getWriter() {
+    return writer;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public int getQueueSize() {
+    return buffer.size();
+  }
+
+  public int getQueueCapacity() {
+    return buffer.capacity();
+  }
+
+  public long getSubmittedEventsCount() {
+    return submittedEvents.sum();
+  }
+
+  public long getDroppedEventsCount() {
+    return droppedEvents.get();
+  }
+
+  public long getBlockedSubmissionsCount() {
+    return blockedSubmissions.sum();
+  }
+
+  public long getCallerRunsEventsCount() {
+    return callerRunsEvents.sum();
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring buffer.
+ *
+ * Each slot carries a sequence number: producers claim a slot by advancing the tail with a CAS
+ * and publish the element by advancing the slot sequence, while the single consumer reads
+ * published slots in order and releases them for the next lap of the buffer. Producers never
+ * block: {@link #offer(Object)} returns <code>false</code> when the buffer is full.
+ */
+public class AuditEventRingBuffer<E> {
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+
+  // Only written by the consumer thread
+  private volatile long head;
+
+  public AuditEventRingBuffer(int capacity) {
+    checkArgument(capacity >= 2 && Integer.bitCount(capacity) == 1,
+        "capacity must be a power of two greater than 1");
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.elements = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Inserts an element, if there is room for it in the buffer. Safe to call from any thread.
+   *
+   * @return <code>true</code> if the element was inserted, <code>false</code> if the buffer is
+   *         full
+   */
+  public boolean offer(E element) {
+    checkArgument(element != null, "element must be non-null");
+
+    long pos = tail.get();
+
+    while (true) {
+      final int index = (int) (pos & mask);
+      final long available = sequences.get(index) - pos;
+
+      if (available == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements.lazySet(index, element);
+          sequences.lazySet(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (available < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Moves up to <code>maxElements</code> published elements to the given collection. Must only be
+   * called by the single consumer thread.
+   *
+   * @return the number of elements moved
+   */
+  public int drainTo(Collection<? super E> target, int maxElements) {
+    long pos = head;
+    int drained = 0;
+
+    while (drained < maxElements) {
+      final int index = (int) (pos & mask);
+
+      if (sequences.get(index) != pos + 1) {
+        break;
+      }
+
+      target.add(elements.get(index));
+      elements.lazySet(index, null);
+      sequences.lazySet(index, pos + capacity);
+      pos++;
+      drained++;
+    }
+
+    head = pos;
+    return drained;
+  }
+
+  /**
+   * Returns the number of elements in the buffer, including those being inserted concurrently.
+   */
+  public int size() {
+    long size = tail.get() - head;
+    return (int) Math.max(0, Math.min(size, capacity));
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+}
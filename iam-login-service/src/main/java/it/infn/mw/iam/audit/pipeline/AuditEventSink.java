@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A destination for audit records. Records are written in batches; a sink is never called
+ * concurrently by an audit pipeline.
+ */
+public interface AuditEventSink extends Closeable {
+
+  String getName();
+
+  void write(List<AuditRecord> records) throws IOException;
+
+  /**
+   * Tells whether this sink currently writes records at all.
+   */
+  default boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  default void close() throws IOException {
+    // nothing to release by default
+  }
+}
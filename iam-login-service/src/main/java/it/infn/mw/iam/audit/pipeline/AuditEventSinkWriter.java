@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.audit.AuditDataSerializer;
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+
+/**
+ * Turns audit events into {@link AuditRecord}s and writes batches of records to a list of
+ * sinks. Records are serialized right before being written to the sinks. Errors raised by a sink are logged and counted, and do not prevent writing to the other
+ * sinks.
+ */
+public class AuditEventSinkWriter {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AuditEventSinkWriter.class);
+
+  private final AuditDataSerializer serializer;
+  private final List<AuditEventSink> sinks;
+
+  private final LongAdder writtenEvents = new LongAdder();
+  private final LongAdder sinkErrors = new LongAdder();
+
+  public AuditEventSinkWriter(AuditDataSerializer serializer, List<AuditEventSink> sinks) {
+    this.serializer = serializer;
+    this.sinks = ImmutableList.copyOf(sinks);
+  }
+
+  /**
+   * Tells whether at least one of the sinks would write an event, so that callers can skip
+   * building records nobody will read.
+   */
+  public boolean isEnabled() {
+    for (AuditEventSink sink : sinks) {
+      if (sink.isEnabled()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Snapshots the scalar attributes of an event. Cheap enough to be called on the thread that
+   * publishes the event; serialization happens in {@link #writeRecords(List)}.
+   */
+  public AuditRecord toRecord(IamAuditApplicationEvent event) {
+    return new AuditRecord(event);
+  }
+
+  public void write(List<IamAuditApplicationEvent> events) {
+    if (events.isEmpty() || !isEnabled()) {
+      return;
+    }
+
+    List<AuditRecord> records = Lists.newArrayListWithCapacity(events.size());
+
+    for (IamAuditApplicationEvent e : events) {
+      records.add(toRecord(e));
+    }
+
+    writeRecords(records);
+  }
+
+  public synchronized void writeRecords(List<AuditRecord> records) {
+    if (sinks.isEmpty() || records.isEmpty()) {
+      return;
+    }
+
+    for (AuditRecord r : records) {
+      r.serialize(serializer);
+    }
+
+    for (AuditEventSink sink : sinks) {
+      try {
+        sink.write(records);
+      } catch (Exception e) {
+        sinkErrors.increment();
+        LOG.error("Error writing {} audit events to sink {}: {}", records.size(), sink.getName(),
+            e.getMessage(), e);
+      }
+    }
+
+    writtenEvents.add(records.size());
+  }
+
+  public synchronized void close() {
+    for (AuditEventSink sink : sinks) {
+      try {
+        sink.close();
+      } catch (IOException e) {
+        LOG.warn("Error closing audit sink {}: {}", sink.getName(), e.getMessage(), e);
+      }
+    }
+  }
+
+  public List<AuditEventSink> getSinks() {
+    return sinks;
+  }
+
+  public long getWrittenEventsCount() {
+    return writtenEvents.sum();
+  }
+
+  public long getSinkErrorsCount() {
+    return sinkErrors.sum();
+  }
+}
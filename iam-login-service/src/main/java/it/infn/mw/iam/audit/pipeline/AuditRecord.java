@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import it.infn.mw.iam.audit.AuditDataSerializer;
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+
+/**
+ * A snapshot of an audit event, holding the event attributes needed by the sinks and its
+ * serialized representation. The scalar attributes are copied on the thread that publishes the
+ * event, while the (more expensive) serialization is deferred to the thread that writes the
+ * record, after which the record no longer references the event.
+ */
+public class AuditRecord {
+
+  private final long timestamp;
+  private final String category;
+  private final String principal;
+  private final String type;
+  private final String message;
+  private IamAuditApplicationEvent event;
+  private String serializedEvent;
+
+  public AuditRecord(IamAuditApplicationEvent event) {
+    this(event, null);
+    this.event = event;
+  }
+
+  public AuditRecord(IamAuditApplicationEvent event, String serializedEvent) {
+    this.timestamp = event.getTimestamp();
+    this.category = event.getCategory().name();
+    this.principal = event.getPrincipal();
+    this.type = event.getClass().getSimpleName();
+    this.message = event.getMessage();
+    this.serializedEvent = serializedEvent;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public String getPrincipal() {
+    return principal;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  void serialize(AuditDataSerializer serializer) {
+    if (serializedEvent == null) {
+      serializedEvent = serializer.serialize(event);
+      event = null;
+    }
+  }
+
+  public String getSerializedEvent() {
+    return serializedEvent;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Inserts audit records in the <code>iam_audit_event</code> table, with a single JDBC batch
+ * statement for each batch of records.
+ */
+public class JdbcAuditEventSink implements AuditEventSink {
+
+  public static final String NAME = "jdbc";
+
+  public static final int MAX_PRINCIPAL_LENGTH = 255;
+  public static final int MAX_TYPE_LENGTH = 128;
+  public static final int MAX_MESSAGE_LENGTH = 1024;
+
+  private static final String INSERT_EVENT =
+      "INSERT INTO iam_audit_event (event_time, category, principal, type, message, data) "
+          + "VALUES (?, ?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public JdbcAuditEventSink(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  private static String truncate(String value, int maxLength) {
+    if (value == null || value.length() <= maxLength) {
+      return value;
+    }
+    return value.substring(0, maxLength);
+  }
+
+  @Override
+  public void write(List<AuditRecord> records) {
+    jdbcTemplate.batchUpdate(INSERT_EVENT, records, records.size(), (ps, r) -> {
+      ps.setTimestamp(1, new Timestamp(r.getTimestamp()));
+      ps.setString(2, r.getCategory());
+      ps.setString(3, truncate(r.getPrincipal(), MAX_PRINCIPAL_LENGTH));
+      ps.setString(4, truncate(r.getType(), MAX_TYPE_LENGTH));
+      ps.setString(5, truncate(r.getMessage(), MAX_MESSAGE_LENGTH));
+      ps.setString(6, r.getSerializedEvent());
+    });
+  }
+
+}
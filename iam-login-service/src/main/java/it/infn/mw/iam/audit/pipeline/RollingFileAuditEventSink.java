@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Appends audit records, one JSON document per line, to a local file. When the file grows
+ * beyond the configured size it is rotated: <code>audit.log</code> becomes
+ * <code>audit.log.1</code>, <code>audit.log.1</code> becomes <code>audit.log.2</code> and so on,
+ * and the files beyond the configured number of files are removed.
+ */
+public class RollingFileAuditEventSink implements AuditEventSink {
+
+  public static final String NAME = "file";
+
+  private final Path file;
+  private final long maxFileSizeBytes;
+  private final int maxFiles;
+
+  private Writer writer;
+  private long fileSize;
+
+  public RollingFileAuditEventSink(String path, long maxFileSizeBytes, int maxFiles) {
+    checkArgument(maxFileSizeBytes > 0, "maxFileSizeBytes must be a positive number");
+    checkArgument(maxFiles > 0, "maxFiles must be a positive number");
+    this.file = Paths.get(path);
+    this.maxFileSizeBytes = maxFileSizeBytes;
+    this.maxFiles = maxFiles;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  private Path rotatedFile(int index) {
+    return file.resolveSibling(String.format("%s.%d", file.getFileName(), index));
+  }
+
+  private void openWriter() throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+
+    if (nonNull(parent)) {
+      Files.createDirectories(parent);
+    }
+
+    writer = Files.newBufferedWriter(file, UTF_8, CREATE, APPEND);
+    fileSize = Files.size(file);
+  }
+
+  protected void rotate() throws IOException {
+    close();
+
+    Files.deleteIfExists(rotatedFile(maxFiles - 1));
+
+    for (int i = maxFiles - 2; i >= 1; i--) {
+      Path source = rotatedFile(i);
+      if (Files.exists(source)) {
+        Files.move(source, rotatedFile(i + 1), REPLACE_EXISTING);
+      }
+    }
+
+    if (maxFiles > 1) {
+      Files.move(file, rotatedFile(1), REPLACE_EXISTING);
+    } else {
+      Files.deleteIfExists(file);
+    }
+
+    openWriter();
+  }
+
+  @Override
+  public void write(List<AuditRecord> records) throws IOException {
+    if (isNull(writer)) {
+      openWriter();
+    }
+
+    for (AuditRecord r : records) {
+      if (fileSize >= maxFileSizeBytes) {
+        writer.flush();
+        rotate();
+      }
+
+      String line = r.getSerializedEvent() + System.lineSeparator();
+      writer.write(line);
+      fileSize += line.getBytes(UTF_8).length;
+    }
+
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (nonNull(writer)) {
+      try {
+        writer.close();
+      } finally {
+        writer = null;
+      }
+    }
+  }
+
+  public Path getFile() {
+    return file;
+  }
+}
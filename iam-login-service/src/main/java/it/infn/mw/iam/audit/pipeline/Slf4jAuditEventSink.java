@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.pipeline;
+
+import static it.infn.mw.iam.audit.IamAuditEventLogger.AUDIT_MARKER;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+
+import it.infn.mw.iam.audit.IamAuditEventLogger;
+
+/**
+ * Writes audit records to the <code>AUDIT</code> SLF4J logger, marked with the
+ * <code>AUDIT</code> marker.
+ */
+public class Slf4jAuditEventSink implements AuditEventSink {
+
+  public static final String NAME = "slf4j";
+
+  private final Logger logger;
+
+  public Slf4jAuditEventSink() {
+    this(IamAuditEventLogger.LOG);
+  }
+
+  public Slf4jAuditEventSink(Logger logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return logger.isInfoEnabled();
+  }
+
+  @Override
+  public void write(List<AuditRecord> records) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    for (AuditRecord r : records) {
+      logger.info(AUDIT_MARKER, r.getSerializedEvent());
+    }
+  }
+
+}
@@ -33,23 +33,24 @@ import org.springframework.security.web.authentication.AuthenticationSuccessHand
 
 import it.infn.mw.iam.api.account.AccountUtils;
 import it.infn.mw.iam.api.aup.AUPSignatureCheckService;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.core.util.IamAuthenticationLogger;
 import it.infn.mw.iam.persistence.model.IamAccount;
-import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 public class EnforceAupSignatureSuccessHandler implements AuthenticationSuccessHandler {
 
   private final AuthenticationSuccessHandler delegate;
   private final AUPSignatureCheckService service;
   private final AccountUtils accountUtils;
-  private final IamAccountRepository accountRepo;
+  private final LastLoginTimeRecorder lastLoginTimeRecorder;
 
   public EnforceAupSignatureSuccessHandler(AuthenticationSuccessHandler delegate,
-      AUPSignatureCheckService service, AccountUtils utils, IamAccountRepository accountRepo) {
+      AUPSignatureCheckService service, AccountUtils utils,
+      LastLoginTimeRecorder lastLoginTimeRecorder) {
     this.delegate = delegate;
     this.service = service;
     this.accountUtils = utils;
-    this.accountRepo = accountRepo;
+    this.lastLoginTimeRecorder = lastLoginTimeRecorder;
   }
 
   private Optional<Authentication> resolveUserAuthentication(Authentication auth) {
@@ -84,7 +85,7 @@ public class EnforceAupSignatureSuccessHandler implements AuthenticationSuccessH
   protected void touchLastLoginTimeForIamAccount(Authentication authentication) {
 
     resolveUserAuthentication(authentication)
-      .ifPresent(a -> accountRepo.touchLastLoginTimeForUserWithUsername(a.getName()));
+      .ifPresent(a -> lastLoginTimeRecorder.recordLogin(a.getName()));
   }
 
   @Override
@@ -17,23 +17,28 @@ package it.infn.mw.iam.authn.saml;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
+
+import javax.xml.namespace.QName;
 
 import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.common.Extensions;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.samlext.saml2mdui.DiscoHints;
+import org.opensaml.samlext.saml2mdui.DisplayName;
+import org.opensaml.samlext.saml2mdui.DomainHint;
+import org.opensaml.samlext.saml2mdui.Keywords;
 import org.opensaml.samlext.saml2mdui.UIInfo;
 import org.opensaml.xml.XMLObject;
 import org.slf4j.Logger;
@@ -43,11 +48,19 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.security.saml.metadata.MetadataManager;
 import org.springframework.stereotype.Component;
 
-import com.google.common.base.Strings;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 
 import it.infn.mw.iam.authn.saml.model.IdpDescription;
 
+/**
+ * A {@link MetadataLookupService} that serves IdP lookups from an {@link IdpSearchIndex}.
+ *
+ * The index, and the JSON representation of the default IdP list, are rebuilt from the metadata
+ * each time the metadata is refreshed and then swapped atomically, so lookups never wait for a
+ * refresh nor take locks.
+ */
 @Component
 @Profile("saml")
 public class DefaultMetadataLookupService implements MetadataLookupService, ObservableMetadataProvider.Observer {
@@ -55,8 +68,19 @@ public class DefaultMetadataLookupService implements MetadataLookupService, Obse
   private static final int MAX_RESULTS = 20;
   private static final Logger LOG = LoggerFactory.getLogger(DefaultMetadataLookupService.class);
 
-  Set<IdpDescription> descriptions = new HashSet<>();
-  ReadWriteLock lock = new ReentrantReadWriteLock(true);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final class Snapshot {
+    final IdpSearchIndex index;
+    final byte[] defaultIdpListJson;
+
+    Snapshot(IdpSearchIndex index, byte[] defaultIdpListJson) {
+      this.index = index;
+      this.defaultIdpListJson = defaultIdpListJson;
+    }
+  }
+
+  private volatile Snapshot snapshot;
 
   MetadataManager metadataManager;
 
@@ -67,47 +91,93 @@ public class DefaultMetadataLookupService implements MetadataLookupService, Obse
     refreshMetadata();
   }
 
+  private static Snapshot snapshotFor(IdpSearchIndex index) {
+    List<IdpDescription> defaultList =
+        index.getIdps().subList(0, Math.min(MAX_RESULTS, index.size()));
+
+    try {
+      return new Snapshot(index, MAPPER.writeValueAsBytes(defaultList));
+    } catch (JsonProcessingException e) {
+      throw new SamlMetadataError(e.getMessage(), e);
+    }
+  }
+
   private void initializeMetadataSet() throws MetadataProviderException {
 
     final Instant startTime = Instant.now();
-    LOG.debug("Initializing IdP descriptor list from metadata");
-    
-    Set<IdpDescription> newDescriptions = new HashSet<>();
+    LOG.debug("Initializing IdP search index from metadata");
+
+    List<IdpSearchIndex.Entry> entries = new ArrayList<>();
 
     for (String idpName : metadataManager.getIDPEntityNames()) {
 
-      IdpDescription idpDescription =
-          descriptionFromMetadata(metadataManager.getEntityDescriptor(idpName));
+      IdpSearchIndex.Entry entry = entryFromMetadata(metadataManager.getEntityDescriptor(idpName));
 
-      LOG.debug("Adding IdP description: {}", idpDescription);
-      newDescriptions.add(idpDescription);
+      LOG.debug("Adding IdP description: {}", entry.description);
+      entries.add(entry);
     }
 
-    try {
-      lock.writeLock().lock();
-      descriptions = newDescriptions;
-    } finally {
-      lock.writeLock().unlock();
-      final Duration d = Duration.between(startTime, Instant.now());
-      LOG.debug("Idp descriptor list initialization took {} msec", d.toMillis());
+    snapshot = snapshotFor(IdpSearchIndex.build(entries));
+
+    final Duration d = Duration.between(startTime, Instant.now());
+    LOG.debug("IdP search index initialization took {} msec", d.toMillis());
+  }
+
+  private static List<XMLObject> extensions(IDPSSODescriptor idpDesc, QName elementName) {
+    Extensions extensions = idpDesc == null ? null : idpDesc.getExtensions();
+
+    if (extensions == null) {
+      return ImmutableList.of();
     }
 
+    return extensions.getUnknownXMLObjects(elementName);
   }
 
-  private IdpDescription descriptionFromMetadata(EntityDescriptor descriptor) {
+  private static String entityIdHost(String entityId) {
+    try {
+      return new URI(entityId).getHost();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  private IdpSearchIndex.Entry entryFromMetadata(EntityDescriptor descriptor) {
     IdpDescription result = new IdpDescription();
     result.setEntityId(descriptor.getEntityID());
 
+    Set<String> names = new LinkedHashSet<>();
+    Set<String> keywords = new LinkedHashSet<>();
+    Set<String> domains = new LinkedHashSet<>();
+
     IDPSSODescriptor idpDesc = descriptor.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
-    if (idpDesc != null && idpDesc.getExtensions() != null) {
 
-      for (final XMLObject object : idpDesc.getExtensions()
-        .getUnknownXMLObjects(UIInfo.DEFAULT_ELEMENT_NAME)) {
-        if (object instanceof UIInfo) {
-          UIInfo uiInfo = (UIInfo) object;
+    for (final XMLObject object : extensions(idpDesc, UIInfo.DEFAULT_ELEMENT_NAME)) {
+      if (object instanceof UIInfo) {
+        UIInfo uiInfo = (UIInfo) object;
+
+        if (!uiInfo.getDisplayNames().isEmpty()) {
+          result.setOrganizationName(uiInfo.getDisplayNames().get(0).getName().getLocalString());
+        }
+
+        for (DisplayName n : uiInfo.getDisplayNames()) {
+          if (n.getName() != null && !isNullOrEmpty(n.getName().getLocalString())) {
+            names.add(n.getName().getLocalString());
+          }
+        }
 
-          if (!uiInfo.getDisplayNames().isEmpty()) {
-            result.setOrganizationName(uiInfo.getDisplayNames().get(0).getName().getLocalString());
+        for (Keywords k : uiInfo.getKeywords()) {
+          if (k.getKeywords() != null) {
+            keywords.addAll(k.getKeywords());
+          }
+        }
+      }
+    }
+
+    for (final XMLObject object : extensions(idpDesc, DiscoHints.DEFAULT_ELEMENT_NAME)) {
+      if (object instanceof DiscoHints) {
+        for (DomainHint h : ((DiscoHints) object).getDomainHints()) {
+          if (!isNullOrEmpty(h.getHint())) {
+            domains.add(h.getHint());
           }
         }
       }
@@ -117,75 +187,36 @@ public class DefaultMetadataLookupService implements MetadataLookupService, Obse
       result.setOrganizationName(result.getEntityId());
     }
 
-    return result;
-  }
-
-
-  private Optional<List<IdpDescription>> lookupByEntityId(String text) {
-    // Try entityId match
-    try {
-
-      EntityDescriptor entityDescriptor = metadataManager.getEntityDescriptor(text);
-      if (entityDescriptor != null) {
-        return Optional.of(ImmutableList.of(descriptionFromMetadata(entityDescriptor)));
-      }
-
-    } catch (MetadataProviderException e) {
-      throw new SamlMetadataError(e.getMessage(), e);
+    String host = entityIdHost(result.getEntityId());
+    if (!isNullOrEmpty(host)) {
+      domains.add(host);
     }
 
-    return Optional.empty();
+    return new IdpSearchIndex.Entry(result, names, keywords, domains);
   }
 
   @Override
   public List<IdpDescription> lookupIdp(String text) {
 
-    List<IdpDescription> result = new ArrayList<>();
-
-    lookupByEntityId(text).ifPresent(result::addAll);
+    final IdpSearchIndex index = snapshot.index;
 
-    if (!result.isEmpty()) {
-      return result;
-    }
-
-    try {
-      lock.readLock().lock();
-      return descriptions.stream()
-        .filter(p -> p.getOrganizationName().toLowerCase().contains(text.toLowerCase()))
-        .limit(MAX_RESULTS)
-        .collect(Collectors.toList());
-    } finally {
-      lock.readLock().unlock();
-    }
+    return index.findByEntityId(text)
+      .<List<IdpDescription>>map(ImmutableList::of)
+      .orElseGet(() -> index.search(text, MAX_RESULTS));
   }
 
   @Override
   public List<IdpDescription> listIdps() {
-    Set<String> idpNames = metadataManager.getIDPEntityNames();
-
-    List<IdpDescription> results = new ArrayList<>();
-
-    for (String idpName : idpNames) {
-      try {
-        IdpDescription desc = descriptionFromMetadata(metadataManager.getEntityDescriptor(idpName));
-
-        if (!Strings.isNullOrEmpty(desc.getOrganizationName())) {
-          results.add(desc);
-        }
-
-      } catch (MetadataProviderException e) {
-        LOG.warn("Error accessing metadata for entity: {}", idpName, e);
-        continue;
-      }
-
-    }
-
-    return results;
+    return snapshot.index.getIdps();
+  }
 
+  @Override
+  public byte[] getDefaultIdpListJson() {
+    return snapshot.defaultIdpListJson;
   }
 
   @Override
-  public void refreshMetadata() {
+  public synchronized void refreshMetadata() {
     try {
       initializeMetadataSet();
     } catch (MetadataProviderException e) {
@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.authn.saml;
+
+import static it.infn.mw.iam.core.search.TrigramPostings.EXACT_MATCH;
+import static it.infn.mw.iam.core.search.TrigramPostings.FIELD_SEPARATOR;
+import static it.infn.mw.iam.core.search.TrigramPostings.NO_MATCH;
+import static it.infn.mw.iam.core.search.TrigramPostings.NO_SLOTS;
+import static it.infn.mw.iam.core.search.TrigramPostings.forEachTrigram;
+import static it.infn.mw.iam.core.search.TrigramPostings.intersectAll;
+import static it.infn.mw.iam.core.search.TrigramPostings.lookup;
+import static it.infn.mw.iam.core.search.TrigramPostings.toPostings;
+import static java.util.Objects.isNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Ordering;
+
+import it.infn.mw.iam.authn.saml.model.IdpDescription;
+import it.infn.mw.iam.core.search.TrigramPostings.IntList;
+
+/**
+ * An immutable search index over the IdPs described in the federation metadata.
+ *
+ * The display names (in all languages), keywords and domain hints of each IdP are normalized
+ * (lowercased, with diacritics removed) and split in words. Query words with at least three
+ * characters are looked up in a trigram index and match anywhere in the indexed text, while
+ * shorter ones are looked up in a word prefix index and match only at the start of a word. An
+ * IdP matches a query when it matches all of its words. Matches are ranked by exact match, name
+ * prefix match, name word prefix match, keyword or domain prefix match and substring match, and
+ * then in display order.
+ *
+ * Since the index is never modified after it is built, it can be searched without locks.
+ */
+public class IdpSearchIndex {
+
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+  private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private static final int MAX_SHORT_PREFIX_LENGTH = 2;
+
+  private static final int NAME_PREFIX_MATCH = 1;
+  private static final int NAME_WORD_PREFIX_MATCH = 2;
+  private static final int TERM_PREFIX_MATCH = 3;
+  private static final int SUBSTRING_MATCH = 4;
+
+  /**
+   * The searchable attributes of an IdP.
+   */
+  public static class Entry {
+    final IdpDescription description;
+    final Collection<String> names;
+    final Collection<String> keywords;
+    final Collection<String> domains;
+
+    public Entry(IdpDescription description, Collection<String> names,
+        Collection<String> keywords, Collection<String> domains) {
+      this.description = description;
+      this.names = names;
+      this.keywords = keywords;
+      this.domains = domains;
+    }
+  }
+
+  private static final class Document {
+    final IdpDescription description;
+    final String sortKey;
+    final String[] names;
+    final String[] nameWords;
+    final String[] terms;
+    final String[] termWords;
+    final String text;
+
+    Document(Entry entry) {
+      this.description = entry.description;
+      this.sortKey = normalize(description.getOrganizationName());
+
+      Set<String> normalizedNames = normalizeAll(entry.names);
+      normalizedNames.add(sortKey);
+
+      Set<String> normalizedTerms = normalizeAll(entry.keywords);
+      normalizedTerms.addAll(normalizeAll(entry.domains));
+
+      this.names = toArray(normalizedNames);
+      this.nameWords = words(normalizedNames);
+      this.terms = toArray(normalizedTerms);
+      this.termWords = words(normalizedTerms);
+
+      StringBuilder builder = new StringBuilder();
+      for (String s : names) {
+        builder.append(s).append(FIELD_SEPARATOR);
+      }
+      for (String s : terms) {
+        builder.append(s).append(FIELD_SEPARATOR);
+      }
+      this.text = builder.toString();
+    }
+
+    boolean hasWordStartingWith(String token) {
+      return startsWithAny(nameWords, token) || startsWithAny(termWords, token);
+    }
+
+    boolean matches(String[] tokens) {
+      for (String t : tokens) {
+        boolean match =
+            t.length() > MAX_SHORT_PREFIX_LENGTH ? text.contains(t) : hasWordStartingWith(t);
+
+        if (!match) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int score(String query, String[] tokens) {
+      if (!matches(tokens)) {
+        return NO_MATCH;
+      }
+
+      if (Arrays.asList(names).contains(query) || Arrays.asList(terms).contains(query)) {
+        return EXACT_MATCH;
+      }
+
+      if (startsWithAny(names, query)) {
+        return NAME_PREFIX_MATCH;
+      }
+
+      if (Arrays.stream(tokens).allMatch(t -> startsWithAny(nameWords, t))) {
+        return NAME_WORD_PREFIX_MATCH;
+      }
+
+      if (Arrays.stream(tokens).allMatch(this::hasWordStartingWith)) {
+        return TERM_PREFIX_MATCH;
+      }
+
+      return SUBSTRING_MATCH;
+    }
+  }
+
+  private static final class Match {
+    final int slot;
+    final int score;
+
+    Match(int slot, int score) {
+      this.slot = slot;
+      this.score = score;
+    }
+  }
+
+  private static final Comparator<Match> MATCH_ORDER =
+      Comparator.comparingInt((Match m) -> m.score).thenComparingInt(m -> m.slot);
+
+  public static final IdpSearchIndex EMPTY_INDEX = build(ImmutableList.of());
+
+  private final Document[] docs;
+  private final Map<String, Document> byEntityId;
+  private final Map<Long, int[]> trigrams;
+  private final Map<String, int[]> prefixes;
+  private final List<IdpDescription> idps;
+
+  private IdpSearchIndex(Document[] docs, Map<Long, int[]> trigrams,
+      Map<String, int[]> prefixes) {
+    this.docs = docs;
+    this.trigrams = trigrams;
+    this.prefixes = prefixes;
+
+    Map<String, Document> entityIds = new HashMap<>(docs.length * 2);
+    for (Document d : docs) {
+      entityIds.putIfAbsent(d.description.getEntityId(), d);
+    }
+    this.byEntityId = ImmutableMap.copyOf(entityIds);
+    this.idps = ImmutableList
+      .copyOf(Arrays.stream(docs).map(d -> d.description).collect(Collectors.toList()));
+  }
+
+  static String normalize(String value) {
+    if (isNull(value)) {
+      return "";
+    }
+
+    String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+    return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+  }
+
+  private static Set<String> normalizeAll(Collection<String> values) {
+    Set<String> result = new LinkedHashSet<>();
+    for (String v : values) {
+      String n = normalize(v);
+      if (!n.isEmpty()) {
+        result.add(n);
+      }
+    }
+    return result;
+  }
+
+  private static String[] toArray(Collection<String> values) {
+    return values.toArray(new String[values.size()]);
+  }
+
+  private static String[] tokens(String normalizedText) {
+    return WORD_SEPARATORS.splitAsStream(normalizedText)
+      .filter(w -> !w.isEmpty())
+      .distinct()
+      .toArray(String[]::new);
+  }
+
+  private static String[] words(Collection<String> values) {
+    return tokens(String.join(" ", values));
+  }
+
+  private static boolean startsWithAny(String[] values, String prefix) {
+    for (String v : values) {
+      if (v.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void forEachShortPrefix(Document doc, Consumer<String> consumer) {
+    for (String[] words : Arrays.asList(doc.nameWords, doc.termWords)) {
+      for (String w : words) {
+        for (int len = 1; len <= Math.min(MAX_SHORT_PREFIX_LENGTH, w.length()); len++) {
+          consumer.accept(w.substring(0, len));
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds an index over the given entries. IdPs are kept in display order, i.e. sorted by
+   * normalized organization name and then by entity id.
+   */
+  public static IdpSearchIndex build(Collection<Entry> entries) {
+    Document[] docs = entries.stream()
+      .map(Document::new)
+      .sorted(Comparator.comparing((Document d) -> d.sortKey)
+        .thenComparing(d -> d.description.getEntityId()))
+      .toArray(Document[]::new);
+
+    Map<Long, IntList> trigramLists = new HashMap<>();
+    Map<String, IntList> prefixLists = new HashMap<>();
+
+    for (int i = 0; i < docs.length; i++) {
+      final int slot = i;
+      forEachTrigram(docs[i].text,
+          t -> trigramLists.computeIfAbsent(t, k -> new IntList()).add(slot));
+      forEachShortPrefix(docs[i],
+          p -> prefixLists.computeIfAbsent(p, k -> new IntList()).add(slot));
+    }
+
+    return new IdpSearchIndex(docs, toPostings(trigramLists), toPostings(prefixLists));
+  }
+
+  private int[] postings(String token) {
+    if (token.length() <= MAX_SHORT_PREFIX_LENGTH) {
+      return prefixes.getOrDefault(token, NO_SLOTS);
+    }
+
+    return lookup(trigrams, token);
+  }
+
+  /**
+   * Returns at most <code>maxResults</code> IdPs matching the given text, best matches first. A
+   * text without any word matches all IdPs.
+   */
+  public List<IdpDescription> search(String text, int maxResults) {
+    final String query = normalize(text);
+    final String[] tokens = tokens(query);
+
+    if (tokens.length == 0) {
+      return idps.subList(0, Math.min(maxResults, idps.size()));
+    }
+
+    List<int[]> lists = new ArrayList<>(tokens.length);
+    for (String t : tokens) {
+      lists.add(postings(t));
+    }
+
+    List<Match> matches = new ArrayList<>();
+    for (int slot : intersectAll(lists)) {
+      int score = docs[slot].score(query, tokens);
+      if (score != NO_MATCH) {
+        matches.add(new Match(slot, score));
+      }
+    }
+
+    return Ordering.from(MATCH_ORDER)
+      .leastOf(matches, maxResults)
+      .stream()
+      .map(m -> docs[m.slot].description)
+      .collect(Collectors.toList());
+  }
+
+  public Optional<IdpDescription> findByEntityId(String entityId) {
+    return Optional.ofNullable(byEntityId.get(entityId)).map(d -> d.description);
+  }
+
+  /**
+   * Returns all the indexed IdPs, in display order.
+   */
+  public List<IdpDescription> getIdps() {
+    return idps;
+  }
+
+  public int size() {
+    return docs.length;
+  }
+}
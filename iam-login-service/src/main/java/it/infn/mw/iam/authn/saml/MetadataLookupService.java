@@ -24,6 +24,12 @@ public interface MetadataLookupService {
   List<IdpDescription> lookupIdp(String text);
 
   List<IdpDescription> listIdps();
-  
+
+  /**
+   * Returns the UTF-8 encoded JSON representation of the IdPs shown by the discovery service when
+   * no search text is given.
+   */
+  byte[] getDefaultIdpListJson();
+
   void refreshMetadata();
 }
@@ -16,12 +16,13 @@
 package it.infn.mw.iam.authn.saml.web;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -41,17 +42,18 @@ public class SamlSsoController {
   @Autowired
   MetadataLookupService lookupService;
   
-  @RequestMapping(value = "/idps", method = RequestMethod.GET)
-  public @ResponseBody List<IdpDescription> idps(
-      @RequestParam(value = "q", required = false) String text) {
-
-    if (text == null) {
-      return lookupService.listIdps().stream().limit(20).collect(Collectors.toList());
-    }
-
+  @RequestMapping(value = "/idps", method = RequestMethod.GET, params = "q")
+  public @ResponseBody List<IdpDescription> idps(@RequestParam(value = "q") String text) {
     return lookupService.lookupIdp(text);
   }
 
+  @RequestMapping(value = "/idps", method = RequestMethod.GET, params = "!q")
+  public ResponseEntity<byte[]> defaultIdps() {
+    return ResponseEntity.ok()
+      .contentType(MediaType.APPLICATION_JSON_UTF8)
+      .body(lookupService.getDefaultIdpListJson());
+  }
+
 
   @RequestMapping(value = "/discovery", method = RequestMethod.GET)
   public String selectIdp(@RequestParam("entityID") String entityId,
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.user.search.AccountSearchIndex;
+import it.infn.mw.iam.core.user.search.TrigramAccountSearchIndex;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+@Configuration
+public class AccountSearchConfig {
+
+  @Bean
+  @ConditionalOnProperty(name = "iam.account-search.index.enabled", havingValue = "true",
+      matchIfMissing = true)
+  AccountSearchIndex accountSearchIndex(IamAccountRepository accountRepo,
+      CacheEvictionBroadcaster evictionBroadcaster) {
+
+    return new TrigramAccountSearchIndex(accountRepo, evictionBroadcaster);
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.config;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.actuator.metrics.AuditPipelinePublicMetrics;
+import it.infn.mw.iam.audit.AuditDataSerializer;
+import it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline;
+import it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline.OverflowPolicy;
+import it.infn.mw.iam.audit.pipeline.AuditEventPipeline;
+import it.infn.mw.iam.audit.pipeline.AuditEventSink;
+import it.infn.mw.iam.audit.pipeline.AuditEventSinkWriter;
+import it.infn.mw.iam.audit.pipeline.JdbcAuditEventSink;
+import it.infn.mw.iam.audit.pipeline.RollingFileAuditEventSink;
+import it.infn.mw.iam.audit.pipeline.Slf4jAuditEventSink;
+import it.infn.mw.iam.audit.pipeline.SynchronousAuditEventPipeline;
+
+@Configuration
+public class AuditConfig {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AuditConfig.class);
+
+  @Bean
+  AuditEventSinkWriter auditEventSinkWriter(AuditDataSerializer serializer, DataSource dataSource,
+      @Value("${iam.audit.sinks.slf4j.enabled:true}") boolean slf4jSinkEnabled,
+      @Value("${iam.audit.sinks.file.enabled:false}") boolean fileSinkEnabled,
+      @Value("${iam.audit.sinks.file.path:/var/log/iam/audit.log}") String filePath,
+      @Value("${iam.audit.sinks.file.max-size-bytes:104857600}") long fileMaxSizeBytes,
+      @Value("${iam.audit.sinks.file.max-files:10}") int fileMaxFiles,
+      @Value("${iam.audit.sinks.jdbc.enabled:false}") boolean jdbcSinkEnabled) {
+
+    List<AuditEventSink> sinks = Lists.newArrayList();
+
+    if (slf4jSinkEnabled) {
+      sinks.add(new Slf4jAuditEventSink());
+    }
+
+    if (fileSinkEnabled) {
+      sinks.add(new RollingFileAuditEventSink(filePath, fileMaxSizeBytes, fileMaxFiles));
+    }
+
+    if (jdbcSinkEnabled) {
+      sinks.add(new JdbcAuditEventSink(new JdbcTemplate(dataSource)));
+    }
+
+    LOG.info("Audit event sinks: {}",
+        sinks.stream().map(AuditEventSink::getName).collect(joining(", ")));
+
+    return new AuditEventSinkWriter(serializer, sinks);
+  }
+
+  @Bean
+  AuditEventPipeline auditEventPipeline(AuditEventSinkWriter writer,
+      @Value("${iam.audit.async.enabled:true}") boolean asyncEnabled,
+      @Value("${iam.audit.async.buffer-size:8192}") int bufferSize,
+      @Value("${iam.audit.async.batch-size:256}") int batchSize,
+      @Value("${iam.audit.async.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+      @Value("${iam.audit.async.block-timeout-msec:100}") long blockTimeoutMsec) {
+
+    if (!asyncEnabled) {
+      LOG.info("Audit events will be written synchronously");
+      return new SynchronousAuditEventPipeline(writer);
+    }
+
+    LOG.info("Audit events will be written asynchronously (buffer size: {}, overflow policy: {})",
+        bufferSize, overflowPolicy);
+
+    AsyncAuditEventPipeline pipeline = new AsyncAuditEventPipeline(writer, bufferSize, batchSize,
+        overflowPolicy, blockTimeoutMsec);
+    pipeline.start();
+    return pipeline;
+  }
+
+  @Bean
+  PublicMetrics auditPipelineMetrics(AuditEventSinkWriter writer, AuditEventPipeline pipeline) {
+    return new AuditPipelinePublicMetrics(writer, pipeline);
+  }
+}
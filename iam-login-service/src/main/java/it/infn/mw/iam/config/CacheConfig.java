@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.config;
+
+import java.time.Clock;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cache.JdbcCacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cache.NullCacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cache.SharedEntityCacheManager;
+
+@Configuration
+public class CacheConfig {
+
+  @Bean
+  CacheEvictionBroadcaster cacheEvictionBroadcaster(
+      @Value("${iam.cache.cluster-eviction.enabled:false}") boolean clusterEvictionEnabled,
+      @Value("${iam.cache.cluster-eviction.retention-msec:3600000}") long retentionMsec,
+      @Value("${iam.cache.cluster-eviction.late-commit-window-msec:60000}")
+      long lateCommitWindowMsec,
+      DataSource dataSource, Clock clock) {
+
+    if (clusterEvictionEnabled) {
+      return new JdbcCacheEvictionBroadcaster(new JdbcTemplate(dataSource), clock, retentionMsec,
+          lateCommitWindowMsec);
+    }
+
+    return new NullCacheEvictionBroadcaster();
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "iam.persistence.shared-cache.enabled", havingValue = "true")
+  SharedEntityCacheManager sharedEntityCacheManager(EntityManagerFactory emf,
+      CacheEvictionBroadcaster evictionBroadcaster,
+      @Value("${iam.persistence.shared-cache.ttl-secs:300}") long ttlSecs) {
+
+    return new SharedEntityCacheManager(emf, evictionBroadcaster,
+        JpaConfig.SHARED_CACHE_ENTITIES, ttlSecs);
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.config;
+
+import java.time.Clock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import it.infn.mw.iam.actuator.metrics.CleanupPublicMetrics;
+import it.infn.mw.iam.core.cleanup.ExpiredEntitiesCleanupEngine;
+import it.infn.mw.iam.persistence.repository.IamExpiredEntitiesRepository;
+
+@Configuration
+public class CleanupConfig {
+
+  @Bean
+  ExpiredEntitiesCleanupEngine expiredEntitiesCleanupEngine(IamExpiredEntitiesRepository repo,
+      Clock clock, @Value("${iam.cleanup.batch-size:1000}") int batchSize,
+      @Value("${iam.cleanup.pause-ratio:0.5}") double pauseRatio,
+      @Value("${iam.cleanup.max-pause-msec:5000}") long maxPauseMsec) {
+
+    return new ExpiredEntitiesCleanupEngine(repo, clock, batchSize, pauseRatio, maxPauseMsec);
+  }
+
+  @Bean
+  PublicMetrics cleanupMetrics(ExpiredEntitiesCleanupEngine engine) {
+    return new CleanupPublicMetrics(engine);
+  }
+}
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.context.embedded.FilterRegistrationBean;
 import org.springframework.boot.context.embedded.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -48,9 +49,12 @@ import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 
 import com.google.common.collect.Maps;
 
+import it.infn.mw.iam.actuator.metrics.CacheStatsPublicMetrics;
+import it.infn.mw.iam.actuator.metrics.NotificationDeliveryPublicMetrics;
 import it.infn.mw.iam.api.account.AccountUtils;
 import it.infn.mw.iam.api.aup.AUPSignatureCheckService;
 import it.infn.mw.iam.authn.ExternalAuthenticationInfoProcessor;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
 import it.infn.mw.iam.core.oauth.IamIntrospectionResultAssembler;
 import it.infn.mw.iam.core.oauth.profile.IamTokenEnhancer;
 import it.infn.mw.iam.core.oauth.profile.JWTProfile;
@@ -75,7 +79,11 @@ import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatchersProperties;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatchersPropertiesParser;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
+import it.infn.mw.iam.core.user.SynchronousLastLoginTimeRecorder;
+import it.infn.mw.iam.core.user.WriteBehindLastLoginTimeRecorder;
 import it.infn.mw.iam.core.web.EnforceAupFilter;
+import it.infn.mw.iam.notification.NotificationDelivery;
 import it.infn.mw.iam.notification.NotificationProperties;
 import it.infn.mw.iam.notification.service.resolver.AddressResolutionService;
 import it.infn.mw.iam.notification.service.resolver.AdminNotificationDeliveryStrategy;
@@ -181,10 +189,13 @@ public class IamConfig {
   }
 
   @Bean
-  JWTProfileResolver jwtProfileResolver(@Qualifier("iamJwtProfile") JWTProfile iamProfile,
+  ScopeAwareProfileResolver jwtProfileResolver(@Qualifier("iamJwtProfile") JWTProfile iamProfile,
       @Qualifier("wlcgJwtProfile") JWTProfile wlcgProfile,
       @Qualifier("aarcJwtProfile") JWTProfile aarcProfile, IamProperties properties,
-      ClientDetailsService clientDetailsService) {
+      @Qualifier("iamClientDetailsEntityService") ClientDetailsService clientDetailsService,
+      CacheEvictionBroadcaster evictionBroadcaster,
+      @Value("${iam.jwt-profile.cache.max-size:1000}") long cacheMaxSize,
+      @Value("${iam.jwt-profile.cache.ttl-secs:300}") long cacheTtlSecs) {
 
     JWTProfile defaultProfile = iamProfile;
 
@@ -204,7 +215,18 @@ public class IamConfig {
     profileMap.put(AARC_PROFILE_ID, aarcProfile);
 
     LOG.info("Default JWT profile: {}", defaultProfile.name());
-    return new ScopeAwareProfileResolver(defaultProfile, profileMap, clientDetailsService);
+    return new ScopeAwareProfileResolver(defaultProfile, profileMap, clientDetailsService,
+        evictionBroadcaster, cacheMaxSize, cacheTtlSecs);
+  }
+
+  @Bean
+  PublicMetrics jwtProfileResolverMetrics(ScopeAwareProfileResolver resolver) {
+    return new CacheStatsPublicMetrics("jwt-profile", resolver.getProfileCache());
+  }
+
+  @Bean
+  PublicMetrics notificationDeliveryMetrics(NotificationDelivery delivery) {
+    return new NotificationDeliveryPublicMetrics(delivery);
   }
 
   @Bean
@@ -212,6 +234,19 @@ public class IamConfig {
     return Clock.systemDefaultZone();
   }
 
+  @Bean
+  LastLoginTimeRecorder lastLoginTimeRecorder(IamAccountRepository accountRepo, Clock clock,
+      @Value("${iam.last-login-time.write-behind.enabled:true}") boolean writeBehindEnabled,
+      @Value("${iam.last-login-time.write-behind.max-pending:10000}") int maxPending,
+      @Value("${iam.last-login-time.write-behind.batch-size:500}") int batchSize) {
+
+    if (writeBehindEnabled) {
+      return new WriteBehindLastLoginTimeRecorder(accountRepo, clock, maxPending, batchSize);
+    }
+
+    return new SynchronousLastLoginTimeRecorder(accountRepo);
+  }
+
   @Bean
   AuthorizationCodeServices authorizationCodeServices() {
     return new DefaultOAuth2AuthorizationCodeService();
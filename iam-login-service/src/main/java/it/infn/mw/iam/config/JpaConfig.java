@@ -16,11 +16,16 @@
 package it.infn.mw.iam.config;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import javax.persistence.Entity;
 import javax.sql.DataSource;
 
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.SystemScope;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
 import org.springframework.boot.autoconfigure.orm.jpa.JpaBaseConfiguration;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
@@ -34,13 +39,38 @@ import org.springframework.orm.jpa.vendor.EclipseLinkJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import com.google.common.collect.ImmutableList;
+
+import it.infn.mw.iam.persistence.customizer.TokenUserNameSessionCustomizer;
+import it.infn.mw.iam.persistence.model.IamAup;
+import it.infn.mw.iam.persistence.model.IamAuthority;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+
 @Configuration
 @EnableTransactionManagement
 public class JpaConfig extends JpaBaseConfiguration {
 
+  /**
+   * Read-mostly entities that are kept in the EclipseLink shared (L2) cache when
+   * <code>iam.persistence.shared-cache.enabled</code> is true. All other entities stay isolated.
+   */
+  public static final List<Class<?>> SHARED_CACHE_ENTITIES =
+      ImmutableList.of(IamGroup.class, IamAuthority.class, IamScopePolicy.class, IamAup.class,
+          SystemScope.class, ClientDetailsEntity.class);
+
   @Autowired
   DataSource dataSource;
 
+  @Value("${iam.persistence.static-weaving:false}")
+  boolean staticWeaving;
+
+  @Value("${iam.persistence.shared-cache.enabled:false}")
+  boolean sharedCacheEnabled;
+
+  @Value("${iam.persistence.shared-cache.size:1000}")
+  int sharedCacheSize;
+
   @Override
   protected AbstractJpaVendorAdapter createJpaVendorAdapter() {
 
@@ -52,10 +82,19 @@ public class JpaConfig extends JpaBaseConfiguration {
 
     Map<String, Object> map = new HashMap<>();
 
-    map.put("eclipselink.weaving", "false");
+    map.put("eclipselink.weaving", staticWeaving ? "static" : "false");
     map.put("eclipselink.logging.level", "INFO");
     map.put("eclipselink.logging.level.sql", "OFF");
     map.put("eclipselink.cache.shared.default", "false");
+    map.put("eclipselink.session.customizer", TokenUserNameSessionCustomizer.class.getName());
+
+    if (sharedCacheEnabled) {
+      for (Class<?> entityClass : SHARED_CACHE_ENTITIES) {
+        String entityName = entityName(entityClass);
+        map.put("eclipselink.cache.shared." + entityName, "true");
+        map.put("eclipselink.cache.size." + entityName, Integer.toString(sharedCacheSize));
+      }
+    }
 
     if (System.getProperty("iam.show_sql") != null) {
       map.put("eclipselink.logging.level", "FINE");
@@ -74,6 +113,16 @@ public class JpaConfig extends JpaBaseConfiguration {
 
   }
 
+  private static String entityName(Class<?> entityClass) {
+    Entity entity = entityClass.getAnnotation(Entity.class);
+
+    if (entity != null && !entity.name().isEmpty()) {
+      return entity.name();
+    }
+
+    return entityClass.getSimpleName();
+  }
+
   @Override
   public LocalContainerEntityManagerFactoryBean entityManagerFactory(
 
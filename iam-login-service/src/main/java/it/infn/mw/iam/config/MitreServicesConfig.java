@@ -31,7 +31,6 @@ import org.mitre.oauth2.service.SystemScopeService;
 import org.mitre.oauth2.service.impl.BlacklistAwareRedirectResolver;
 import org.mitre.oauth2.service.impl.DefaultClientUserDetailsService;
 import org.mitre.oauth2.service.impl.DefaultDeviceCodeService;
-import org.mitre.oauth2.service.impl.DefaultOAuth2ClientDetailsEntityService;
 import org.mitre.oauth2.service.impl.DefaultOAuth2ProviderTokenService;
 import org.mitre.oauth2.web.CorsFilter;
 import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
@@ -45,13 +44,11 @@ import org.mitre.openid.connect.service.LoginHintExtracter;
 import org.mitre.openid.connect.service.OIDCTokenService;
 import org.mitre.openid.connect.service.PairwiseIdentiferService;
 import org.mitre.openid.connect.service.StatsService;
-import org.mitre.openid.connect.service.UserInfoService;
 import org.mitre.openid.connect.service.WhitelistedSiteService;
 import org.mitre.openid.connect.service.impl.DefaultApprovedSiteService;
 import org.mitre.openid.connect.service.impl.DefaultBlacklistedSiteService;
 import org.mitre.openid.connect.service.impl.DefaultOIDCTokenService;
 import org.mitre.openid.connect.service.impl.DefaultStatsService;
-import org.mitre.openid.connect.service.impl.DefaultUserInfoService;
 import org.mitre.openid.connect.service.impl.DefaultWhitelistedSiteService;
 import org.mitre.openid.connect.service.impl.DummyResourceSetService;
 import org.mitre.openid.connect.service.impl.InMemoryClientLogoLoadingService;
@@ -68,6 +65,7 @@ import org.mitre.openid.connect.web.UserInfoInterceptor;
 import org.mitre.uma.service.ResourceSetService;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.context.embedded.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -84,15 +82,21 @@ import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import com.google.common.collect.Sets;
 
+import it.infn.mw.iam.actuator.metrics.CacheStatsPublicMetrics;
 import it.infn.mw.iam.authn.oidc.RestTemplateFactory;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
 import it.infn.mw.iam.core.oauth.IamJWKSetCacheService;
 import it.infn.mw.iam.core.oauth.IamOAuth2RequestFactory;
+import it.infn.mw.iam.core.oauth.client.CachingClientDetailsEntityService;
+import it.infn.mw.iam.core.oauth.client.IamClientDetailsEntityService;
 import it.infn.mw.iam.core.oauth.profile.JWTProfileResolver;
 import it.infn.mw.iam.core.oauth.scope.IamSystemScopeService;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherOAuthRequestValidator;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.pdp.IamScopeFilter;
 import it.infn.mw.iam.core.oidc.IamClientValidationService;
+import it.infn.mw.iam.core.userinfo.CachingUserInfoService;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @Configuration
 public class MitreServicesConfig {
@@ -172,15 +176,32 @@ public class MitreServicesConfig {
 
   @Bean
   OAuth2RequestFactory requestFactory(IamScopeFilter scopeFilter,
-      JWTProfileResolver profileResolver) {
-    return new IamOAuth2RequestFactory(clientDetailsEntityService(), scopeFilter, profileResolver);
+      JWTProfileResolver profileResolver,
+      @Qualifier("iamClientDetailsEntityService") ClientDetailsEntityService clientService) {
+    return new IamOAuth2RequestFactory(clientService, scopeFilter, profileResolver);
   }
 
   @Bean
-  @Qualifier("iamClientDetailsEntityService")
+  @Primary
   ClientDetailsEntityService clientDetailsEntityService() {
 
-    return new DefaultOAuth2ClientDetailsEntityService();
+    return new IamClientDetailsEntityService();
+  }
+
+  @Bean
+  @Qualifier("iamClientDetailsEntityService")
+  CachingClientDetailsEntityService cachingClientDetailsEntityService(
+      CacheEvictionBroadcaster evictionBroadcaster,
+      @Value("${iam.client-cache.max-size:10000}") long cacheMaxSize,
+      @Value("${iam.client-cache.ttl-secs:300}") long cacheTtlSecs) {
+
+    return new CachingClientDetailsEntityService(evictionBroadcaster, cacheMaxSize, cacheTtlSecs);
+  }
+
+  @Bean
+  PublicMetrics clientDetailsCacheMetrics(CachingClientDetailsEntityService clientService) {
+    return new CacheStatsPublicMetrics(CachingClientDetailsEntityService.CACHE_NAME,
+        clientService.getClientCache());
   }
 
   @Bean
@@ -331,9 +352,21 @@ public class MitreServicesConfig {
   }
 
   @Bean
-  UserInfoService defaultUserInfoService() {
+  CachingUserInfoService defaultUserInfoService(IamAccountRepository accountRepo,
+      @Qualifier("iamClientDetailsEntityService") ClientDetailsEntityService clientService,
+      PairwiseIdentiferService pairwiseIdentifierService,
+      CacheEvictionBroadcaster evictionBroadcaster,
+      @Value("${iam.userinfo-cache.max-size:10000}") long cacheMaxSize,
+      @Value("${iam.userinfo-cache.ttl-secs:300}") long cacheTtlSecs) {
 
-    return new DefaultUserInfoService();
+    return new CachingUserInfoService(accountRepo, clientService, pairwiseIdentifierService,
+        evictionBroadcaster, cacheMaxSize, cacheTtlSecs);
+  }
+
+  @Bean
+  PublicMetrics userInfoCacheMetrics(CachingUserInfoService userInfoService) {
+    return new CacheStatsPublicMetrics(CachingUserInfoService.CACHE_NAME,
+        userInfoService.getSnapshotCache());
   }
 
   @Bean
@@ -15,36 +15,64 @@
  */
 package it.infn.mw.iam.config;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.ACCESS_TOKENS;
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.APPROVED_SITES;
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.DEVICE_CODES;
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.REFRESH_TOKENS;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
-import org.mitre.oauth2.service.DeviceCodeService;
-import org.mitre.oauth2.service.OAuth2TokenEntityService;
-import org.mitre.openid.connect.service.ApprovedSiteService;
+import javax.sql.DataSource;
+
+import org.mitre.data.DefaultPageCriteria;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.service.AuthenticationHolderEntityService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 
+import it.infn.mw.iam.actuator.endpoint.ScheduledTasksEndpoint;
+import it.infn.mw.iam.actuator.metrics.ScheduledTasksPublicMetrics;
 import it.infn.mw.iam.config.lifecycle.LifecycleProperties;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cleanup.ExpiredEntitiesCleanupEngine;
 import it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler;
+import it.infn.mw.iam.core.task.IamTaskConfigurer;
+import it.infn.mw.iam.core.task.IamTaskScheduler;
+import it.infn.mw.iam.core.task.JdbcTaskLeaderElection;
+import it.infn.mw.iam.core.task.NullTaskLeaderElection;
+import it.infn.mw.iam.core.task.TaskFamily;
+import it.infn.mw.iam.core.task.TaskLeaderElection;
 import it.infn.mw.iam.core.user.IamAccountService;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
+import it.infn.mw.iam.core.user.search.AccountSearchIndex;
 import it.infn.mw.iam.notification.NotificationDelivery;
 import it.infn.mw.iam.notification.NotificationDeliveryTask;
 import it.infn.mw.iam.notification.service.NotificationStoreService;
 
 @Configuration
-@EnableScheduling
 @Profile({"prod", "dev"})
-public class TaskConfig implements SchedulingConfigurer {
+public class TaskConfig implements SmartInitializingSingleton {
 
   public static final Logger LOG = LoggerFactory.getLogger(TaskConfig.class);
 
@@ -56,11 +84,26 @@ public class TaskConfig implements SchedulingConfigurer {
   public static final long ONE_HOUR_MSEC = 60 * ONE_MINUTE_MSEC;
   public static final long ONE_DAY_MSEC = 24 * ONE_HOUR_MSEC;
 
+  public static final int ORPHANED_HOLDERS_PAGE_SIZE = 1000;
+
+  public static final String TOKEN_CLEANUP_TASK = "token-cleanup";
+  public static final String APPROVAL_CLEANUP_TASK = "approval-cleanup";
+  public static final String NOTIFICATION_CLEANUP_TASK = "notification-cleanup";
+  public static final String DEVICE_CODE_CLEANUP_TASK = "device-code-cleanup";
+  public static final String NOTIFICATION_DELIVERY_TASK = "notification-delivery";
+  public static final String EXPIRED_ACCOUNTS_TASK = "expired-accounts";
+  public static final String LAST_LOGIN_TIME_FLUSH_TASK = "last-login-time-flush";
+  public static final String CACHE_EVICTIONS_TASK = "cache-evictions";
+  public static final String ACCOUNT_SEARCH_INDEX_REBUILD_TASK = "account-search-index-rebuild";
+
   @Autowired
-  OAuth2TokenEntityService tokenEntityService;
+  ApplicationContext applicationContext;
 
   @Autowired
-  ApprovedSiteService approvedSiteService;
+  ExpiredEntitiesCleanupEngine cleanupEngine;
+
+  @Autowired
+  AuthenticationHolderEntityService authenticationHolderService;
 
   @Autowired
   NotificationStoreService notificationStoreService;
@@ -71,9 +114,6 @@ public class TaskConfig implements SchedulingConfigurer {
   @Autowired
   IamAccountService accountService;
 
-  @Autowired
-  DeviceCodeService deviceCodeService;
-
   @Autowired
   NotificationDeliveryTask deliveryTask;
 
@@ -83,43 +123,162 @@ public class TaskConfig implements SchedulingConfigurer {
   @Autowired
   ExpiredAccountsHandler expiredAccountsHandler;
 
+  @Autowired
+  CacheEvictionBroadcaster cacheEvictionBroadcaster;
+
+  @Autowired
+  LastLoginTimeRecorder lastLoginTimeRecorder;
+
+  @Autowired(required = false)
+  AccountSearchIndex accountSearchIndex;
+
   @Value("${notification.disable}")
   boolean notificationDisabled;
 
   @Value("${notification.taskDelay}")
   long notificationTaskPeriodMsec;
 
+  @Value("${task.tokenCleanupPeriodMsec}")
+  long tokenCleanupPeriodMsec;
+
+  @Value("${task.approvalCleanupPeriodMsec}")
+  long approvalCleanupPeriodMsec;
+
+  @Value("${task.deviceCodeCleanupPeriodMsec}")
+  long deviceCodeCleanupPeriodMsec;
+
+  @Value("${iam.last-login-time.write-behind.flush-period-msec:10000}")
+  long lastLoginTimeFlushPeriodMsec;
+
+  @Value("${iam.cache.cluster-eviction.enabled:false}")
+  boolean clusterCacheEvictionEnabled;
+
+  @Value("${iam.cache.cluster-eviction.poll-period-msec:10000}")
+  long clusterCacheEvictionPollPeriodMsec;
+
+  @Value("${iam.account-search.index.rebuild-period-msec:3600000}")
+  long accountSearchIndexRebuildPeriodMsec;
+
+  private static String defaultNodeId() {
+    String hostname;
+
+    try {
+      hostname = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      hostname = "unknown";
+    }
+
+    return hostname + "-" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  @Bean
+  public TaskLeaderElection taskLeaderElection(
+      @Value("${iam.task.leader-election.enabled:false}") boolean leaderElectionEnabled,
+      @Value("${iam.task.leader-election.node-id:}") String nodeId,
+      @Value("${iam.task.leader-election.lease-duration-msec:60000}") long leaseDurationMsec,
+      DataSource dataSource, Clock clock) {
+
+    if (leaderElectionEnabled) {
+      return new JdbcTaskLeaderElection(new JdbcTemplate(dataSource), clock,
+          Strings.isNullOrEmpty(nodeId) ? defaultNodeId() : nodeId, leaseDurationMsec);
+    }
+
+    return new NullTaskLeaderElection();
+  }
+
+  @Bean
+  public IamTaskScheduler iamTaskScheduler(TaskLeaderElection leaderElection,
+      @Value("${iam.task.pool-size.cleanup:2}") int cleanupPoolSize,
+      @Value("${iam.task.pool-size.notification:1}") int notificationPoolSize,
+      @Value("${iam.task.pool-size.lifecycle:2}") int lifecyclePoolSize,
+      @Value("${iam.task.pool-size.replica:2}") int replicaPoolSize) {
+
+    Map<TaskFamily, Integer> poolSizes = new EnumMap<>(TaskFamily.class);
+    poolSizes.put(TaskFamily.CLEANUP, cleanupPoolSize);
+    poolSizes.put(TaskFamily.NOTIFICATION, notificationPoolSize);
+    poolSizes.put(TaskFamily.LIFECYCLE, lifecyclePoolSize);
+    poolSizes.put(TaskFamily.REPLICA, replicaPoolSize);
 
-  @Bean(destroyMethod = "shutdown")
-  public ScheduledExecutorService taskScheduler() {
-    return Executors.newSingleThreadScheduledExecutor();
+    return new IamTaskScheduler(poolSizes, leaderElection);
+  }
+
+  @Bean
+  public ScheduledTasksEndpoint scheduledTasksEndpoint(IamTaskScheduler scheduler) {
+    return new ScheduledTasksEndpoint(scheduler);
+  }
+
+  @Bean
+  public PublicMetrics scheduledTasksMetrics(IamTaskScheduler scheduler) {
+    return new ScheduledTasksPublicMetrics(scheduler);
+  }
+
+  private void clearOrphanedAuthenticationHolders() {
+    List<AuthenticationHolderEntity> holders;
+
+    do {
+      holders = authenticationHolderService.getOrphanedAuthenticationHolders(
+          new DefaultPageCriteria(0, ORPHANED_HOLDERS_PAGE_SIZE));
+      holders.forEach(authenticationHolderService::remove);
+    } while (holders.size() == ORPHANED_HOLDERS_PAGE_SIZE);
+  }
+
+  /**
+   * Waits for a cleanup running on the cleanup engine threads, so that the managed task running
+   * it accounts for the whole cleanup and for its failures.
+   */
+  private static void awaitCleanup(CompletableFuture<Void> cleanup) {
+    try {
+      cleanup.join();
+    } catch (CompletionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw e;
+    }
   }
 
-  @Scheduled(fixedDelayString = "${task.tokenCleanupPeriodMsec}", initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredTokens() {
 
-    tokenEntityService.clearExpiredTokens();
+    // Access and refresh tokens are deleted in parallel on the cleanup engine threads
+    awaitCleanup(cleanupEngine.cleanupAsync(ACCESS_TOKENS, REFRESH_TOKENS));
+    clearOrphanedAuthenticationHolders();
   }
 
-  @Scheduled(fixedDelayString = "${task.approvalCleanupPeriodMsec}",
-      initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredSites() {
 
-    approvedSiteService.clearExpiredSites();
+    awaitCleanup(cleanupEngine.cleanupAsync(APPROVED_SITES));
   }
 
-  @Scheduled(fixedDelay = THIRTY_SECONDS_MSEC, initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredNotifications() {
     notificationStoreService.clearExpiredNotifications();
   }
 
-  @Scheduled(fixedDelayString = "${task.deviceCodeCleanupPeriodMsec}",
-      initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredDeviceCodes() {
-    deviceCodeService.clearExpiredDeviceCodes();
+    awaitCleanup(cleanupEngine.cleanupAsync(DEVICE_CODES));
+  }
+
+  public void flushLastLoginTimes() {
+    lastLoginTimeRecorder.flush();
   }
 
-  public void schedulePendingNotificationsDelivery(final ScheduledTaskRegistrar taskRegistrar) {
+  public void scheduleCleanupTasks(final IamTaskScheduler scheduler) {
+    scheduler.scheduleWithFixedDelay(TOKEN_CLEANUP_TASK, TaskFamily.CLEANUP,
+        this::clearExpiredTokens, TEN_MINUTES_MSEC, tokenCleanupPeriodMsec);
+
+    scheduler.scheduleWithFixedDelay(APPROVAL_CLEANUP_TASK, TaskFamily.CLEANUP,
+        this::clearExpiredSites, TEN_MINUTES_MSEC, approvalCleanupPeriodMsec);
+
+    scheduler.scheduleWithFixedDelay(NOTIFICATION_CLEANUP_TASK, TaskFamily.CLEANUP,
+        this::clearExpiredNotifications, TEN_MINUTES_MSEC, THIRTY_SECONDS_MSEC);
+
+    scheduler.scheduleWithFixedDelay(DEVICE_CODE_CLEANUP_TASK, TaskFamily.CLEANUP,
+        this::clearExpiredDeviceCodes, TEN_MINUTES_MSEC, deviceCodeCleanupPeriodMsec);
+  }
+
+  public void scheduleLastLoginTimesFlushTask(final IamTaskScheduler scheduler) {
+    scheduler.scheduleWithFixedDelay(LAST_LOGIN_TIME_FLUSH_TASK, TaskFamily.REPLICA,
+        this::flushLastLoginTimes, TEN_SECONDS_MSEC, lastLoginTimeFlushPeriodMsec);
+  }
+
+  public void schedulePendingNotificationsDelivery(final IamTaskScheduler scheduler) {
 
     if (notificationTaskPeriodMsec < 0) {
       LOG.info("Period notification delivery task will NOT be scheduled, since "
@@ -130,25 +289,63 @@ public class TaskConfig implements SchedulingConfigurer {
     LOG.info("Scheduling pending notification delivery task to run every {} sec",
         TimeUnit.MILLISECONDS.toSeconds(notificationTaskPeriodMsec));
 
-    taskRegistrar.addFixedRateTask(deliveryTask, notificationTaskPeriodMsec);
+    scheduler.scheduleAtFixedRate(NOTIFICATION_DELIVERY_TASK, TaskFamily.NOTIFICATION,
+        deliveryTask, 0, notificationTaskPeriodMsec);
   }
 
-  public void scheduledExpiredAccountsTask(final ScheduledTaskRegistrar taskRegistrar) {
+  public void scheduledExpiredAccountsTask(final IamTaskScheduler scheduler) {
     if (!lifecycleProperties.getAccount().getExpiredAccountsTask().isEnabled()) {
       LOG.info("Expired accounts task is disabled");
     } else {
       final String cronSchedule =
           lifecycleProperties.getAccount().getExpiredAccountsTask().getCronSchedule();
       LOG.info("Scheduling expired accounts handler task with schedule: {}", cronSchedule);
-      taskRegistrar.addCronTask(expiredAccountsHandler, cronSchedule);
+      scheduler.scheduleCron(EXPIRED_ACCOUNTS_TASK, TaskFamily.LIFECYCLE,
+          expiredAccountsHandler, cronSchedule);
+    }
+  }
+
+  public void scheduleRemoteCacheEvictionsTask(final IamTaskScheduler scheduler) {
+    if (!clusterCacheEvictionEnabled) {
+      LOG.info("Cluster cache eviction is disabled");
+      return;
     }
+
+    LOG.info("Scheduling remote cache evictions processing task to run every {} msec",
+        clusterCacheEvictionPollPeriodMsec);
+
+    scheduler.scheduleWithFixedDelay(CACHE_EVICTIONS_TASK, TaskFamily.REPLICA,
+        cacheEvictionBroadcaster::processRemoteEvictions, 0, clusterCacheEvictionPollPeriodMsec);
+  }
+
+  public void scheduleAccountSearchIndexRebuildTask(final IamTaskScheduler scheduler) {
+    if (accountSearchIndex == null) {
+      LOG.info("Account search index is disabled");
+      return;
+    }
+
+    LOG.info("Scheduling account search index rebuild task to run every {} msec",
+        accountSearchIndexRebuildPeriodMsec);
+
+    // The first run builds the index at startup, so that searches don't have to
+    scheduler.scheduleWithFixedDelay(ACCOUNT_SEARCH_INDEX_REBUILD_TASK, TaskFamily.REPLICA,
+        accountSearchIndex::rebuild, 0, accountSearchIndexRebuildPeriodMsec);
   }
 
   @Override
-  public void configureTasks(final ScheduledTaskRegistrar taskRegistrar) {
-    taskRegistrar.setScheduler(taskScheduler());
-    schedulePendingNotificationsDelivery(taskRegistrar);
-    scheduledExpiredAccountsTask(taskRegistrar);
+  public void afterSingletonsInstantiated() {
+    final IamTaskScheduler scheduler = applicationContext.getBean(IamTaskScheduler.class);
+
+    scheduleCleanupTasks(scheduler);
+    scheduleLastLoginTimesFlushTask(scheduler);
+    schedulePendingNotificationsDelivery(scheduler);
+    scheduledExpiredAccountsTask(scheduler);
+    scheduleRemoteCacheEvictionsTask(scheduler);
+    scheduleAccountSearchIndexRebuildTask(scheduler);
+
+    applicationContext.getBeansOfType(IamTaskConfigurer.class)
+      .values()
+      .forEach(c -> c.configureTasks(scheduler));
   }
 
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import it.infn.mw.iam.api.common.count.CachedTotalCountStrategy;
+import it.infn.mw.iam.api.common.count.ExactTotalCountStrategy;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
+
+@Configuration
+public class TotalCountConfig {
+
+  public enum TotalCountMode {
+    EXACT,
+    CACHED
+  }
+
+  @Bean
+  TotalCountStrategy totalCountStrategy(
+      @Value("${iam.paging.total-count.mode:CACHED}") TotalCountMode mode,
+      @Value("${iam.paging.total-count.cache.max-size:1000}") long maxSize,
+      @Value("${iam.paging.total-count.cache.ttl-secs:60}") long ttlSecs,
+      @Value("${iam.paging.total-count.exact-count-threshold:10000}") long exactCountThreshold) {
+
+    if (TotalCountMode.EXACT.equals(mode)) {
+      return new ExactTotalCountStrategy();
+    }
+
+    return new CachedTotalCountStrategy(maxSize, ttlSecs, exactCountThreshold);
+  }
+}
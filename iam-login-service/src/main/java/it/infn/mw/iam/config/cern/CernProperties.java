@@ -38,6 +38,12 @@ public class CernProperties {
     @Min(value = 5L)
     int pageSize = 50;
 
+    @Min(value = 1L)
+    int concurrency = 8;
+
+    @Min(value = 0L)
+    int requestsPerSecond = 20;
+
     public boolean isEnabled() {
       return enabled;
     }
@@ -61,6 +67,22 @@ public class CernProperties {
     public void setPageSize(int pageSize) {
       this.pageSize = pageSize;
     }
+
+    public int getConcurrency() {
+      return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+      this.concurrency = concurrency;
+    }
+
+    public int getRequestsPerSecond() {
+      return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(int requestsPerSecond) {
+      this.requestsPerSecond = requestsPerSecond;
+    }
   }
 
   public static class HrDbApiProperties {
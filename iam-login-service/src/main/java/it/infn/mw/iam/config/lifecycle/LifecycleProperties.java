@@ -31,6 +31,17 @@ public class LifecycleProperties {
     boolean enabled = true;
     String cronSchedule = "0 */5 * * * *";
 
+    @Min(value = 1L)
+    int batchSize = 500;
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
     public String getCronSchedule() {
       return cronSchedule;
     }
@@ -91,6 +102,7 @@ public class LifecycleProperties {
     @Valid
     ExpiredAccountPolicyProperties expiredAccountPolicy = new ExpiredAccountPolicyProperties();
     
+    @Valid
     TaskProperties expiredAccountsTask = new TaskProperties();
     
     boolean readOnlyEndTime  = false;
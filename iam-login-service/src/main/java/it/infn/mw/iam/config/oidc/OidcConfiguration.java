@@ -21,6 +21,13 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.http.client.HttpClient;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
 import org.mitre.oauth2.model.RegisteredClient;
 import org.mitre.openid.connect.client.OIDCAuthenticationProvider;
@@ -74,6 +81,7 @@ import it.infn.mw.iam.authn.oidc.service.NullClientConfigurationService;
 import it.infn.mw.iam.authn.oidc.service.OidcUserDetailsService;
 import it.infn.mw.iam.authn.util.SessionTimeoutHelper;
 import it.infn.mw.iam.core.IamThirdPartyIssuerService;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @Configuration
@@ -83,7 +91,7 @@ public class OidcConfiguration {
   private String iamBaseUrl;
 
   @Autowired
-  private IamAccountRepository accountRepo;
+  private LastLoginTimeRecorder lastLoginTimeRecorder;
 
   @Autowired
   private AUPSignatureCheckService aupSignatureCheckService;
@@ -128,9 +136,27 @@ public class OidcConfiguration {
 
   @Bean
   @Profile("!canl")
-  public RestTemplateFactory restTemplateFactory() {
-
-    return new DefaultRestTemplateFactory(new HttpComponentsClientHttpRequestFactory());
+  public RestTemplateFactory restTemplateFactory(
+      @Value("${iam.http-client.max-connections:50}") int maxConnections,
+      @Value("${iam.http-client.max-connections-per-route:20}") int maxConnectionsPerRoute) {
+
+    Registry<ConnectionSocketFactory> socketFactoryRegistry =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+          .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+          .register("http", PlainConnectionSocketFactory.getSocketFactory())
+          .build();
+
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+    HttpClient client = HttpClientBuilder.create()
+      .useSystemProperties()
+      .setConnectionManager(connectionManager)
+      .build();
+
+    return new DefaultRestTemplateFactory(new HttpComponentsClientHttpRequestFactory(client));
   }
 
   @Bean
@@ -154,7 +180,7 @@ public class OidcConfiguration {
         new RootIsDashboardSuccessHandler(iamBaseUrl, new HttpSessionRequestCache());
 
     EnforceAupSignatureSuccessHandler successHandler = new EnforceAupSignatureSuccessHandler(sa,
-        aupSignatureCheckService, accountUtils, accountRepo);
+        aupSignatureCheckService, accountUtils, lastLoginTimeRecorder);
 
     return new ExternalAuthenticationSuccessHandler(successHandler, "/");
   }
@@ -64,8 +64,6 @@ import org.springframework.core.annotation.Order;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
@@ -156,8 +154,12 @@ import it.infn.mw.iam.authn.saml.util.metadata.SirtfiAttributeMetadataFilter;
 import it.infn.mw.iam.authn.util.SessionTimeoutHelper;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.config.saml.SamlConfig.ServerProperties;
+import it.infn.mw.iam.core.task.IamTaskConfigurer;
+import it.infn.mw.iam.core.task.IamTaskScheduler;
+import it.infn.mw.iam.core.task.TaskFamily;
 import it.infn.mw.iam.core.time.SystemTimeProvider;
 import it.infn.mw.iam.core.user.IamAccountService;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @Configuration
@@ -165,10 +167,13 @@ import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 @Profile("saml")
 @EnableConfigurationProperties({IamSamlProperties.class,
     IamSamlJITAccountProvisioningProperties.class, ServerProperties.class})
-public class SamlConfig extends WebSecurityConfigurerAdapter implements SchedulingConfigurer {
+public class SamlConfig extends WebSecurityConfigurerAdapter implements IamTaskConfigurer {
 
   public static final Logger LOG = LoggerFactory.getLogger(SamlConfig.class);
 
+  public static final String PROVISIONED_ACCOUNTS_CLEANUP_TASK =
+      "saml-provisioned-accounts-cleanup";
+
   @Autowired
   ResourceLoader resourceLoader;
 
@@ -187,6 +192,9 @@ public class SamlConfig extends WebSecurityConfigurerAdapter implements Scheduli
   @Autowired
   IamAccountRepository repo;
 
+  @Autowired
+  LastLoginTimeRecorder lastLoginTimeRecorder;
+
   @Autowired
   IamAccountService accountService;
 
@@ -701,7 +709,8 @@ public class SamlConfig extends WebSecurityConfigurerAdapter implements Scheduli
         new HttpSessionRequestCache());
 
     EnforceAupSignatureSuccessHandler aup =
-        new EnforceAupSignatureSuccessHandler(sa, aupSignatureCheckService, accountUtils, repo);
+        new EnforceAupSignatureSuccessHandler(sa, aupSignatureCheckService, accountUtils,
+            lastLoginTimeRecorder);
 
     return new ExternalAuthenticationSuccessHandler(aup, "/");
   }
@@ -869,7 +878,7 @@ public class SamlConfig extends WebSecurityConfigurerAdapter implements Scheduli
         mappingResolver, validator, sessionTimeoutHelper));
   }
 
-  private void scheduleProvisionedAccountsCleanup(final ScheduledTaskRegistrar taskRegistrar) {
+  private void scheduleProvisionedAccountsCleanup(final IamTaskScheduler scheduler) {
 
     if (!jitProperties.getEnabled()) {
       LOG.info("Just-in-time account provisioning for SAML is DISABLED.");
@@ -886,16 +895,16 @@ public class SamlConfig extends WebSecurityConfigurerAdapter implements Scheduli
             + "days will be deleted",
         jitProperties.getCleanupTaskPeriodSec(), jitProperties.getInactiveAccountLifetimeDays());
 
-    taskRegistrar.addFixedRateTask(
+    scheduler.scheduleAtFixedRate(PROVISIONED_ACCOUNTS_CLEANUP_TASK, TaskFamily.LIFECYCLE,
         new CleanInactiveProvisionedAccounts(new SystemTimeProvider(), accountService,
             jitProperties.getInactiveAccountLifetimeDays()),
-        TimeUnit.SECONDS.toMillis(jitProperties.getCleanupTaskPeriodSec()));
+        0, TimeUnit.SECONDS.toMillis(jitProperties.getCleanupTaskPeriodSec()));
 
   }
 
   @Override
-  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
-    scheduleProvisionedAccountsCleanup(taskRegistrar);
+  public void configureTasks(IamTaskScheduler scheduler) {
+    scheduleProvisionedAccountsCleanup(scheduler);
   }
 
 }
@@ -177,8 +177,9 @@ public class IamApiSecurityConfig {
       // @formatter:off
       http
         .requestMatchers()
-          .antMatchers("/metrics", "/info", "/health", "/health/mail", "/health/external",
-              "/configprops", "/env", "/mappings", "/flyway", "/autoconfig", "/beans", "/dump", "/trace")
+          .antMatchers("/metrics", "/tasks", "/info", "/health", "/health/mail",
+              "/health/external", "/configprops", "/env", "/mappings", "/flyway", "/autoconfig",
+              "/beans", "/dump", "/trace")
         .and()
           .httpBasic()
           .authenticationEntryPoint(customAuthenticationEntyPoint)
@@ -192,7 +193,7 @@ public class IamApiSecurityConfig {
         .and()
           .authorizeRequests()
             .antMatchers(GET, "/info", "/health", "/health/mail", "/health/external").permitAll()
-            .antMatchers(GET, "/metrics").hasRole("ADMIN")
+            .antMatchers(GET, "/metrics", "/tasks").hasRole("ADMIN")
             .antMatchers(GET, "/configprops", "/env", "/mappings", 
                 "/flyway", "/autoconfig", "/beans", "/dump", "/trace").hasRole("SUPERUSER");
       // @formatter:on
@@ -62,7 +62,7 @@ import it.infn.mw.iam.authn.x509.IamX509PreauthenticationProcessingFilter;
 import it.infn.mw.iam.authn.x509.X509AuthenticationCredentialExtractor;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.IamLocalAuthenticationProvider;
-import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 
 @Configuration
 @EnableWebSecurity
@@ -103,7 +103,7 @@ public class IamWebSecurityConfig {
     private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private IamAccountRepository accountRepo;
+    private LastLoginTimeRecorder lastLoginTimeRecorder;
 
     @Autowired
     private AUPSignatureCheckService aupSignatureCheckService;
@@ -194,7 +194,7 @@ public class IamWebSecurityConfig {
           new RootIsDashboardSuccessHandler(iamBaseUrl, new HttpSessionRequestCache());
 
       return new EnforceAupSignatureSuccessHandler(delegate, aupSignatureCheckService, accountUtils,
-          accountRepo);
+          lastLoginTimeRecorder);
     }
   }
 
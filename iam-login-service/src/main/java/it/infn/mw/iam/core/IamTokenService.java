@@ -16,6 +16,7 @@
 package it.infn.mw.iam.core;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
@@ -31,6 +32,7 @@ import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
 import it.infn.mw.iam.persistence.repository.IamOAuthRefreshTokenRepository;
+import it.infn.mw.iam.persistence.repository.TokenKeyset;
 
 @Service("defaultOAuth2ProviderTokenService")
 @Primary
@@ -38,6 +40,8 @@ public class IamTokenService extends DefaultOAuth2ProviderTokenService {
 
   public static final Logger LOG = LoggerFactory.getLogger(IamTokenService.class);
 
+  public static final int USER_TOKENS_BATCH_SIZE = 1000;
+
   private final IamOAuthAccessTokenRepository accessTokenRepo;
   private final IamOAuthRefreshTokenRepository refreshTokenRepo;
 
@@ -54,15 +58,44 @@ public class IamTokenService extends DefaultOAuth2ProviderTokenService {
   public Set<OAuth2AccessTokenEntity> getAllAccessTokensForUser(String id) {
 
     Set<OAuth2AccessTokenEntity> results = Sets.newLinkedHashSet();
-    results.addAll(accessTokenRepo.findValidAccessTokensForUser(id, new Date()));
+    final Date now = new Date();
+    List<OAuth2AccessTokenEntity> batch;
+    TokenKeyset after = TokenKeyset.START;
+
+    do {
+      batch =
+          accessTokenRepo.findValidAccessTokensAfter(after, id, null, now, USER_TOKENS_BATCH_SIZE);
+      results.addAll(batch);
+
+      if (!batch.isEmpty()) {
+        OAuth2AccessTokenEntity last = batch.get(batch.size() - 1);
+        after = new TokenKeyset(last.getExpiration(), last.getId());
+      }
+    } while (batch.size() == USER_TOKENS_BATCH_SIZE);
+
     return results;
   }
 
 
   @Override
   public Set<OAuth2RefreshTokenEntity> getAllRefreshTokensForUser(String id) {
+
     Set<OAuth2RefreshTokenEntity> results = Sets.newLinkedHashSet();
-    results.addAll(refreshTokenRepo.findValidRefreshTokensForUser(id, new Date()));
+    final Date now = new Date();
+    List<OAuth2RefreshTokenEntity> batch;
+    TokenKeyset after = TokenKeyset.START;
+
+    do {
+      batch = refreshTokenRepo.findValidRefreshTokensAfter(after, id, null, now,
+          USER_TOKENS_BATCH_SIZE);
+      results.addAll(batch);
+
+      if (!batch.isEmpty()) {
+        OAuth2RefreshTokenEntity last = batch.get(batch.size() - 1);
+        after = new TokenKeyset(last.getExpiration(), last.getId());
+      }
+    } while (batch.size() == USER_TOKENS_BATCH_SIZE);
+
     return results;
   }
 
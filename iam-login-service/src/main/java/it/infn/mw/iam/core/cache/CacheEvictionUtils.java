@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cache;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class CacheEvictionUtils {
+
+  private CacheEvictionUtils() {
+    // prevent instantiation
+  }
+
+  /**
+   * Runs the eviction now and, if a transaction is active, once more when the transaction
+   * completes, since entries cached while the transaction is in progress could reflect
+   * uncommitted (or rolled back) changes.
+   */
+  public static void evictNowAndAfterCompletion(Runnable eviction) {
+    eviction.run();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager
+        .registerSynchronization(new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCompletion(int status) {
+            eviction.run();
+          }
+        });
+    }
+  }
+
+  /**
+   * Runs the cache update when the active transaction commits, or now if no transaction is
+   * active, for updates that must not be applied if the change they follow is rolled back.
+   */
+  public static void updateAfterCommit(Runnable update) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager
+        .registerSynchronization(new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            update.run();
+          }
+        });
+    } else {
+      update.run();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cache;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A {@link CacheEvictionBroadcaster} that records evictions in the <code>iam_cache_eviction</code>
+ * table. Each replica periodically reads the evictions recorded after the last one it has seen
+ * and applies them to its local caches.
+ *
+ * Ids are assigned at insert time, so a transaction that commits late can make visible an
+ * eviction with an id lower than the last one seen. To catch these, each poll also reads again
+ * the evictions created within the late commit window, skipping the ones already applied; the
+ * window must then cover the longest transaction recording an eviction, plus the clock skew
+ * between the replicas.
+ */
+public class JdbcCacheEvictionBroadcaster implements CacheEvictionBroadcaster {
+
+  public static final Logger LOG = LoggerFactory.getLogger(JdbcCacheEvictionBroadcaster.class);
+
+  private static final String INSERT_EVICTION =
+      "INSERT INTO iam_cache_eviction (cache_name, cache_key, creation_time) VALUES (?, ?, ?)";
+
+  private static final String SELECT_EVICTIONS =
+      "SELECT id, cache_name, cache_key, creation_time FROM iam_cache_eviction "
+          + "WHERE id > ? OR creation_time >= ? ORDER BY id";
+
+  private static final String SELECT_RECENT_EVICTIONS =
+      "SELECT id, creation_time FROM iam_cache_eviction WHERE creation_time >= ?";
+
+  private static final String SELECT_MAX_ID = "SELECT MAX(id) FROM iam_cache_eviction";
+
+  private static final String DELETE_OLD_EVICTIONS =
+      "DELETE FROM iam_cache_eviction WHERE creation_time < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Clock clock;
+  private final long retentionMsec;
+  private final long lateCommitWindowMsec;
+
+  private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+
+  // The creation time of the evictions already seen that are still within the late commit window,
+  // by id
+  private final Map<Long, Long> recentlySeen = new HashMap<>();
+
+  private Long lastSeenId;
+
+  public JdbcCacheEvictionBroadcaster(JdbcTemplate jdbcTemplate, Clock clock,
+      long retentionMsec, long lateCommitWindowMsec) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.clock = clock;
+    this.retentionMsec = retentionMsec;
+    this.lateCommitWindowMsec = lateCommitWindowMsec;
+  }
+
+  @Override
+  public void broadcastEviction(String cacheName, String key) {
+    jdbcTemplate.update(INSERT_EVICTION, cacheName, key, new Timestamp(clock.millis()));
+  }
+
+  @Override
+  public void registerEvictionHandler(String cacheName, Consumer<String> evictionHandler) {
+    handlers.computeIfAbsent(cacheName, n -> new CopyOnWriteArrayList<>()).add(evictionHandler);
+  }
+
+  protected void applyEviction(String cacheName, String key) {
+    LOG.debug("Applying eviction of key '{}' from cache '{}'", key, cacheName);
+    handlers.getOrDefault(cacheName, Collections.emptyList()).forEach(h -> h.accept(key));
+  }
+
+  @Override
+  public synchronized void processRemoteEvictions() {
+
+    final long now = clock.millis();
+    final Timestamp windowStart = new Timestamp(now - lateCommitWindowMsec);
+
+    if (lastSeenId == null) {
+      // Evictions recorded before startup are not applied, and must not be when read again
+      jdbcTemplate.query(SELECT_RECENT_EVICTIONS, rs -> {
+        recentlySeen.put(rs.getLong("id"), rs.getTimestamp("creation_time").getTime());
+      }, windowStart);
+
+      Long maxId = jdbcTemplate.queryForObject(SELECT_MAX_ID, Long.class);
+      lastSeenId = maxId == null ? 0L : maxId;
+      return;
+    }
+
+    // Evictions created before the window are not read again, so there's no need to remember them
+    recentlySeen.values().removeIf(t -> t < windowStart.getTime());
+
+    jdbcTemplate.query(SELECT_EVICTIONS, rs -> {
+      final long id = rs.getLong("id");
+      final long creationTime = rs.getTimestamp("creation_time").getTime();
+
+      lastSeenId = Math.max(lastSeenId, id);
+
+      if (recentlySeen.containsKey(id)) {
+        return;
+      }
+
+      if (creationTime >= windowStart.getTime()) {
+        recentlySeen.put(id, creationTime);
+      }
+
+      applyEviction(rs.getString("cache_name"), rs.getString("cache_key"));
+    }, lastSeenId, windowStart);
+
+    jdbcTemplate.update(DELETE_OLD_EVICTIONS, new Timestamp(now - retentionMsec));
+  }
+
+}
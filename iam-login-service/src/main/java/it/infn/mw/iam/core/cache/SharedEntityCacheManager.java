@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cache;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
+import static java.util.Objects.isNull;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.aup.AupEvent;
+import it.infn.mw.iam.audit.events.client.ClientEvent;
+import it.infn.mw.iam.audit.events.group.GroupEvent;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyEvent;
+import it.infn.mw.iam.persistence.model.IamAup;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+
+/**
+ * Manages the EclipseLink shared (L2) cache of the read-mostly entities.
+ *
+ * Changes committed through this replica are merged in the shared cache by EclipseLink itself;
+ * this component applies a time-to-live to the cached entities and, on IAM write events, evicts
+ * the affected entity class locally and on the other replicas, which would otherwise keep serving
+ * stale entities until they expire.
+ */
+public class SharedEntityCacheManager implements ApplicationListener<IamAuditApplicationEvent> {
+
+  public static final Logger LOG = LoggerFactory.getLogger(SharedEntityCacheManager.class);
+
+  public static final String CACHE_NAME = "jpa-shared-cache";
+
+  private final EntityManagerFactory emf;
+  private final CacheEvictionBroadcaster evictionBroadcaster;
+
+  public SharedEntityCacheManager(EntityManagerFactory emf,
+      CacheEvictionBroadcaster evictionBroadcaster, List<Class<?>> sharedEntities,
+      long ttlSecs) {
+    this.emf = emf;
+    this.evictionBroadcaster = evictionBroadcaster;
+
+    ServerSession session = emf.unwrap(JpaEntityManagerFactory.class).getServerSession();
+
+    for (Class<?> entityClass : sharedEntities) {
+      ClassDescriptor descriptor = session.getDescriptor(entityClass);
+      if (!isNull(descriptor)) {
+        descriptor.setCacheInvalidationPolicy(
+            new TimeToLiveCacheInvalidationPolicy(TimeUnit.SECONDS.toMillis(ttlSecs)));
+      }
+    }
+
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, this::evictEntityClass);
+  }
+
+  public void evictEntityClass(String className) {
+
+    if (isNull(className)) {
+      emf.getCache().evictAll();
+      return;
+    }
+
+    try {
+      emf.getCache().evict(Class.forName(className));
+    } catch (ClassNotFoundException e) {
+      LOG.warn("Cannot evict unknown entity class {} from the shared cache", className);
+    }
+  }
+
+  private Optional<Class<?>> affectedEntityClass(IamAuditApplicationEvent event) {
+    if (event instanceof GroupEvent) {
+      return Optional.of(IamGroup.class);
+    } else if (event instanceof ScopePolicyEvent) {
+      return Optional.of(IamScopePolicy.class);
+    } else if (event instanceof AupEvent) {
+      return Optional.of(IamAup.class);
+    } else if (event instanceof ClientEvent) {
+      return Optional.of(ClientDetailsEntity.class);
+    }
+
+    return Optional.empty();
+  }
+
+  @Override
+  public void onApplicationEvent(IamAuditApplicationEvent event) {
+    affectedEntityClass(event).ifPresent(entityClass -> {
+      final String className = entityClass.getName();
+      evictNowAndAfterCompletion(() -> evictEntityClass(className));
+      evictionBroadcaster.broadcastEviction(CACHE_NAME, className);
+    });
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cleanup;
+
+import java.util.Date;
+
+import it.infn.mw.iam.persistence.repository.IamExpiredEntitiesRepository;
+import it.infn.mw.iam.persistence.repository.TokenChunkDeletion;
+
+public enum CleanupTarget {
+
+  ACCESS_TOKENS("access-tokens") {
+    @Override
+    TokenChunkDeletion deleteExpired(IamExpiredEntitiesRepository repo, Date timestamp,
+        int count) {
+      return repo.deleteExpiredAccessTokens(timestamp, count);
+    }
+  },
+
+  REFRESH_TOKENS("refresh-tokens") {
+    @Override
+    TokenChunkDeletion deleteExpired(IamExpiredEntitiesRepository repo, Date timestamp,
+        int count) {
+      return repo.deleteExpiredRefreshTokens(timestamp, count);
+    }
+  },
+
+  APPROVED_SITES("approved-sites") {
+    @Override
+    TokenChunkDeletion deleteExpired(IamExpiredEntitiesRepository repo, Date timestamp,
+        int count) {
+      return repo.deleteExpiredApprovedSites(timestamp, count);
+    }
+  },
+
+  DEVICE_CODES("device-codes") {
+    @Override
+    TokenChunkDeletion deleteExpired(IamExpiredEntitiesRepository repo, Date timestamp,
+        int count) {
+      return repo.deleteExpiredDeviceCodes(timestamp, count);
+    }
+  };
+
+  private final String metricName;
+
+  private CleanupTarget(String metricName) {
+    this.metricName = metricName;
+  }
+
+  public String getMetricName() {
+    return metricName;
+  }
+
+  abstract TokenChunkDeletion deleteExpired(IamExpiredEntitiesRepository repo, Date timestamp,
+      int count);
+}
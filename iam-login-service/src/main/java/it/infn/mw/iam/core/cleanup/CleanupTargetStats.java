@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cleanup;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the cleanup of a {@link CleanupTarget}. The last run figures are updated when a
+ * run completes.
+ */
+public class CleanupTargetStats {
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final LongAdder deletedCount = new LongAdder();
+  private final LongAdder runCount = new LongAdder();
+
+  private volatile long lastRunDeletedCount;
+  private volatile long lastRunDurationMsec;
+  private volatile long lastRunTimestamp;
+
+  boolean tryStart() {
+    return running.compareAndSet(false, true);
+  }
+
+  void batchDeleted(long count) {
+    deletedCount.add(count);
+  }
+
+  void completed(long timestamp, long deleted, long durationMsec) {
+    lastRunTimestamp = timestamp;
+    lastRunDeletedCount = deleted;
+    lastRunDurationMsec = durationMsec;
+    runCount.increment();
+    running.set(false);
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  public long getDeletedCount() {
+    return deletedCount.sum();
+  }
+
+  public long getRunCount() {
+    return runCount.sum();
+  }
+
+  public long getLastRunDeletedCount() {
+    return lastRunDeletedCount;
+  }
+
+  public long getLastRunDurationMsec() {
+    return lastRunDurationMsec;
+  }
+
+  public long getLastRunTimestamp() {
+    return lastRunTimestamp;
+  }
+
+  public double getLastRunRowsPerSecond() {
+    return lastRunDeletedCount * 1000.0 / Math.max(1, lastRunDurationMsec);
+  }
+}
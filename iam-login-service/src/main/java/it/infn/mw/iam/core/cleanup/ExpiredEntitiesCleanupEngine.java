@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.cleanup;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.infn.mw.iam.persistence.repository.IamExpiredEntitiesRepository;
+import it.infn.mw.iam.persistence.repository.TokenChunkDeletion;
+
+/**
+ * Deletes expired OAuth entities in bounded batches, each committed in its own transaction.
+ *
+ * Each {@link CleanupTarget} is cleaned up by a worker thread of its own, so that the targets are
+ * processed in parallel and a large backlog on one table does not delay the others. Batches are
+ * deleted until one selects no rows. After each batch the worker pauses for a time proportional
+ * to how long the batch took, so that the cleanup yields to the rest of the application when the
+ * database is under load.
+ */
+public class ExpiredEntitiesCleanupEngine implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(ExpiredEntitiesCleanupEngine.class);
+
+  public static final String WORKER_THREAD_NAME_FORMAT = "iam-cleanup-%d";
+
+  private final IamExpiredEntitiesRepository repo;
+  private final Clock clock;
+  private final int batchSize;
+  private final double pauseRatio;
+  private final long maxPauseMsec;
+  private final ExecutorService executor;
+
+  private final Map<CleanupTarget, CleanupTargetStats> stats = new EnumMap<>(CleanupTarget.class);
+
+  public ExpiredEntitiesCleanupEngine(IamExpiredEntitiesRepository repo, Clock clock,
+      int batchSize, double pauseRatio, long maxPauseMsec) {
+    checkArgument(batchSize > 0, "batchSize must be a positive integer");
+    checkArgument(pauseRatio >= 0, "pauseRatio must not be negative");
+    this.repo = repo;
+    this.clock = clock;
+    this.batchSize = batchSize;
+    this.pauseRatio = pauseRatio;
+    this.maxPauseMsec = maxPauseMsec;
+    this.executor = Executors.newFixedThreadPool(CleanupTarget.values().length,
+        new ThreadFactoryBuilder().setNameFormat(WORKER_THREAD_NAME_FORMAT)
+          .setDaemon(true)
+          .build());
+
+    for (CleanupTarget t : CleanupTarget.values()) {
+      stats.put(t, new CleanupTargetStats());
+    }
+  }
+
+  private boolean pause(long batchDurationNanos) {
+    final long pauseMsec = Math.min(maxPauseMsec,
+        (long) (TimeUnit.NANOSECONDS.toMillis(batchDurationNanos) * pauseRatio));
+
+    if (pauseMsec <= 0) {
+      return true;
+    }
+
+    try {
+      Thread.sleep(pauseMsec);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private long deleteExpired(CleanupTarget target) {
+    final Date now = Date.from(clock.instant());
+    final long startTime = System.nanoTime();
+    long deleted = 0;
+    TokenChunkDeletion batch;
+
+    // Rows may be deleted concurrently (e.g. by a token revocation), so a batch that deletes fewer
+    // rows than it selected does not mean that no expired rows are left
+    do {
+      final long batchStartTime = System.nanoTime();
+      batch = target.deleteExpired(repo, now, batchSize);
+      deleted += batch.getDeletedCount();
+      stats.get(target).batchDeleted(batch.getDeletedCount());
+
+      if (batch.getDeletedCount() > 0) {
+        LOG.debug("Deleted {} expired {} ({} so far)", batch.getDeletedCount(),
+            target.getMetricName(), deleted);
+      }
+    } while (!batch.isEmpty() && pause(System.nanoTime() - batchStartTime));
+
+    final long durationMsec = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    stats.get(target).completed(clock.millis(), deleted, durationMsec);
+
+    if (deleted > 0) {
+      LOG.info("Deleted {} expired {} in {} msec ({} rows/sec)", deleted,
+          target.getMetricName(), durationMsec,
+          String.format("%.1f", stats.get(target).getLastRunRowsPerSecond()));
+    }
+
+    return deleted;
+  }
+
+  /**
+   * Deletes all the entities of the given target that are expired at the time of the call.
+   *
+   * @return the number of deleted entities, or 0 if a cleanup of the target is already running
+   */
+  public long cleanup(CleanupTarget target) {
+
+    if (!stats.get(target).tryStart()) {
+      LOG.debug("Cleanup of expired {} already in progress, skipping", target.getMetricName());
+      return 0;
+    }
+
+    try {
+      return deleteExpired(target);
+    } catch (RuntimeException e) {
+      stats.get(target).completed(clock.millis(), 0, 0);
+      throw e;
+    }
+  }
+
+  /**
+   * Schedules the cleanup of the given targets in parallel on the cleanup worker threads.
+   *
+   * @return a future that completes when the cleanup of all the given targets is over, and that
+   *         completes exceptionally if the cleanup of any of them fails
+   */
+  public CompletableFuture<Void> cleanupAsync(CleanupTarget... targets) {
+
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[targets.length];
+
+    for (int i = 0; i < targets.length; i++) {
+      final CleanupTarget target = targets[i];
+      futures[i] = CompletableFuture.runAsync(() -> {
+        try {
+          cleanup(target);
+        } catch (RuntimeException e) {
+          LOG.error("Error deleting expired {}: {}", target.getMetricName(), e.getMessage(), e);
+          throw e;
+        }
+      }, executor);
+    }
+
+    return CompletableFuture.allOf(futures);
+  }
+
+  public CleanupTargetStats getStats(CleanupTarget target) {
+    return stats.get(target);
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+}
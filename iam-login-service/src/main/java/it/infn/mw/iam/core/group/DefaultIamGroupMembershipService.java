@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.audit.events.group.GroupMembersUpdatedEvent;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+/**
+ * An {@link IamGroupMembershipService} that computes membership changes on account ids and
+ * writes them with batched statements on the account/group join table, so that the cost of an
+ * update doesn't depend on loading the member accounts.
+ *
+ * The join table is written with JDBC in the current transaction, bypassing the persistence
+ * context: membership collections of group and account entities already loaded in the current
+ * transaction are not updated.
+ */
+@Service
+@Transactional
+public class DefaultIamGroupMembershipService
+    implements IamGroupMembershipService, ApplicationEventPublisherAware {
+
+  public static final int BATCH_SIZE = 500;
+
+  static final String INSERT_MEMBERSHIP =
+      "INSERT INTO iam_account_group (account_id, group_id) VALUES (?, ?)";
+
+  static final String DELETE_MEMBERSHIP =
+      "DELETE FROM iam_account_group WHERE account_id = ? AND group_id = ?";
+
+  static final String DELETE_ALL_MEMBERSHIPS = "DELETE FROM iam_account_group WHERE group_id = ?";
+
+  static final String TOUCH_ACCOUNT = "UPDATE iam_account SET lastupdatetime = ? WHERE id = ?";
+
+  private final IamAccountRepository accountRepo;
+  private final IamGroupService groupService;
+  private final JdbcTemplate jdbcTemplate;
+  private final Clock clock;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  public DefaultIamGroupMembershipService(IamAccountRepository accountRepo,
+      IamGroupService groupService, DataSource dataSource, Clock clock) {
+    this.accountRepo = accountRepo;
+    this.groupService = groupService;
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.clock = clock;
+  }
+
+  private Set<IamAccountIds> currentMembers(IamGroup group) {
+    return Sets.newHashSet(accountRepo.findGroupMemberIds(group.getId()));
+  }
+
+  @Override
+  public GroupMembershipDiff addMembers(IamGroup group, Collection<IamAccountIds> accounts) {
+    checkNotNull(group, "Cannot update the members of a null group");
+
+    Set<IamAccountIds> members = currentMembers(group);
+    List<IamAccountIds> added = Lists.newArrayList();
+
+    for (IamAccountIds a : Sets.newLinkedHashSet(accounts)) {
+      if (!members.contains(a)) {
+        added.add(a);
+      }
+    }
+
+    return apply(group, new GroupMembershipDiff(added, Collections.emptyList()));
+  }
+
+  @Override
+  public GroupMembershipDiff removeMembers(IamGroup group, Collection<IamAccountIds> accounts) {
+    checkNotNull(group, "Cannot update the members of a null group");
+
+    Set<IamAccountIds> members = currentMembers(group);
+    List<IamAccountIds> removed = Lists.newArrayList();
+
+    for (IamAccountIds a : Sets.newLinkedHashSet(accounts)) {
+      if (members.contains(a)) {
+        removed.add(a);
+      }
+    }
+
+    return apply(group, new GroupMembershipDiff(Collections.emptyList(), removed));
+  }
+
+  @Override
+  public GroupMembershipDiff removeAllMembers(IamGroup group) {
+    checkNotNull(group, "Cannot update the members of a null group");
+
+    List<IamAccountIds> members = accountRepo.findGroupMemberIds(group.getId());
+
+    if (members.isEmpty()) {
+      return GroupMembershipDiff.NO_CHANGES;
+    }
+
+    entityManager.flush();
+    jdbcTemplate.update(DELETE_ALL_MEMBERSHIPS, group.getId());
+
+    GroupMembershipDiff diff = new GroupMembershipDiff(Collections.emptyList(), members);
+    touchMembersAndGroup(group, diff);
+    return diff;
+  }
+
+  @Override
+  public GroupMembershipDiff replaceMembers(IamGroup group, Collection<IamAccountIds> accounts) {
+    checkNotNull(group, "Cannot update the members of a null group");
+
+    Set<IamAccountIds> members = currentMembers(group);
+    Set<IamAccountIds> targetMembers = Sets.newLinkedHashSet(accounts);
+
+    List<IamAccountIds> added = Lists.newArrayList(Sets.difference(targetMembers, members));
+    List<IamAccountIds> removed = Lists.newArrayList(Sets.difference(members, targetMembers));
+
+    return apply(group, new GroupMembershipDiff(added, removed));
+  }
+
+  private GroupMembershipDiff apply(IamGroup group, GroupMembershipDiff diff) {
+
+    if (diff.isEmpty()) {
+      return diff;
+    }
+
+    // Make rows created earlier in this transaction visible to the JDBC statements
+    entityManager.flush();
+
+    final Long groupId = group.getId();
+
+    jdbcTemplate.batchUpdate(DELETE_MEMBERSHIP, diff.getRemoved(), BATCH_SIZE, (ps, a) -> {
+      ps.setLong(1, a.getId());
+      ps.setLong(2, groupId);
+    });
+
+    jdbcTemplate.batchUpdate(INSERT_MEMBERSHIP, diff.getAdded(), BATCH_SIZE, (ps, a) -> {
+      ps.setLong(1, a.getId());
+      ps.setLong(2, groupId);
+    });
+
+    touchMembersAndGroup(group, diff);
+    return diff;
+  }
+
+  private void touchMembersAndGroup(IamGroup group, GroupMembershipDiff diff) {
+
+    final Timestamp now = Timestamp.from(clock.instant());
+
+    List<IamAccountIds> touched = Lists.newArrayList(diff.getAdded());
+    touched.addAll(diff.getRemoved());
+
+    jdbcTemplate.batchUpdate(TOUCH_ACCOUNT, touched, BATCH_SIZE, (ps, a) -> {
+      ps.setTimestamp(1, now);
+      ps.setLong(2, a.getId());
+    });
+
+    group.touch(clock);
+    groupService.save(group);
+
+    eventPublisher.publishEvent(
+        new GroupMembersUpdatedEvent(this, group, diff.getAdded(), diff.getRemoved()));
+  }
+
+  @Override
+  public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    this.eventPublisher = applicationEventPublisher;
+  }
+}
@@ -30,6 +30,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -252,6 +253,16 @@ public class DefaultIamGroupService implements IamGroupService, ApplicationEvent
     return groupRepo.findAll(page);
   }
 
+  @Override
+  public long count(Specification<IamGroup> spec) {
+    return groupRepo.count(spec);
+  }
+
+  @Override
+  public Page<IamGroup> findAll(Specification<IamGroup> spec, Pageable page) {
+    return groupRepo.findAll(spec, page);
+  }
+
   @Override
   public IamGroup addLabel(IamGroup g, IamLabel l) {
     
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+
+/**
+ * The accounts added to and removed from a group by a membership update.
+ */
+public class GroupMembershipDiff {
+
+  public static final GroupMembershipDiff NO_CHANGES =
+      new GroupMembershipDiff(Collections.emptyList(), Collections.emptyList());
+
+  private final List<IamAccountIds> added;
+  private final List<IamAccountIds> removed;
+
+  public GroupMembershipDiff(Collection<IamAccountIds> added, Collection<IamAccountIds> removed) {
+    this.added = ImmutableList.copyOf(added);
+    this.removed = ImmutableList.copyOf(removed);
+  }
+
+  public List<IamAccountIds> getAdded() {
+    return added;
+  }
+
+  public List<IamAccountIds> getRemoved() {
+    return removed;
+  }
+
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty();
+  }
+}
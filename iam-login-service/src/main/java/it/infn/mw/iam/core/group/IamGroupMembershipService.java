@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import java.util.Collection;
+
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+/**
+ * Updates the member accounts of a group as a set: the requested membership is compared with the
+ * current one and only the differences are written.
+ *
+ * When the membership changes, the group is touched and a single
+ * {@link it.infn.mw.iam.audit.events.group.GroupMembersUpdatedEvent} describing the changes is
+ * published.
+ */
+public interface IamGroupMembershipService {
+
+  GroupMembershipDiff addMembers(IamGroup group, Collection<IamAccountIds> accounts);
+
+  GroupMembershipDiff removeMembers(IamGroup group, Collection<IamAccountIds> accounts);
+
+  GroupMembershipDiff removeAllMembers(IamGroup group);
+
+  GroupMembershipDiff replaceMembers(IamGroup group, Collection<IamAccountIds> accounts);
+}
@@ -19,6 +19,7 @@ import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 
 import it.infn.mw.iam.persistence.model.IamGroup;
 import it.infn.mw.iam.persistence.model.IamLabel;
@@ -27,6 +28,9 @@ public interface IamGroupService {
   
   long countAllGroups();
   Page<IamGroup> findAll(Pageable page);
+
+  long count(Specification<IamGroup> spec);
+  Page<IamGroup> findAll(Specification<IamGroup> spec, Pageable page);
   
   Optional<IamGroup> findByNameWithDifferentId(String name, String uuid);
   Optional<IamGroup> findByName(String name);
@@ -15,30 +15,50 @@
  */
 package it.infn.mw.iam.core.lifecycle;
 
-import static com.google.common.collect.Sets.newHashSet;
+import static java.util.stream.Collectors.partitioningBy;
+import static java.util.stream.Collectors.toList;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
-import org.springframework.data.domain.Sort.Direction;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import it.infn.mw.iam.audit.events.account.AccountsDisabledEvent;
+import it.infn.mw.iam.audit.events.account.label.AccountsLabelSetEvent;
 import it.infn.mw.iam.config.lifecycle.LifecycleProperties;
+import it.infn.mw.iam.core.oauth.revocation.TokenRevocationService;
 import it.infn.mw.iam.core.user.IamAccountService;
 import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamAccountLifecycleRecord;
 import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
+/**
+ * Suspends and removes the accounts whose end time has passed.
+ *
+ * Expired accounts are scanned by keyset on (endTime, id), in batches of
+ * {@link LifecycleProperties.TaskProperties#getBatchSize()} accounts, reading only the account
+ * fields needed to classify them. Accounts past the removal grace period are removed first,
+ * one batch (and transaction) at a time. The status and timestamp labels of the remaining expired
+ * accounts, and the suspensions, are then applied with set-based updates, in one transaction per
+ * batch, without loading the accounts. Once each batch is committed, an
+ * {@link AccountsDisabledEvent} and an {@link AccountsLabelSetEvent} for each label are published
+ * for the accounts in the batch.
+ */
 @Component
 public class ExpiredAccountsHandler implements Runnable {
 
@@ -51,135 +71,192 @@ public class ExpiredAccountsHandler implements Runnable {
   public static final String LIFECYCLE_IGNORE_LABEL = "lifecycle.ignore";
   public static final String LIFECYCLE_MESSAGE_LABEL = "lifecycle.message";
 
-  public static final int PAGE_SIZE = 10;
-
   public static final Logger LOG = LoggerFactory.getLogger(ExpiredAccountsHandler.class);
 
   private final LifecycleProperties properties;
   private final IamAccountRepository accountRepo;
   private final IamAccountService accountService;
+  private final TokenRevocationService tokenRevocationService;
   private final Clock clock;
-
-  private Instant checkTime;
-
-  private Set<IamAccount> accountsScheduledForRemoval = newHashSet();
+  private final TransactionTemplate transactionTemplate;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ExpiredAccountsStats stats = new ExpiredAccountsStats();
 
   @Autowired
   public ExpiredAccountsHandler(Clock clock, LifecycleProperties properties,
-      IamAccountRepository repo, IamAccountService service) {
+      IamAccountRepository repo, IamAccountService service,
+      TokenRevocationService tokenRevocationService, PlatformTransactionManager txManager,
+      ApplicationEventPublisher eventPublisher) {
     this.clock = clock;
     this.properties = properties;
     this.accountRepo = repo;
     this.accountService = service;
+    this.tokenRevocationService = tokenRevocationService;
+    this.transactionTemplate = new TransactionTemplate(txManager);
+    this.eventPublisher = eventPublisher;
   }
 
-  private boolean pastGracePeriod(IamAccount expiredAccount, long gracePeriodDays) {
-    final Instant endTime = expiredAccount.getEndTime().toInstant();
-
+  private static Instant gracePeriodEnd(Instant checkTime, long gracePeriodDays) {
     if (gracePeriodDays > 0) {
-      return checkTime.isAfter(endTime.plus(gracePeriodDays, ChronoUnit.DAYS));
+      return checkTime.minus(gracePeriodDays, ChronoUnit.DAYS);
     }
 
-    return true;
+    return checkTime;
   }
 
-  private boolean pastSuspensionGracePeriod(IamAccount expiredAccount) {
-    return pastGracePeriod(expiredAccount,
-        properties.getAccount().getExpiredAccountPolicy().getSuspensionGracePeriodDays());
+  private static List<Long> ids(List<IamAccountLifecycleRecord> accounts) {
+    return accounts.stream().map(IamAccountLifecycleRecord::getId).collect(toList());
   }
 
-  private boolean pastRemovalGracePeriod(IamAccount expiredAccount) {
-    return pastGracePeriod(expiredAccount,
-        properties.getAccount().getExpiredAccountPolicy().getRemovalGracePeriodDays());
+  private static List<IamAccountIds> accountIds(List<IamAccountLifecycleRecord> accounts) {
+    return accounts.stream()
+      .map(a -> new IamAccountIds(a.getId(), a.getUuid(), a.getUsername()))
+      .collect(toList());
+  }
+
+  private static long daysSinceExpiration(IamAccountLifecycleRecord account, Instant checkTime) {
+    return ChronoUnit.DAYS.between(account.getEndTime().toInstant(), checkTime);
   }
 
-  private void addLastCheckedLabel(IamAccount expiredAccount) {
-    accountService.setLabel(expiredAccount,
-        IamLabel.builder()
-          .name(LIFECYCLE_TIMESTAMP_LABEL)
-          .value(String.valueOf(checkTime.toEpochMilli()))
-          .build());
+  private IamLabel lastCheckedLabel(Instant checkTime) {
+    return IamLabel.builder()
+      .name(LIFECYCLE_TIMESTAMP_LABEL)
+      .value(String.valueOf(checkTime.toEpochMilli()))
+      .build();
   }
 
-  private void addStatusLabel(IamAccount expiredAccount, AccountLifecycleStatus status) {
-    accountService.setLabel(expiredAccount,
-        IamLabel.builder().name(LIFECYCLE_STATUS_LABEL).value(status.name()).build());
+  private IamLabel statusLabel(AccountLifecycleStatus status) {
+    return IamLabel.builder().name(LIFECYCLE_STATUS_LABEL).value(status.name()).build();
   }
 
-  private void suspendAccount(IamAccount expiredAccount) {
+  private void forEachExpiredAccountsBatch(Instant timestamp,
+      Consumer<List<IamAccountLifecycleRecord>> consumer) {
 
-    LOG.info("Suspeding account {} expired on {} ({} days ago)", expiredAccount.getUsername(),
-        expiredAccount.getEndTime(),
-        ChronoUnit.DAYS.between(expiredAccount.getEndTime().toInstant(), checkTime));
-    accountService.disableAccount(expiredAccount);
-    addStatusLabel(expiredAccount, AccountLifecycleStatus.PENDING_REMOVAL);
-    addLastCheckedLabel(expiredAccount);
+    final Date expirationTime = Date.from(timestamp);
+    final int batchSize = properties.getAccount().getExpiredAccountsTask().getBatchSize();
+    final Pageable pageRequest = new PageRequest(0, batchSize);
+
+    List<IamAccountLifecycleRecord> batch =
+        accountRepo.findExpiredAccountRecords(expirationTime, pageRequest);
+
+    while (!batch.isEmpty()) {
+      consumer.accept(batch);
+
+      if (batch.size() < batchSize) {
+        break;
+      }
+
+      IamAccountLifecycleRecord last = batch.get(batch.size() - 1);
+      batch = accountRepo.findExpiredAccountRecordsAfter(expirationTime, last.getEndTime(),
+          last.getId(), pageRequest);
+    }
   }
 
-  private void markAsPendingSuspension(IamAccount expiredAccount) {
-    LOG.info("Marking account {} (expired on {} ({} days ago)) as pending suspension",
-        expiredAccount.getUsername(), expiredAccount.getEndTime(),
-        ChronoUnit.DAYS.between(expiredAccount.getEndTime().toInstant(), checkTime));
-    addStatusLabel(expiredAccount, AccountLifecycleStatus.PENDING_SUSPENSION);
-    addLastCheckedLabel(expiredAccount);
+  private void removeAccounts(List<IamAccountLifecycleRecord> expiredAccounts,
+      Instant checkTime) {
+
+    transactionTemplate.execute(status -> {
+      for (IamAccountLifecycleRecord a : expiredAccounts) {
+        IamAccount account = accountRepo.findOne(a.getId());
+
+        if (account != null) {
+          LOG.info("Removing account {} expired on {} ({} days ago)", a.getUsername(),
+              a.getEndTime(), daysSinceExpiration(a, checkTime));
+          accountService.deleteAccount(account);
+        }
+      }
+      return null;
+    });
+
+    stats.removed(expiredAccounts.size());
   }
 
-  private void removeAccount(IamAccount expiredAccount) {
-    LOG.info("Removing account {} expired on {} ({} days ago)", expiredAccount.getUsername(),
-        expiredAccount.getEndTime(),
-        ChronoUnit.DAYS.between(expiredAccount.getEndTime().toInstant(), checkTime));
-    accountService.deleteAccount(expiredAccount);
+  private void publishLabelSetEvent(List<IamAccountLifecycleRecord> accounts, IamLabel label) {
+    if (!accounts.isEmpty()) {
+      eventPublisher.publishEvent(new AccountsLabelSetEvent(this, accountIds(accounts), label));
+    }
   }
 
+  private void handleExpiredAccountsBatch(List<IamAccountLifecycleRecord> batch,
+      Instant suspensionGracePeriodEnd, Instant checkTime) {
 
-  private void scheduleAccountRemoval(IamAccount expiredAccount) {
-    accountsScheduledForRemoval.add(expiredAccount);
-  }
+    Map<Boolean, List<IamAccountLifecycleRecord>> pastSuspensionGracePeriod = batch.stream()
+      .collect(partitioningBy(a -> a.getEndTime().toInstant().isBefore(suspensionGracePeriodEnd)));
+
+    final List<IamAccountLifecycleRecord> suspendedAccounts = pastSuspensionGracePeriod.get(true);
+    final List<IamAccountLifecycleRecord> pendingSuspensionAccounts =
+        pastSuspensionGracePeriod.get(false);
+
+    final List<IamAccountLifecycleRecord> accountsToDisable =
+        suspendedAccounts.stream().filter(IamAccountLifecycleRecord::isActive).collect(toList());
+
+    accountsToDisable.forEach(a -> LOG.info("Suspending account {} expired on {} ({} days ago)",
+        a.getUsername(), a.getEndTime(), daysSinceExpiration(a, checkTime)));
 
-  private void handleExpiredAccount(IamAccount expiredAccount) {
+    pendingSuspensionAccounts
+      .forEach(a -> LOG.info("Marking account {} (expired on {} ({} days ago)) as pending "
+          + "suspension", a.getUsername(), a.getEndTime(), daysSinceExpiration(a, checkTime)));
 
-    if (pastRemovalGracePeriod(expiredAccount)) {
-      scheduleAccountRemoval(expiredAccount);
-    } else if (pastSuspensionGracePeriod(expiredAccount)) {
-      suspendAccount(expiredAccount);
-    } else {
-      markAsPendingSuspension(expiredAccount);
+    final IamLabel pendingRemovalLabel = statusLabel(AccountLifecycleStatus.PENDING_REMOVAL);
+    final IamLabel pendingSuspensionLabel =
+        statusLabel(AccountLifecycleStatus.PENDING_SUSPENSION);
+    final IamLabel lastCheckedLabel = lastCheckedLabel(checkTime);
+
+    transactionTemplate.execute(status -> {
+      accountRepo.disableAccounts(ids(accountsToDisable), Date.from(checkTime));
+      accountRepo.setLabelForAccounts(ids(suspendedAccounts), pendingRemovalLabel);
+      accountRepo.setLabelForAccounts(ids(pendingSuspensionAccounts), pendingSuspensionLabel);
+      accountRepo.setLabelForAccounts(ids(batch), lastCheckedLabel);
+      return null;
+    });
+
+    if (!accountsToDisable.isEmpty()) {
+      eventPublisher.publishEvent(new AccountsDisabledEvent(this, accountIds(accountsToDisable)));
     }
+
+    publishLabelSetEvent(suspendedAccounts, pendingRemovalLabel);
+    publishLabelSetEvent(pendingSuspensionAccounts, pendingSuspensionLabel);
+    publishLabelSetEvent(batch, lastCheckedLabel);
+
+    accountsToDisable.forEach(a -> tokenRevocationService.revokeUserTokens(a.getUsername()));
+
+    stats.suspended(suspendedAccounts.size());
+    stats.markedAsPendingSuspension(pendingSuspensionAccounts.size());
   }
 
   public void handleExpiredAccounts() {
 
-    accountsScheduledForRemoval.clear();
+    if (!stats.tryStart()) {
+      LOG.info("Expired accounts handler already running, skipping this run");
+      return;
+    }
 
     LOG.debug("Starting...");
-    checkTime = clock.instant();
-    Date now = Date.from(checkTime);
-
-    Pageable pageRequest = new PageRequest(0, PAGE_SIZE, new Sort(Direction.ASC, "endTime"));
-
-    while (true) {
-      Page<IamAccount> expiredAccountsPage =
-          accountRepo.findExpiredAccountsAtTimestamp(now, pageRequest);
-      LOG.debug("expiredAccountsPage: {}", expiredAccountsPage);
+    final Instant checkTime = clock.instant();
+    final long startTime = System.currentTimeMillis();
 
-      if (expiredAccountsPage.hasContent()) {
-        
-        for (IamAccount expiredAccount : expiredAccountsPage.getContent()) {
-          handleExpiredAccount(expiredAccount);
-        }
-      }
+    final Instant removalGracePeriodEnd = gracePeriodEnd(checkTime,
+        properties.getAccount().getExpiredAccountPolicy().getRemovalGracePeriodDays());
 
-      if (!expiredAccountsPage.hasNext()) {
-        break;
-      }
+    final Instant suspensionGracePeriodEnd = gracePeriodEnd(checkTime,
+        properties.getAccount().getExpiredAccountPolicy().getSuspensionGracePeriodDays());
 
-      pageRequest = expiredAccountsPage.nextPageable();
+    try {
+      // Removed accounts leave the scanned key range, so removals don't break the keyset scan
+      forEachExpiredAccountsBatch(removalGracePeriodEnd, b -> removeAccounts(b, checkTime));
+
+      forEachExpiredAccountsBatch(checkTime,
+          b -> handleExpiredAccountsBatch(b, suspensionGracePeriodEnd, checkTime));
+    } finally {
+      final long now = System.currentTimeMillis();
+      stats.completed(now, now - startTime);
+      LOG.debug("Done: {} expired accounts processed in {} msec",
+          stats.getLastRunProcessedCount(), stats.getLastRunDurationMsec());
     }
+  }
 
-    // Removals must be handled separately, otherwise pagination breaks 
-    for (IamAccount a : accountsScheduledForRemoval) {
-      removeAccount(a);
-    }
+  public ExpiredAccountsStats getStats() {
+    return stats;
   }
 
   @Override
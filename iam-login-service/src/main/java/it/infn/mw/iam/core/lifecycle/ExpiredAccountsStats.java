@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.lifecycle;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the {@link ExpiredAccountsHandler}. The current run progress is updated after each
+ * batch, the last run figures when a run completes.
+ */
+public class ExpiredAccountsStats {
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final LongAdder runCount = new LongAdder();
+  private final LongAdder pendingSuspensionCount = new LongAdder();
+  private final LongAdder suspendedCount = new LongAdder();
+  private final LongAdder removedCount = new LongAdder();
+  private final AtomicLong currentRunProcessedCount = new AtomicLong();
+
+  private volatile long lastRunProcessedCount;
+  private volatile long lastRunDurationMsec;
+  private volatile long lastRunTimestamp;
+
+  boolean tryStart() {
+    if (running.compareAndSet(false, true)) {
+      currentRunProcessedCount.set(0);
+      return true;
+    }
+    return false;
+  }
+
+  void markedAsPendingSuspension(long count) {
+    pendingSuspensionCount.add(count);
+    currentRunProcessedCount.addAndGet(count);
+  }
+
+  void suspended(long count) {
+    suspendedCount.add(count);
+    currentRunProcessedCount.addAndGet(count);
+  }
+
+  void removed(long count) {
+    removedCount.add(count);
+    currentRunProcessedCount.addAndGet(count);
+  }
+
+  void completed(long timestamp, long durationMsec) {
+    lastRunTimestamp = timestamp;
+    lastRunProcessedCount = currentRunProcessedCount.get();
+    lastRunDurationMsec = durationMsec;
+    runCount.increment();
+    running.set(false);
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  public long getRunCount() {
+    return runCount.sum();
+  }
+
+  public long getPendingSuspensionCount() {
+    return pendingSuspensionCount.sum();
+  }
+
+  public long getSuspendedCount() {
+    return suspendedCount.sum();
+  }
+
+  public long getRemovedCount() {
+    return removedCount.sum();
+  }
+
+  public long getCurrentRunProcessedCount() {
+    return currentRunProcessedCount.get();
+  }
+
+  public long getLastRunProcessedCount() {
+    return lastRunProcessedCount;
+  }
+
+  public long getLastRunDurationMsec() {
+    return lastRunDurationMsec;
+  }
+
+  public long getLastRunTimestamp() {
+    return lastRunTimestamp;
+  }
+
+  public double getLastRunAccountsPerSecond() {
+    return lastRunProcessedCount * 1000.0 / Math.max(1, lastRunDurationMsec);
+  }
+}
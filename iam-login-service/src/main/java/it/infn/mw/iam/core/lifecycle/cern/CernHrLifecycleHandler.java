@@ -18,37 +18,74 @@ package it.infn.mw.iam.core.lifecycle.cern;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.Action.DISABLE_ACCOUNT;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.Action.NO_ACTION;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.Action.RESTORE_ACCOUNT;
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.updateAfterCommit;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.Status.OK;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import it.infn.mw.iam.api.registration.cern.CernHrDBApiService;
 import it.infn.mw.iam.api.registration.cern.dto.VOPersonDTO;
 import it.infn.mw.iam.config.cern.CernProperties;
+import it.infn.mw.iam.core.oauth.revocation.TokenRevocationService;
+import it.infn.mw.iam.core.task.IamTaskConfigurer;
+import it.infn.mw.iam.core.task.IamTaskScheduler;
+import it.infn.mw.iam.core.task.TaskFamily;
 import it.infn.mw.iam.core.user.IamAccountService;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
+/**
+ * Synchronizes the accounts linked to a CERN person id with the CERN HR database.
+ *
+ * Accounts are processed one page at a time: the HR database lookups for a page are run
+ * concurrently (at most {@link CernProperties.TaskProperties#getConcurrency()} requests in flight
+ * and {@link CernProperties.TaskProperties#getRequestsPerSecond()} requests per second), and the
+ * resulting updates are then applied in a single transaction per page. If that transaction fails,
+ * the page is applied again in a transaction per account, so that a failure only affects the
+ * account it occurs on. The tokens of disabled accounts are revoked once the account update is
+ * committed. A fingerprint of the HR record is stored in a label, so that accounts whose HR record
+ * did not change since the last successful check are not updated again: only their timestamp
+ * label is written, with a set-based update for the whole page.
+ */
 @Component
 @Profile("cern")
-public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
+public class CernHrLifecycleHandler implements Runnable, IamTaskConfigurer, DisposableBean {
 
   public static final String IGNORE_MESSAGE = "Skipping account as requested by the 'ignore' label";
   public static final String HR_DB_API_ERROR = "Account not updated: HR DB error";
@@ -56,6 +93,10 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
 
   public static final int DEFAULT_PAGE_SIZE = 50;
 
+  public static final String WORKER_THREAD_NAME_FORMAT = "iam-cern-hr-sync-%d";
+
+  public static final String TASK_NAME = "cern-hr-sync";
+
   public static final Logger LOG = LoggerFactory.getLogger(CernHrLifecycleHandler.class);
 
   public enum Action {
@@ -75,21 +116,78 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
   public static final String LABEL_MESSAGE = "message";
   public static final String LABEL_ACTION = "action";
   public static final String LABEL_IGNORE = "ignore";
+  public static final String LABEL_FINGERPRINT = "fingerprint";
+
+  private static final String INVALID_RECORD_FINGERPRINT_SOURCE = "invalid";
+
+  private static final class HrRecord {
+    final boolean validParticipation;
+    final VOPersonDTO person;
+    final RuntimeException error;
+
+    private HrRecord(boolean validParticipation, VOPersonDTO person, RuntimeException error) {
+      this.validParticipation = validParticipation;
+      this.person = person;
+      this.error = error;
+    }
+
+    static HrRecord valid(VOPersonDTO person) {
+      return new HrRecord(true, person, null);
+    }
+
+    static HrRecord invalid() {
+      return new HrRecord(false, null, null);
+    }
+
+    static HrRecord error(RuntimeException error) {
+      return new HrRecord(false, null, error);
+    }
+
+    String fingerprint() {
+      String source = INVALID_RECORD_FINGERPRINT_SOURCE;
+
+      if (validParticipation) {
+        source = Joiner.on('|')
+          .useForNull("")
+          .join("valid", person.getFirstName(), person.getName(), person.getEmail());
+      }
+
+      return Hashing.sha256().hashString(source, UTF_8).toString();
+    }
+  }
 
   private final Clock clock;
   private final CernProperties cernProperties;
   private final IamAccountRepository accountRepo;
   private final IamAccountService accountService;
   private final CernHrDBApiService hrDb;
+  private final TokenRevocationService tokenRevocationService;
+  private final TransactionTemplate transactionTemplate;
+  private final TransactionTemplate revocationTemplate;
+  private final ExecutorService executor;
+  private final Optional<RateLimiter> rateLimiter;
 
   @Autowired
   public CernHrLifecycleHandler(Clock clock, CernProperties cernProperties,
-      IamAccountRepository accountRepo, IamAccountService accountService, CernHrDBApiService hrDb) {
+      IamAccountRepository accountRepo, IamAccountService accountService, CernHrDBApiService hrDb,
+      TokenRevocationService tokenRevocationService, PlatformTransactionManager txManager) {
     this.clock = clock;
     this.cernProperties = cernProperties;
     this.accountRepo = accountRepo;
     this.accountService = accountService;
     this.hrDb = hrDb;
+    this.tokenRevocationService = tokenRevocationService;
+    this.transactionTemplate = new TransactionTemplate(txManager);
+    this.revocationTemplate = new TransactionTemplate(txManager);
+    this.revocationTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.executor = Executors.newFixedThreadPool(cernProperties.getTask().getConcurrency(),
+        new ThreadFactoryBuilder().setNameFormat(WORKER_THREAD_NAME_FORMAT)
+          .setDaemon(true)
+          .build());
+
+    final int requestsPerSecond = cernProperties.getTask().getRequestsPerSecond();
+    this.rateLimiter = requestsPerSecond > 0 ? Optional.of(RateLimiter.create(requestsPerSecond))
+        : Optional.empty();
   }
 
   private Supplier<IllegalArgumentException> personIdNotFound(IamAccount a) {
@@ -125,16 +223,26 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
     return IamLabel.builder().prefix(LABEL_CERN_PREFIX).name(LABEL_MESSAGE).value(message).build();
   }
 
-  public void addErrorMessage(IamAccount account, String message) {
-    account.getLabels().add(buildStatusLabel(Status.ERROR));
-    account.getLabels().add(buildMessageLabel(message));
+  private IamLabel buildFingerprintLabel(String fingerprint) {
+    return IamLabel.builder()
+      .prefix(LABEL_CERN_PREFIX)
+      .name(LABEL_FINGERPRINT)
+      .value(fingerprint)
+      .build();
   }
 
-  private void syncMembershipInformation(IamAccount account) {
-    IamLabel cernPersonId = getPersonIdLabel(account).orElseThrow(personIdNotFound(account));
+  private void replaceLabel(IamAccount account, IamLabel label) {
+    // Labels are compared by prefix and name, so the old label must go before adding the new one
+    account.getLabels().remove(label);
+    account.getLabels().add(label);
+  }
 
-    VOPersonDTO voPerson = hrDb.getHrDbPersonRecord(cernPersonId.getValue());
+  public void addErrorMessage(IamAccount account, String message) {
+    replaceLabel(account, buildStatusLabel(Status.ERROR));
+    replaceLabel(account, buildMessageLabel(message));
+  }
 
+  private void syncMembershipInformation(IamAccount account, VOPersonDTO voPerson) {
     account.getUserInfo().setGivenName(voPerson.getFirstName());
     account.getUserInfo().setFamilyName((voPerson.getName()));
     account.getUserInfo().setEmail(voPerson.getEmail());
@@ -151,6 +259,13 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
     LOG.info("No valid HR record found for account {} -> Disabling account", account.getUsername());
 
     accountService.disableAccount(account);
+
+    // Tokens must not go if the account is not actually disabled. Work done after commit needs a
+    // new transaction, since the committed one is still bound to the thread
+    final String username = account.getUsername();
+    updateAfterCommit(() -> revocationTemplate
+      .execute(status -> tokenRevocationService.revokeUserTokens(username)));
+
     accountService.setAccountEndTime(account, Date.from(clock.instant()));
 
     accountService.setLabel(account, buildStatusLabel(OK));
@@ -168,7 +283,12 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
   }
 
   public void handleValidAccount(IamAccount account) {
-    syncMembershipInformation(account);
+    IamLabel cernPersonId = getPersonIdLabel(account).orElseThrow(personIdNotFound(account));
+    handleValidAccount(account, hrDb.getHrDbPersonRecord(cernPersonId.getValue()));
+  }
+
+  public void handleValidAccount(IamAccount account, VOPersonDTO voPerson) {
+    syncMembershipInformation(account, voPerson);
     if (!account.isActive() && accountWasSuspendedByUs(account)) {
       restoreAccount(account);
     } else {
@@ -197,27 +317,180 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
         cernProperties.getPersonIdClaim());
   }
 
-  public void handleAccount(IamAccount account) {
-    Instant checkTime = clock.instant();
-    account.getLabels().add(buildTimestampLabel(checkTime));
-    Optional<IamLabel> cernPersonId = getPersonIdLabel(account);
-    if (!cernPersonId.isPresent()) {
+  private boolean isIgnored(IamAccount account) {
+    return account.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_IGNORE).isPresent();
+  }
+
+  private Optional<String> personIdToCheck(IamAccount account) {
+    if (isIgnored(account)) {
+      return Optional.empty();
+    }
+    return getPersonIdLabel(account).map(IamLabel::getValue);
+  }
+
+  private void acquirePermit() {
+    rateLimiter.ifPresent(RateLimiter::acquire);
+  }
+
+  private HrRecord fetchPersonRecord(String personId) {
+    try {
+      acquirePermit();
+      return HrRecord.valid(hrDb.getHrDbPersonRecord(personId));
+    } catch (RuntimeException e) {
+      return HrRecord.error(e);
+    }
+  }
+
+  private HrRecord fetchHrRecord(String personId) {
+    try {
+      acquirePermit();
+      if (!hrDb.hasValidExperimentParticipation(personId)) {
+        return HrRecord.invalid();
+      }
+    } catch (RuntimeException e) {
+      return HrRecord.error(e);
+    }
+
+    return fetchPersonRecord(personId);
+  }
+
+  private CompletableFuture<HrRecord> fetchAsync(Supplier<HrRecord> lookup) {
+    return CompletableFuture.supplyAsync(lookup, executor);
+  }
+
+  private Map<String, HrRecord> lookupHrRecords(Collection<String> personIds) {
+    Map<String, HrRecord> records = Maps.newHashMap();
+
+    if (personIds.isEmpty()) {
+      return records;
+    }
+
+    Map<String, CompletableFuture<HrRecord>> lookups = Maps.newHashMap();
+    personIds.forEach(id -> lookups.put(id, fetchAsync(() -> fetchHrRecord(id))));
+
+    lookups.forEach((id, lookup) -> records.put(id, lookup.join()));
+    return records;
+  }
+
+  private boolean isUnchanged(IamAccount account, HrRecord record, String fingerprint) {
+    Optional<IamLabel> fingerprintLabel =
+        account.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_FINGERPRINT);
+    Optional<IamLabel> statusLabel =
+        account.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_STATUS);
+
+    if (!fingerprintLabel.isPresent() || !fingerprint.equals(fingerprintLabel.get().getValue())) {
+      return false;
+    }
+
+    if (!statusLabel.isPresent() || !OK.name().equals(statusLabel.get().getValue())) {
+      return false;
+    }
+
+    if (record.validParticipation) {
+      return account.isActive() || !accountWasSuspendedByUs(account);
+    }
+
+    return !account.isActive();
+  }
+
+  /**
+   * Applies the outcome of the HR db check to an account, except for the timestamp label.
+   *
+   * @return false if the account was left untouched, since its HR record did not change
+   */
+  private boolean handleAccount(IamAccount account, HrRecord record) {
+
+    if (!getPersonIdLabel(account).isPresent()) {
       addErrorMessage(account,
           format(PERSON_ID_NOT_FOUND_TEMPLATE, cernProperties.getPersonIdClaim()));
+      return true;
+    }
+
+    if (isIgnored(account)) {
+      handleIgnoredAccount(account);
+      return true;
+    }
+
+    if (record.error != null) {
+      LOG.error("Error contacting HR DB api: {}", record.error.getMessage(), record.error);
+      addErrorMessage(account, format(HR_DB_API_ERROR));
+      return true;
+    }
+
+    final String fingerprint = record.fingerprint();
+
+    if (isUnchanged(account, record, fingerprint)) {
+      LOG.debug("HR record for account {} unchanged since last check", account.getUsername());
+      return false;
+    }
+
+    if (record.validParticipation) {
+      handleValidAccount(account, record.person);
     } else {
-      if (account.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_IGNORE).isPresent()) {
-        handleIgnoredAccount(account);
-      } else {
-        try {
-          if (hrDb.hasValidExperimentParticipation(cernPersonId.get().getValue())) {
-            handleValidAccount(account);
-          } else {
-            handleInvalidAccount(account);
+      handleInvalidAccount(account);
+    }
+
+    accountService.setLabel(account, buildFingerprintLabel(fingerprint));
+    return true;
+  }
+
+  public void handleAccount(IamAccount account) {
+    Instant checkTime = clock.instant();
+    HrRecord record = personIdToCheck(account).map(this::fetchHrRecord).orElse(null);
+    replaceLabel(account, buildTimestampLabel(checkTime));
+    handleAccount(account, record);
+  }
+
+  private void applyUpdates(List<IamAccount> accounts, Map<String, HrRecord> records,
+      IamLabel timestampLabel) {
+
+    for (IamAccount account : accounts) {
+      HrRecord record = personIdToCheck(account).map(records::get).orElse(null);
+
+      if (handleAccount(account, record)) {
+        accountRepo.save(account);
+      }
+    }
+
+    // Runs after the account updates are flushed, so that they don't overwrite the new timestamp
+    accountRepo.setLabelForAccounts(accounts.stream().map(IamAccount::getId).collect(toList()),
+        timestampLabel);
+  }
+
+  private void handleAccounts(List<IamAccount> accounts) {
+    final IamLabel timestampLabel = buildTimestampLabel(clock.instant());
+
+    Set<String> personIds = Sets.newHashSet();
+    accounts.forEach(a -> personIdToCheck(a).ifPresent(personIds::add));
+
+    // HR db lookups happen outside of the transaction, so that no connection is held while
+    // waiting for the HR db
+    Map<String, HrRecord> records = lookupHrRecords(personIds);
+
+    try {
+      transactionTemplate.execute(status -> {
+        applyUpdates(accounts, records, timestampLabel);
+        return null;
+      });
+      return;
+    } catch (RuntimeException e) {
+      LOG.warn("Error synchronizing a page of accounts with the HR db, "
+          + "retrying one account at a time: {}", e.getMessage());
+    }
+
+    for (IamAccount account : accounts) {
+      try {
+        transactionTemplate.execute(status -> {
+          // The failed attempt may have left changes on the account, so it is loaded again
+          IamAccount reloaded = accountRepo.findOne(account.getId());
+          if (reloaded != null) {
+            applyUpdates(singletonList(reloaded), records, timestampLabel);
           }
-        } catch (RuntimeException e) {
-          LOG.error("Error contacting HR DB api: {}", e.getMessage(), e);
-          addErrorMessage(account, format(HR_DB_API_ERROR));
-        }
+          return null;
+        });
+      } catch (RuntimeException e) {
+        LOG.error("Error synchronizing account {} with the HR db: {}", account.getUsername(),
+            e.getMessage(), e);
       }
     }
   }
@@ -233,9 +506,7 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
           LABEL_CERN_PREFIX, cernProperties.getPersonIdClaim(), pageRequest);
 
       if (accountsPage.hasContent()) {
-        for (IamAccount account : accountsPage.getContent()) {
-          handleAccount(account);
-        }
+        handleAccounts(accountsPage.getContent());
       }
 
       if (!accountsPage.hasNext()) {
@@ -247,14 +518,19 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
   }
 
   @Override
-  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public void configureTasks(IamTaskScheduler scheduler) {
 
     if (!cernProperties.getTask().isEnabled()) {
       LOG.info("CERN HR DB lifecycle handler is DISABLED");
     } else {
       final String cronSchedule = cernProperties.getTask().getCronSchedule();
       LOG.info("Scheduling CERN HR DB lifecycle handler with schedule: {}", cronSchedule);
-      taskRegistrar.addCronTask(this, cronSchedule);
+      scheduler.scheduleCron(TASK_NAME, TaskFamily.LIFECYCLE, this, cronSchedule);
     }
   }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.client;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
+import static java.util.Objects.isNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.springframework.context.ApplicationListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import it.infn.mw.iam.audit.events.client.ClientEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+
+/**
+ * A client details service that keeps a bounded, read-through cache of clients resolved by
+ * client id.
+ *
+ * Cached clients are detached entities shared across requests, so this service must only be used
+ * where clients are read (e.g., client and request validation), and never where they are linked
+ * to entities being persisted (e.g., tokens).
+ */
+public class CachingClientDetailsEntityService extends IamClientDetailsEntityService
+    implements ApplicationListener<ClientEvent> {
+
+  public static final String CACHE_NAME = "client-details";
+
+  private final Cache<String, ClientDetailsEntity> clientCache;
+  private final CacheEvictionBroadcaster evictionBroadcaster;
+
+  // Incremented at each eviction, used to avoid caching clients loaded from stale data
+  private final AtomicLong generation = new AtomicLong();
+
+  public CachingClientDetailsEntityService(CacheEvictionBroadcaster evictionBroadcaster,
+      long cacheMaxSize, long cacheTtlSecs) {
+    this.evictionBroadcaster = evictionBroadcaster;
+    this.clientCache = CacheBuilder.newBuilder()
+      .maximumSize(cacheMaxSize)
+      .expireAfterWrite(cacheTtlSecs, TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, this::evictClient);
+  }
+
+  @Override
+  public ClientDetailsEntity loadClientByClientId(String clientId) {
+
+    ClientDetailsEntity client = isNull(clientId) ? null : clientCache.getIfPresent(clientId);
+
+    if (isNull(client)) {
+      final long gen = generation.get();
+      client = super.loadClientByClientId(clientId);
+
+      if (gen == generation.get()) {
+        clientCache.put(clientId, client);
+      }
+    }
+
+    return client;
+  }
+
+  public void evictClient(String clientId) {
+    generation.incrementAndGet();
+    clientCache.invalidate(clientId);
+  }
+
+  public Cache<String, ClientDetailsEntity> getClientCache() {
+    return clientCache;
+  }
+
+  @Override
+  public void onApplicationEvent(ClientEvent event) {
+    evictNowAndAfterCompletion(() -> evictClient(event.getClientId()));
+    evictionBroadcaster.broadcastEviction(CACHE_NAME, event.getClientId());
+  }
+}
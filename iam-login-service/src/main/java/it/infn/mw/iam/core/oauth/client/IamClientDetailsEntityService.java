@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.client;
+
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.service.impl.DefaultOAuth2ClientDetailsEntityService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
+
+import it.infn.mw.iam.audit.events.client.ClientCreatedEvent;
+import it.infn.mw.iam.audit.events.client.ClientRemovedEvent;
+import it.infn.mw.iam.audit.events.client.ClientUpdatedEvent;
+
+/**
+ * A client details service that publishes client events on client creation, update and removal,
+ * so that components that keep client-dependent state can react to changes made through the
+ * client management and dynamic client registration APIs.
+ */
+public class IamClientDetailsEntityService extends DefaultOAuth2ClientDetailsEntityService
+    implements ApplicationEventPublisherAware {
+
+  private ApplicationEventPublisher eventPublisher;
+
+  @Override
+  public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    this.eventPublisher = applicationEventPublisher;
+  }
+
+  @Override
+  public ClientDetailsEntity saveNewClient(ClientDetailsEntity client) {
+    ClientDetailsEntity savedClient = super.saveNewClient(client);
+    eventPublisher.publishEvent(new ClientCreatedEvent(this, savedClient.getClientId()));
+    return savedClient;
+  }
+
+  @Override
+  public ClientDetailsEntity updateClient(ClientDetailsEntity oldClient,
+      ClientDetailsEntity newClient) {
+    ClientDetailsEntity updatedClient = super.updateClient(oldClient, newClient);
+    eventPublisher.publishEvent(new ClientUpdatedEvent(this, updatedClient.getClientId()));
+
+    if (!updatedClient.getClientId().equals(oldClient.getClientId())) {
+      eventPublisher.publishEvent(new ClientUpdatedEvent(this, oldClient.getClientId()));
+    }
+
+    return updatedClient;
+  }
+
+  @Override
+  public void deleteClient(ClientDetailsEntity client) throws InvalidClientException {
+    final String clientId = client.getClientId();
+    super.deleteClient(client);
+    eventPublisher.publishEvent(new ClientRemovedEvent(this, clientId));
+  }
+}
@@ -18,30 +18,49 @@ package it.infn.mw.iam.core.oauth.exchange;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.fromPolicy;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.invalidScope;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.notApplicable;
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
 import static java.util.Comparator.comparing;
+import static java.util.Objects.isNull;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.TokenRequest;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 
+import it.infn.mw.iam.audit.events.exchange_policy.ExchangePolicyEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
 import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyRepository;
 
+/**
+ * A token exchange PDP that keeps an immutable, indexed snapshot of the token exchange policies,
+ * so that policies are not reloaded from the database at each token exchange request.
+ *
+ * The snapshot is dropped, and lazily rebuilt, when exchange policy events are published on this
+ * or (when cluster cache eviction is enabled) on other IAM replicas and, as a safety net for
+ * changes whose events are not propagated, after a configurable refresh period.
+ */
 @Service
-public class DefaultTokenExchangePdp implements TokenExchangePdp {
+public class DefaultTokenExchangePdp
+    implements TokenExchangePdp, ApplicationListener<ExchangePolicyEvent> {
   public static final Logger LOG = LoggerFactory.getLogger(DefaultTokenExchangePdp.class);
 
+  public static final String CACHE_NAME = "token-exchange-policies";
+
   public static final String NOT_APPLICABLE_ERROR_TEMPLATE =
       "No applicable policies found for clients: %s -> %s";
 
@@ -49,29 +68,83 @@ public class DefaultTokenExchangePdp implements TokenExchangePdp {
 
   final ScopeMatcherRegistry scopeMatcherRegistry;
 
-  List<TokenExchangePolicy> policies = Lists.newArrayList();
+  final CacheEvictionBroadcaster evictionBroadcaster;
+
+  private static class PolicySnapshot {
+    final TokenExchangePolicySet policySet;
+    final long expirationTime;
+
+    PolicySnapshot(TokenExchangePolicySet policySet, long expirationTime) {
+      this.policySet = policySet;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private final Clock clock;
+  private final long refreshPeriodMsec;
+
+  // Incremented at each eviction, used to avoid keeping snapshots built from stale data
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile PolicySnapshot policies;
 
   @Autowired
   public DefaultTokenExchangePdp(IamTokenExchangePolicyRepository repo,
-      ScopeMatcherRegistry scopeMatcherRegistry) {
+      ScopeMatcherRegistry scopeMatcherRegistry, CacheEvictionBroadcaster evictionBroadcaster,
+      Clock clock,
+      @Value("${iam.token-exchange-pdp.refresh-period-secs:300}") long refreshPeriodSecs) {
     this.repo = repo;
     this.scopeMatcherRegistry = scopeMatcherRegistry;
-  }
+    this.evictionBroadcaster = evictionBroadcaster;
+    this.clock = clock;
+    this.refreshPeriodMsec = TimeUnit.SECONDS.toMillis(refreshPeriodSecs);
 
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, key -> evictPolicies());
+  }
 
-  void loadPolicies() {
-    policies.clear();
+  TokenExchangePolicySet loadPolicies() {
+    List<TokenExchangePolicy> loadedPolicies = Lists.newArrayList();
 
     for (IamTokenExchangePolicyEntity p : repo.findAll()) {
-      policies.add(TokenExchangePolicy.builder().fromEntity(p).build());
+      loadedPolicies.add(TokenExchangePolicy.builder().fromEntity(p).build());
     }
+
+    return TokenExchangePolicySet.compile(loadedPolicies);
   }
 
-  Set<TokenExchangePolicy> applicablePolicies(ClientDetails origin, ClientDetails destination) {
-    loadPolicies();
-    return policies.stream()
-      .filter(p -> p.appicableFor(origin, destination))
-      .collect(Collectors.toSet());
+  private static boolean isStale(PolicySnapshot snapshot, long now) {
+    return isNull(snapshot) || snapshot.expirationTime <= now;
+  }
+
+  TokenExchangePolicySet currentPolicies() {
+    PolicySnapshot current = policies;
+
+    if (isStale(current, clock.millis())) {
+      synchronized (this) {
+        current = policies;
+        final long now = clock.millis();
+
+        if (isStale(current, now)) {
+          final long gen = generation.get();
+          current = new PolicySnapshot(loadPolicies(), now + refreshPeriodMsec);
+
+          if (gen == generation.get()) {
+            policies = current;
+          }
+        }
+      }
+    }
+
+    return current.policySet;
+  }
+
+  public void evictPolicies() {
+    generation.incrementAndGet();
+    policies = null;
+  }
+
+  List<TokenExchangePolicy> applicablePolicies(ClientDetails origin, ClientDetails destination) {
+    return currentPolicies().applicablePolicies(origin, destination);
   }
 
   private TokenExchangePdpResult verifyScopes(TokenExchangePolicy p, TokenRequest request,
@@ -114,4 +187,11 @@ public class DefaultTokenExchangePdp implements TokenExchangePdp {
       .orElse(notApplicable());
   }
 
+  @Override
+  public void onApplicationEvent(ExchangePolicyEvent event) {
+    LOG.debug("Evicting token exchange policies after event: {}", event.getMessage());
+    evictNowAndAfterCompletion(this::evictPolicies);
+    evictionBroadcaster.broadcastEviction(CACHE_NAME, String.valueOf(event.getPolicyId()));
+  }
+
 }
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.exchange;
+
+import static java.util.Objects.nonNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable, indexed representation of a set of token exchange policies.
+ *
+ * Policies are indexed by origin client matcher and then by destination client matcher: by id
+ * matchers are indexed by client id and by scope matchers by scope, so that finding the policies
+ * applicable to a pair of clients only requires a few lookups for each client, and does not
+ * depend on the number of policies in the set.
+ */
+public class TokenExchangePolicySet {
+
+  public static final TokenExchangePolicySet EMPTY_POLICY_SET =
+      new TokenExchangePolicySet(new ClientMatcherIndex<>(), 0);
+
+  private static class MatcherEntry<T> {
+    final ClientMatcher matcher;
+    final T value;
+
+    MatcherEntry(ClientMatcher matcher, T value) {
+      this.matcher = matcher;
+      this.value = value;
+    }
+  }
+
+  private static class ClientMatcherIndex<T> {
+
+    final List<T> anyClient = Lists.newArrayList();
+    final Map<String, List<T>> byId = Maps.newHashMap();
+    final Map<String, List<T>> byScope = Maps.newHashMap();
+    final List<MatcherEntry<T>> others = Lists.newArrayList();
+
+    void add(ClientMatcher matcher, T value) {
+      if (matcher instanceof AnyClientMatcher) {
+        anyClient.add(value);
+      } else if (matcher instanceof ByIdClientMatcher) {
+        byId.computeIfAbsent(((ByIdClientMatcher) matcher).clientId, k -> Lists.newArrayList())
+          .add(value);
+      } else if (matcher instanceof ByScopeClientMatcher) {
+        byScope.computeIfAbsent(((ByScopeClientMatcher) matcher).scope, k -> Lists.newArrayList())
+          .add(value);
+      } else {
+        others.add(new MatcherEntry<>(matcher, value));
+      }
+    }
+
+    T getOrAdd(ClientMatcher matcher, T value) {
+      add(matcher, value);
+      return value;
+    }
+
+    void forEachMatching(ClientDetails client, Consumer<T> consumer) {
+      anyClient.forEach(consumer);
+
+      List<T> matchingById = byId.get(client.getClientId());
+
+      if (nonNull(matchingById)) {
+        matchingById.forEach(consumer);
+      }
+
+      if (!byScope.isEmpty() && nonNull(client.getScope())) {
+        for (String scope : client.getScope()) {
+          List<T> matchingByScope = byScope.get(scope);
+          if (nonNull(matchingByScope)) {
+            matchingByScope.forEach(consumer);
+          }
+        }
+      }
+
+      for (MatcherEntry<T> e : others) {
+        if (e.matcher.matchesClient(client)) {
+          consumer.accept(e.value);
+        }
+      }
+    }
+  }
+
+  private final ClientMatcherIndex<ClientMatcherIndex<TokenExchangePolicy>> index;
+  private final int size;
+
+  private TokenExchangePolicySet(ClientMatcherIndex<ClientMatcherIndex<TokenExchangePolicy>> index,
+      int size) {
+    this.index = index;
+    this.size = size;
+  }
+
+  /**
+   * Returns the policies in this set that apply to a token exchange from the origin client to the
+   * destination client.
+   */
+  public List<TokenExchangePolicy> applicablePolicies(ClientDetails origin,
+      ClientDetails destination) {
+
+    List<TokenExchangePolicy> result = Lists.newArrayList();
+
+    index.forEachMatching(origin,
+        destinationIndex -> destinationIndex.forEachMatching(destination, result::add));
+
+    return result;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public static TokenExchangePolicySet compile(Collection<TokenExchangePolicy> policies) {
+
+    if (policies.isEmpty()) {
+      return EMPTY_POLICY_SET;
+    }
+
+    ClientMatcherIndex<ClientMatcherIndex<TokenExchangePolicy>> index = new ClientMatcherIndex<>();
+
+    // Policies sharing an origin client matcher share the destination index, so that each policy
+    // is found at most once by a lookup
+    Map<String, ClientMatcherIndex<TokenExchangePolicy>> destinationIndexes = Maps.newHashMap();
+
+    for (TokenExchangePolicy p : policies) {
+      ClientMatcher origin = p.getOriginMatcher();
+      String key = originKey(origin);
+
+      ClientMatcherIndex<TokenExchangePolicy> destinationIndex = nonNull(key)
+          ? destinationIndexes.computeIfAbsent(key,
+              k -> index.getOrAdd(origin, new ClientMatcherIndex<>()))
+          : index.getOrAdd(origin, new ClientMatcherIndex<>());
+
+      destinationIndex.add(p.getDestinationMatcher(), p);
+    }
+
+    return new TokenExchangePolicySet(index, policies.size());
+  }
+
+  private static String originKey(ClientMatcher matcher) {
+    if (matcher instanceof AnyClientMatcher) {
+      return "any";
+    } else if (matcher instanceof ByIdClientMatcher) {
+      return "id:" + ((ByIdClientMatcher) matcher).clientId;
+    } else if (matcher instanceof ByScopeClientMatcher) {
+      return "scope:" + ((ByScopeClientMatcher) matcher).scope;
+    }
+    return null;
+  }
+}
@@ -76,7 +76,9 @@ public class IamTokenEnhancer extends ConnectTokenEnhancer {
     String username = authentication.getName();
     String clientId = originalAuthRequest.getClientId();
 
-    UserInfo userInfo = userInfoService.getByUsernameAndClientId(username, clientId);
+    // Client-only authentications do not carry user information
+    UserInfo userInfo = authentication.isClientOnly() ? null
+        : userInfoService.getByUsernameAndClientId(username, clientId);
 
     scopeFilter.filterScopes(accessToken.getScope(), authentication);
 
@@ -18,35 +18,71 @@ package it.infn.mw.iam.core.oauth.profile;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.Sets.newHashSet;
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
 import static java.util.Objects.isNull;
 import static java.util.stream.Collectors.toCollection;
 
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.context.ApplicationListener;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 
-public class ScopeAwareProfileResolver implements JWTProfileResolver {
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import it.infn.mw.iam.audit.events.client.ClientEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cache.NullCacheEvictionBroadcaster;
+
+public class ScopeAwareProfileResolver
+    implements JWTProfileResolver, ApplicationListener<ClientEvent> {
 
   public static final String AARC_PROFILE_ID = "aarc";
   public static final String IAM_PROFILE_ID = "iam";
   public static final String WLCG_PROFILE_ID = "wlcg";
 
+  public static final String CACHE_NAME = "jwt-profile";
+
+  public static final long DEFAULT_CACHE_MAX_SIZE = 1000;
+  public static final long DEFAULT_CACHE_TTL_SECS = 300;
+
   private static final Set<String> SUPPORTED_PROFILES =
       newHashSet(AARC_PROFILE_ID, IAM_PROFILE_ID, WLCG_PROFILE_ID);
 
   private final Map<String, JWTProfile> profileMap;
   private final JWTProfile defaultProfile;
   private final ClientDetailsService clientDetailsService;
+  private final Cache<String, JWTProfile> profileCache;
+  private final CacheEvictionBroadcaster evictionBroadcaster;
 
+  // Incremented at each eviction, used to avoid caching profiles resolved from stale clients
+  private final AtomicLong generation = new AtomicLong();
 
   public ScopeAwareProfileResolver(JWTProfile defaultProfile, Map<String, JWTProfile> profileMap,
       ClientDetailsService clientDetailsService) {
+    this(defaultProfile, profileMap, clientDetailsService, new NullCacheEvictionBroadcaster(),
+        DEFAULT_CACHE_MAX_SIZE, DEFAULT_CACHE_TTL_SECS);
+  }
+
+  public ScopeAwareProfileResolver(JWTProfile defaultProfile, Map<String, JWTProfile> profileMap,
+      ClientDetailsService clientDetailsService, CacheEvictionBroadcaster evictionBroadcaster,
+      long cacheMaxSize, long cacheTtlSecs) {
     this.defaultProfile = defaultProfile;
     this.profileMap = profileMap;
     this.clientDetailsService = clientDetailsService;
+    this.evictionBroadcaster = evictionBroadcaster;
+    this.profileCache = CacheBuilder.newBuilder()
+      .maximumSize(cacheMaxSize)
+      .expireAfterWrite(cacheTtlSecs, TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, this::evictProfile);
   }
 
 
@@ -71,12 +107,39 @@ public class ScopeAwareProfileResolver implements JWTProfileResolver {
   @Override
   public JWTProfile resolveProfile(String clientId) {
     checkArgument(!isNullOrEmpty(clientId), "non-null clientId required");
-    ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
 
-    if (isNull(client)) {
-      throw new IllegalArgumentException("Client not found: " + clientId);
+    JWTProfile profile = profileCache.getIfPresent(clientId);
+
+    if (isNull(profile)) {
+      final long gen = generation.get();
+      ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+
+      if (isNull(client)) {
+        throw new IllegalArgumentException("Client not found: " + clientId);
+      }
+
+      profile = findProfileFromScope(client);
+
+      if (gen == generation.get()) {
+        profileCache.put(clientId, profile);
+      }
     }
 
-    return findProfileFromScope(client);
+    return profile;
+  }
+
+  public void evictProfile(String clientId) {
+    generation.incrementAndGet();
+    profileCache.invalidate(clientId);
+  }
+
+  public Cache<String, JWTProfile> getProfileCache() {
+    return profileCache;
+  }
+
+  @Override
+  public void onApplicationEvent(ClientEvent event) {
+    evictNowAndAfterCompletion(() -> evictProfile(event.getClientId()));
+    evictionBroadcaster.broadcastEviction(CACHE_NAME, event.getClientId());
   }
 }
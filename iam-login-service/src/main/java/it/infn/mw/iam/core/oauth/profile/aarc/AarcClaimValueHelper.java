@@ -24,8 +24,8 @@ import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ImmutableSet;
 
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 
 @Component
 public class AarcClaimValueHelper {
@@ -42,7 +42,7 @@ public class AarcClaimValueHelper {
   @Value("${iam.aarc-profile.urn-namespace}")
   String urnNamespace;
 
-  public Object getClaimValueFromUserInfo(String claim, IamUserInfo info) {
+  public Object getClaimValueFromUserInfo(String claim, UserInfoSnapshot info) {
 
     switch (claim) {
 
@@ -57,7 +57,7 @@ public class AarcClaimValueHelper {
     }
   }
 
-  public Set<String> resolveGroups(IamUserInfo userInfo) {
+  public Set<String> resolveGroups(UserInfoSnapshot userInfo) {
 
     Set<String> encodedGroups = new HashSet<>();
     userInfo
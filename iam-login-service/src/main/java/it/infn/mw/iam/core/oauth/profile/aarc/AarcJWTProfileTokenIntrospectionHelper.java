@@ -25,8 +25,7 @@ import org.mitre.openid.connect.model.UserInfo;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseIntrospectionHelper;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 
 public class AarcJWTProfileTokenIntrospectionHelper extends BaseIntrospectionHelper {
 
@@ -49,13 +48,13 @@ public class AarcJWTProfileTokenIntrospectionHelper extends BaseIntrospectionHel
 
     if (userInfo != null) {
 
-      IamUserInfo iamUserInfo = ((UserInfoAdapter) userInfo).getUserinfo();
+      UserInfoSnapshot snapshot = (UserInfoSnapshot) userInfo;
 
       if (scopes.contains(PROFILE)) {
 
-        result.put(NAME, iamUserInfo.getName());
-        result.put(GIVEN_NAME, iamUserInfo.getGivenName());
-        result.put(FAMILY_NAME, iamUserInfo.getFamilyName());
+        result.put(NAME, snapshot.getName());
+        result.put(GIVEN_NAME, snapshot.getGivenName());
+        result.put(FAMILY_NAME, snapshot.getFamilyName());
 
       }
 
@@ -65,12 +64,12 @@ public class AarcJWTProfileTokenIntrospectionHelper extends BaseIntrospectionHel
 
       if (scopes.contains(EDUPERSON_SCOPED_AFFILIATION)) {
         result.put(EDUPERSON_SCOPED_AFFILIATION,
-            claimValueHelper.getClaimValueFromUserInfo(EDUPERSON_SCOPED_AFFILIATION, iamUserInfo));
+            claimValueHelper.getClaimValueFromUserInfo(EDUPERSON_SCOPED_AFFILIATION, snapshot));
       }
 
       if (scopes.contains(EDUPERSON_ENTITLEMENT)) {
         result.put(EDUPERSON_ENTITLEMENT,
-            claimValueHelper.getClaimValueFromUserInfo(EDUPERSON_ENTITLEMENT, iamUserInfo));
+            claimValueHelper.getClaimValueFromUserInfo(EDUPERSON_ENTITLEMENT, snapshot));
       }
     }
 
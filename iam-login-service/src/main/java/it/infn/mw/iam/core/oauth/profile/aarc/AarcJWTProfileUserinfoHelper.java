@@ -24,8 +24,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseUserinfoHelper;
 import it.infn.mw.iam.core.userinfo.AarcDecoratedUserInfo;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 
 public class AarcJWTProfileUserinfoHelper extends BaseUserinfoHelper {
 
@@ -46,11 +45,11 @@ public class AarcJWTProfileUserinfoHelper extends BaseUserinfoHelper {
       return null;
     }
 
-    IamUserInfo iamUserInfo = ((UserInfoAdapter) ui).getUserinfo();
+    UserInfoSnapshot snapshot = (UserInfoSnapshot) ui;
 
     AarcDecoratedUserInfo aui = AarcDecoratedUserInfo.forUser(ui);
     aui.setScopedAffiliation(getProperties().getOrganisation().getName());
-    aui.setEntitlements(claimValueHelper.resolveGroups(iamUserInfo));
+    aui.setEntitlements(claimValueHelper.resolveGroups(snapshot));
 
     return aui;
   }
@@ -22,8 +22,8 @@ import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ImmutableSet;
 
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 
 @Component
 public class ClaimValueHelper {
@@ -34,7 +34,7 @@ public class ClaimValueHelper {
   @Value("${iam.organisation.name}")
   String organisationName;
 
-  public Object getClaimValueFromUserInfo(String claim, IamUserInfo info) {
+  public Object getClaimValueFromUserInfo(String claim, UserInfoSnapshot info) {
 
     switch (claim) {
 
@@ -32,7 +32,7 @@ import com.nimbusds.jwt.JWTClaimsSet.Builder;
 
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseAccessTokenBuilder;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 
 public class IamJWTProfileAccessTokenBuilder extends BaseAccessTokenBuilder {
 
@@ -58,7 +58,7 @@ public class IamJWTProfileAccessTokenBuilder extends BaseAccessTokenBuilder {
       requiredClaims.stream()
         .filter(ADDITIONAL_CLAIMS::contains)
         .forEach(c -> builder.claim(c, claimValueHelper.getClaimValueFromUserInfo(c,
-            ((UserInfoAdapter) userInfo).getUserinfo())));
+            (UserInfoSnapshot) userInfo)));
     }
 
     if (properties.getAccessToken().isIncludeScope() && !token.getScope().isEmpty()) {
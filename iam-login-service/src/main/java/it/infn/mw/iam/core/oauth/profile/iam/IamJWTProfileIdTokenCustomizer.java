@@ -28,8 +28,8 @@ import com.nimbusds.jwt.JWTClaimsSet.Builder;
 
 import it.infn.mw.iam.api.account.password_reset.error.UserNotFoundError;
 import it.infn.mw.iam.core.oauth.profile.common.BaseIdTokenCustomizer;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamAccount;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 public class IamJWTProfileIdTokenCustomizer extends BaseIdTokenCustomizer {
@@ -51,7 +51,7 @@ public class IamJWTProfileIdTokenCustomizer extends BaseIdTokenCustomizer {
 
     IamAccount account = getAccountRepo().findByUuid(sub)
       .orElseThrow(() -> new UserNotFoundError(String.format("No user found for uuid %s", sub)));
-    IamUserInfo info = account.getUserInfo();
+    UserInfoSnapshot info = UserInfoSnapshot.forAccount(account);
 
     Set<String> requiredClaims = scopeClaimConverter.getClaimsForScopeSet(request.getScope());
 
@@ -28,9 +28,8 @@ import org.slf4j.LoggerFactory;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseIntrospectionHelper;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
 
 public class IamJWTProfileTokenIntrospectionHelper extends BaseIntrospectionHelper {
 
@@ -62,16 +61,16 @@ public class IamJWTProfileTokenIntrospectionHelper extends BaseIntrospectionHelp
     if (userInfo != null) {
       if (scopes.contains(PROFILE)) {
 
-        IamUserInfo iamUserInfo = ((UserInfoAdapter) userInfo).getUserinfo();
+        UserInfoSnapshot snapshot = (UserInfoSnapshot) userInfo;
 
-        if (!iamUserInfo.getGroups().isEmpty()) {
+        if (!snapshot.getGroups().isEmpty()) {
 
           result.put(GROUPS,
-              iamUserInfo.getGroups().stream().map(IamGroup::getName).collect(Collectors.toList()));
+              snapshot.getGroups().stream().map(IamGroup::getName).collect(Collectors.toList()));
         }
 
-        result.put(NAME, iamUserInfo.getName());
-        result.put(PREFERRED_USERNAME, iamUserInfo.getPreferredUsername());
+        result.put(NAME, snapshot.getName());
+        result.put(PREFERRED_USERNAME, snapshot.getPreferredUsername());
         result.put(ORGANISATION_NAME, getProperties().getOrganisation().getName());
       }
 
@@ -28,9 +28,9 @@ import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
 import it.infn.mw.iam.persistence.model.IamLabel;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 
 public class WLCGGroupHelper {
 
@@ -57,14 +57,14 @@ public class WLCGGroupHelper {
     return scope.startsWith(WLCG_GROUPS_SCOPE);
   }
 
-  private Stream<IamGroup> addCatchallGroupScope(IamUserInfo userInfo) {
+  private Stream<IamGroup> addCatchallGroupScope(UserInfoSnapshot userInfo) {
     return userInfo.getGroups()
       .stream()
       .filter(g -> !g.getLabels().contains(OPTIONAL_GROUP_LABEL))
       .sorted((g1, g2) -> g1.getName().compareTo(g2.getName()));
   }
 
-  private Stream<IamGroup> handleGroupScope(String scope, IamUserInfo userInfo) {
+  private Stream<IamGroup> handleGroupScope(String scope, UserInfoSnapshot userInfo) {
     if (scope.startsWith(QUALIFIED_WLCG_GROUPS_SCOPE)) {
       final String groupName = scope.substring(QUALIFIED_WLCG_GROUPS_SCOPE.length());
       return userInfo.getGroups().stream().filter(g -> g.getName().equals(groupName));
@@ -74,7 +74,8 @@ public class WLCGGroupHelper {
   }
 
 
-  private Stream<IamGroup> resolveGroupStream(OAuth2AccessTokenEntity token, IamUserInfo userInfo) {
+  private Stream<IamGroup> resolveGroupStream(OAuth2AccessTokenEntity token,
+      UserInfoSnapshot userInfo) {
     Stream<IamGroup> groupStream = token.getScope()
       .stream()
       .filter(this::isWlcgGroupScope)
@@ -87,12 +88,12 @@ public class WLCGGroupHelper {
     return groupStream;
   }
 
-  public Set<IamGroup> resolveGroups(OAuth2AccessTokenEntity token, IamUserInfo userInfo) {
+  public Set<IamGroup> resolveGroups(OAuth2AccessTokenEntity token, UserInfoSnapshot userInfo) {
 
     return resolveGroupStream(token, userInfo).collect(toCollection(LinkedHashSet::new));
   }
 
-  public Set<String> resolveGroupNames(OAuth2AccessTokenEntity token, IamUserInfo userInfo) {
+  public Set<String> resolveGroupNames(OAuth2AccessTokenEntity token, UserInfoSnapshot userInfo) {
 
     return resolveGroupStream(token, userInfo).map(this::prependSlashToGroupName)
       .collect(toCollection(LinkedHashSet::new));
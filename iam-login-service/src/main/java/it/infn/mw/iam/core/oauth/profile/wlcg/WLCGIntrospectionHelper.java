@@ -25,7 +25,7 @@ import org.mitre.openid.connect.model.UserInfo;
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseIntrospectionHelper;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 
 public class WLCGIntrospectionHelper extends BaseIntrospectionHelper {
 
@@ -48,7 +48,7 @@ public class WLCGIntrospectionHelper extends BaseIntrospectionHelper {
     addScopeClaim(result, filterScopes(accessToken, authScopes));
     
     Set<String> groups =
-        groupHelper.resolveGroupNames(accessToken, ((UserInfoAdapter) userInfo).getUserinfo());
+        groupHelper.resolveGroupNames(accessToken, (UserInfoSnapshot) userInfo);
 
     if (!groups.isEmpty()) {
       result.put(WLCGGroupHelper.WLCG_GROUPS_SCOPE, groups);
@@ -31,7 +31,7 @@ import com.nimbusds.jwt.JWTClaimsSet.Builder;
 
 import it.infn.mw.iam.config.IamProperties;
 import it.infn.mw.iam.core.oauth.profile.common.BaseAccessTokenBuilder;
-import it.infn.mw.iam.persistence.repository.UserInfoAdapter;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 
 public class WLCGProfileAccessTokenBuilder extends BaseAccessTokenBuilder {
 
@@ -64,7 +64,7 @@ public class WLCGProfileAccessTokenBuilder extends BaseAccessTokenBuilder {
 
     if (!isNull(userInfo)) {
       Set<String> groupNames =
-          groupHelper.resolveGroupNames(token, ((UserInfoAdapter) userInfo).getUserinfo());
+          groupHelper.resolveGroupNames(token, (UserInfoSnapshot) userInfo);
 
       if (!groupNames.isEmpty()) {
         builder.claim(WLCGGroupHelper.WLCG_GROUPS_SCOPE, groupNames);
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.revocation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.repository.IamGroupRepository;
+import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+import it.infn.mw.iam.persistence.repository.IamOAuthRefreshTokenRepository;
+import it.infn.mw.iam.persistence.repository.TokenChunkDeletion;
+
+/**
+ * A {@link TokenRevocationService} that deletes tokens with set-based statements, each deleting
+ * at most <code>chunkSize</code> tokens, so that the tokens are never loaded in memory. Chunks
+ * join the caller's transaction, if any; otherwise each chunk commits on its own. Callers that
+ * must not revoke tokens for a change that could still be rolled back run the revocation after
+ * their transaction commits.
+ *
+ * Chunks are deleted until no more tokens are selected: since tokens may be deleted concurrently
+ * (e.g. by the expired tokens cleanup), a chunk that deletes fewer tokens than it selected does
+ * not mean that no tokens are left.
+ *
+ * Access tokens are revoked before refresh tokens, so that the access tokens obtained with a
+ * refresh token are already gone when the refresh token is deleted.
+ */
+@Service
+public class DefaultTokenRevocationService implements TokenRevocationService {
+
+  public static final Logger LOG = LoggerFactory.getLogger(DefaultTokenRevocationService.class);
+
+  private final IamOAuthAccessTokenRepository accessTokenRepo;
+  private final IamOAuthRefreshTokenRepository refreshTokenRepo;
+  private final IamGroupRepository groupRepo;
+  private final int chunkSize;
+
+  @Autowired
+  public DefaultTokenRevocationService(IamOAuthAccessTokenRepository accessTokenRepo,
+      IamOAuthRefreshTokenRepository refreshTokenRepo, IamGroupRepository groupRepo,
+      @Value("${iam.token-revocation.chunk-size:500}") int chunkSize) {
+    checkArgument(chunkSize > 0, "chunkSize must be a positive integer");
+    this.accessTokenRepo = accessTokenRepo;
+    this.refreshTokenRepo = refreshTokenRepo;
+    this.groupRepo = groupRepo;
+    this.chunkSize = chunkSize;
+  }
+
+  private void deleteInChunks(Supplier<TokenChunkDeletion> deleteChunk,
+      Runnable onChunkDeleted) {
+
+    TokenChunkDeletion chunk = deleteChunk.get();
+
+    while (!chunk.isEmpty()) {
+      if (chunk.getDeletedCount() > 0) {
+        onChunkDeleted.run();
+      }
+
+      chunk = deleteChunk.get();
+    }
+  }
+
+  private TokenRevocationResult revokeTokens(String target,
+      Supplier<TokenChunkDeletion> deleteAccessTokens,
+      Supplier<TokenChunkDeletion> deleteRefreshTokens,
+      TokenRevocationProgressListener listener) {
+
+    TokenRevocationResult result = new TokenRevocationResult();
+
+    Runnable reportProgress = () -> {
+      TokenRevocationResult current = new TokenRevocationResult();
+      current.add(result);
+      LOG.debug("Revoking tokens for {}: {}", target, current);
+      listener.onProgress(target, current);
+    };
+
+    deleteInChunks(() -> {
+      TokenChunkDeletion chunk = deleteAccessTokens.get();
+      result.addAccessTokens(chunk.getDeletedCount());
+      return chunk;
+    }, reportProgress);
+
+    deleteInChunks(() -> {
+      TokenChunkDeletion chunk = deleteRefreshTokens.get();
+      result.addRefreshTokens(chunk.getDeletedCount());
+      return chunk;
+    }, reportProgress);
+
+    return result;
+  }
+
+  private TokenRevocationResult revokeTokens(String target, String username, String clientId,
+      TokenRevocationProgressListener listener) {
+
+    return revokeTokens(target,
+        () -> accessTokenRepo.deleteAccessTokens(username, clientId, chunkSize),
+        () -> refreshTokenRepo.deleteRefreshTokens(username, clientId, chunkSize), listener);
+  }
+
+  @Override
+  public TokenRevocationResult revokeUserTokens(String username,
+      TokenRevocationProgressListener listener) {
+
+    TokenRevocationResult result = revokeTokens(username, username, null, listener);
+
+    LOG.info("Revoked {} access tokens and {} refresh tokens for user {}",
+        result.getAccessTokens(), result.getRefreshTokens(), username);
+
+    return result;
+  }
+
+  @Override
+  public TokenRevocationResult revokeClientTokens(String clientId,
+      TokenRevocationProgressListener listener) {
+
+    TokenRevocationResult result = revokeTokens(clientId, null, clientId, listener);
+
+    LOG.info("Revoked {} access tokens and {} refresh tokens for client {}",
+        result.getAccessTokens(), result.getRefreshTokens(), clientId);
+
+    return result;
+  }
+
+  @Override
+  public TokenRevocationResult revokeGroupMembersTokens(String groupUuid,
+      TokenRevocationProgressListener listener) {
+
+    IamGroup group = groupRepo.findByUuid(groupUuid)
+      .orElseThrow(() -> new IllegalArgumentException("Group not found: " + groupUuid));
+
+    final Long groupId = group.getId();
+
+    TokenRevocationResult result = revokeTokens(group.getName(),
+        () -> accessTokenRepo.deleteGroupMembersAccessTokens(groupId, chunkSize),
+        () -> refreshTokenRepo.deleteGroupMembersRefreshTokens(groupId, chunkSize), listener);
+
+    LOG.info("Revoked {} access tokens and {} refresh tokens for the members of group {}",
+        result.getAccessTokens(), result.getRefreshTokens(), group.getName());
+
+    return result;
+  }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.revocation;
+
+@FunctionalInterface
+public interface TokenRevocationProgressListener {
+
+  TokenRevocationProgressListener NOOP = (target, progress) -> {
+  };
+
+  /**
+   * Called after each chunk of tokens is revoked.
+   *
+   * @param target the user, client or group whose tokens are being revoked
+   * @param progress the tokens revoked so far
+   */
+  void onProgress(String target, TokenRevocationResult progress);
+}
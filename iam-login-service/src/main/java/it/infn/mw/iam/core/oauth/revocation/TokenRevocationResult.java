@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.revocation;
+
+/**
+ * The number of tokens revoked so far by a bulk revocation.
+ */
+public class TokenRevocationResult {
+
+  private long accessTokens;
+  private long refreshTokens;
+
+  void addAccessTokens(long count) {
+    accessTokens += count;
+  }
+
+  void addRefreshTokens(long count) {
+    refreshTokens += count;
+  }
+
+  void add(TokenRevocationResult other) {
+    accessTokens += other.accessTokens;
+    refreshTokens += other.refreshTokens;
+  }
+
+  public long getAccessTokens() {
+    return accessTokens;
+  }
+
+  public long getRefreshTokens() {
+    return refreshTokens;
+  }
+
+  @Override
+  public String toString() {
+    return "TokenRevocationResult [accessTokens=" + accessTokens + ", refreshTokens="
+        + refreshTokens + "]";
+  }
+}
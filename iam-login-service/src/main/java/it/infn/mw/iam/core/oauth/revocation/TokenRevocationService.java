@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.revocation;
+
+/**
+ * Revokes, in bounded chunks, all the access and refresh tokens issued to a user, to a client or
+ * to the members of a group.
+ */
+public interface TokenRevocationService {
+
+  TokenRevocationResult revokeUserTokens(String username,
+      TokenRevocationProgressListener listener);
+
+  TokenRevocationResult revokeClientTokens(String clientId,
+      TokenRevocationProgressListener listener);
+
+  /**
+   * Revokes the tokens issued to the direct members of a group.
+   *
+   * @throws IllegalArgumentException if the group does not exist
+   */
+  TokenRevocationResult revokeGroupMembersTokens(String groupUuid,
+      TokenRevocationProgressListener listener);
+
+  default TokenRevocationResult revokeUserTokens(String username) {
+    return revokeUserTokens(username, TokenRevocationProgressListener.NOOP);
+  }
+
+  default TokenRevocationResult revokeClientTokens(String clientId) {
+    return revokeClientTokens(clientId, TokenRevocationProgressListener.NOOP);
+  }
+
+  default TokenRevocationResult revokeGroupMembersTokens(String groupUuid) {
+    return revokeGroupMembersTokens(groupUuid, TokenRevocationProgressListener.NOOP);
+  }
+}
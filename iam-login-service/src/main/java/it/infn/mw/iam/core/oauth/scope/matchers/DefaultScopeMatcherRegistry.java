@@ -16,8 +16,11 @@
 package it.infn.mw.iam.core.oauth.scope.matchers;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.springframework.security.oauth2.provider.ClientDetails;
@@ -25,14 +28,42 @@ import org.springframework.security.oauth2.provider.ClientDetails;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+/**
+ * A scope matcher registry that indexes custom matchers, so that looking up the matcher for a scope
+ * does not evaluate every custom matcher: string equals matchers are indexed by scope and
+ * structured path matchers by prefix, while other matchers are evaluated in order.
+ *
+ * When more than one custom matcher matches a scope, the one that comes first in the custom
+ * matchers set iteration order is returned.
+ */
 public class DefaultScopeMatcherRegistry implements ScopeMatcherRegistry {
 
   public static final int DEFAULT_CACHE_SIZE = 10;
 
+  private static final char PREFIX_SEP = ':';
+
+  private static class IndexedMatcher {
+    final int order;
+    final ScopeMatcher matcher;
+
+    IndexedMatcher(int order, ScopeMatcher matcher) {
+      this.order = order;
+      this.matcher = matcher;
+    }
+  }
+
   private final Set<ScopeMatcher> customMatchers;
 
+  private final Map<String, IndexedMatcher> equalsMatchers;
+  private final Map<String, List<IndexedMatcher>> pathMatchersByPrefix;
+  private final List<IndexedMatcher> otherMatchers;
+
   private final LoadingCache<String, ScopeMatcher> plainMatchersCache;
 
   public DefaultScopeMatcherRegistry(Set<ScopeMatcher> customMatchers) {
@@ -43,9 +74,51 @@ public class DefaultScopeMatcherRegistry implements ScopeMatcherRegistry {
     checkArgument(nonNull(customMatchers), "customMatchers must be non-null");
     int cacheSize =
         (plainMatchersCacheSize < DEFAULT_CACHE_SIZE ? DEFAULT_CACHE_SIZE : plainMatchersCacheSize);
-    plainMatchersCache =
-        CacheBuilder.newBuilder().maximumSize(cacheSize).build(CacheLoader.from(StringEqualsScopeMatcher::stringEqualsMatcher));
+    plainMatchersCache = CacheBuilder.newBuilder()
+      .maximumSize(cacheSize)
+      .build(CacheLoader.from(StringEqualsScopeMatcher::stringEqualsMatcher));
     this.customMatchers = customMatchers;
+
+    Map<String, IndexedMatcher> equals = Maps.newHashMap();
+    Map<String, List<IndexedMatcher>> paths = Maps.newHashMap();
+    List<IndexedMatcher> others = Lists.newArrayList();
+
+    int order = 0;
+
+    for (ScopeMatcher m : customMatchers) {
+      IndexedMatcher im = new IndexedMatcher(order++, m);
+
+      if (m instanceof StringEqualsScopeMatcher) {
+        equals.putIfAbsent(((StringEqualsScopeMatcher) m).expectedValue, im);
+      } else if (m instanceof StructuredPathScopeMatcher) {
+        String prefix = ((StructuredPathScopeMatcher) m).getPrefix();
+        paths.computeIfAbsent(prefix, p -> Lists.newArrayList()).add(im);
+      } else {
+        others.add(im);
+      }
+    }
+
+    equalsMatchers = ImmutableMap.copyOf(equals);
+    ImmutableMap.Builder<String, List<IndexedMatcher>> pathsBuilder = ImmutableMap.builder();
+    paths.forEach((prefix, matchers) -> pathsBuilder.put(prefix, ImmutableList.copyOf(matchers)));
+    pathMatchersByPrefix = pathsBuilder.build();
+    otherMatchers = ImmutableList.copyOf(others);
+  }
+
+  private static IndexedMatcher firstMatch(List<IndexedMatcher> matchers, String scope,
+      IndexedMatcher currentMatch) {
+
+    for (IndexedMatcher m : matchers) {
+      if (nonNull(currentMatch) && m.order > currentMatch.order) {
+        break;
+      }
+
+      if (m.matcher.matches(scope)) {
+        return m;
+      }
+    }
+
+    return currentMatch;
   }
 
   @Override
@@ -61,10 +134,30 @@ public class DefaultScopeMatcherRegistry implements ScopeMatcherRegistry {
 
   @Override
   public ScopeMatcher findMatcherForScope(String scope) {
-    return customMatchers.stream()
-      .filter(m -> m.matches(scope))
-      .findFirst()
-      .orElse(plainMatchersCache.getUnchecked(scope));
+    checkArgument(nonNull(scope), "scope must be non-null");
+
+    IndexedMatcher match = equalsMatchers.get(scope);
+
+    final int sepIndex = scope.indexOf(PREFIX_SEP);
+
+    if (sepIndex > 0) {
+      List<IndexedMatcher> pathMatchers = pathMatchersByPrefix.get(scope.substring(0, sepIndex));
+
+      if (nonNull(pathMatchers)) {
+        match = firstMatch(pathMatchers, scope, match);
+      }
+    }
+
+    match = firstMatch(otherMatchers, scope, match);
+
+    if (isNull(match)) {
+      return plainMatchersCache.getUnchecked(scope);
+    }
+
+    return match.matcher;
   }
 
+  public Set<ScopeMatcher> getCustomMatchers() {
+    return customMatchers;
+  }
 }
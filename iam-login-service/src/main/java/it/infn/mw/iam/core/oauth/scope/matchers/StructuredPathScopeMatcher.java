@@ -19,59 +19,61 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.util.Objects.nonNull;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import javax.annotation.Generated;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Matches structured scopes in the form <code>prefix:path</code>, e.g.
+ * <code>storage.read:/atlas</code>.
+ *
+ * A scope matches if it has the same prefix and its path is equal to, or is below, the matcher
+ * path, i.e. <code>storage.read:/atlas</code> matches <code>storage.read:/atlas</code> and
+ * <code>storage.read:/atlas/data</code>, but not <code>storage.read:/atlasdata</code>. Prefix and
+ * path are compared literally, without allocating, since matching runs for each requested scope.
+ */
 public class StructuredPathScopeMatcher implements ScopeMatcher {
 
   public static final Logger LOG = LoggerFactory.getLogger(StructuredPathScopeMatcher.class);
 
-  private static final Pattern POINT_DIR_MATCHER = Pattern.compile("\\.\\./?");
-  
-  private static final Character SEP = ':';
-  private static final String SEP_STR = SEP.toString();
+  private static final String RELATIVE_PATH_REFERENCE = "..";
+
+  private static final char SEP = ':';
+  private static final String SEP_STR = String.valueOf(SEP);
+  private static final char PATH_SEP = '/';
 
   private final String prefix;
   private final String path;
 
-  private final Pattern prefixMatchPattern;
-  private final Pattern pathMatchPattern;
+  private final boolean pathEndsWithSeparator;
 
   private StructuredPathScopeMatcher(String prefix, String path) {
 
     this.prefix = prefix;
     this.path = path;
-
-    final String prefixMatchRegexp = String.format("^%s%c", prefix, SEP);
-    prefixMatchPattern = Pattern.compile(prefixMatchRegexp);
-    pathMatchPattern = Pattern.compile(path + ".*");
+    this.pathEndsWithSeparator = !path.isEmpty() && path.charAt(path.length() - 1) == PATH_SEP;
   }
 
   @Override
   public boolean matches(String scope) {
     checkArgument(nonNull(scope), "scope must be non-null");
 
-    if (POINT_DIR_MATCHER.matcher(scope).find()) {
+    if (scope.contains(RELATIVE_PATH_REFERENCE)) {
       throw new IllegalArgumentException("Scope contains relative path references");
     }
 
-    Matcher prefixMatcher = prefixMatchPattern.matcher(scope);
-    
-    boolean prefixMatches = prefixMatcher.find();
-    
-    if (prefixMatches) {
-      final String scopePath = scope.substring(prefix.length() + 1);
-      return pathMatchPattern.matcher(scopePath).matches(); 
-    } else {
+    final int pathStart = prefix.length() + 1;
+    final int pathEnd = pathStart + path.length();
+
+    if (scope.length() < pathEnd || scope.charAt(prefix.length()) != SEP
+        || !scope.startsWith(prefix) || !scope.startsWith(path, pathStart)) {
       return false;
     }
+
+    return pathEnd == scope.length() || pathEndsWithSeparator || scope.charAt(pathEnd) == PATH_SEP;
   }
-  
+
   public static StructuredPathScopeMatcher fromString(String scope) {
     final int sepIndex = scope.indexOf(SEP);
     final String prefix = scope.substring(0, sepIndex);
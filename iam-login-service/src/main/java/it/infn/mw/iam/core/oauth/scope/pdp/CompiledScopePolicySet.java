@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.EQ;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
+import static java.util.Objects.isNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import it.infn.mw.iam.api.scim.exception.IllegalArgumentException;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+import it.infn.mw.iam.persistence.model.PolicyRule;
+
+/**
+ * An immutable, indexed representation of a set of scope policies.
+ *
+ * EQ policies are indexed by scope, while PATH and REGEXP policies are indexed in a prefix trie
+ * keyed by the literal prefix that any matching scope must start with, so that only the matchers
+ * that can possibly match a scope are evaluated. Policies that do not list any scope apply to all
+ * scopes. Decisions are combined with the deny-overrides algorithm.
+ */
+public class CompiledScopePolicySet {
+
+  public static final CompiledScopePolicySet EMPTY_POLICY_SET =
+      new CompiledScopePolicySet(null, ImmutableMap.of(), new PrefixTrie());
+
+  private static final String REGEXP_METACHARS = "\\^$.|?*+()[]{}";
+  private static final String REGEXP_QUANTIFIERS = "?*+{";
+
+  private static class MatcherEntry {
+    final ScopeMatcher matcher;
+    final PolicyRule rule;
+
+    MatcherEntry(ScopeMatcher matcher, PolicyRule rule) {
+      this.matcher = matcher;
+      this.rule = rule;
+    }
+  }
+
+  private static class PrefixTrie {
+
+    final Map<Character, PrefixTrie> children = Maps.newHashMap();
+    final List<MatcherEntry> entries = Lists.newArrayList();
+
+    void add(String key, MatcherEntry entry) {
+      PrefixTrie node = this;
+      for (int i = 0; i < key.length(); i++) {
+        node = node.children.computeIfAbsent(key.charAt(i), c -> new PrefixTrie());
+      }
+      node.entries.add(entry);
+    }
+
+    PolicyRule decide(String scope, PolicyRule currentDecision) {
+      PolicyRule decision = currentDecision;
+      PrefixTrie node = this;
+      int index = 0;
+
+      while (node != null) {
+        for (MatcherEntry e : node.entries) {
+          if (PolicyRule.DENY.equals(decision)) {
+            return decision;
+          }
+          if (e.rule.equals(decision)) {
+            continue;
+          }
+          if (e.matcher.matches(scope)) {
+            decision = combine(decision, e.rule);
+          }
+        }
+
+        if (index == scope.length()) {
+          break;
+        }
+
+        node = node.children.get(scope.charAt(index++));
+      }
+
+      return decision;
+    }
+  }
+
+  private final PolicyRule catchAllRule;
+  private final Map<String, PolicyRule> eqRules;
+  private final PrefixTrie matchers;
+
+  private CompiledScopePolicySet(PolicyRule catchAllRule, Map<String, PolicyRule> eqRules,
+      PrefixTrie matchers) {
+    this.catchAllRule = catchAllRule;
+    this.eqRules = eqRules;
+    this.matchers = matchers;
+  }
+
+  static PolicyRule combine(PolicyRule current, PolicyRule other) {
+    if (isNull(current)) {
+      return other;
+    }
+
+    if (isNull(other)) {
+      return current;
+    }
+
+    if (PolicyRule.DENY.equals(current) || PolicyRule.DENY.equals(other)) {
+      return PolicyRule.DENY;
+    }
+
+    return PolicyRule.PERMIT;
+  }
+
+  /**
+   * Returns the longest literal string that any input matched by the given regular expression
+   * must start with.
+   */
+  static String literalPrefix(String regexp) {
+    if (regexp.indexOf('|') >= 0) {
+      return "";
+    }
+
+    StringBuilder prefix = new StringBuilder();
+
+    for (int i = 0; i < regexp.length(); i++) {
+      char c = regexp.charAt(i);
+
+      if (REGEXP_METACHARS.indexOf(c) >= 0) {
+        break;
+      }
+
+      if (i + 1 < regexp.length() && REGEXP_QUANTIFIERS.indexOf(regexp.charAt(i + 1)) >= 0) {
+        break;
+      }
+
+      prefix.append(c);
+    }
+
+    return prefix.toString();
+  }
+
+  static String pathMatcherKey(StructuredPathScopeMatcher matcher) {
+    return matcher.getPrefix() + ':' + matcher.getPath();
+  }
+
+  /**
+   * Returns the decision of this policy set for the given scope: {@link PolicyRule#PERMIT},
+   * {@link PolicyRule#DENY} or <code>null</code>, if no policy in this set applies to the scope.
+   */
+  public PolicyRule decide(String scope) {
+
+    PolicyRule decision = catchAllRule;
+
+    if (PolicyRule.DENY.equals(decision)) {
+      return decision;
+    }
+
+    decision = combine(decision, eqRules.get(scope));
+
+    if (PolicyRule.DENY.equals(decision)) {
+      return decision;
+    }
+
+    return matchers.decide(scope, decision);
+  }
+
+  public boolean isEmpty() {
+    return isNull(catchAllRule) && eqRules.isEmpty() && matchers.entries.isEmpty()
+        && matchers.children.isEmpty();
+  }
+
+  public static CompiledScopePolicySet compile(Collection<IamScopePolicy> policies) {
+
+    if (policies.isEmpty()) {
+      return EMPTY_POLICY_SET;
+    }
+
+    PolicyRule catchAllRule = null;
+    Map<String, PolicyRule> eqRules = Maps.newHashMap();
+    PrefixTrie matchers = new PrefixTrie();
+
+    for (IamScopePolicy p : policies) {
+
+      if (p.getScopes().isEmpty()) {
+        catchAllRule = combine(catchAllRule, p.getRule());
+        continue;
+      }
+
+      if (EQ.equals(p.getMatchingPolicy())) {
+        for (String s : p.getScopes()) {
+          eqRules.put(s, combine(eqRules.get(s), p.getRule()));
+        }
+      } else if (REGEXP.equals(p.getMatchingPolicy())) {
+        for (String s : p.getScopes()) {
+          matchers.add(literalPrefix(s), new MatcherEntry(regexpMatcher(s), p.getRule()));
+        }
+      } else if (PATH.equals(p.getMatchingPolicy())) {
+        for (String s : p.getScopes()) {
+          StructuredPathScopeMatcher m = StructuredPathScopeMatcher.fromString(s);
+          matchers.add(pathMatcherKey(m), new MatcherEntry(m, p.getRule()));
+        }
+      } else {
+        throw new IllegalArgumentException(
+            "Unknown scope policy matching policy: " + p.getMatchingPolicy());
+      }
+    }
+
+    return new CompiledScopePolicySet(catchAllRule, ImmutableMap.copyOf(eqRules), matchers);
+  }
+}
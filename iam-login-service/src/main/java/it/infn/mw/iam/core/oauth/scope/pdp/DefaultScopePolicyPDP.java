@@ -15,235 +15,125 @@
  */
 package it.infn.mw.iam.core.oauth.scope.pdp;
 
-import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
-import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.EQ;
-import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
-import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
+import static it.infn.mw.iam.core.oauth.scope.pdp.CompiledScopePolicySet.combine;
+import static java.util.Objects.isNull;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
-import it.infn.mw.iam.api.scim.exception.IllegalArgumentException;
-import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
-import it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamScopePolicy;
-import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+import it.infn.mw.iam.persistence.model.PolicyRule;
 
 @Component
 public class DefaultScopePolicyPDP implements ScopePolicyPDP {
 
   public static final Logger LOG = LoggerFactory.getLogger(DefaultScopePolicyPDP.class);
-  
-  private Cache<String, ScopeMatcher> matchersCache =
-      CacheBuilder.newBuilder().maximumSize(30).build();
 
-  public static class DecisionContext {
+  private final ScopePolicySetRegistry policySetRegistry;
 
-    public static final Logger LOG = LoggerFactory.getLogger(DecisionContext.class);
-
-    enum ScopeStatus {
-      PERMIT,
-      DENY,
-      UNPROCESSED
-    }
-
-    private final Map<String, ScopeStatus> scopeStatus = Maps.newHashMap();
-    private final Cache<String, ScopeMatcher> matchersCache;
-
-    public DecisionContext(Cache<String, ScopeMatcher> matchersCache, Set<String> requestedScopes) {
-      LOG.debug("Decision context created for scopes '{}'", requestedScopes);
-      requestedScopes.forEach(s -> scopeStatus.put(s, ScopeStatus.UNPROCESSED));
-      this.matchersCache = matchersCache;
-    }
-
-    protected void permitScope(String scope) {
-      if (!scopeStatus.get(scope).equals(ScopeStatus.DENY)) {
-        scopeStatus.put(scope, ScopeStatus.PERMIT);
-      } else {
-        LOG.debug("Permit on scope {} ignored. Former DENY overrides", scope);
-      }
-    }
+  @Autowired
+  public DefaultScopePolicyPDP(ScopePolicySetRegistry policySetRegistry) {
+    this.policySetRegistry = policySetRegistry;
+  }
 
-    protected void denyScope(String scope) {
-      scopeStatus.put(scope, ScopeStatus.DENY);
-    }
+  protected List<CompiledScopePolicySet> resolveGroupScopePolicies(IamAccount account) {
 
-    protected boolean entryIsUnprocessed(Map.Entry<String, ScopeStatus> e) {
-      return e.getValue().equals(ScopeStatus.UNPROCESSED);
-    }
+    List<CompiledScopePolicySet> groupPolicies = Lists.newArrayList();
 
-    protected boolean entryIsProcessed(Map.Entry<String, ScopeStatus> e) {
-      return !e.getValue().equals(ScopeStatus.UNPROCESSED);
-    }
-    
-    protected boolean policyApplicableToScope(IamScopePolicy p, String scope) {
-      if (p.getScopes().isEmpty()) {
-        return true;
-      }
-      if (EQ.equals(p.getMatchingPolicy())) {
-        return p.getScopes().contains(scope);
-      } else if (REGEXP.equals(p.getMatchingPolicy())) {
-        boolean foundMatch = false;
-        for (String ps : p.getScopes()) {
-          try {
-            ScopeMatcher m = matchersCache.get(ps, () -> regexpMatcher(ps));
-            if (m.matches(scope)) {
-              foundMatch = true;
-            }
-          } catch (ExecutionException e) {
-            throw new IllegalArgumentException(e.getMessage());
-          }
-        }
-        return foundMatch;
-      } else if (PATH.equals(p.getMatchingPolicy())) {
-        boolean foundMatch = false;
-        for (String ps : p.getScopes()) {
-          ScopeMatcher m;
-          try {
-            m = matchersCache.get(ps, () -> StructuredPathScopeMatcher.fromString(ps));
-            if (m.matches(scope)) {
-              foundMatch = true;
-            }
-          } catch (ExecutionException e) {
-            throw new IllegalArgumentException(e.getMessage());
-          }
-        }
-        return foundMatch;
-      } else {
-        throw new IllegalArgumentException(
-            "Unknown scope policy matching policy: " + p.getMatchingPolicy());
+    for (IamGroup g : account.getGroups()) {
+      CompiledScopePolicySet policySet = policySetRegistry.findGroupPolicies(g);
+      if (!policySet.isEmpty()) {
+        groupPolicies.add(policySet);
       }
     }
 
-    protected void applyScopePolicy(String scope, IamScopePolicy p, IamAccount a) {
-      LOG.debug("Evaluating {} policy #{} ('{}') against scope '{}' for account '{}'",
-          p.getPolicyType(), p.getId(), p.getDescription(), scope, a.getUsername());
+    return groupPolicies;
+  }
 
-      if (!policyApplicableToScope(p, scope)) {
-        LOG.debug("{} policy #{} ('{}') NOT APPLICABLE to scope '{}' for account '{}'",
-            p.getPolicyType(), p.getId(), p.getDescription(), scope, a.getUsername());
-        return;
-      }
+  protected PolicyRule decide(List<CompiledScopePolicySet> policySets, String scope) {
+    PolicyRule decision = null;
 
-      if (p.isPermit()) {
-        LOG.debug("{} policy #{} ('{}') PERMITS scope '{}' for account '{}'", p.getPolicyType(),
-            p.getId(), p.getDescription(), scope, a.getUsername());
-        permitScope(scope);
+    // Group policies are naturally composed with the deny overrides behaviour
+    for (CompiledScopePolicySet ps : policySets) {
+      decision = combine(decision, ps.decide(scope));
 
-      } else {
-        LOG.debug("{} policy #{} ('{}') DENIES scope '{}' for account '{}'", p.getPolicyType(),
-            p.getId(), p.getDescription(), scope, a.getUsername());
-        denyScope(scope);
+      if (PolicyRule.DENY.equals(decision)) {
+        break;
       }
     }
 
-    public void applyPolicy(IamScopePolicy p, IamAccount a) {
-      scopeStatus.keySet().forEach(s -> applyScopePolicy(s, p, a));
-    }
-
-    public boolean hasUnprocessedScopes() {
-      return scopeStatus.entrySet().stream().anyMatch(this::entryIsUnprocessed);
-    }
-
-    public Set<String> getAllowedScopes() {
-      return scopeStatus.entrySet()
-        .stream()
-        .filter(e -> ScopeStatus.PERMIT.equals(e.getValue()))
-        .map(Map.Entry::getKey)
-        .collect(Collectors.toSet());
-    }
-
-    public void forgetProcessedEntries() {
-      Set<String> processedKeys = scopeStatus.entrySet()
-        .stream()
-        .filter(this::entryIsProcessed)
-        .map(Map.Entry::getKey)
-        .collect(Collectors.toSet());
-
-      processedKeys.forEach(scopeStatus::remove);
-    }
-
-    @Override
-    public String toString() {
-      return "DecisionContext [" + scopeStatus + "]";
-    }
+    return decision;
   }
 
-  private final IamScopePolicyRepository policyRepo;
-
-  @Autowired
-  public DefaultScopePolicyPDP(IamScopePolicyRepository policyRepo) {
-    this.policyRepo = policyRepo;
-  }
+  /**
+   * Applies the decision to the scope, if any, and returns true if the scope has been processed
+   */
+  protected boolean applyDecision(Set<String> allowedScopes, String scope, PolicyRule decision,
+      String level, IamAccount account) {
 
-  protected Set<IamScopePolicy> resolveGroupScopePolicies(IamAccount account) {
+    if (isNull(decision)) {
+      return false;
+    }
 
-    Set<IamScopePolicy> groupPolicies = Sets.newHashSet();
+    LOG.debug("{} policies {} scope '{}' for account '{}'", level,
+        PolicyRule.PERMIT.equals(decision) ? "PERMIT" : "DENY", scope, account.getUsername());
 
-    Set<IamGroup> groups = account.getGroups();
-    for (IamGroup g : groups) {
-      groupPolicies.addAll(g.getScopePolicies());
+    if (PolicyRule.PERMIT.equals(decision)) {
+      allowedScopes.add(scope);
     }
 
-    return groupPolicies;
+    return true;
   }
 
   @Override
   public Set<String> filterScopes(Set<String> requestedScopes, IamAccount account) {
 
-    DecisionContext dc = new DecisionContext(matchersCache, requestedScopes);
+    LOG.debug("Evaluating scope policies for scopes '{}' and account '{}'", requestedScopes,
+        account.getUsername());
+
+    Set<String> allowedScopes = Sets.newHashSet();
+    Set<String> unprocessedScopes = Sets.newHashSet(requestedScopes);
 
     // Apply user policies
-    for (IamScopePolicy p : account.getScopePolicies()) {
-      dc.applyPolicy(p, account);
-    }
+    CompiledScopePolicySet accountPolicies =
+        CompiledScopePolicySet.compile(account.getScopePolicies());
 
-    Set<String> allowedScopes = dc.getAllowedScopes();
+    if (!accountPolicies.isEmpty()) {
+      unprocessedScopes.removeIf(s -> applyDecision(allowedScopes, s, accountPolicies.decide(s),
+          "ACCOUNT", account));
+    }
 
-    if (!dc.hasUnprocessedScopes()) {
+    if (unprocessedScopes.isEmpty()) {
       return allowedScopes;
     }
 
-    Set<IamScopePolicy> groupPolicies = resolveGroupScopePolicies(account);
-
     // Apply group policies only on unprocessed scopes
-    dc.forgetProcessedEntries();
+    List<CompiledScopePolicySet> groupPolicies = resolveGroupScopePolicies(account);
 
-    // Group policies are naturally composed with the deny overrides behaviour
-    for (IamScopePolicy p : groupPolicies) {
-      dc.applyPolicy(p, account);
+    if (!groupPolicies.isEmpty()) {
+      unprocessedScopes.removeIf(
+          s -> applyDecision(allowedScopes, s, decide(groupPolicies, s), "GROUP", account));
     }
 
-    allowedScopes.addAll(dc.getAllowedScopes());
-
-    if (!dc.hasUnprocessedScopes()) {
+    if (unprocessedScopes.isEmpty()) {
       return allowedScopes;
     }
 
-    dc.forgetProcessedEntries();
-
-    List<IamScopePolicy> defaultPolicies = policyRepo.findDefaultPolicies();
+    CompiledScopePolicySet defaultPolicies = policySetRegistry.findDefaultPolicies();
 
-    for (IamScopePolicy p : defaultPolicies) {
-      dc.applyPolicy(p, account);
+    for (String s : unprocessedScopes) {
+      applyDecision(allowedScopes, s, defaultPolicies.decide(s), "DEFAULT", account);
     }
 
-    allowedScopes.addAll(dc.getAllowedScopes());
     return allowedScopes;
   }
 
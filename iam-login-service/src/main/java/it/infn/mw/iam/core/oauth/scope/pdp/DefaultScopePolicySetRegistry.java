@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
+import static java.util.Objects.isNull;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyEvent;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyUpdatedEvent;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+
+/**
+ * Keeps compiled default and group scope policy sets, so that scope policy decisions do not
+ * need to reload and re-evaluate policies from the database at each token request.
+ *
+ * Cached policy sets are evicted when scope policy events are published and, as a safety net for
+ * changes that happen on other IAM replicas or outside of the scope policy API, after a
+ * configurable refresh period.
+ */
+@Component
+public class DefaultScopePolicySetRegistry
+    implements ScopePolicySetRegistry, ApplicationListener<ScopePolicyEvent> {
+
+  public static final Logger LOG = LoggerFactory.getLogger(DefaultScopePolicySetRegistry.class);
+
+  private static class DefaultPolicies {
+    final CompiledScopePolicySet policySet;
+    final long expirationTime;
+
+    DefaultPolicies(CompiledScopePolicySet policySet, long expirationTime) {
+      this.policySet = policySet;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private final IamScopePolicyRepository policyRepo;
+  private final Clock clock;
+  private final long refreshPeriodMsec;
+
+  private final Cache<Long, CompiledScopePolicySet> groupPolicies;
+
+  // Incremented at each eviction, used to avoid caching policy sets compiled from stale data
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile DefaultPolicies defaultPolicies;
+
+  @Autowired
+  public DefaultScopePolicySetRegistry(IamScopePolicyRepository policyRepo, Clock clock,
+      @Value("${iam.scope-policy-pdp.refresh-period-secs:300}") long refreshPeriodSecs,
+      @Value("${iam.scope-policy-pdp.max-cached-groups:10000}") long maxCachedGroups) {
+    this.policyRepo = policyRepo;
+    this.clock = clock;
+    this.refreshPeriodMsec = TimeUnit.SECONDS.toMillis(refreshPeriodSecs);
+    this.groupPolicies = CacheBuilder.newBuilder()
+      .maximumSize(maxCachedGroups)
+      .expireAfterWrite(refreshPeriodSecs, TimeUnit.SECONDS)
+      .build();
+  }
+
+  @Override
+  public CompiledScopePolicySet findDefaultPolicies() {
+
+    DefaultPolicies current = defaultPolicies;
+    final long now = clock.millis();
+
+    if (isNull(current) || current.expirationTime <= now) {
+      final long gen = generation.get();
+      CompiledScopePolicySet policySet =
+          CompiledScopePolicySet.compile(policyRepo.findDefaultPolicies());
+
+      current = new DefaultPolicies(policySet, now + refreshPeriodMsec);
+
+      if (gen == generation.get()) {
+        defaultPolicies = current;
+      }
+    }
+
+    return current.policySet;
+  }
+
+  @Override
+  public CompiledScopePolicySet findGroupPolicies(IamGroup group) {
+
+    CompiledScopePolicySet policySet = groupPolicies.getIfPresent(group.getId());
+
+    if (isNull(policySet)) {
+      final long gen = generation.get();
+      policySet = CompiledScopePolicySet.compile(group.getScopePolicies());
+
+      if (gen == generation.get()) {
+        groupPolicies.put(group.getId(), policySet);
+      }
+    }
+
+    return policySet;
+  }
+
+  @Override
+  public void evictGroupPolicies(Long groupId) {
+    generation.incrementAndGet();
+    groupPolicies.invalidate(groupId);
+  }
+
+  @Override
+  public void evictDefaultPolicies() {
+    generation.incrementAndGet();
+    defaultPolicies = null;
+  }
+
+  @Override
+  public void evictAll() {
+    generation.incrementAndGet();
+    groupPolicies.invalidateAll();
+    defaultPolicies = null;
+  }
+
+  protected void evictPoliciesAffectedBy(ScopePolicyEvent event) {
+    IamScopePolicy policy = event.getPolicy();
+
+    if (event instanceof ScopePolicyUpdatedEvent) {
+      // An update can move a policy across groups, so we don't know
+      // which compiled policy sets are affected
+      evictAll();
+    } else if (IamScopePolicy.PolicyType.DEFAULT.equals(policy.getPolicyType())) {
+      evictDefaultPolicies();
+    } else if (IamScopePolicy.PolicyType.GROUP.equals(policy.getPolicyType())) {
+      evictGroupPolicies(policy.getGroup().getId());
+    }
+  }
+
+  @Override
+  public void onApplicationEvent(ScopePolicyEvent event) {
+    LOG.debug("Evicting compiled scope policies affected by event: {}", event.getMessage());
+    evictNowAndAfterCompletion(() -> evictPoliciesAffectedBy(event));
+  }
+}
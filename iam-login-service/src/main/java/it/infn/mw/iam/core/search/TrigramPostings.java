@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.search;
+
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Helpers shared by the in-memory trigram indexes.
+ *
+ * Documents are identified by their slot, i.e. their position in the index, and each trigram
+ * points to the sorted list of the slots of the documents containing it. The fields of a document
+ * text are separated by {@link #FIELD_SEPARATOR}, so that no trigram spans two fields.
+ */
+public final class TrigramPostings {
+
+  public static final char FIELD_SEPARATOR = '\u0000';
+  public static final int[] NO_SLOTS = new int[0];
+
+  public static final int EXACT_MATCH = 0;
+  public static final int NO_MATCH = -1;
+
+  /**
+   * A growable list of slots, where slots are added in increasing order and each slot is kept
+   * only once.
+   */
+  public static final class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    public void add(int value) {
+      if (size > 0 && values[size - 1] == value) {
+        return;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    public int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  private TrigramPostings() {
+    // prevent instantiation
+  }
+
+  private static long trigram(char c0, char c1, char c2) {
+    return ((long) c0 << 32) | ((long) c1 << 16) | c2;
+  }
+
+  public static void forEachTrigram(String text, LongConsumer consumer) {
+    for (int i = 0; i + 2 < text.length(); i++) {
+      char c0 = text.charAt(i);
+      char c1 = text.charAt(i + 1);
+      char c2 = text.charAt(i + 2);
+
+      if (c0 != FIELD_SEPARATOR && c1 != FIELD_SEPARATOR && c2 != FIELD_SEPARATOR) {
+        consumer.accept(trigram(c0, c1, c2));
+      }
+    }
+  }
+
+  public static <K> Map<K, int[]> toPostings(Map<K, IntList> lists) {
+    Map<K, int[]> postings = new HashMap<>(lists.size() * 2);
+    lists.forEach((k, l) -> postings.put(k, l.toArray()));
+    return postings;
+  }
+
+  /**
+   * Returns the slots of the documents containing all the trigrams of the given text, or no slots
+   * if the text is shorter than a trigram.
+   */
+  public static int[] lookup(Map<Long, int[]> postings, String text) {
+    Set<Long> trigrams = new LinkedHashSet<>();
+    forEachTrigram(text, trigrams::add);
+
+    List<int[]> lists = new ArrayList<>(trigrams.size());
+    for (Long t : trigrams) {
+      int[] p = postings.get(t);
+      if (isNull(p)) {
+        return NO_SLOTS;
+      }
+      lists.add(p);
+    }
+
+    return intersectAll(lists);
+  }
+
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int i = 0;
+    int j = 0;
+    int size = 0;
+
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Returns the slots contained in all the given sorted lists, starting from the shortest one.
+   */
+  public static int[] intersectAll(List<int[]> lists) {
+    if (lists.isEmpty()) {
+      return NO_SLOTS;
+    }
+
+    lists.sort(Comparator.comparingInt(l -> l.length));
+
+    int[] result = lists.get(0);
+    for (int i = 1; i < lists.size() && result.length > 0; i++) {
+      result = intersect(result, lists.get(i));
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Schedules the IAM background tasks.
+ *
+ * Each {@link TaskFamily} is run by a dedicated pool of scheduler threads, created when the
+ * first task of the family is scheduled, so that a slow or backlogged task only delays the tasks
+ * of its own family. Tasks are wrapped in {@link ManagedTask} instances, which provide overlap
+ * protection, leader-only execution and run statistics.
+ */
+public class IamTaskScheduler implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(IamTaskScheduler.class);
+
+  public static final String THREAD_NAME_PREFIX_FORMAT = "iam-task-%s-";
+
+  private final Map<TaskFamily, Integer> poolSizes;
+  private final TaskLeaderElection leaderElection;
+
+  private final Map<TaskFamily, ThreadPoolTaskScheduler> schedulers =
+      new EnumMap<>(TaskFamily.class);
+  private final Map<String, ManagedTask> tasks = Maps.newLinkedHashMap();
+
+  public IamTaskScheduler(Map<TaskFamily, Integer> poolSizes,
+      TaskLeaderElection leaderElection) {
+    this.poolSizes = new EnumMap<>(poolSizes);
+    this.leaderElection = leaderElection;
+  }
+
+  private ThreadPoolTaskScheduler schedulerFor(TaskFamily family) {
+    return schedulers.computeIfAbsent(family, f -> {
+      final int poolSize = getPoolSize(f);
+
+      LOG.info("Starting {} task scheduler with {} threads", f, poolSize);
+
+      ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+      scheduler.setPoolSize(poolSize);
+      scheduler.setThreadNamePrefix(format(THREAD_NAME_PREFIX_FORMAT, f.name().toLowerCase()));
+      scheduler.setDaemon(true);
+      scheduler.initialize();
+      return scheduler;
+    });
+  }
+
+  private synchronized ManagedTask schedule(String name, TaskFamily family, String schedule,
+      Runnable task, Trigger trigger) {
+
+    checkArgument(!tasks.containsKey(name), "A task named '%s' is already scheduled", name);
+
+    ManagedTask managedTask = new ManagedTask(name, family, schedule, task, leaderElection);
+
+    if (family.isLeaderOnly()) {
+      leaderElection.start();
+    }
+
+    LOG.info("Scheduling {} task {} ({})", family, name, schedule);
+    schedulerFor(family).schedule(managedTask, managedTask.trackingTrigger(trigger));
+    tasks.put(name, managedTask);
+
+    return managedTask;
+  }
+
+  public ManagedTask scheduleWithFixedDelay(String name, TaskFamily family, Runnable task,
+      long initialDelayMsec, long delayMsec) {
+
+    PeriodicTrigger trigger = new PeriodicTrigger(delayMsec);
+    trigger.setInitialDelay(initialDelayMsec);
+
+    return schedule(name, family, format("fixed delay of %d msec", delayMsec), task, trigger);
+  }
+
+  public ManagedTask scheduleAtFixedRate(String name, TaskFamily family, Runnable task,
+      long initialDelayMsec, long periodMsec) {
+
+    PeriodicTrigger trigger = new PeriodicTrigger(periodMsec);
+    trigger.setInitialDelay(initialDelayMsec);
+    trigger.setFixedRate(true);
+
+    return schedule(name, family, format("fixed rate of %d msec", periodMsec), task, trigger);
+  }
+
+  public ManagedTask scheduleCron(String name, TaskFamily family, Runnable task,
+      String cronExpression) {
+
+    return schedule(name, family, format("cron '%s'", cronExpression), task,
+        new CronTrigger(cronExpression));
+  }
+
+  public synchronized List<ManagedTask> getTasks() {
+    return ImmutableList.copyOf(tasks.values());
+  }
+
+  public int getPoolSize(TaskFamily family) {
+    return poolSizes.getOrDefault(family, 1);
+  }
+
+  public TaskLeaderElection getLeaderElection() {
+    return leaderElection;
+  }
+
+  @Override
+  public synchronized void destroy() {
+    schedulers.values().forEach(ThreadPoolTaskScheduler::shutdown);
+    schedulers.clear();
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link TaskLeaderElection} based on a lease recorded in the <code>iam_task_lease</code>
+ * table.
+ *
+ * Each replica tries to acquire or renew the lease every third of the lease duration. The lease
+ * is acquired with a conditional update that succeeds only if the lease is already owned by the
+ * replica or has expired, so at most one replica holds it at any time. A replica considers
+ * itself the leader for half of the lease duration after a successful renewal, which leaves some
+ * slack for clock skew among replicas and for delays in the renewal.
+ */
+public class JdbcTaskLeaderElection implements TaskLeaderElection, DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(JdbcTaskLeaderElection.class);
+
+  public static final String LEASE_NAME = "scheduler";
+
+  public static final String WORKER_THREAD_NAME_FORMAT = "iam-task-leader-election-%d";
+
+  private static final String RENEW_LEASE =
+      "UPDATE iam_task_lease SET owner = ?, expiration_time = ? "
+          + "WHERE name = ? AND (owner = ? OR expiration_time < ?)";
+
+  private static final String INSERT_LEASE =
+      "INSERT INTO iam_task_lease (name, owner, expiration_time) VALUES (?, ?, ?)";
+
+  private static final String RELEASE_LEASE =
+      "UPDATE iam_task_lease SET expiration_time = ? WHERE name = ? AND owner = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Clock clock;
+  private final String nodeId;
+  private final long leaseDurationMsec;
+
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean started = new AtomicBoolean(false);
+
+  private volatile long leadershipExpirationTime;
+
+  public JdbcTaskLeaderElection(JdbcTemplate jdbcTemplate, Clock clock, String nodeId,
+      long leaseDurationMsec) {
+    checkArgument(leaseDurationMsec >= 3, "leaseDurationMsec must be at least 3 msec");
+    this.jdbcTemplate = jdbcTemplate;
+    this.clock = clock;
+    this.nodeId = nodeId;
+    this.leaseDurationMsec = leaseDurationMsec;
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat(WORKER_THREAD_NAME_FORMAT)
+          .setDaemon(true)
+          .build());
+  }
+
+  @Override
+  public void start() {
+    if (started.compareAndSet(false, true)) {
+      LOG.info("Taking part in the task leader election as node {}", nodeId);
+      executor.scheduleWithFixedDelay(this::renewLease, 0, leaseDurationMsec / 3,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private boolean insertLease(Timestamp expiration) {
+    try {
+      return jdbcTemplate.update(INSERT_LEASE, LEASE_NAME, nodeId, expiration) == 1;
+    } catch (DataIntegrityViolationException e) {
+      // Another replica inserted the lease first
+      return false;
+    }
+  }
+
+  /**
+   * Acquires or renews the lease, if possible.
+   */
+  public void renewLease() {
+    final long now = clock.millis();
+    final Timestamp expiration = new Timestamp(now + leaseDurationMsec);
+    final boolean wasLeader = isLeader();
+
+    try {
+      boolean acquired = jdbcTemplate.update(RENEW_LEASE, nodeId, expiration, LEASE_NAME, nodeId,
+          new Timestamp(now)) == 1 || insertLease(expiration);
+
+      if (acquired) {
+        leadershipExpirationTime = now + leaseDurationMsec / 2;
+      } else {
+        leadershipExpirationTime = 0;
+      }
+    } catch (DataAccessException e) {
+      // Leadership is kept until it expires, in case the error is transient
+      LOG.warn("Error renewing task leader lease: {}", e.getMessage(), e);
+    }
+
+    final boolean leader = isLeader();
+
+    if (leader != wasLeader) {
+      LOG.info("Node {} {} the task scheduler leader", nodeId, leader ? "is now" : "is no longer");
+    }
+  }
+
+  @Override
+  public boolean isLeader() {
+    return clock.millis() < leadershipExpirationTime;
+  }
+
+  @Override
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+
+    if (isLeader()) {
+      leadershipExpirationTime = 0;
+      try {
+        // Let another replica take over without waiting for the lease to expire
+        jdbcTemplate.update(RELEASE_LEASE, new Timestamp(clock.millis()), LEASE_NAME, nodeId);
+      } catch (DataAccessException e) {
+        LOG.warn("Error releasing task leader lease: {}", e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.Trigger;
+
+/**
+ * A scheduled background task.
+ *
+ * Wraps the task logic to skip runs that would overlap with a run still in progress. Tasks whose
+ * family is leader-only are also skipped on the replicas that are not the task scheduler leader,
+ * so that they run on the leader only. Records the duration of each run and its lag, i.e. how
+ * late the run started with respect to its scheduled time.
+ */
+public class ManagedTask implements Runnable {
+
+  public static final Logger LOG = LoggerFactory.getLogger(ManagedTask.class);
+
+  private final String name;
+  private final TaskFamily family;
+  private final String schedule;
+  private final Runnable task;
+  private final TaskLeaderElection leaderElection;
+
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  private final LongAdder runCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private final LongAdder overlapSkipCount = new LongAdder();
+  private final LongAdder notLeaderSkipCount = new LongAdder();
+
+  private final TaskTimeHistogram duration = new TaskTimeHistogram();
+  private final TaskTimeHistogram lag = new TaskTimeHistogram();
+
+  private volatile long scheduledTime;
+  private volatile long lastStartTime;
+  private volatile long lastDurationMsec;
+  private volatile String lastError;
+
+  public ManagedTask(String name, TaskFamily family, String schedule, Runnable task,
+      TaskLeaderElection leaderElection) {
+    this.name = name;
+    this.family = family;
+    this.schedule = schedule;
+    this.task = task;
+    this.leaderElection = leaderElection;
+  }
+
+  /**
+   * Returns a trigger that delegates to the given one and records the scheduled time of the next
+   * run, which is used to compute the run lag.
+   */
+  public Trigger trackingTrigger(Trigger trigger) {
+    return triggerContext -> {
+      Date next = trigger.nextExecutionTime(triggerContext);
+      if (next != null) {
+        scheduledTime = next.getTime();
+      }
+      return next;
+    };
+  }
+
+  @Override
+  public void run() {
+
+    final long startTime = System.currentTimeMillis();
+
+    if (family.isLeaderOnly() && !leaderElection.isLeader()) {
+      LOG.debug("Skipping task {}: this node is not the task scheduler leader", name);
+      notLeaderSkipCount.increment();
+      return;
+    }
+
+    if (!running.compareAndSet(false, true)) {
+      LOG.warn("Skipping task {}: the previous run is still in progress", name);
+      overlapSkipCount.increment();
+      return;
+    }
+
+    try {
+      if (scheduledTime > 0) {
+        lag.record(startTime - scheduledTime);
+      }
+
+      lastStartTime = startTime;
+      task.run();
+      lastError = null;
+    } catch (RuntimeException e) {
+      failureCount.increment();
+      lastError = e.getMessage();
+      LOG.error("Task {} failed: {}", name, e.getMessage(), e);
+    } finally {
+      lastDurationMsec = System.currentTimeMillis() - startTime;
+      duration.record(lastDurationMsec);
+      runCount.increment();
+      running.set(false);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public TaskFamily getFamily() {
+    return family;
+  }
+
+  public String getSchedule() {
+    return schedule;
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  public long getRunCount() {
+    return runCount.sum();
+  }
+
+  public long getFailureCount() {
+    return failureCount.sum();
+  }
+
+  public long getOverlapSkipCount() {
+    return overlapSkipCount.sum();
+  }
+
+  public long getNotLeaderSkipCount() {
+    return notLeaderSkipCount.sum();
+  }
+
+  public TaskTimeHistogram getDuration() {
+    return duration;
+  }
+
+  public TaskTimeHistogram getLag() {
+    return lag;
+  }
+
+  public long getScheduledTime() {
+    return scheduledTime;
+  }
+
+  public long getLastStartTime() {
+    return lastStartTime;
+  }
+
+  public long getLastDurationMsec() {
+    return lastDurationMsec;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+/**
+ * A {@link TaskLeaderElection} for single replica deployments, where the local replica is always
+ * the leader.
+ */
+public class NullTaskLeaderElection implements TaskLeaderElection {
+
+  public static final String LOCAL_NODE_ID = "local";
+
+  @Override
+  public void start() {
+    // Nothing to do
+  }
+
+  @Override
+  public boolean isLeader() {
+    return true;
+  }
+
+  @Override
+  public String getNodeId() {
+    return LOCAL_NODE_ID;
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+/**
+ * The families of background tasks. Each family is run by a dedicated pool of scheduler threads,
+ * so that a slow task only delays the tasks of its own family.
+ */
+public enum TaskFamily {
+
+  /**
+   * Removal of expired tokens, approvals, device codes and notifications.
+   */
+  CLEANUP(true),
+
+  /**
+   * Delivery of pending email notifications.
+   */
+  NOTIFICATION(true),
+
+  /**
+   * Account lifecycle management: expired accounts, CERN HR synchronization and removal of
+   * inactive provisioned accounts.
+   */
+  LIFECYCLE(true),
+
+  /**
+   * Maintenance of the state kept in memory by each replica: write-behind buffers, cache
+   * evictions and search indexes. These tasks run on every replica.
+   */
+  REPLICA(false);
+
+  private final boolean leaderOnly;
+
+  TaskFamily(boolean leaderOnly) {
+    this.leaderOnly = leaderOnly;
+  }
+
+  /**
+   * Returns <code>true</code> if the tasks of this family must run only on the replica that
+   * currently holds the scheduler leadership.
+   */
+  public boolean isLeaderOnly() {
+    return leaderOnly;
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.task;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A lock-free histogram of task times, in milliseconds, with fixed bucket bounds. Bucket counts
+ * are cumulative: each bucket counts the recorded times less than or equal to its bound.
+ */
+public class TaskTimeHistogram {
+
+  static final long[] BUCKET_BOUNDS_MSEC =
+      {10, 100, 1000, 10_000, 60_000, 600_000, 3_600_000};
+
+  static final String INFINITE_BOUND = "inf";
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MSEC.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public TaskTimeHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long timeMsec) {
+    final long value = Math.max(0, timeMsec);
+
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MSEC.length && value > BUCKET_BOUNDS_MSEC[bucket]) {
+      bucket++;
+    }
+
+    buckets[bucket].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSumMsec() {
+    return sum.sum();
+  }
+
+  public long getMaxMsec() {
+    return max.get();
+  }
+
+  public double getMeanMsec() {
+    final long n = count.sum();
+    return n == 0 ? 0.0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Returns the cumulative bucket counts, keyed by the bucket upper bound in milliseconds.
+   */
+  public Map<String, Long> getBuckets() {
+    Map<String, Long> result = Maps.newLinkedHashMap();
+    long cumulative = 0;
+
+    for (int i = 0; i < BUCKET_BOUNDS_MSEC.length; i++) {
+      cumulative += buckets[i].sum();
+      result.put(String.valueOf(BUCKET_BOUNDS_MSEC[i]), cumulative);
+    }
+
+    result.put(INFINITE_BOUND, cumulative + buckets[BUCKET_BOUNDS_MSEC.length].sum());
+    return result;
+  }
+}
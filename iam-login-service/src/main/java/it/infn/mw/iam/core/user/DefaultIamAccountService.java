@@ -20,28 +20,37 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler.LIFECYCLE_STATUS_LABEL;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
-import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
-import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
-import org.mitre.oauth2.service.OAuth2TokenEntityService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
 import it.infn.mw.iam.audit.events.account.AccountCreatedEvent;
 import it.infn.mw.iam.audit.events.account.AccountDisabledEvent;
 import it.infn.mw.iam.audit.events.account.AccountEndTimeUpdatedEvent;
 import it.infn.mw.iam.audit.events.account.AccountRemovedEvent;
 import it.infn.mw.iam.audit.events.account.AccountRestoredEvent;
+import it.infn.mw.iam.audit.events.account.AccountsCreatedEvent;
 import it.infn.mw.iam.audit.events.account.label.AccountLabelRemovedEvent;
 import it.infn.mw.iam.audit.events.account.label.AccountLabelSetEvent;
+import it.infn.mw.iam.core.oauth.revocation.TokenRevocationService;
 import it.infn.mw.iam.core.user.exception.CredentialAlreadyBoundException;
 import it.infn.mw.iam.core.user.exception.InvalidCredentialException;
 import it.infn.mw.iam.core.user.exception.UserAlreadyExistsException;
@@ -59,22 +68,98 @@ import it.infn.mw.iam.persistence.repository.IamAuthoritiesRepository;
 @Transactional
 public class DefaultIamAccountService implements IamAccountService {
 
+  protected static final int BATCH_QUERY_SIZE = 500;
+
+  /**
+   * The usernames, emails and credentials already bound to an account. Usernames and emails are
+   * compared ignoring case, as they are by the case-insensitive collations used in production
+   * databases.
+   */
+  private static class BoundAccountKeys {
+    final Set<String> uuids = Sets.newHashSet();
+    final Set<String> usernames = Sets.newHashSet();
+    final Set<String> emails = Sets.newHashSet();
+    final Set<List<String>> oidcIds = Sets.newHashSet();
+    final Set<List<String>> samlIds = Sets.newHashSet();
+    final Set<String> sshKeys = Sets.newHashSet();
+    final Set<String> certificateSubjects = Sets.newHashSet();
+
+    void checkNotBound(IamAccount account) {
+
+      if (account.getUuid() != null && uuids.contains(account.getUuid())) {
+        throw new UserAlreadyExistsException(
+            String.format("A user with uuid '%s' already exists", account.getUuid()));
+      }
+
+      if (usernames.contains(lowerCase(account.getUsername()))) {
+        throw new UserAlreadyExistsException(
+            String.format("A user with username '%s' already exists", account.getUsername()));
+      }
+
+      if (emails.contains(lowerCase(account.getUserInfo().getEmail()))) {
+        throw new UserAlreadyExistsException(String.format(
+            "A user linked with email '%s' already exists", account.getUserInfo().getEmail()));
+      }
+
+      account.getOidcIds().stream().filter(id -> oidcIds.contains(oidcIdKey(id))).findFirst()
+        .ifPresent(id -> {
+          throw new CredentialAlreadyBoundException(String.format(
+              "OIDC id '%s,%s' is already bound to a user", id.getIssuer(), id.getSubject()));
+        });
+
+      account.getSamlIds().stream().filter(id -> samlIds.contains(samlIdKey(id))).findFirst()
+        .ifPresent(id -> {
+          throw new CredentialAlreadyBoundException(
+              String.format("SAML id '%s,%s,%s' already bound to a user", id.getIdpId(),
+                  id.getAttributeId(), id.getUserId()));
+        });
+
+      account.getSshKeys().stream().filter(k -> sshKeys.contains(k.getValue())).findFirst()
+        .ifPresent(k -> {
+          throw new CredentialAlreadyBoundException(
+              String.format("SSH key '%s' already bound to a user", k.getValue()));
+        });
+
+      account.getX509Certificates()
+        .stream()
+        .filter(c -> certificateSubjects.contains(c.getSubjectDn()))
+        .findFirst()
+        .ifPresent(c -> {
+          throw new CredentialAlreadyBoundException(String.format(
+              "X509 certificate with subject '%s' is already bound to another user",
+              c.getSubjectDn()));
+        });
+    }
+
+    void bind(IamAccount account) {
+      if (account.getUuid() != null) {
+        uuids.add(account.getUuid());
+      }
+      usernames.add(lowerCase(account.getUsername()));
+      emails.add(lowerCase(account.getUserInfo().getEmail()));
+      account.getOidcIds().forEach(id -> oidcIds.add(oidcIdKey(id)));
+      account.getSamlIds().forEach(id -> samlIds.add(samlIdKey(id)));
+      account.getSshKeys().forEach(k -> sshKeys.add(k.getValue()));
+      account.getX509Certificates().forEach(c -> certificateSubjects.add(c.getSubjectDn()));
+    }
+  }
+
   private final IamAccountRepository accountRepo;
   private final IamAuthoritiesRepository authoritiesRepo;
   private final PasswordEncoder passwordEncoder;
   private final ApplicationEventPublisher eventPublisher;
-  private final OAuth2TokenEntityService tokenService;
+  private final TokenRevocationService tokenRevocationService;
 
   @Autowired
   public DefaultIamAccountService(IamAccountRepository accountRepo,
       IamAuthoritiesRepository authoritiesRepo, PasswordEncoder passwordEncoder,
-      ApplicationEventPublisher eventPublisher, OAuth2TokenEntityService tokenService) {
+      ApplicationEventPublisher eventPublisher, TokenRevocationService tokenRevocationService) {
 
     this.accountRepo = accountRepo;
     this.authoritiesRepo = authoritiesRepo;
     this.passwordEncoder = passwordEncoder;
     this.eventPublisher = eventPublisher;
-    this.tokenService = tokenService;
+    this.tokenRevocationService = tokenRevocationService;
   }
 
   private void labelSetEvent(IamAccount account, IamLabel label) {
@@ -85,38 +170,73 @@ public class DefaultIamAccountService implements IamAccountService {
     eventPublisher.publishEvent(new AccountLabelRemovedEvent(this, account, label));
   }
 
-  @Override
-  public IamAccount createAccount(IamAccount account) {
-    checkNotNull(account, "Cannot create a null account");
+  private static String lowerCase(String value) {
+    return value.toLowerCase(Locale.ROOT);
+  }
 
-    final Date now = new Date();
-    final String randomUuid = UUID.randomUUID().toString();
+  private static List<String> oidcIdKey(IamOidcId oidcId) {
+    return Arrays.asList(oidcId.getIssuer(), oidcId.getSubject());
+  }
 
-    newAccountSanityChecks(account);
+  private static List<String> samlIdKey(IamSamlId samlId) {
+    return Arrays.asList(samlId.getIdpId(), samlId.getAttributeId(), samlId.getUserId());
+  }
+
+  private static <T> List<T> findInChunks(Set<String> keys,
+      Function<List<String>, List<T>> query) {
+
+    List<T> results = Lists.newArrayList();
+
+    for (List<String> chunk : Iterables.partition(keys, BATCH_QUERY_SIZE)) {
+      results.addAll(query.apply(chunk));
+    }
+
+    return results;
+  }
+
+  private IamAuthority findRoleUserAuthority() {
+    return authoritiesRepo.findByAuthority("ROLE_USER")
+      .orElseThrow(
+          () -> new IllegalStateException("ROLE_USER not found in database. This is a bug"));
+  }
+
+  private void prepareNewAccount(IamAccount account, Date now, IamAuthority roleUserAuthority) {
 
     if (account.getCreationTime() == null) {
       account.setCreationTime(now);
     }
 
     if (account.getUuid() == null) {
-      account.setUuid(randomUuid);
+      account.setUuid(UUID.randomUUID().toString());
     }
 
     account.setLastUpdateTime(now);
 
     account.getUserInfo().setEmailVerified(true);
 
+    account.getAuthorities().add(roleUserAuthority);
+
+    // Set creation time for certificates
+    account.getX509Certificates().forEach(c -> {
+      c.setCreationTime(now);
+      c.setLastUpdateTime(now);
+    });
+  }
+
+  private void encodeNewAccountPassword(IamAccount account) {
+
     if (account.getPassword() == null) {
       account.setPassword(UUID.randomUUID().toString());
     }
 
     account.setPassword(passwordEncoder.encode(account.getPassword()));
+  }
 
-    IamAuthority roleUserAuthority = authoritiesRepo.findByAuthority("ROLE_USER")
-      .orElseThrow(
-          () -> new IllegalStateException("ROLE_USER not found in database. This is a bug"));
+  @Override
+  public IamAccount createAccount(IamAccount account) {
+    checkNotNull(account, "Cannot create a null account");
 
-    account.getAuthorities().add(roleUserAuthority);
+    newAccountSanityChecks(account);
 
     // Credentials sanity checks
     newAccountX509CertificatesSanityChecks(account);
@@ -124,11 +244,8 @@ public class DefaultIamAccountService implements IamAccountService {
     newAccountSamlIdsSanityChecks(account);
     newAccountOidcIdsSanityChecks(account);
 
-    // Set creation time for certificates
-    account.getX509Certificates().forEach(c -> {
-      c.setCreationTime(now);
-      c.setLastUpdateTime(now);
-    });
+    prepareNewAccount(account, new Date(), findRoleUserAuthority());
+    encodeNewAccountPassword(account);
 
     accountRepo.save(account);
 
@@ -138,22 +255,110 @@ public class DefaultIamAccountService implements IamAccountService {
     return account;
   }
 
+  @Override
+  public Map<Integer, RuntimeException> validateNewAccounts(List<IamAccount> accounts) {
+    checkNotNull(accounts, "Cannot validate a null account list");
+
+    Map<Integer, RuntimeException> errors = Maps.newHashMap();
 
-  protected void deleteTokensForAccount(IamAccount account) {
+    for (int i = 0; i < accounts.size(); i++) {
+      try {
+        newAccountFieldsSanityChecks(accounts.get(i));
+      } catch (RuntimeException e) {
+        errors.put(i, e);
+      }
+    }
+
+    Set<String> uuids = Sets.newHashSet();
+    Set<String> usernames = Sets.newHashSet();
+    Set<String> emails = Sets.newHashSet();
+    Set<String> oidcSubjects = Sets.newHashSet();
+    Set<String> samlUserIds = Sets.newHashSet();
+    Set<String> sshKeyValues = Sets.newHashSet();
+    Set<String> certificateSubjects = Sets.newHashSet();
+
+    for (int i = 0; i < accounts.size(); i++) {
+      if (errors.containsKey(i)) {
+        continue;
+      }
+
+      IamAccount account = accounts.get(i);
+
+      if (account.getUuid() != null) {
+        uuids.add(account.getUuid());
+      }
+      usernames.add(account.getUsername());
+      emails.add(account.getUserInfo().getEmail());
+      account.getOidcIds().forEach(id -> oidcSubjects.add(id.getSubject()));
+      account.getSamlIds().forEach(id -> samlUserIds.add(id.getUserId()));
+      account.getSshKeys().forEach(k -> sshKeyValues.add(k.getValue()));
+      account.getX509Certificates().forEach(c -> certificateSubjects.add(c.getSubjectDn()));
+    }
+
+    BoundAccountKeys boundKeys = new BoundAccountKeys();
+
+    boundKeys.uuids.addAll(findInChunks(uuids, accountRepo::findExistingUuids));
+    findInChunks(usernames, accountRepo::findExistingUsernames)
+      .forEach(u -> boundKeys.usernames.add(lowerCase(u)));
+    findInChunks(emails, accountRepo::findExistingEmails)
+      .forEach(e -> boundKeys.emails.add(lowerCase(e)));
+    findInChunks(oidcSubjects, accountRepo::findBoundOidcIdsBySubject)
+      .forEach(id -> boundKeys.oidcIds.add(oidcIdKey(id)));
+    findInChunks(samlUserIds, accountRepo::findBoundSamlIdsByUserId)
+      .forEach(id -> boundKeys.samlIds.add(samlIdKey(id)));
+    boundKeys.sshKeys.addAll(findInChunks(sshKeyValues, accountRepo::findBoundSshKeyValues));
+    boundKeys.certificateSubjects
+      .addAll(findInChunks(certificateSubjects, accountRepo::findBoundCertificateSubjects));
+
+    // Accounts are bound in order, so that an account clashing with a previous account in the
+    // batch is reported as invalid
+    for (int i = 0; i < accounts.size(); i++) {
+      if (errors.containsKey(i)) {
+        continue;
+      }
+
+      try {
+        boundKeys.checkNotBound(accounts.get(i));
+        boundKeys.bind(accounts.get(i));
+      } catch (RuntimeException e) {
+        errors.put(i, e);
+      }
+    }
+
+    return errors;
+  }
 
-    Set<OAuth2AccessTokenEntity> accessTokens =
-        tokenService.getAllAccessTokensForUser(account.getUsername());
+  @Override
+  public List<IamAccount> createAccounts(List<IamAccount> accounts) {
 
-    Set<OAuth2RefreshTokenEntity> refreshTokens =
-        tokenService.getAllRefreshTokensForUser(account.getUsername());
+    Map<Integer, RuntimeException> errors = validateNewAccounts(accounts);
 
-    for (OAuth2AccessTokenEntity t : accessTokens) {
-      tokenService.revokeAccessToken(t);
+    if (!errors.isEmpty()) {
+      throw errors.get(Collections.min(errors.keySet()));
     }
 
-    for (OAuth2RefreshTokenEntity t : refreshTokens) {
-      tokenService.revokeRefreshToken(t);
+    if (accounts.isEmpty()) {
+      return accounts;
     }
+
+    final Date now = new Date();
+    final IamAuthority roleUserAuthority = findRoleUserAuthority();
+
+    accounts.forEach(a -> prepareNewAccount(a, now, roleUserAuthority));
+
+    accounts.forEach(this::encodeNewAccountPassword);
+
+    accountRepo.save(accounts);
+
+    eventPublisher.publishEvent(new AccountsCreatedEvent(this, accounts,
+        String.format("%d accounts created", accounts.size())));
+
+    return accounts;
+  }
+
+
+  protected void deleteTokensForAccount(IamAccount account) {
+    tokenRevocationService.revokeUserTokens(account.getUsername());
   }
 
   @Override
@@ -177,6 +382,21 @@ public class DefaultIamAccountService implements IamAccountService {
     account.getSamlIds().forEach(this::samlIdSanityChecks);
   }
 
+  private void newAccountFieldsSanityChecks(IamAccount account) {
+    checkNotNull(account, "Null account");
+    checkArgument(!isNullOrEmpty(account.getUsername()), "Null or empty username");
+    checkNotNull(account.getUserInfo(), "Null userinfo object");
+    checkArgument(!isNullOrEmpty(account.getUserInfo().getEmail()), "Null or empty email");
+
+    account.getOidcIds().forEach(this::oidcIdFieldsSanityChecks);
+    account.getSamlIds().forEach(this::samlIdFieldsSanityChecks);
+    account.getSshKeys().forEach(this::sshKeyFieldsSanityChecks);
+    account.getX509Certificates().forEach(this::x509CertificateFieldsSanityChecks);
+
+    primarySshKeySanityChecks(account);
+    primaryX509CertificateSanityChecks(account);
+  }
+
   private void newAccountSanityChecks(IamAccount account) {
     checkArgument(!isNullOrEmpty(account.getUsername()), "Null or empty username");
     checkNotNull(account.getUserInfo(), "Null userinfo object");
@@ -197,8 +417,14 @@ public class DefaultIamAccountService implements IamAccountService {
   private void newAccountSshKeysSanityChecks(IamAccount account) {
 
     if (account.hasSshKeys()) {
-
       account.getSshKeys().forEach(this::sshKeySanityChecks);
+      primarySshKeySanityChecks(account);
+    }
+  }
+
+  private void primarySshKeySanityChecks(IamAccount account) {
+
+    if (account.hasSshKeys()) {
 
       final long count = account.getSshKeys().stream().filter(IamSshKey::isPrimary).count();
 
@@ -215,8 +441,14 @@ public class DefaultIamAccountService implements IamAccountService {
   private void newAccountX509CertificatesSanityChecks(IamAccount account) {
 
     if (account.hasX509Certificates()) {
-
       account.getX509Certificates().forEach(this::x509CertificateSanityCheck);
+      primaryX509CertificateSanityChecks(account);
+    }
+  }
+
+  private void primaryX509CertificateSanityChecks(IamAccount account) {
+
+    if (account.hasX509Certificates()) {
 
       final long count =
           account.getX509Certificates().stream().filter(IamX509Certificate::isPrimary).count();
@@ -232,10 +464,14 @@ public class DefaultIamAccountService implements IamAccountService {
 
   }
 
-  private void oidcIdSanityChecks(IamOidcId oidcId) {
+  private void oidcIdFieldsSanityChecks(IamOidcId oidcId) {
     checkNotNull(oidcId, "null oidc id");
     checkArgument(!isNullOrEmpty(oidcId.getIssuer()), "null or empty oidc id issuer");
     checkArgument(!isNullOrEmpty(oidcId.getSubject()), "null or empty oidc id subject");
+  }
+
+  private void oidcIdSanityChecks(IamOidcId oidcId) {
+    oidcIdFieldsSanityChecks(oidcId);
 
     accountRepo.findByOidcId(oidcId.getIssuer(), oidcId.getSubject()).ifPresent(account -> {
 
@@ -244,13 +480,17 @@ public class DefaultIamAccountService implements IamAccountService {
     });
   }
 
-  private void samlIdSanityChecks(IamSamlId samlId) {
+  private void samlIdFieldsSanityChecks(IamSamlId samlId) {
 
     checkNotNull(samlId, "null saml id");
 
     checkArgument(!isNullOrEmpty(samlId.getIdpId()), "null or empty idpId");
     checkArgument(!isNullOrEmpty(samlId.getUserId()), "null or empty userId");
     checkArgument(!isNullOrEmpty(samlId.getAttributeId()), "null or empty attributeId");
+  }
+
+  private void samlIdSanityChecks(IamSamlId samlId) {
+    samlIdFieldsSanityChecks(samlId);
 
     accountRepo.findBySamlId(samlId).ifPresent(account -> {
       throw new CredentialAlreadyBoundException(
@@ -259,10 +499,13 @@ public class DefaultIamAccountService implements IamAccountService {
     });
   }
 
-  private void sshKeySanityChecks(IamSshKey sshKey) {
-
+  private void sshKeyFieldsSanityChecks(IamSshKey sshKey) {
     checkNotNull(sshKey, "null ssh key");
     checkArgument(!isNullOrEmpty(sshKey.getValue()), "null or empty ssh key value");
+  }
+
+  private void sshKeySanityChecks(IamSshKey sshKey) {
+    sshKeyFieldsSanityChecks(sshKey);
 
     accountRepo.findBySshKeyValue(sshKey.getValue()).ifPresent(account -> {
       throw new CredentialAlreadyBoundException(
@@ -270,12 +513,16 @@ public class DefaultIamAccountService implements IamAccountService {
     });
   }
 
-  private void x509CertificateSanityCheck(IamX509Certificate cert) {
+  private void x509CertificateFieldsSanityChecks(IamX509Certificate cert) {
     checkNotNull(cert, "null X.509 certificate");
     checkArgument(!isNullOrEmpty(cert.getSubjectDn()),
         "null or empty X.509 certificate subject DN");
     checkArgument(!isNullOrEmpty(cert.getIssuerDn()), "null or empty X.509 certificate issuer DN");
     checkArgument(!isNullOrEmpty(cert.getLabel()), "null or empty X.509 certificate label");
+  }
+
+  private void x509CertificateSanityCheck(IamX509Certificate cert) {
+    x509CertificateFieldsSanityChecks(cert);
 
     accountRepo.findByCertificateSubject(cert.getSubjectDn()).ifPresent(c -> {
       throw new CredentialAlreadyBoundException(
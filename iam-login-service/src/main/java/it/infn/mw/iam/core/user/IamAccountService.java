@@ -17,6 +17,7 @@ package it.infn.mw.iam.core.user;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import it.infn.mw.iam.persistence.model.IamAccount;
@@ -43,6 +44,27 @@ public interface IamAccountService {
    */
   IamAccount createAccount(IamAccount account);
 
+  /**
+   * Checks a batch of new accounts against the same constraints enforced by
+   * {@link #createAccount(IamAccount)}, with a fixed number of queries for the whole batch.
+   * Accounts that clash with an account that precedes them in the batch are also reported.
+   * 
+   * @param accounts the accounts to be checked
+   * @return a map from the index of each invalid account in the list to its validation error
+   */
+  Map<Integer, RuntimeException> validateNewAccounts(List<IamAccount> accounts);
+
+  /**
+   * Creates a batch of new {@link IamAccount}s, publishing a single audit event for the whole
+   * batch.
+   * 
+   * @param accounts the accounts to be created
+   * @return the created accounts
+   * @throws RuntimeException the validation error of the first invalid account in the batch, in
+   *         which case no account is created
+   */
+  List<IamAccount> createAccounts(List<IamAccount> accounts);
+
 
   /**
    * Deletes a {@link IamAccount}.
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.user;
+
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+public class SynchronousLastLoginTimeRecorder implements LastLoginTimeRecorder {
+
+  private final IamAccountRepository accountRepo;
+
+  public SynchronousLastLoginTimeRecorder(IamAccountRepository accountRepo) {
+    this.accountRepo = accountRepo;
+  }
+
+  @Override
+  public void recordLogin(String username) {
+    accountRepo.touchLastLoginTimeForUserWithUsername(username);
+  }
+
+  @Override
+  public void flush() {
+    // nothing to flush, login times are persisted as they are recorded
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.user;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+/**
+ * A {@link LastLoginTimeRecorder} that keeps recorded logins in memory, coalescing them per
+ * account, and persists them in batches when {@link #flush()} is called (periodically and at
+ * shutdown), so that no write transaction is needed on the login path. When the buffer is full,
+ * the flush is handed to a dedicated thread, so that login threads never wait for the database.
+ *
+ * Each batch is persisted in a single transaction, with the most recent login time recorded for
+ * each account in the batch. Batches that fail are put back in the buffer, unless a more recent
+ * login has been recorded in the meantime, and are retried at the next flush.
+ */
+public class WriteBehindLastLoginTimeRecorder implements LastLoginTimeRecorder, DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(WriteBehindLastLoginTimeRecorder.class);
+
+  public static final String FLUSHER_THREAD_NAME = "iam-last-login-time-flusher";
+
+  private final IamAccountRepository accountRepo;
+  private final Clock clock;
+  private final int maxPendingLogins;
+  private final int batchSize;
+
+  private final Map<String, Date> pendingLogins = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final ExecutorService flusher;
+
+  public WriteBehindLastLoginTimeRecorder(IamAccountRepository accountRepo, Clock clock,
+      int maxPendingLogins, int batchSize) {
+    this.accountRepo = accountRepo;
+    this.clock = clock;
+    this.maxPendingLogins = maxPendingLogins;
+    this.batchSize = batchSize;
+    this.flusher = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat(FLUSHER_THREAD_NAME).setDaemon(true).build());
+  }
+
+  @Override
+  public void recordLogin(String username) {
+    pendingLogins.merge(username, Date.from(clock.instant()),
+        WriteBehindLastLoginTimeRecorder::latest);
+
+    if (pendingLogins.size() >= maxPendingLogins && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(() -> {
+        flushRequested.set(false);
+        flush();
+      });
+    }
+  }
+
+  private static Date latest(Date a, Date b) {
+    return a.after(b) ? a : b;
+  }
+
+  @Override
+  public synchronized void flush() {
+
+    Map<String, Date> batch = Maps.newHashMapWithExpectedSize(batchSize);
+
+    for (String username : pendingLogins.keySet()) {
+      Date loginTime = pendingLogins.remove(username);
+
+      if (loginTime == null) {
+        continue;
+      }
+
+      batch.put(username, loginTime);
+
+      if (batch.size() == batchSize) {
+        persistBatch(batch);
+        batch = Maps.newHashMapWithExpectedSize(batchSize);
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      persistBatch(batch);
+    }
+  }
+
+  private void persistBatch(Map<String, Date> batch) {
+    try {
+      int updatedAccounts = accountRepo.touchLastLoginTimes(batch);
+      LOG.debug("Updated last login time for {} accounts", updatedAccounts);
+    } catch (RuntimeException e) {
+      LOG.error("Error updating last login time for {} accounts, will retry: {}", batch.size(),
+          e.getMessage(), e);
+      batch.forEach((username, loginTime) -> pendingLogins.merge(username, loginTime,
+          WriteBehindLastLoginTimeRecorder::latest));
+    }
+  }
+
+  public int getPendingLoginsCount() {
+    return pendingLogins.size();
+  }
+
+  @Override
+  public void destroy() {
+    // A flush in progress on the flusher thread completes before this one starts
+    flusher.shutdown();
+    flush();
+  }
+}
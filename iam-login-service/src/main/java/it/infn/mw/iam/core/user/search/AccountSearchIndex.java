@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.user.search;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * An index over the account attributes matched by the account search (username, email, full
+ * name and uuid), that serves substring searches without scanning the account table.
+ */
+public interface AccountSearchIndex {
+
+  /**
+   * Returns a page of the ids of the accounts matching the filter, ranked by relevance. Accounts
+   * with the same relevance are sorted as requested by the pageable.
+   */
+  Page<Long> search(String filter, Pageable pageable);
+
+  long count(String filter);
+
+  /**
+   * Rebuilds the index from the database.
+   */
+  void rebuild();
+}
@@ -0,0 +1,472 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.user.search;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.updateAfterCommit;
+import static it.infn.mw.iam.core.search.TrigramPostings.EXACT_MATCH;
+import static it.infn.mw.iam.core.search.TrigramPostings.FIELD_SEPARATOR;
+import static it.infn.mw.iam.core.search.TrigramPostings.NO_MATCH;
+import static it.infn.mw.iam.core.search.TrigramPostings.forEachTrigram;
+import static it.infn.mw.iam.core.search.TrigramPostings.lookup;
+import static it.infn.mw.iam.core.search.TrigramPostings.toPostings;
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import com.google.common.collect.Ordering;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.account.AccountEvent;
+import it.infn.mw.iam.audit.events.account.AccountRemovedEvent;
+import it.infn.mw.iam.audit.events.account.AccountsCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountsEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.search.TrigramPostings.IntList;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamAccountSearchRecord;
+import it.infn.mw.iam.persistence.model.IamUserInfo;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+/**
+ * An in-memory trigram index over the account search attributes.
+ *
+ * The index is made of an immutable segment, periodically rebuilt from the database, where each
+ * trigram of the username, email and full name of the accounts points to the sorted list of the
+ * accounts containing it, and of a small map of the accounts created, updated or removed since the
+ * segment was built, which takes precedence over the segment. The candidates for a filter are the
+ * accounts containing all of its trigrams; since the candidates are then checked against the
+ * filter, results are the same as a case-insensitive substring match on the indexed attributes.
+ * Uuids are not indexed, and are scanned only when the filter could be part of a uuid, i.e. when
+ * it is made of hexadecimal digits and dashes and either contains a dash or is at least
+ * {@value #MIN_UUID_FRAGMENT_LENGTH} characters long, so that short hex-looking names (e.g.
+ * "ada" or "cafe") are served by the trigram index.
+ *
+ * The index is built in the background at startup by the rebuild task, or by the first search when
+ * that task is not scheduled; searches issued before it is built wait for that single build. Once
+ * built, searches don't take locks. The index is kept in sync with account events committed
+ * locally and with the ones propagated by the {@link CacheEvictionBroadcaster} from the other
+ * replicas.
+ */
+public class TrigramAccountSearchIndex
+    implements AccountSearchIndex, ApplicationListener<IamAuditApplicationEvent> {
+
+  public static final Logger LOG = LoggerFactory.getLogger(TrigramAccountSearchIndex.class);
+
+  public static final String CACHE_NAME = "account-search-index";
+
+  public static final int REBUILD_BATCH_SIZE = 1000;
+
+  private static final String UUID_CHARS = "0123456789abcdef-";
+  private static final int MIN_UUID_FRAGMENT_LENGTH = 8;
+
+  private static final int PREFIX_MATCH = 1;
+  private static final int SUBSTRING_MATCH = 2;
+  private static final int UUID_MATCH = 3;
+
+  static final class Document {
+    final long id;
+    final String uuid;
+    final String username;
+    final String email;
+    final String givenName;
+    final String familyName;
+    final String name;
+    final String text;
+    final long creationTime;
+
+    Document(IamAccountSearchRecord r) {
+      this.id = r.getId();
+      this.uuid = normalize(r.getUuid());
+      this.username = normalize(r.getUsername());
+      this.email = normalize(r.getEmail());
+      this.givenName = normalize(r.getGivenName());
+      this.familyName = normalize(r.getFamilyName());
+      this.name = givenName + ' ' + familyName;
+      this.text = username + FIELD_SEPARATOR + email + FIELD_SEPARATOR + name;
+      this.creationTime = isNull(r.getCreationTime()) ? 0 : r.getCreationTime().getTime();
+    }
+
+    int score(String filter) {
+      if (filter.equals(username) || filter.equals(email) || filter.equals(name)
+          || filter.equals(uuid)) {
+        return EXACT_MATCH;
+      }
+
+      if (username.startsWith(filter) || email.startsWith(filter) || name.startsWith(filter)
+          || familyName.startsWith(filter)) {
+        return PREFIX_MATCH;
+      }
+
+      if (text.contains(filter)) {
+        return SUBSTRING_MATCH;
+      }
+
+      return uuid.contains(filter) ? UUID_MATCH : NO_MATCH;
+    }
+  }
+
+  private static final class Match {
+    final Document doc;
+    final int score;
+
+    Match(Document doc, int score) {
+      this.doc = doc;
+      this.score = score;
+    }
+  }
+
+  private static final class Segment {
+    final Document[] docs;
+    final Map<Long, int[]> postings;
+
+    Segment(Document[] docs, Map<Long, int[]> postings) {
+      this.docs = docs;
+      this.postings = postings;
+    }
+  }
+
+  // A change applied after the segment was built; a null document marks a removed account
+  private static final class Change {
+    final long sequence;
+    final Document doc;
+
+    Change(long sequence, Document doc) {
+      this.sequence = sequence;
+      this.doc = doc;
+    }
+  }
+
+  private static final class State {
+    final Segment segment;
+    final Map<String, Change> changes;
+    final boolean built;
+
+    State(Segment segment, Map<String, Change> changes, boolean built) {
+      this.segment = segment;
+      this.changes = changes;
+      this.built = built;
+    }
+  }
+
+  private final IamAccountRepository accountRepo;
+  private final CacheEvictionBroadcaster evictionBroadcaster;
+
+  private final Object rebuildLock = new Object();
+  private final Object changesLock = new Object();
+
+  private long sequence = 0;
+
+  private volatile State state = new State(new Segment(new Document[0], new HashMap<>()),
+      new ConcurrentHashMap<>(), false);
+
+  public TrigramAccountSearchIndex(IamAccountRepository accountRepo,
+      CacheEvictionBroadcaster evictionBroadcaster) {
+    this.accountRepo = accountRepo;
+    this.evictionBroadcaster = evictionBroadcaster;
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, this::reindex);
+  }
+
+  static String normalize(String value) {
+    return isNull(value) ? "" : value.toLowerCase(Locale.ROOT);
+  }
+
+  private static Segment buildSegment(List<Document> docs) {
+    Map<Long, IntList> lists = new HashMap<>();
+
+    for (int i = 0; i < docs.size(); i++) {
+      final int slot = i;
+      forEachTrigram(docs.get(i).text,
+          t -> lists.computeIfAbsent(t, k -> new IntList()).add(slot));
+    }
+
+    return new Segment(docs.toArray(new Document[docs.size()]), toPostings(lists));
+  }
+
+  private static boolean mayBeUuidFragment(String filter) {
+    return (filter.indexOf('-') >= 0 || filter.length() >= MIN_UUID_FRAGMENT_LENGTH)
+        && filter.chars().allMatch(c -> UUID_CHARS.indexOf(c) >= 0);
+  }
+
+  private static BitSet candidateSlots(Segment segment, String filter) {
+    final Document[] docs = segment.docs;
+    BitSet slots = new BitSet(docs.length);
+
+    if (filter.length() < 3) {
+      slots.set(0, docs.length);
+      return slots;
+    }
+
+    for (int slot : lookup(segment.postings, filter)) {
+      slots.set(slot);
+    }
+
+    if (mayBeUuidFragment(filter)) {
+      for (int i = 0; i < docs.length; i++) {
+        if (docs[i].uuid.contains(filter)) {
+          slots.set(i);
+        }
+      }
+    }
+
+    return slots;
+  }
+
+  private static void addIfMatches(List<Match> matches, Document doc, String filter) {
+    int score = doc.score(filter);
+    if (score != NO_MATCH) {
+      matches.add(new Match(doc, score));
+    }
+  }
+
+  private List<Match> findMatches(String filter) {
+    final String normalizedFilter = normalize(filter);
+    final State s = builtState();
+    final Document[] docs = s.segment.docs;
+
+    List<Match> matches = new ArrayList<>();
+    BitSet slots = candidateSlots(s.segment, normalizedFilter);
+
+    for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+      if (!s.changes.containsKey(docs[i].uuid)) {
+        addIfMatches(matches, docs[i], normalizedFilter);
+      }
+    }
+
+    for (Change c : s.changes.values()) {
+      if (!isNull(c.doc)) {
+        addIfMatches(matches, c.doc, normalizedFilter);
+      }
+    }
+
+    return matches;
+  }
+
+  private static Comparator<Document> documentComparator(String property) {
+    switch (property) {
+      case "username":
+        return Comparator.comparing((Document d) -> d.username);
+      case "userInfo.email":
+        return Comparator.comparing((Document d) -> d.email);
+      case "userInfo.givenName":
+        return Comparator.comparing((Document d) -> d.givenName);
+      case "userInfo.familyName":
+        return Comparator.comparing((Document d) -> d.familyName);
+      case "creationTime":
+        return Comparator.comparingLong((Document d) -> d.creationTime);
+      default:
+        return null;
+    }
+  }
+
+  private static Comparator<Match> matchComparator(Sort sort) {
+    Comparator<Match> comparator = Comparator.comparingInt((Match m) -> m.score);
+
+    if (!isNull(sort)) {
+      for (Sort.Order order : sort) {
+        Comparator<Document> c = documentComparator(order.getProperty());
+        if (!isNull(c)) {
+          comparator = comparator.thenComparing(m -> m.doc, order.isAscending() ? c : c.reversed());
+        }
+      }
+    }
+
+    return comparator.thenComparingLong(m -> m.doc.id);
+  }
+
+  @Override
+  public Page<Long> search(String filter, Pageable pageable) {
+    List<Match> matches = findMatches(filter);
+
+    final int offset = pageable.getOffset();
+    List<Match> top = Ordering.from(matchComparator(pageable.getSort()))
+      .leastOf(matches, offset + pageable.getPageSize());
+
+    List<Long> ids = top.subList(Math.min(offset, top.size()), top.size())
+      .stream()
+      .map(m -> m.doc.id)
+      .collect(Collectors.toList());
+
+    return new PageImpl<>(ids, pageable, matches.size());
+  }
+
+  @Override
+  public long count(String filter) {
+    return findMatches(filter).size();
+  }
+
+  private State builtState() {
+    State s = state;
+
+    if (!s.built) {
+      synchronized (rebuildLock) {
+        // Another thread may have built the index while this one was waiting for the lock
+        if (!state.built) {
+          doRebuild();
+        }
+      }
+      s = state;
+    }
+
+    return s;
+  }
+
+  @Override
+  public void rebuild() {
+    synchronized (rebuildLock) {
+      doRebuild();
+    }
+  }
+
+  // Called with the rebuild lock held
+  private void doRebuild() {
+    final long startSequence;
+
+    synchronized (changesLock) {
+      startSequence = sequence;
+    }
+
+    List<Document> docs = new ArrayList<>();
+    PageRequest batch = new PageRequest(0, REBUILD_BATCH_SIZE);
+    List<IamAccountSearchRecord> records = accountRepo.findSearchRecordsAfterId(0L, batch);
+
+    while (!records.isEmpty()) {
+      records.forEach(r -> docs.add(new Document(r)));
+      Long lastId = records.get(records.size() - 1).getId();
+      records = accountRepo.findSearchRecordsAfterId(lastId, batch);
+    }
+
+    Segment segment = buildSegment(docs);
+
+    synchronized (changesLock) {
+      // Changes applied after the rebuild started may not be reflected in the new segment
+      Map<String, Change> changes = new ConcurrentHashMap<>();
+      state.changes.forEach((uuid, c) -> {
+        if (c.sequence > startSequence) {
+          changes.put(uuid, c);
+        }
+      });
+      state = new State(segment, changes, true);
+    }
+
+    LOG.debug("Account search index rebuilt: {} accounts, {} trigrams", docs.size(),
+        segment.postings.size());
+  }
+
+  private void applyChange(String uuid, Document doc) {
+    synchronized (changesLock) {
+      state.changes.put(normalize(uuid), new Change(++sequence, doc));
+    }
+  }
+
+  /**
+   * Reloads an account from the database, used to apply changes committed on other replicas.
+   */
+  public void reindex(String uuid) {
+    applyChange(uuid, accountRepo.findSearchRecordByUuid(uuid).map(Document::new).orElse(null));
+  }
+
+  /**
+   * Reloads a set of accounts from the database with a single query, used to apply set-based
+   * account changes.
+   */
+  public void reindex(Collection<String> uuids) {
+    Map<String, Document> docs = new HashMap<>();
+    accountRepo.findSearchRecordsByUuids(uuids).forEach(r -> {
+      Document doc = new Document(r);
+      docs.put(doc.uuid, doc);
+    });
+
+    uuids.forEach(uuid -> applyChange(uuid, docs.get(normalize(uuid))));
+  }
+
+  private static IamAccountSearchRecord searchRecord(IamAccount a) {
+    IamUserInfo ui = a.getUserInfo();
+
+    if (isNull(ui)) {
+      return new IamAccountSearchRecord(a.getId(), a.getUuid(), a.getUsername(), null, null,
+          null, a.getCreationTime());
+    }
+
+    return new IamAccountSearchRecord(a.getId(), a.getUuid(), a.getUsername(), ui.getEmail(),
+        ui.getGivenName(), ui.getFamilyName(), a.getCreationTime());
+  }
+
+  private void accountChanged(IamAccount account, boolean removed) {
+    if (isNull(account.getId()) || isNull(account.getUuid())) {
+      return;
+    }
+
+    // Capture the account state now, since the entity may not be usable after the commit
+    final String uuid = account.getUuid();
+    final Document doc = removed ? null : new Document(searchRecord(account));
+
+    updateAfterCommit(() -> applyChange(uuid, doc));
+    evictionBroadcaster.broadcastEviction(CACHE_NAME, uuid);
+  }
+
+  private void accountsChanged(Collection<IamAccountIds> accounts) {
+    final List<String> uuids = accounts.stream()
+      .map(IamAccountIds::getUuid)
+      .filter(Objects::nonNull)
+      .collect(Collectors.toList());
+
+    if (uuids.isEmpty()) {
+      return;
+    }
+
+    updateAfterCommit(() -> reindex(uuids));
+    uuids.forEach(uuid -> evictionBroadcaster.broadcastEviction(CACHE_NAME, uuid));
+  }
+
+  @Override
+  public void onApplicationEvent(IamAuditApplicationEvent event) {
+    if (event instanceof AccountEvent) {
+      accountChanged(((AccountEvent) event).getAccount(), event instanceof AccountRemovedEvent);
+    } else if (event instanceof AccountsCreatedEvent) {
+      ((AccountsCreatedEvent) event).getAccounts().forEach(a -> accountChanged(a, false));
+    } else if (event instanceof AccountsEvent) {
+      accountsChanged(((AccountsEvent) event).getAccounts());
+    }
+  }
+
+  public int getIndexedAccountsCount() {
+    return state.segment.docs.length;
+  }
+
+  public int getPendingChangesCount() {
+    return state.changes.size();
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.userinfo;
+
+import static it.infn.mw.iam.core.cache.CacheEvictionUtils.evictNowAndAfterCompletion;
+import static java.util.Objects.isNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity.SubjectType;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.service.PairwiseIdentiferService;
+import org.mitre.openid.connect.service.UserInfoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.account.AccountEvent;
+import it.infn.mw.iam.audit.events.account.AccountsCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountsEvent;
+import it.infn.mw.iam.audit.events.group.GroupCreatedEvent;
+import it.infn.mw.iam.audit.events.group.GroupEvent;
+import it.infn.mw.iam.audit.events.group.request.GroupRequestApprovedEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+/**
+ * A {@link UserInfoService} that resolves user information from a bounded cache of
+ * {@link UserInfoSnapshot}s, keyed by username.
+ *
+ * Snapshots are evicted when account events (or set-based {@link AccountsEvent}s) are published
+ * for the account, and flushed when group events are published, since group names, labels and
+ * hierarchy end up in token claims. Events identify accounts by uuid, so the username under which
+ * each account's snapshot is cached is tracked by uuid, and kept in sync with the cache content.
+ */
+public class CachingUserInfoService
+    implements UserInfoService, ApplicationListener<IamAuditApplicationEvent> {
+
+  public static final Logger LOG = LoggerFactory.getLogger(CachingUserInfoService.class);
+
+  public static final String CACHE_NAME = "userinfo";
+
+  private final IamAccountRepository accountRepo;
+  private final ClientDetailsEntityService clientService;
+  private final PairwiseIdentiferService pairwiseIdentifierService;
+  private final CacheEvictionBroadcaster evictionBroadcaster;
+
+  private final Cache<String, UserInfoSnapshot> snapshotCache;
+
+  // The username each cached snapshot is cached under, by account uuid
+  private final Map<String, String> usernamesByUuid = new ConcurrentHashMap<>();
+
+  // Incremented at each eviction, used to avoid caching snapshots loaded from stale data
+  private final AtomicLong generation = new AtomicLong();
+
+  public CachingUserInfoService(IamAccountRepository accountRepo,
+      ClientDetailsEntityService clientService, PairwiseIdentiferService pairwiseIdentifierService,
+      CacheEvictionBroadcaster evictionBroadcaster, long cacheMaxSize, long cacheTtlSecs) {
+    this.accountRepo = accountRepo;
+    this.clientService = clientService;
+    this.pairwiseIdentifierService = pairwiseIdentifierService;
+    this.evictionBroadcaster = evictionBroadcaster;
+    this.snapshotCache = CacheBuilder.newBuilder()
+      .maximumSize(cacheMaxSize)
+      .expireAfterWrite(cacheTtlSecs, TimeUnit.SECONDS)
+      .recordStats()
+      .removalListener(this::snapshotRemoved)
+      .build();
+
+    evictionBroadcaster.registerEvictionHandler(CACHE_NAME, this::evictSnapshots);
+  }
+
+  @Override
+  public UserInfo getByUsername(String username) {
+
+    if (isNull(username)) {
+      return null;
+    }
+
+    UserInfoSnapshot snapshot = snapshotCache.getIfPresent(username);
+
+    if (isNull(snapshot)) {
+      final long gen = generation.get();
+
+      snapshot = accountRepo.findByUsername(username)
+        .map(UserInfoSnapshot::forAccount)
+        .orElse(null);
+
+      if (!isNull(snapshot) && gen == generation.get()) {
+        cacheSnapshot(username, snapshot);
+
+        // An eviction could have run before the snapshot was indexed
+        if (gen != generation.get()) {
+          snapshotCache.invalidate(username);
+        }
+      }
+    }
+
+    return snapshot;
+  }
+
+  private void cacheSnapshot(String username, UserInfoSnapshot snapshot) {
+    String previousUsername = usernamesByUuid.put(snapshot.getSub(), username);
+
+    // The account has been renamed, and the snapshot cached under the old username is stale
+    if (!isNull(previousUsername) && !previousUsername.equals(username)) {
+      snapshotCache.invalidate(previousUsername);
+    }
+
+    snapshotCache.put(username, snapshot);
+  }
+
+  private void snapshotRemoved(RemovalNotification<String, UserInfoSnapshot> notification) {
+    // A replaced snapshot is for the same username, which is indexed again by cacheSnapshot
+    if (notification.getCause() != RemovalCause.REPLACED && !isNull(notification.getValue())) {
+      usernamesByUuid.remove(notification.getValue().getSub(), notification.getKey());
+    }
+  }
+
+  @Override
+  public UserInfo getByUsernameAndClientId(String username, String clientId) {
+
+    ClientDetailsEntity client = clientService.loadClientByClientId(clientId);
+    UserInfoSnapshot snapshot = (UserInfoSnapshot) getByUsername(username);
+
+    if (isNull(client) || isNull(snapshot)) {
+      return null;
+    }
+
+    if (SubjectType.PAIRWISE.equals(client.getSubjectType())) {
+      return snapshot.withSub(pairwiseIdentifierService.getIdentifier(snapshot, client));
+    }
+
+    return snapshot;
+  }
+
+  @Override
+  public UserInfo getByEmailAddress(String email) {
+    return accountRepo.findByEmail(email).map(UserInfoSnapshot::forAccount).orElse(null);
+  }
+
+  /**
+   * Evicts the snapshot of the account with the given uuid or, if the uuid is <code>null</code>,
+   * all cached snapshots.
+   */
+  public void evictSnapshots(String accountUuid) {
+    generation.incrementAndGet();
+
+    if (isNull(accountUuid)) {
+      snapshotCache.invalidateAll();
+      return;
+    }
+
+    // Looked up by uuid, since the account could have been renamed
+    String username = usernamesByUuid.remove(accountUuid);
+
+    if (!isNull(username)) {
+      snapshotCache.invalidate(username);
+    }
+  }
+
+  public Cache<String, UserInfoSnapshot> getSnapshotCache() {
+    return snapshotCache;
+  }
+
+  protected void evict(String accountUuid) {
+    evictNowAndAfterCompletion(() -> evictSnapshots(accountUuid));
+    evictionBroadcaster.broadcastEviction(CACHE_NAME, accountUuid);
+  }
+
+  @Override
+  public void onApplicationEvent(IamAuditApplicationEvent event) {
+
+    if (event instanceof AccountEvent) {
+      evict(((AccountEvent) event).getAccount().getUuid());
+    } else if (event instanceof AccountsCreatedEvent) {
+      ((AccountsCreatedEvent) event).getAccounts().forEach(a -> evict(a.getUuid()));
+    } else if (event instanceof AccountsEvent) {
+      ((AccountsEvent) event).getAccounts().forEach(a -> evict(a.getUuid()));
+    } else if (event instanceof GroupRequestApprovedEvent) {
+      evict(((GroupRequestApprovedEvent) event).getGroupRequest().getAccount().getUuid());
+    } else if (event instanceof GroupEvent && !(event instanceof GroupCreatedEvent)) {
+      LOG.debug("Flushing user info snapshots after group event: {}", event.getMessage());
+      evict(null);
+    }
+  }
+}
@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.userinfo;
+
+import static java.lang.String.format;
+import static java.util.Objects.isNull;
+
+import java.util.Set;
+
+import org.mitre.openid.connect.model.Address;
+import org.mitre.openid.connect.model.UserInfo;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAddress;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamLabel;
+import it.infn.mw.iam.persistence.model.IamUserInfo;
+import it.infn.mw.iam.persistence.repository.AddressAdapter;
+
+/**
+ * An immutable copy of the user information and group memberships of an account, taken when the
+ * account is loaded, that can be safely shared across requests and threads.
+ *
+ * Groups are returned as detached copies that only hold the group uuid, name, labels and parent
+ * group chain.
+ */
+public class UserInfoSnapshot implements UserInfo {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String sub;
+  private final String preferredUsername;
+  private final String name;
+  private final String givenName;
+  private final String familyName;
+  private final String middleName;
+  private final String nickname;
+  private final String profile;
+  private final String picture;
+  private final String website;
+  private final String email;
+  private final Boolean emailVerified;
+  private final String gender;
+  private final String zoneinfo;
+  private final String locale;
+  private final String phoneNumber;
+  private final Boolean phoneNumberVerified;
+  private final String birthdate;
+  private final long updatedTime;
+  private final IamAddress address;
+  private final Set<IamGroup> groups;
+
+  private UserInfoSnapshot(IamUserInfo info) {
+    this.sub = info.getSub();
+    this.preferredUsername = info.getPreferredUsername();
+    this.name = info.getName();
+    this.givenName = info.getGivenName();
+    this.familyName = info.getFamilyName();
+    this.middleName = info.getMiddleName();
+    this.nickname = info.getNickname();
+    this.profile = info.getProfile();
+    this.picture = info.getPicture();
+    this.website = info.getWebsite();
+    this.email = info.getEmail();
+    this.emailVerified = info.getEmailVerified();
+    this.gender = info.getGender();
+    this.zoneinfo = info.getZoneinfo();
+    this.locale = info.getLocale();
+    this.phoneNumber = info.getPhoneNumber();
+    this.phoneNumberVerified = info.getPhoneNumberVerified();
+    this.birthdate = info.getBirthdate();
+    this.updatedTime = info.getUpdatedTime();
+    this.address = isNull(info.getAddress()) ? null : copyOf(info.getAddress());
+
+    ImmutableSet.Builder<IamGroup> groupsBuilder = ImmutableSet.builder();
+    info.getGroups().forEach(g -> groupsBuilder.add(copyOf(g)));
+    this.groups = groupsBuilder.build();
+  }
+
+  private UserInfoSnapshot(UserInfoSnapshot other, String sub) {
+    this.sub = sub;
+    this.preferredUsername = other.preferredUsername;
+    this.name = other.name;
+    this.givenName = other.givenName;
+    this.familyName = other.familyName;
+    this.middleName = other.middleName;
+    this.nickname = other.nickname;
+    this.profile = other.profile;
+    this.picture = other.picture;
+    this.website = other.website;
+    this.email = other.email;
+    this.emailVerified = other.emailVerified;
+    this.gender = other.gender;
+    this.zoneinfo = other.zoneinfo;
+    this.locale = other.locale;
+    this.phoneNumber = other.phoneNumber;
+    this.phoneNumberVerified = other.phoneNumberVerified;
+    this.birthdate = other.birthdate;
+    this.updatedTime = other.updatedTime;
+    this.address = other.address;
+    this.groups = other.groups;
+  }
+
+  private static IamAddress copyOf(IamAddress address) {
+    IamAddress copy = new IamAddress();
+    copy.setFormatted(address.getFormatted());
+    copy.setStreetAddress(address.getStreetAddress());
+    copy.setLocality(address.getLocality());
+    copy.setRegion(address.getRegion());
+    copy.setPostalCode(address.getPostalCode());
+    copy.setCountry(address.getCountry());
+    return copy;
+  }
+
+  private static IamGroup copyOf(IamGroup group) {
+    IamGroup copy = new IamGroup();
+    copy.setUuid(group.getUuid());
+    copy.setName(group.getName());
+
+    ImmutableSet.Builder<IamLabel> labelsBuilder = ImmutableSet.builder();
+    group.getLabels()
+      .forEach(l -> labelsBuilder.add(
+          IamLabel.builder().prefix(l.getPrefix()).name(l.getName()).value(l.getValue()).build()));
+    copy.setLabels(labelsBuilder.build());
+
+    if (!isNull(group.getParentGroup())) {
+      copy.setParentGroup(copyOf(group.getParentGroup()));
+    }
+
+    return copy;
+  }
+
+  private static UnsupportedOperationException immutableSnapshot() {
+    return new UnsupportedOperationException("User info snapshots cannot be modified");
+  }
+
+  public static UserInfoSnapshot forUserInfo(IamUserInfo info) {
+    return new UserInfoSnapshot(info);
+  }
+
+  public static UserInfoSnapshot forAccount(IamAccount account) {
+    return new UserInfoSnapshot(account.getUserInfo());
+  }
+
+  /**
+   * Returns a copy of this snapshot with the given subject, e.g. a pairwise subject identifier.
+   */
+  public UserInfoSnapshot withSub(String newSub) {
+    return new UserInfoSnapshot(this, newSub);
+  }
+
+  public Set<IamGroup> getGroups() {
+    return groups;
+  }
+
+  @Override
+  public String getSub() {
+    return sub;
+  }
+
+  @Override
+  public void setSub(String sub) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getPreferredUsername() {
+    return preferredUsername;
+  }
+
+  @Override
+  public void setPreferredUsername(String preferredUsername) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public void setName(String name) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getGivenName() {
+    return givenName;
+  }
+
+  @Override
+  public void setGivenName(String givenName) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getFamilyName() {
+    return familyName;
+  }
+
+  @Override
+  public void setFamilyName(String familyName) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getMiddleName() {
+    return middleName;
+  }
+
+  @Override
+  public void setMiddleName(String middleName) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getNickname() {
+    return nickname;
+  }
+
+  @Override
+  public void setNickname(String nickname) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getProfile() {
+    return profile;
+  }
+
+  @Override
+  public void setProfile(String profile) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getPicture() {
+    return picture;
+  }
+
+  @Override
+  public void setPicture(String picture) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getWebsite() {
+    return website;
+  }
+
+  @Override
+  public void setWebsite(String website) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getEmail() {
+    return email;
+  }
+
+  @Override
+  public void setEmail(String email) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public Boolean getEmailVerified() {
+    return emailVerified;
+  }
+
+  @Override
+  public void setEmailVerified(Boolean emailVerified) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getGender() {
+    return gender;
+  }
+
+  @Override
+  public void setGender(String gender) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getZoneinfo() {
+    return zoneinfo;
+  }
+
+  @Override
+  public void setZoneinfo(String zoneinfo) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getLocale() {
+    return locale;
+  }
+
+  @Override
+  public void setLocale(String locale) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getPhoneNumber() {
+    return phoneNumber;
+  }
+
+  @Override
+  public void setPhoneNumber(String phoneNumber) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public Boolean getPhoneNumberVerified() {
+    return phoneNumberVerified;
+  }
+
+  @Override
+  public void setPhoneNumberVerified(Boolean phoneNumberVerified) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public Address getAddress() {
+    if (isNull(address)) {
+      return null;
+    }
+
+    return AddressAdapter.forIamAddress(copyOf(address));
+  }
+
+  @Override
+  public void setAddress(Address address) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getUpdatedTime() {
+    return format("%d", updatedTime);
+  }
+
+  @Override
+  public void setUpdatedTime(String updatedTime) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public String getBirthdate() {
+    return birthdate;
+  }
+
+  @Override
+  public void setBirthdate(String birthdate) {
+    throw immutableSnapshot();
+  }
+
+  @Override
+  public JsonObject getSource() {
+    return null;
+  }
+
+  @Override
+  public JsonObject toJson() {
+
+    JsonObject obj = new JsonObject();
+
+    obj.addProperty("sub", sub);
+
+    obj.addProperty("name", name);
+    obj.addProperty("preferred_username", preferredUsername);
+    obj.addProperty("given_name", givenName);
+    obj.addProperty("family_name", familyName);
+    obj.addProperty("middle_name", middleName);
+    obj.addProperty("nickname", nickname);
+    obj.addProperty("profile", profile);
+    obj.addProperty("picture", picture);
+    obj.addProperty("website", website);
+    obj.addProperty("gender", gender);
+    obj.addProperty("zoneinfo", zoneinfo);
+    obj.addProperty("locale", locale);
+    obj.addProperty("updated_at", updatedTime);
+    obj.addProperty("birthdate", birthdate);
+
+    obj.addProperty("email", email);
+    obj.addProperty("email_verified", emailVerified);
+
+    obj.addProperty("phone_number", phoneNumber);
+    obj.addProperty("phone_number_verified", phoneNumberVerified);
+
+    if (!isNull(address)) {
+      JsonObject addr = new JsonObject();
+      addr.addProperty("formatted", address.getFormatted());
+      addr.addProperty("street_address", address.getStreetAddress());
+      addr.addProperty("locality", address.getLocality());
+      addr.addProperty("region", address.getRegion());
+      addr.addProperty("postal_code", address.getPostalCode());
+      addr.addProperty("country", address.getCountry());
+
+      obj.add("address", addr);
+    }
+
+    JsonArray groupNames = new JsonArray();
+
+    for (IamGroup g : groups) {
+      groupNames.add(new JsonPrimitive(g.getName()));
+    }
+
+    obj.add("groups", groupNames);
+
+    return obj;
+  }
+
+  @Override
+  public String toString() {
+    return "UserInfoSnapshot [sub=" + sub + ", preferredUsername=" + preferredUsername + "]";
+  }
+}
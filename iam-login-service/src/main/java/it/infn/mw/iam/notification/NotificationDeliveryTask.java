@@ -17,7 +17,6 @@ package it.infn.mw.iam.notification;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 @Component
 public class NotificationDeliveryTask implements Runnable {
@@ -30,7 +29,6 @@ public class NotificationDeliveryTask implements Runnable {
   }
 
   @Override
-  @Transactional
   public void run() {
     delivery.sendPendingNotifications();
   }
@@ -19,6 +19,7 @@ import static it.infn.mw.iam.notification.NotificationProperties.AdminNotificati
 import static it.infn.mw.iam.notification.NotificationProperties.GroupManagerNotificationPolicy.NOTIFY_GMS_AND_ADMINS;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.hibernate.validator.constraints.NotBlank;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -39,6 +40,73 @@ public class NotificationProperties {
     NOTIFY_GMS_AND_ADMINS
   }
 
+  public static class DeliveryProperties {
+
+    private int batchSize = 20;
+    private int concurrency = 4;
+    private int messagesPerConnection = 10;
+    private int maxAttempts = 5;
+    private long initialRetryDelayMsec = TimeUnit.MINUTES.toMillis(1);
+    private long maxRetryDelayMsec = TimeUnit.HOURS.toMillis(1);
+    private long claimTimeoutMsec = TimeUnit.MINUTES.toMillis(10);
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getConcurrency() {
+      return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+      this.concurrency = concurrency;
+    }
+
+    public int getMessagesPerConnection() {
+      return messagesPerConnection;
+    }
+
+    public void setMessagesPerConnection(int messagesPerConnection) {
+      this.messagesPerConnection = messagesPerConnection;
+    }
+
+    public int getMaxAttempts() {
+      return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialRetryDelayMsec() {
+      return initialRetryDelayMsec;
+    }
+
+    public void setInitialRetryDelayMsec(long initialRetryDelayMsec) {
+      this.initialRetryDelayMsec = initialRetryDelayMsec;
+    }
+
+    public long getMaxRetryDelayMsec() {
+      return maxRetryDelayMsec;
+    }
+
+    public void setMaxRetryDelayMsec(long maxRetryDelayMsec) {
+      this.maxRetryDelayMsec = maxRetryDelayMsec;
+    }
+
+    public long getClaimTimeoutMsec() {
+      return claimTimeoutMsec;
+    }
+
+    public void setClaimTimeoutMsec(long claimTimeoutMsec) {
+      this.claimTimeoutMsec = claimTimeoutMsec;
+    }
+  }
+
   private Boolean disable;
 
   @NotBlank
@@ -57,6 +125,8 @@ public class NotificationProperties {
   private GroupManagerNotificationPolicy groupManagerNotificationPolicy =
       NOTIFY_GMS_AND_ADMINS;
 
+  private DeliveryProperties delivery = new DeliveryProperties();
+
   public Boolean getDisable() {
     return disable;
   }
@@ -121,4 +191,12 @@ public class NotificationProperties {
       GroupManagerNotificationPolicy groupManagerNotificationPolicy) {
     this.groupManagerNotificationPolicy = groupManagerNotificationPolicy;
   }
+
+  public DeliveryProperties getDelivery() {
+    return delivery;
+  }
+
+  public void setDelivery(DeliveryProperties delivery) {
+    this.delivery = delivery;
+  }
 }
@@ -15,49 +15,100 @@
  */
 package it.infn.mw.iam.notification.service;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import it.infn.mw.iam.core.IamDeliveryStatus;
 import it.infn.mw.iam.core.time.TimeProvider;
 import it.infn.mw.iam.notification.NotificationDelivery;
 import it.infn.mw.iam.notification.NotificationProperties;
+import it.infn.mw.iam.notification.NotificationProperties.DeliveryProperties;
 import it.infn.mw.iam.persistence.model.IamEmailNotification;
 import it.infn.mw.iam.persistence.model.IamNotificationReceiver;
 import it.infn.mw.iam.persistence.repository.IamEmailNotificationRepository;
 
+/**
+ * Delivers the pending email notifications with a {@link JavaMailSender}.
+ *
+ * Notifications are claimed in small batches, by moving them to the
+ * {@link IamDeliveryStatus#IN_PROGRESS} status in a short transaction, so that replicas sharing
+ * the database don't normally deliver the same notification twice. A claimed batch is split in
+ * chunks that are sent concurrently, each chunk over a single SMTP connection, and the outcome of
+ * each delivery is then recorded in its own transaction. Failed deliveries are retried with an
+ * exponential backoff, up to a configurable number of attempts.
+ *
+ * Claims not completed within the claim timeout are taken over by the next delivery run, so that
+ * notifications claimed by a replica that stopped are not lost. Delivery is therefore
+ * at-least-once: a notification whose delivery takes longer than the timeout can be sent twice.
+ * The claim time acts as a claim token, so that the outcome is recorded only by the current claim
+ * holder.
+ */
 @Service
 @ConditionalOnProperty(name = "notification.disable", havingValue = "false")
-public class JavaMailNotificationDelivery implements NotificationDelivery {
+public class JavaMailNotificationDelivery implements NotificationDelivery, DisposableBean {
 
   public static final Logger LOG = LoggerFactory.getLogger(JavaMailNotificationDelivery.class);
 
+  public static final String WORKER_THREAD_NAME_FORMAT = "iam-notification-delivery-%d";
+
+  private static final int MAX_BACKOFF_SHIFT = 30;
+
   final JavaMailSender mailSender;
 
   final IamEmailNotificationRepository repo;
   final NotificationProperties properties;
   final TimeProvider timeProvider;
 
+  private final TransactionTemplate transactionTemplate;
+  private final ExecutorService executor;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final LongAdder deliveredCount = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+
+  private volatile long lastRunDeliveredCount;
+  private volatile long lastRunDurationMsec;
+
   @Autowired
   public JavaMailNotificationDelivery(JavaMailSender mailSender,
       IamEmailNotificationRepository repo, NotificationProperties properties,
-      TimeProvider timeProvider) {
+      TimeProvider timeProvider, PlatformTransactionManager txManager) {
     this.mailSender = mailSender;
     this.repo = repo;
     this.properties = properties;
     this.timeProvider = timeProvider;
+    this.transactionTemplate = new TransactionTemplate(txManager);
+    this.executor = Executors.newFixedThreadPool(properties.getDelivery().getConcurrency(),
+        new ThreadFactoryBuilder().setNameFormat(WORKER_THREAD_NAME_FORMAT)
+          .setDaemon(true)
+          .build());
   }
 
   protected SimpleMailMessage messageFromNotification(IamEmailNotification notification) {
@@ -77,41 +128,218 @@ public class JavaMailNotificationDelivery implements NotificationDelivery {
     return message;
   }
 
+  private DeliveryProperties deliveryProperties() {
+    return properties.getDelivery();
+  }
+
+  private Date now() {
+    return new Date(timeProvider.currentTimeMillis());
+  }
+
+  protected long retryDelayMsec(int attempts) {
+    final int shift = Math.min(Math.max(attempts - 1, 0), MAX_BACKOFF_SHIFT);
+    final long delay = deliveryProperties().getInitialRetryDelayMsec() << shift;
+
+    if (delay < 0 || delay > deliveryProperties().getMaxRetryDelayMsec()) {
+      return deliveryProperties().getMaxRetryDelayMsec();
+    }
+
+    return delay;
+  }
+
+  private Date claimTime() {
+    // Truncated to seconds, so that it is matched by the stored value when the column doesn't keep
+    // fractional seconds
+    final long now = timeProvider.currentTimeMillis();
+    return new Date(now - now % 1000);
+  }
+
+  private List<IamEmailNotification> claimNotifications(Date now) {
+    final Date staleClaimTime =
+        new Date(now.getTime() - deliveryProperties().getClaimTimeoutMsec());
+
+    return transactionTemplate.execute(status -> {
+      List<Long> claimedIds = repo
+        .findDeliverableNotificationIds(now, staleClaimTime,
+            new PageRequest(0, deliveryProperties().getBatchSize()))
+        .stream()
+        .filter(id -> repo.claimNotification(id, now, staleClaimTime) == 1)
+        .collect(toList());
+
+      if (claimedIds.isEmpty()) {
+        return Collections.<IamEmailNotification>emptyList();
+      }
+
+      return Lists.newArrayList(repo.findAll(claimedIds));
+    });
+  }
+
+  /**
+   * Sends the given notifications over a single SMTP connection, and returns the errors of the
+   * failed deliveries, indexed by notification id.
+   */
+  private Map<Long, MailException> sendOverSingleConnection(
+      List<IamEmailNotification> notifications, SimpleMailMessage[] messages) {
+
+    Map<Long, MailException> errors = Maps.newHashMap();
+
+    try {
+      mailSender.send(messages);
+    } catch (MailSendException e) {
+      Map<Object, Exception> failedMessages = e.getFailedMessages();
+
+      for (int i = 0; i < messages.length; i++) {
+        if (failedMessages.isEmpty() || failedMessages.containsKey(messages[i])) {
+          errors.put(notifications.get(i).getId(), e);
+        }
+      }
+    } catch (MailException e) {
+      notifications.forEach(n -> errors.put(n.getId(), e));
+    }
+
+    return errors;
+  }
+
+  private CompletableFuture<Map<Long, MailException>> sendAsync(
+      List<IamEmailNotification> notifications) {
+
+    SimpleMailMessage[] messages =
+        notifications.stream().map(this::messageFromNotification).toArray(SimpleMailMessage[]::new);
+
+    return CompletableFuture.supplyAsync(() -> sendOverSingleConnection(notifications, messages),
+        executor);
+  }
+
+  private void recordDeliveryAttempt(IamEmailNotification e, Date claimTime,
+      IamDeliveryStatus deliveryStatus, Date now, Date nextAttemptTime) {
+
+    Integer updated = transactionTemplate.execute(status -> repo.recordDeliveryAttempt(e.getId(),
+        claimTime, deliveryStatus, now, nextAttemptTime));
+
+    if (updated == null || updated == 0) {
+      LOG.warn("Claim on message {} taken over by another delivery run, {} outcome not recorded",
+          e.getUuid(), deliveryStatus);
+    }
+  }
+
+  private void recordDelivered(IamEmailNotification e, Date claimTime) {
+    SimpleMailMessage message = messageFromNotification(e);
+
+    recordDeliveryAttempt(e, claimTime, IamDeliveryStatus.DELIVERED, now(), null);
+
+    deliveredCount.increment();
+
+    LOG.info(
+        "Email message delivered. "
+            + "message_id:{} message_type:{} rcpt_to:{} subject:{}",
+        e.getUuid(), e.getType(), message.getTo(), message.getSubject());
+  }
+
+  private void recordDeliveryError(IamEmailNotification e, Date claimTime, MailException ex) {
+    final Date now = now();
+    final int attempts = e.getDeliveryAttempts() + 1;
+
+    Date nextAttemptTime = null;
+
+    if (attempts < deliveryProperties().getMaxAttempts()) {
+      nextAttemptTime = new Date(now.getTime() + retryDelayMsec(attempts));
+    }
+
+    final Date nextAttempt = nextAttemptTime;
+
+    recordDeliveryAttempt(e, claimTime, IamDeliveryStatus.DELIVERY_ERROR, now, nextAttempt);
+
+    failedCount.increment();
+
+    LOG.error("Email message delivery error: message_id:{} attempt:{} next_attempt:{} reason:{}",
+        e.getUuid(), attempts, nextAttempt, ex.getMessage(), ex);
+  }
+
+  private long deliver(List<IamEmailNotification> notifications, Date claimTime) {
+
+    List<CompletableFuture<Map<Long, MailException>>> chunks =
+        Lists.partition(notifications, deliveryProperties().getMessagesPerConnection())
+          .stream()
+          .map(this::sendAsync)
+          .collect(toList());
+
+    Map<Long, MailException> errors = Maps.newHashMap();
+    chunks.forEach(c -> errors.putAll(c.join()));
+
+    long delivered = 0;
+
+    for (IamEmailNotification e : notifications) {
+      if (errors.containsKey(e.getId())) {
+        recordDeliveryError(e, claimTime, errors.get(e.getId()));
+      } else {
+        recordDelivered(e, claimTime);
+        delivered++;
+      }
+    }
+
+    return delivered;
+  }
 
   @Override
-  @Transactional
   public void sendPendingNotifications() {
-    List<IamEmailNotification> pendingMessages =
-        repo.findByDeliveryStatus(IamDeliveryStatus.PENDING);
 
-    if (pendingMessages.isEmpty()) {
-      LOG.debug("No pending messages found in repository");
+    if (!running.compareAndSet(false, true)) {
+      LOG.debug("Notification delivery already running");
       return;
     }
 
-    for (IamEmailNotification e : pendingMessages) {
-      SimpleMailMessage message = messageFromNotification(e);
+    final long startTime = System.currentTimeMillis();
+    long delivered = 0;
+
+    try {
+      Date claimTime = claimTime();
+      List<IamEmailNotification> batch = claimNotifications(claimTime);
 
-      try {
-        mailSender.send(message);
-        e.setDeliveryStatus(IamDeliveryStatus.DELIVERED);
+      if (batch.isEmpty()) {
+        LOG.debug("No pending messages found in repository");
+        return;
+      }
 
-        LOG.info(
-            "Email message delivered. "
-                + "message_id:{} message_type:{} rcpt_to:{} subject:{}",
-            e.getUuid(), e.getType(), message.getTo(), message.getSubject());
+      while (!batch.isEmpty()) {
+        delivered += deliver(batch, claimTime);
 
+        if (batch.size() < deliveryProperties().getBatchSize()) {
+          break;
+        }
 
-      } catch (MailException ex) {
-        e.setDeliveryStatus(IamDeliveryStatus.DELIVERY_ERROR);
-        LOG.error("Email message delivery error: message_id:{} reason:{}", e.getUuid(),
-            ex.getMessage(), ex);
+        claimTime = claimTime();
+        batch = claimNotifications(claimTime);
       }
 
-      e.setLastUpdate(new Date(timeProvider.currentTimeMillis()));
-      repo.save(e);
+      lastRunDeliveredCount = delivered;
+      lastRunDurationMsec = System.currentTimeMillis() - startTime;
+    } finally {
+      running.set(false);
     }
+  }
 
+  @Override
+  public void destroy() {
+    executor.shutdown();
   }
 
+  public long getDeliveredCount() {
+    return deliveredCount.sum();
+  }
+
+  public long getFailedCount() {
+    return failedCount.sum();
+  }
+
+  public long getLastRunDeliveredCount() {
+    return lastRunDeliveredCount;
+  }
+
+  public long getLastRunDurationMsec() {
+    return lastRunDurationMsec;
+  }
+
+  public double getLastRunMessagesPerSecond() {
+    return lastRunDeliveredCount * 1000.0 / Math.max(1, lastRunDurationMsec);
+  }
 }
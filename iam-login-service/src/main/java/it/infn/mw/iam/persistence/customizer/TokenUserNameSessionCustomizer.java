@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.customizer;
+
+import java.util.function.Function;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.sessions.Session;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+
+/**
+ * Fills the <code>user_name</code> column of the access and refresh token tables when a token is
+ * inserted.
+ *
+ * The column is a copy of the name of the user the token was issued to, which would otherwise
+ * only be reachable through the authentication holder and saved user authentication tables,
+ * and allows to list the tokens of a user with a single index range scan. The token entities
+ * are not under our control, so the column is not mapped and is added to the insert row. The
+ * column is as long as an account username, so that the (user_name, expiration, id) indexes cover
+ * the whole column: longer names cannot belong to an account and are not copied.
+ */
+public class TokenUserNameSessionCustomizer implements SessionCustomizer {
+
+  public static final String USER_NAME_COLUMN = "user_name";
+  public static final int USER_NAME_MAX_LENGTH = 128;
+
+  private static class UserNameColumnWriter extends DescriptorEventAdapter {
+
+    private final Function<Object, AuthenticationHolderEntity> holderResolver;
+
+    UserNameColumnWriter(Function<Object, AuthenticationHolderEntity> holderResolver) {
+      this.holderResolver = holderResolver;
+    }
+
+    @Override
+    public void aboutToInsert(DescriptorEvent event) {
+
+      AuthenticationHolderEntity holder = holderResolver.apply(event.getObject());
+
+      if (holder == null || holder.getUserAuth() == null) {
+        return;
+      }
+
+      final String userName = holder.getUserAuth().getName();
+
+      if (userName != null && userName.length() <= USER_NAME_MAX_LENGTH) {
+        event.getRecord().put(USER_NAME_COLUMN, userName);
+      }
+    }
+  }
+
+  @Override
+  public void customize(Session session) throws Exception {
+
+    session.getDescriptor(OAuth2AccessTokenEntity.class)
+      .getEventManager()
+      .addListener(new UserNameColumnWriter(
+          t -> ((OAuth2AccessTokenEntity) t).getAuthenticationHolder()));
+
+    session.getDescriptor(OAuth2RefreshTokenEntity.class)
+      .getEventManager()
+      .addListener(new UserNameColumnWriter(
+          t -> ((OAuth2RefreshTokenEntity) t).getAuthenticationHolder()));
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Date;
+
+/**
+ * Deletes, in bounded batches, the OAuth entities that expired before a given timestamp. Each
+ * method deletes at most <code>count</code> entities in its own transaction and returns the number
+ * of entities it selected and deleted, so that a caller can repeat the call until no entities are
+ * selected.
+ */
+public interface IamExpiredEntitiesRepository {
+
+  TokenChunkDeletion deleteExpiredAccessTokens(Date timestamp, int count);
+
+  /**
+   * Deletes expired refresh tokens, together with the access tokens obtained with them.
+   */
+  TokenChunkDeletion deleteExpiredRefreshTokens(Date timestamp, int count);
+
+  /**
+   * Deletes expired approved sites, together with the tokens issued under the approval.
+   */
+  TokenChunkDeletion deleteExpiredApprovedSites(Date timestamp, int count);
+
+  TokenChunkDeletion deleteExpiredDeviceCodes(Date timestamp, int count);
+}
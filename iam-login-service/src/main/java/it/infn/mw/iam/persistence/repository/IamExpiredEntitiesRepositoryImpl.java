@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TemporalType;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.base.Joiner;
+
+@Component
+public class IamExpiredEntitiesRepositoryImpl implements IamExpiredEntitiesRepository {
+
+  @PersistenceContext
+  EntityManager em;
+
+  // Served by the index on the expiration column, no sort is needed
+  private List<Long> findExpiredIds(String table, String expirationColumn, Date timestamp,
+      int count) {
+
+    return TokenKeysetQueries.resultIds(em
+      .createNativeQuery(String.format("SELECT id FROM %s WHERE %s < ?1 LIMIT %d", table,
+          expirationColumn, count))
+      .setParameter(1, timestamp, TemporalType.TIMESTAMP));
+  }
+
+  private List<Long> findAccessTokenIds(String column, String selection, List<Long> ids) {
+    return TokenKeysetQueries.resultIds(em.createNativeQuery(
+        String.format("SELECT DISTINCT %s FROM access_token WHERE %s IN (%s) AND %s IS NOT NULL",
+            selection, column, Joiner.on(',').join(ids), selection)));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteExpiredAccessTokens(Date timestamp, int count) {
+
+    List<Long> ids = findExpiredIds("access_token", "expiration", timestamp, count);
+    return new TokenChunkDeletion(ids.size(),
+        IamOAuthAccessTokenRepositoryImpl.deleteAccessTokensById(em, ids));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteExpiredRefreshTokens(Date timestamp, int count) {
+
+    List<Long> ids = findExpiredIds("refresh_token", "expiration", timestamp, count);
+    return new TokenChunkDeletion(ids.size(),
+        IamOAuthRefreshTokenRepositoryImpl.deleteRefreshTokensById(em, ids));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteExpiredApprovedSites(Date timestamp, int count) {
+
+    List<Long> ids = findExpiredIds("approved_site", "timeout_date", timestamp, count);
+
+    if (ids.isEmpty()) {
+      return TokenChunkDeletion.EMPTY;
+    }
+
+    List<Long> refreshTokenIds = findAccessTokenIds("approved_site_id", "refresh_token_id", ids);
+    List<Long> accessTokenIds = findAccessTokenIds("approved_site_id", "id", ids);
+
+    IamOAuthAccessTokenRepositoryImpl.deleteAccessTokensById(em, accessTokenIds);
+    IamOAuthRefreshTokenRepositoryImpl.deleteRefreshTokensById(em, refreshTokenIds);
+
+    TokenKeysetQueries.deleteByIds(em, "approved_site_scope", "owner_id", ids);
+    return new TokenChunkDeletion(ids.size(),
+        TokenKeysetQueries.deleteByIds(em, "approved_site", "id", ids));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteExpiredDeviceCodes(Date timestamp, int count) {
+
+    List<Long> ids = findExpiredIds("device_code", "expiration", timestamp, count);
+
+    TokenKeysetQueries.deleteByIds(em, "device_code_scope", "owner_id", ids);
+    TokenKeysetQueries.deleteByIds(em, "device_code_request_parameter", "owner_id", ids);
+    return new TokenChunkDeletion(ids.size(),
+        TokenKeysetQueries.deleteByIds(em, "device_code", "id", ids));
+  }
+}
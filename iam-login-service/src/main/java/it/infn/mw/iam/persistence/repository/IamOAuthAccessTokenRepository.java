@@ -29,7 +29,8 @@ import org.springframework.data.repository.query.Param;
 import com.nimbusds.jwt.JWT;
 
 public interface IamOAuthAccessTokenRepository
-  extends PagingAndSortingRepository<OAuth2AccessTokenEntity, Long> {
+  extends PagingAndSortingRepository<OAuth2AccessTokenEntity, Long>,
+  IamOAuthAccessTokenRepositoryCustom {
   
   @Query("select t from OAuth2AccessTokenEntity t where t.jwt = :tokenValue")
   Optional<OAuth2AccessTokenEntity> findByTokenValue(@Param("tokenValue") JWT tokenValue);
@@ -69,10 +70,41 @@ public interface IamOAuthAccessTokenRepository
   Page<OAuth2AccessTokenEntity> findAllValidAccessTokens(
     @Param("timestamp") Date timestamp, Pageable op);
 
+  @Query("select distinct t from OAuth2AccessTokenEntity t "
+    + "where (t.authenticationHolder.scope not in ('registration-token', 'resource-token')) "
+    + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration ")
+  List<OAuth2AccessTokenEntity> listValidAccessTokens(@Param("timestamp") Date timestamp,
+    Pageable op);
+
+  @Query("select t from OAuth2AccessTokenEntity t "
+    + "where (t.authenticationHolder.userAuth.name = :userId) "
+    + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration")
+  List<OAuth2AccessTokenEntity> listValidAccessTokensForUser(@Param("userId") String userId,
+    @Param("timestamp") Date timestamp, Pageable op);
+
+  @Query("select t from OAuth2AccessTokenEntity t "
+    + "where (t.authenticationHolder.clientId = :clientId) "
+    + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration")
+  List<OAuth2AccessTokenEntity> listValidAccessTokensForClient(
+    @Param("clientId") String clientId, @Param("timestamp") Date timestamp, Pageable op);
+
+  @Query("select t from OAuth2AccessTokenEntity t "
+    + "where (t.authenticationHolder.userAuth.name = :userId) "
+    + "and (t.authenticationHolder.clientId = :clientId) "
+    + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration")
+  List<OAuth2AccessTokenEntity> listValidAccessTokensForUserAndClient(
+    @Param("userId") String userId, @Param("clientId") String clientId,
+    @Param("timestamp") Date timestamp, Pageable op);
+
   @Query("select count(t) from OAuth2AccessTokenEntity t "
     + "where (t.expiration is NULL or t.expiration > :timestamp)")
   long countValidAccessTokens(@Param("timestamp") Date timestamp);
 
+  @Query("select count(distinct t) from OAuth2AccessTokenEntity t "
+    + "where (t.authenticationHolder.scope not in ('registration-token', 'resource-token')) "
+    + "and (t.expiration is NULL or t.expiration > :timestamp)")
+  long countListableValidAccessTokens(@Param("timestamp") Date timestamp);
+
   @Query("select count(t) from OAuth2AccessTokenEntity t "
     + "where (t.expiration is NULL or t.expiration > :timestamp) "
     + "and (t.authenticationHolder.userAuth.name = :userId)")
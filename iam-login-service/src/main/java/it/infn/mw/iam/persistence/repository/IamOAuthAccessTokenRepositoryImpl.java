@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+public class IamOAuthAccessTokenRepositoryImpl implements IamOAuthAccessTokenRepositoryCustom {
+
+  private static final TokenKeysetQueries<OAuth2AccessTokenEntity> QUERIES =
+      new TokenKeysetQueries<>("access_token", OAuth2AccessTokenEntity.class,
+          OAuth2AccessTokenEntity::getId);
+
+  @PersistenceContext
+  EntityManager em;
+
+  @Override
+  public List<OAuth2AccessTokenEntity> findValidAccessTokensAfter(TokenKeyset after,
+      String userId, String clientId, Date timestamp, int count) {
+
+    // Registration and resource tokens are not listed, unless a user or client is given
+    final boolean excludeInternalTokens = userId == null && clientId == null;
+
+    return QUERIES.findValidTokensAfter(em, after, userId, clientId, excludeInternalTokens,
+        timestamp, count);
+  }
+
+  private TokenChunkDeletion deleteChunk(List<Long> ids) {
+
+    if (ids.isEmpty()) {
+      return TokenChunkDeletion.EMPTY;
+    }
+
+    return new TokenChunkDeletion(ids.size(), deleteAccessTokensById(em, ids));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteAccessTokens(String userId, String clientId, int count) {
+
+    return deleteChunk(QUERIES.findTokenIds(em, userId, clientId, count));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteGroupMembersAccessTokens(Long groupId, int count) {
+
+    return deleteChunk(QUERIES.findGroupMemberTokenIds(em, groupId, count));
+  }
+
+  static int deleteAccessTokensById(EntityManager em, Collection<Long> ids) {
+
+    TokenKeysetQueries.deleteByIds(em, "token_scope", "owner_id", ids);
+    TokenKeysetQueries.deleteByIds(em, "access_token_permissions", "access_token_id", ids);
+    return TokenKeysetQueries.deleteByIds(em, "access_token", "id", ids);
+  }
+}
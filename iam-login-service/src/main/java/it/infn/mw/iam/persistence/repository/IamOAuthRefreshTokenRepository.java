@@ -26,7 +26,8 @@ import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
 public interface IamOAuthRefreshTokenRepository
-    extends PagingAndSortingRepository<OAuth2RefreshTokenEntity, Long> {
+    extends PagingAndSortingRepository<OAuth2RefreshTokenEntity, Long>,
+    IamOAuthRefreshTokenRepositoryCustom {
 
   @Query("select t from OAuth2RefreshTokenEntity t where t.authenticationHolder.userAuth.name = :userId "
       + "and (t.expiration is NULL or t.expiration > :timestamp)")
@@ -58,6 +59,31 @@ public interface IamOAuthRefreshTokenRepository
   Page<OAuth2RefreshTokenEntity> findAllValidRefreshTokens(@Param("timestamp") Date timestamp,
       Pageable op);
 
+  @Query("select t from OAuth2RefreshTokenEntity t "
+      + "where (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration,t.id")
+  List<OAuth2RefreshTokenEntity> listValidRefreshTokens(@Param("timestamp") Date timestamp,
+      Pageable op);
+
+  @Query("select t from OAuth2RefreshTokenEntity t "
+      + "where (t.authenticationHolder.userAuth.name = :userId) "
+      + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration,t.id")
+  List<OAuth2RefreshTokenEntity> listValidRefreshTokensForUser(@Param("userId") String userId,
+      @Param("timestamp") Date timestamp, Pageable op);
+
+  @Query("select t from OAuth2RefreshTokenEntity t "
+      + "where (t.authenticationHolder.clientId = :clientId) "
+      + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration,t.id")
+  List<OAuth2RefreshTokenEntity> listValidRefreshTokensForClient(
+      @Param("clientId") String clientId, @Param("timestamp") Date timestamp, Pageable op);
+
+  @Query("select t from OAuth2RefreshTokenEntity t "
+      + "where (t.authenticationHolder.userAuth.name = :userId) "
+      + "and (t.authenticationHolder.clientId = :clientId) "
+      + "and (t.expiration is NULL or t.expiration > :timestamp) order by t.expiration,t.id")
+  List<OAuth2RefreshTokenEntity> listValidRefreshTokensForUserAndClient(
+      @Param("userId") String userId, @Param("clientId") String clientId,
+      @Param("timestamp") Date timestamp, Pageable op);
+
   @Query("select count(t) from OAuth2RefreshTokenEntity t "
       + "where (t.expiration is NULL or t.expiration > :timestamp)")
   long countValidRefreshTokens(@Param("timestamp") Date timestamp);
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+
+public interface IamOAuthRefreshTokenRepositoryCustom {
+
+  /**
+   * Returns at most <code>count</code> refresh tokens valid at the given timestamp that follow the
+   * given position in the listing ordered by expiration time and id.
+   *
+   * @param userId if not null, only the tokens issued to this user are returned
+   * @param clientId if not null, only the tokens issued to this client are returned
+   */
+  List<OAuth2RefreshTokenEntity> findValidRefreshTokensAfter(TokenKeyset after, String userId,
+      String clientId, Date timestamp, int count);
+
+  /**
+   * Deletes at most <code>count</code> refresh tokens, expired or not, issued to a user and/or to a
+   * client, together with the access tokens obtained with them.
+   *
+   * The deletion joins the caller's transaction, if any, or runs in a transaction of its own.
+   *
+   * @return the number of selected and deleted refresh tokens
+   */
+  TokenChunkDeletion deleteRefreshTokens(String userId, String clientId, int count);
+
+  /**
+   * Deletes at most <code>count</code> refresh tokens, expired or not, issued to the direct members
+   * of a group, together with the access tokens obtained with them.
+   *
+   * @return the number of selected and deleted refresh tokens
+   */
+  TokenChunkDeletion deleteGroupMembersRefreshTokens(Long groupId, int count);
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.base.Joiner;
+
+@Component
+public class IamOAuthRefreshTokenRepositoryImpl implements IamOAuthRefreshTokenRepositoryCustom {
+
+  private static final TokenKeysetQueries<OAuth2RefreshTokenEntity> QUERIES =
+      new TokenKeysetQueries<>("refresh_token", OAuth2RefreshTokenEntity.class,
+          OAuth2RefreshTokenEntity::getId);
+
+  @PersistenceContext
+  EntityManager em;
+
+  @Override
+  public List<OAuth2RefreshTokenEntity> findValidRefreshTokensAfter(TokenKeyset after,
+      String userId, String clientId, Date timestamp, int count) {
+
+    return QUERIES.findValidTokensAfter(em, after, userId, clientId, false, timestamp, count);
+  }
+
+  private TokenChunkDeletion deleteChunk(List<Long> ids) {
+
+    if (ids.isEmpty()) {
+      return TokenChunkDeletion.EMPTY;
+    }
+
+    return new TokenChunkDeletion(ids.size(), deleteRefreshTokensById(em, ids));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteRefreshTokens(String userId, String clientId, int count) {
+
+    return deleteChunk(QUERIES.findTokenIds(em, userId, clientId, count));
+  }
+
+  @Override
+  @Transactional
+  public TokenChunkDeletion deleteGroupMembersRefreshTokens(Long groupId, int count) {
+
+    return deleteChunk(QUERIES.findGroupMemberTokenIds(em, groupId, count));
+  }
+
+  static int deleteRefreshTokensById(EntityManager em, Collection<Long> ids) {
+
+    if (ids.isEmpty()) {
+      return 0;
+    }
+
+    List<Long> accessTokenIds = TokenKeysetQueries.resultIds(em.createNativeQuery(
+        String.format("SELECT id FROM access_token WHERE refresh_token_id IN (%s)",
+            Joiner.on(',').join(ids))));
+
+    IamOAuthAccessTokenRepositoryImpl.deleteAccessTokensById(em, accessTokenIds);
+
+    return TokenKeysetQueries.deleteByIds(em, "refresh_token", "id", ids);
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+/**
+ * The outcome of the deletion of a chunk of tokens (or of other OAuth entities): the number of
+ * rows selected for deletion and the number of rows actually deleted, which is lower when some of
+ * the selected rows are deleted concurrently (e.g. by a token revocation and the expired tokens
+ * cleanup).
+ */
+public class TokenChunkDeletion {
+
+  public static final TokenChunkDeletion EMPTY = new TokenChunkDeletion(0, 0);
+
+  private final int selectedCount;
+  private final int deletedCount;
+
+  public TokenChunkDeletion(int selectedCount, int deletedCount) {
+    this.selectedCount = selectedCount;
+    this.deletedCount = deletedCount;
+  }
+
+  public int getSelectedCount() {
+    return selectedCount;
+  }
+
+  public int getDeletedCount() {
+    return deletedCount;
+  }
+
+  public boolean isEmpty() {
+    return selectedCount == 0;
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Date;
+
+/**
+ * A position in a token listing ordered by expiration time and id, where the tokens that never
+ * expire follow all the others.
+ */
+public class TokenKeyset {
+
+  public static final TokenKeyset START = new TokenKeyset(new Date(0), 0L);
+
+  private final Date expiration;
+  private final long id;
+
+  /**
+   * @param expiration the expiration time of the last token listed, or <code>null</code> if it
+   *        never expires
+   * @param id the id of the last token listed
+   */
+  public TokenKeyset(Date expiration, long id) {
+    this.expiration = expiration;
+    this.id = id;
+  }
+
+  public Date getExpiration() {
+    return expiration;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public boolean isNonExpiring() {
+    return expiration == null;
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.toList;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Keyset paginated queries and chunked deletes on a token table.
+ *
+ * The ids of a page of tokens are selected with a native query that is served by the
+ * (user_name, expiration, id), (client_id, expiration, id) and (expiration, id) indexes, and the
+ * tokens are then loaded by id. Tokens that expire are listed first, ordered by expiration time
+ * and id, followed by the tokens that never expire, ordered by id.
+ */
+class TokenKeysetQueries<T> {
+
+  private static final String GROUP_MEMBERS_FILTER =
+      "t.user_name IN (SELECT a.username FROM iam_account a "
+          + "JOIN iam_account_group ag ON ag.account_id = a.id WHERE ag.group_id = ?)";
+
+  private static final String INTERNAL_TOKENS_FILTER =
+      "NOT EXISTS (SELECT s.owner_id FROM authentication_holder_scope s "
+          + "WHERE s.owner_id = t.auth_holder_id "
+          + "AND s.scope IN ('registration-token', 'resource-token'))";
+
+  private final String table;
+  private final Class<T> entityClass;
+  private final Function<T, Long> idFunction;
+
+  TokenKeysetQueries(String table, Class<T> entityClass, Function<T, Long> idFunction) {
+    this.table = table;
+    this.entityClass = entityClass;
+    this.idFunction = idFunction;
+  }
+
+  private static class Conditions {
+    final List<String> conditions = Lists.newArrayList();
+    final List<Object> params = Lists.newArrayList();
+
+    Conditions add(String condition, Object... conditionParams) {
+      String sql = condition;
+      for (Object p : conditionParams) {
+        params.add(p);
+        sql = sql.replaceFirst("\\?(?!\\d)", "?" + params.size());
+      }
+      conditions.add(sql);
+      return this;
+    }
+  }
+
+  private Conditions filter(String userName, String clientId, boolean excludeInternalTokens) {
+
+    Conditions c = new Conditions();
+
+    if (userName != null) {
+      c.add("t.user_name = ?", userName);
+    }
+
+    if (clientId != null) {
+      c.add("t.client_id = (SELECT cd.id FROM client_details cd WHERE cd.client_id = ?)",
+          clientId);
+    }
+
+    if (excludeInternalTokens) {
+      c.add(INTERNAL_TOKENS_FILTER);
+    }
+
+    return c;
+  }
+
+  private List<Long> selectIds(EntityManager em, Conditions c, String orderBy, int limit) {
+
+    String sql = String.format("SELECT t.id FROM %s t WHERE %s", table,
+        Joiner.on(" AND ").join(c.conditions));
+
+    if (orderBy != null) {
+      sql += " ORDER BY " + orderBy;
+    }
+
+    sql += " LIMIT " + limit;
+
+    Query query = em.createNativeQuery(sql);
+
+    for (int i = 0; i < c.params.size(); i++) {
+      Object p = c.params.get(i);
+      if (p instanceof Date) {
+        query.setParameter(i + 1, (Date) p, TemporalType.TIMESTAMP);
+      } else {
+        query.setParameter(i + 1, p);
+      }
+    }
+
+    return resultIds(query);
+  }
+
+  /**
+   * Returns the ids selected by a native query.
+   */
+  static List<Long> resultIds(Query query) {
+    @SuppressWarnings("unchecked")
+    List<Object> results = query.getResultList();
+    return results.stream().map(r -> ((Number) r).longValue()).collect(toList());
+  }
+
+  /**
+   * Returns at most <code>count</code> valid tokens that follow the given position, optionally
+   * restricted to the tokens issued to a user and/or to a client.
+   */
+  List<T> findValidTokensAfter(EntityManager em, TokenKeyset after, String userName,
+      String clientId, boolean excludeInternalTokens, Date timestamp, int count) {
+
+    List<Long> ids = Lists.newArrayList();
+
+    if (!after.isNonExpiring()) {
+      Conditions c = filter(userName, clientId, excludeInternalTokens)
+        .add("t.expiration > ?", timestamp)
+        .add("(t.expiration > ? OR (t.expiration = ? AND t.id > ?))", after.getExpiration(),
+            after.getExpiration(), after.getId());
+
+      ids.addAll(selectIds(em, c, "t.expiration, t.id", count));
+    }
+
+    if (ids.size() < count) {
+      long lastId = after.isNonExpiring() ? after.getId() : 0L;
+
+      Conditions c = filter(userName, clientId, excludeInternalTokens)
+        .add("t.expiration IS NULL")
+        .add("t.id > ?", lastId);
+
+      ids.addAll(selectIds(em, c, "t.id", count - ids.size()));
+    }
+
+    return loadInOrder(em, ids);
+  }
+
+  /**
+   * Returns the ids of at most <code>limit</code> tokens, expired or not, issued to a user
+   * and/or to a client.
+   */
+  List<Long> findTokenIds(EntityManager em, String userName, String clientId, int limit) {
+
+    checkArgument(userName != null || clientId != null, "A user name or a client id is required");
+
+    // Unordered, so that no sort is needed on the rows matched by the index
+    return selectIds(em, filter(userName, clientId, false), null, limit);
+  }
+
+  /**
+   * Returns the ids of at most <code>limit</code> tokens, expired or not, issued to the direct
+   * members of a group.
+   */
+  List<Long> findGroupMemberTokenIds(EntityManager em, Long groupId, int limit) {
+
+    return selectIds(em, new Conditions().add(GROUP_MEMBERS_FILTER, groupId), null, limit);
+  }
+
+  /**
+   * Deletes the rows of a table whose <code>column</code> value is one of the given ids.
+   */
+  static int deleteByIds(EntityManager em, String table, String column, Collection<Long> ids) {
+
+    if (ids.isEmpty()) {
+      return 0;
+    }
+
+    // Ids are numbers, so they can be safely inlined in the statement
+    return em
+      .createNativeQuery(String.format("DELETE FROM %s WHERE %s IN (%s)", table, column,
+          Joiner.on(',').join(ids)))
+      .executeUpdate();
+  }
+
+  private List<T> loadInOrder(EntityManager em, List<Long> ids) {
+
+    if (ids.isEmpty()) {
+      return Lists.newArrayList();
+    }
+
+    Map<Long, T> tokens = em
+      .createQuery(
+          String.format("select t from %s t where t.id in :ids", entityClass.getSimpleName()),
+          entityClass)
+      .setParameter("ids", ids)
+      .getResultList()
+      .stream()
+      .collect(Collectors.toMap(idFunction, Function.identity()));
+
+    // Skip tokens removed in the meantime
+    return ids.stream().map(tokens::get).filter(Objects::nonNull).collect(toList());
+  }
+}
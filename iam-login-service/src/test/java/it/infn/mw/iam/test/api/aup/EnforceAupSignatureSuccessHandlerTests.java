@@ -41,9 +41,9 @@ import org.springframework.security.web.authentication.AuthenticationSuccessHand
 import it.infn.mw.iam.api.account.AccountUtils;
 import it.infn.mw.iam.api.aup.AUPSignatureCheckService;
 import it.infn.mw.iam.authn.EnforceAupSignatureSuccessHandler;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.core.web.EnforceAupFilter;
 import it.infn.mw.iam.persistence.model.IamAccount;
-import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
 @RunWith(MockitoJUnitRunner.class)
 public class EnforceAupSignatureSuccessHandlerTests {
@@ -58,7 +58,7 @@ public class EnforceAupSignatureSuccessHandlerTests {
   AccountUtils accountUtils;
   
   @Mock
-  IamAccountRepository accountRepo;
+  LastLoginTimeRecorder lastLoginTimeRecorder;
   
   @Mock
   HttpServletRequest request;
@@ -98,7 +98,7 @@ public class EnforceAupSignatureSuccessHandlerTests {
     handler.onAuthenticationSuccess(request, response, auth);
     verify(session).setAttribute(Mockito.eq(AuthenticationTimeStamper.AUTH_TIMESTAMP), Mockito.any());
     verify(session).setAttribute(Mockito.eq(EnforceAupFilter.REQUESTING_SIGNATURE), Mockito.eq(true));
-    verify(accountRepo).touchLastLoginTimeForUserWithUsername(Mockito.eq("test"));
+    verify(lastLoginTimeRecorder).recordLogin(Mockito.eq("test"));
     verify(response).sendRedirect(Mockito.eq("/iam/aup/sign"));
   }
 
@@ -111,7 +111,7 @@ public class EnforceAupSignatureSuccessHandlerTests {
     handler.onAuthenticationSuccess(request, response, auth);
     verify(session).setAttribute(Mockito.eq(AuthenticationTimeStamper.AUTH_TIMESTAMP), Mockito.any());
     verify(delegate).onAuthenticationSuccess(Mockito.eq(request), Mockito.eq(response), Mockito.eq(auth));
-    verify(accountRepo).touchLastLoginTimeForUserWithUsername(Mockito.eq("test"));
+    verify(lastLoginTimeRecorder).recordLogin(Mockito.eq("test"));
   }
  
   
@@ -128,7 +128,7 @@ public class EnforceAupSignatureSuccessHandlerTests {
     handler.onAuthenticationSuccess(request, response, oauth);
     verify(session).setAttribute(Mockito.eq(AuthenticationTimeStamper.AUTH_TIMESTAMP), Mockito.any());
     verify(delegate).onAuthenticationSuccess(Mockito.eq(request), Mockito.eq(response), Mockito.eq(oauth));
-    verify(accountRepo).touchLastLoginTimeForUserWithUsername(Mockito.eq("test")); 
+    verify(lastLoginTimeRecorder).recordLogin(Mockito.eq("test")); 
   }
   
   @Test
@@ -144,7 +144,7 @@ public class EnforceAupSignatureSuccessHandlerTests {
     handler.onAuthenticationSuccess(request, response, oauth);
     verify(session).setAttribute(Mockito.eq(AuthenticationTimeStamper.AUTH_TIMESTAMP), Mockito.any());
     verify(delegate).onAuthenticationSuccess(Mockito.eq(request), Mockito.eq(response), Mockito.eq(oauth));
-    verify(accountRepo, Mockito.never()).touchLastLoginTimeForUserWithUsername(Mockito.anyString()); 
+    verify(lastLoginTimeRecorder, Mockito.never()).recordLogin(Mockito.anyString()); 
   }
   
 }
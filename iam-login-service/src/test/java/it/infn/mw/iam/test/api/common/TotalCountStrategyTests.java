@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.api.common;
+
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.ACCOUNTS_KEY;
+import static it.infn.mw.iam.api.common.count.TotalCountStrategy.GROUPS_KEY;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.common.count.CachedTotalCountStrategy;
+import it.infn.mw.iam.api.common.count.ExactTotalCountStrategy;
+import it.infn.mw.iam.api.common.count.TotalCountStrategy;
+import it.infn.mw.iam.audit.events.account.AccountCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountRemovedEvent;
+import it.infn.mw.iam.persistence.model.IamAccount;
+
+public class TotalCountStrategyTests {
+
+  private static final long EXACT_COUNT_THRESHOLD = 100;
+
+  private CachedTotalCountStrategy strategy;
+
+  private AtomicInteger countQueries;
+
+  @Before
+  public void setup() {
+    strategy = new CachedTotalCountStrategy(100, 60, EXACT_COUNT_THRESHOLD);
+    countQueries = new AtomicInteger();
+  }
+
+  private LongSupplier countQuery(long count) {
+    return () -> {
+      countQueries.incrementAndGet();
+      return count;
+    };
+  }
+
+  @Test
+  public void lastPageTotalIsDerivedFromPage() {
+
+    long total = strategy.pageTotal(ACCOUNTS_KEY, new OffsetPageable(20, 10), 3, countQuery(500));
+
+    assertThat(total, equalTo(23L));
+    assertThat(countQueries.get(), equalTo(0));
+  }
+
+  @Test
+  public void largeCountsAreCached() {
+
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(500)), equalTo(500L));
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(600)), equalTo(500L));
+    assertThat(countQueries.get(), equalTo(1));
+
+    assertThat(strategy.pageTotal(GROUPS_KEY, op, 10, countQuery(600)), equalTo(600L));
+    assertThat(countQueries.get(), equalTo(2));
+  }
+
+  @Test
+  public void smallCountsAreAlwaysExact() {
+
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(50)), equalTo(50L));
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(51)), equalTo(51L));
+    assertThat(countQueries.get(), equalTo(2));
+  }
+
+  @Test
+  public void cachedAccountsCountFollowsAccountEvents() {
+
+    strategy.count(ACCOUNTS_KEY, countQuery(500));
+
+    strategy.onApplicationEvent(new AccountCreatedEvent(this, new IamAccount(), "created"));
+    strategy.onApplicationEvent(new AccountCreatedEvent(this, new IamAccount(), "created"));
+    strategy.onApplicationEvent(new AccountRemovedEvent(this, new IamAccount(), "removed"));
+
+    assertThat(strategy.count(ACCOUNTS_KEY, countQuery(0)), equalTo(501L));
+    assertThat(countQueries.get(), equalTo(1));
+  }
+
+  @Test
+  public void filteredAccountsCountsAreEvictedOnAccountEvents() {
+
+    final String filteredKey = TotalCountStrategy.key(ACCOUNTS_KEY, "test");
+
+    strategy.count(filteredKey, countQuery(500));
+    strategy.onApplicationEvent(new AccountCreatedEvent(this, new IamAccount(), "created"));
+
+    assertThat(strategy.count(filteredKey, countQuery(501)), equalTo(501L));
+    assertThat(countQueries.get(), equalTo(2));
+  }
+
+  @Test
+  public void accountsCountIsAdjustedOnlyWhenTheTransactionCommits() {
+
+    strategy.count(ACCOUNTS_KEY, countQuery(500));
+
+    TransactionSynchronizationManager.initSynchronization();
+
+    try {
+      strategy.onApplicationEvent(new AccountCreatedEvent(this, new IamAccount(), "created"));
+      assertThat(strategy.count(ACCOUNTS_KEY, countQuery(0)), equalTo(500L));
+
+      TransactionSynchronizationManager.getSynchronizations()
+        .forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThat(strategy.count(ACCOUNTS_KEY, countQuery(0)), equalTo(501L));
+
+    TransactionSynchronizationManager.initSynchronization();
+
+    try {
+      strategy.onApplicationEvent(new AccountRemovedEvent(this, new IamAccount(), "removed"));
+
+      TransactionSynchronizationManager.getSynchronizations()
+        .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThat(strategy.count(ACCOUNTS_KEY, countQuery(0)), equalTo(501L));
+    assertThat(countQueries.get(), equalTo(1));
+  }
+
+  @Test
+  public void approximateTotalIsConsistentWithPage() {
+
+    strategy.count(ACCOUNTS_KEY, countQuery(200));
+
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, new OffsetPageable(200, 10), 10, countQuery(0)),
+        equalTo(210L));
+    assertThat(strategy.pageTotal(ACCOUNTS_KEY, new OffsetPageable(150, 10), 0, countQuery(0)),
+        equalTo(150L));
+  }
+
+  @Test
+  public void exactStrategyAlwaysCounts() {
+
+    TotalCountStrategy exact = new ExactTotalCountStrategy();
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    assertThat(exact.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(500)), equalTo(500L));
+    assertThat(exact.pageTotal(ACCOUNTS_KEY, op, 10, countQuery(600)), equalTo(600L));
+    assertThat(countQueries.get(), equalTo(2));
+  }
+}
@@ -18,10 +18,16 @@ package it.infn.mw.iam.test.api.tokens;
 import static it.infn.mw.iam.api.tokens.TokensControllerSupport.TOKENS_MAX_PAGE_SIZE;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.After;
 import org.junit.Before;
@@ -561,4 +567,66 @@ public class AccessTokenGetListTests extends TestTokensUtils {
     tokens.forEach(t -> assertThat(t.getScope(), not(hasItem("resource-token"))));
     
     }
+
+  @Test
+  public void getAccessTokenListByCursor() throws Exception {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    List<Long> expectedIds = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      expectedIds.add(buildAccessToken(client, TESTUSER_USERNAME, SCOPES).getId());
+    }
+    buildAccessToken(client, TESTUSER2_USERNAME, SCOPES);
+
+    List<Long> ids = Lists.newArrayList();
+    String cursor = "";
+    int pages = 0;
+
+    do {
+      MultiValueMap<String, String> params = MultiValueMapBuilder.builder()
+        .userId(TESTUSER_USERNAME)
+        .count(2)
+        .cursor(cursor)
+        .build();
+
+      ListResponseDTO<AccessToken> atl = getAccessTokenList(params);
+      ids.addAll(atl.getResources().stream().map(AccessToken::getId).collect(Collectors.toList()));
+      cursor = atl.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertThat(pages, equalTo(2));
+    assertThat(ids.size(), equalTo(3));
+    assertThat(ids.containsAll(expectedIds), equalTo(true));
+  }
+
+  @Test
+  public void getAccessTokenListByCursorReturnsNextCursorOnFullPage() throws Exception {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    buildAccessToken(client, TESTUSER_USERNAME, SCOPES);
+    buildAccessToken(client, TESTUSER2_USERNAME, SCOPES);
+
+    MultiValueMap<String, String> params =
+        MultiValueMapBuilder.builder().count(1).cursor("").build();
+
+    ListResponseDTO<AccessToken> atl = getAccessTokenList(params);
+    assertThat(atl.getResources().size(), equalTo(1));
+    assertThat(atl.getNextCursor(), notNullValue());
+
+    params = MultiValueMapBuilder.builder().count(5).cursor(atl.getNextCursor()).build();
+
+    atl = getAccessTokenList(params);
+    assertThat(atl.getResources().size(), equalTo(1));
+    assertThat(atl.getNextCursor(), nullValue());
+  }
+
+  @Test
+  public void getAccessTokenListWithInvalidCursor() throws Exception {
+
+    mvc.perform(get(ACCESS_TOKENS_BASE_PATH).param("cursor", "not-a-cursor"))
+      .andExpect(status().isBadRequest());
+  }
 }
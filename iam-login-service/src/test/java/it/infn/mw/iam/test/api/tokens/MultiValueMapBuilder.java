@@ -58,6 +58,12 @@ public class MultiValueMapBuilder {
     return this;
   }
 
+  MultiValueMapBuilder cursor(String cursor) {
+
+    params.put("cursor", Lists.newArrayList(cursor));
+    return this;
+  }
+
   MultiValueMap<String, String> build() {
 
     return params;
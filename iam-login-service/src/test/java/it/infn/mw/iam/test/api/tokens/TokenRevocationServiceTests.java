@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.api.tokens;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.oauth.revocation.DefaultTokenRevocationService;
+import it.infn.mw.iam.core.oauth.revocation.TokenRevocationResult;
+import it.infn.mw.iam.core.oauth.revocation.TokenRevocationService;
+import it.infn.mw.iam.persistence.repository.IamGroupRepository;
+import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+import it.infn.mw.iam.persistence.repository.IamOAuthRefreshTokenRepository;
+import it.infn.mw.iam.persistence.repository.TokenChunkDeletion;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+public class TokenRevocationServiceTests extends TestTokensUtils {
+
+  public static final String[] SCOPES = {"openid", "profile", "offline_access"};
+
+  public static final String TEST_CLIENT_ID = "token-lookup-client";
+  public static final String TEST_CLIENT2_ID = "password-grant";
+
+  public static final String PRODUCTION_GROUP_UUID = "c617d586-54e6-411d-8e38-64967798fa8a";
+
+  private static final String TESTUSER_USERNAME = "test_102";
+  private static final String TESTUSER2_USERNAME = "test_103";
+  private static final String PRODUCTION_MEMBER_USERNAME = "test";
+
+  @Autowired
+  private TokenRevocationService revocationService;
+
+  @Autowired
+  private IamGroupRepository groupRepository;
+
+  @Before
+  public void setup() {
+    clearAllTokens();
+  }
+
+  @After
+  public void teardown() {
+    clearAllTokens();
+  }
+
+  private List<OAuth2AccessTokenEntity> buildAccessTokens(ClientDetailsEntity client,
+      String username, int count) {
+    List<OAuth2AccessTokenEntity> tokens = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      tokens.add(buildAccessToken(client, username, SCOPES));
+    }
+    return tokens;
+  }
+
+  @Test
+  public void revokeUserTokensLeavesOtherUsersTokens() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    buildAccessTokens(client, TESTUSER_USERNAME, 2);
+    List<OAuth2AccessTokenEntity> otherTokens = buildAccessTokens(client, TESTUSER2_USERNAME, 1);
+
+    TokenRevocationResult result = revocationService.revokeUserTokens(TESTUSER_USERNAME);
+
+    assertThat(result.getAccessTokens(), equalTo(2L));
+    assertThat(result.getRefreshTokens(), equalTo(2L));
+
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+    assertThat(refreshTokenRepository.count(), equalTo(1L));
+    assertThat(accessTokenRepository.findOne(otherTokens.get(0).getId()).getAuthenticationHolder()
+      .getUserAuth()
+      .getName(), equalTo(TESTUSER2_USERNAME));
+  }
+
+  @Test
+  public void revokeClientTokensLeavesOtherClientsTokens() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+    ClientDetailsEntity client2 = loadTestClient(TEST_CLIENT2_ID);
+
+    buildAccessTokens(client, TESTUSER_USERNAME, 2);
+    buildAccessTokens(client2, TESTUSER_USERNAME, 1);
+
+    TokenRevocationResult result = revocationService.revokeClientTokens(TEST_CLIENT_ID);
+
+    assertThat(result.getAccessTokens(), equalTo(2L));
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+    assertThat(accessTokenRepository.findAll().iterator().next().getClient().getClientId(),
+        equalTo(TEST_CLIENT2_ID));
+  }
+
+  @Test
+  public void revokeGroupMembersTokens() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    buildAccessTokens(client, PRODUCTION_MEMBER_USERNAME, 2);
+    buildAccessTokens(client, TESTUSER_USERNAME, 1);
+
+    TokenRevocationResult result =
+        revocationService.revokeGroupMembersTokens(PRODUCTION_GROUP_UUID);
+
+    assertThat(result.getAccessTokens(), equalTo(2L));
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void revokeUnknownGroupMembersTokensFails() {
+    revocationService.revokeGroupMembersTokens("unknown-group-uuid");
+  }
+
+  @Test
+  public void tokensAreRevokedInChunks() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    buildAccessTokens(client, TESTUSER_USERNAME, 5);
+
+    TokenRevocationService chunkedService = new DefaultTokenRevocationService(
+        accessTokenRepository, refreshTokenRepository, groupRepository, 2);
+
+    AtomicInteger progressReports = new AtomicInteger();
+    List<Long> accessTokenProgress = Lists.newArrayList();
+
+    TokenRevocationResult result =
+        chunkedService.revokeUserTokens(TESTUSER_USERNAME, (target, progress) -> {
+          assertThat(target, equalTo(TESTUSER_USERNAME));
+          progressReports.incrementAndGet();
+          accessTokenProgress.add(progress.getAccessTokens());
+        });
+
+    assertThat(result.getAccessTokens(), equalTo(5L));
+    assertThat(result.getRefreshTokens(), equalTo(5L));
+    assertThat(accessTokenRepository.count(), equalTo(0L));
+    assertThat(refreshTokenRepository.count(), equalTo(0L));
+
+    // Three chunks of access tokens, followed by three chunks of refresh tokens
+    assertThat(progressReports.get(), equalTo(6));
+    assertThat(accessTokenProgress.subList(0, 3), equalTo(Lists.newArrayList(2L, 4L, 5L)));
+  }
+
+  @Test
+  public void revocationGoesOnWhenChunksAreDeletedConcurrently() {
+
+    IamOAuthAccessTokenRepository accessTokenRepo = mock(IamOAuthAccessTokenRepository.class);
+    IamOAuthRefreshTokenRepository refreshTokenRepo = mock(IamOAuthRefreshTokenRepository.class);
+
+    // Part of the first chunk is deleted by someone else before the chunk is deleted
+    when(accessTokenRepo.deleteAccessTokens(TESTUSER_USERNAME, null, 2)).thenReturn(
+        new TokenChunkDeletion(2, 1), new TokenChunkDeletion(2, 2), TokenChunkDeletion.EMPTY);
+    when(refreshTokenRepo.deleteRefreshTokens(TESTUSER_USERNAME, null, 2))
+      .thenReturn(TokenChunkDeletion.EMPTY);
+
+    TokenRevocationService chunkedService =
+        new DefaultTokenRevocationService(accessTokenRepo, refreshTokenRepo, groupRepository, 2);
+
+    TokenRevocationResult result = chunkedService.revokeUserTokens(TESTUSER_USERNAME);
+
+    assertThat(result.getAccessTokens(), equalTo(3L));
+    verify(accessTokenRepo, times(3)).deleteAccessTokens(TESTUSER_USERNAME, null, 2);
+  }
+}
@@ -16,7 +16,11 @@
 package it.infn.mw.iam.test.audit.event;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
@@ -49,8 +53,6 @@ import it.infn.mw.iam.api.scim.provisioning.ScimGroupProvisioning;
 import it.infn.mw.iam.api.scim.provisioning.ScimUserProvisioning;
 import it.infn.mw.iam.audit.IamAuditEventLogger;
 import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
-import it.infn.mw.iam.audit.events.account.group.GroupMembershipAddedEvent;
-import it.infn.mw.iam.audit.events.account.group.GroupMembershipRemovedEvent;
 import it.infn.mw.iam.audit.events.account.oidc.OidcAccountAddedEvent;
 import it.infn.mw.iam.audit.events.account.oidc.OidcAccountRemovedEvent;
 import it.infn.mw.iam.audit.events.account.saml.SamlAccountAddedEvent;
@@ -59,6 +61,7 @@ import it.infn.mw.iam.audit.events.account.ssh.SshKeyAddedEvent;
 import it.infn.mw.iam.audit.events.account.ssh.SshKeyRemovedEvent;
 import it.infn.mw.iam.audit.events.account.x509.X509CertificateAddedEvent;
 import it.infn.mw.iam.audit.events.account.x509.X509CertificateRemovedEvent;
+import it.infn.mw.iam.audit.events.group.GroupMembersUpdatedEvent;
 import it.infn.mw.iam.authn.saml.util.SamlAttributeNames;
 import it.infn.mw.iam.core.user.IamAccountService;
 import it.infn.mw.iam.persistence.model.IamAccount;
@@ -83,6 +86,7 @@ public class EventTests extends X509TestSupport {
   private static final String SSH_KEY = SshKeyUtils.sshKeys.get(0).key;
   private static final String SSH_FINGERPRINT = SshKeyUtils.sshKeys.get(0).fingerprintSHA256;
   private static final String GROUPNAME = "event_group";
+  private static final String TEST_USER_UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
 
   private static final String USERNAME_MESSAGE_CHECK = String.format("username: '%s'", USERNAME);
 
@@ -337,11 +341,16 @@ public class EventTests extends X509TestSupport {
     groupProvisioning.update(secondGroup.getId(), req.getOperations());
 
     IamAuditApplicationEvent event = logger.getLastEvent();
-    assertThat(event, instanceOf(GroupMembershipAddedEvent.class));
+    assertThat(event, instanceOf(GroupMembersUpdatedEvent.class));
     assertNotNull(event.getMessage());
-    assertThat(event.getMessage(), containsString("Add group to user"));
-    assertThat(event.getMessage(), containsString(USERNAME_MESSAGE_CHECK));
-    assertThat(event.getMessage(), containsString("name=second_group"));
+    assertThat(event.getMessage(), containsString("Group 'second_group' members updated"));
+    assertThat(event.getMessage(), containsString("1 added, 0 removed"));
+
+    GroupMembersUpdatedEvent membersEvent = (GroupMembersUpdatedEvent) event;
+    assertThat(membersEvent.getGroup().getUuid(), is(secondGroup.getId()));
+    assertThat(membersEvent.getAddedMembers(), hasSize(1));
+    assertThat(membersEvent.getAddedMembers().iterator().next().getUuid(), is(account.getUuid()));
+    assertThat(membersEvent.getRemovedMembers(), empty());
   }
 
   @Test
@@ -353,11 +362,46 @@ public class EventTests extends X509TestSupport {
     groupProvisioning.update(group.getId(), req.getOperations());
 
     IamAuditApplicationEvent event = logger.getLastEvent();
-    assertThat(event, instanceOf(GroupMembershipRemovedEvent.class));
+    assertThat(event, instanceOf(GroupMembersUpdatedEvent.class));
     assertNotNull(event.getMessage());
-    assertThat(event.getMessage(), containsString("Remove user from group"));
-    assertThat(event.getMessage(), containsString(USERNAME_MESSAGE_CHECK));
-    assertThat(event.getMessage(), containsString("name=" + GROUPNAME));
+    assertThat(event.getMessage(), containsString("Group '" + GROUPNAME + "' members updated"));
+    assertThat(event.getMessage(), containsString("0 added, 1 removed"));
+
+    GroupMembersUpdatedEvent membersEvent = (GroupMembersUpdatedEvent) event;
+    assertThat(membersEvent.getAddedMembers(), empty());
+    assertThat(membersEvent.getRemovedMembers(), hasSize(1));
+    assertThat(membersEvent.getRemovedMembers().iterator().next().getUsername(), is(USERNAME));
+  }
+
+  @Test
+  public void testReplaceGroupMembershipPublishesSingleEvent() {
+
+    IamAccount testAccount = accountService.findByUuid(TEST_USER_UUID).get();
+
+    ScimMemberRef testAccountRef = ScimMemberRef.builder()
+      .display(testAccount.getUsername())
+      .value(testAccount.getUuid())
+      .ref(scimResourceLocationProvider.userLocation(testAccount.getUuid()))
+      .build();
+
+    ScimGroupPatchRequest req =
+        ScimGroupPatchRequest.builder().replace(Lists.newArrayList(testAccountRef)).build();
+
+    groupProvisioning.update(group.getId(), req.getOperations());
+
+    IamAuditApplicationEvent event = logger.getLastEvent();
+    assertThat(event, instanceOf(GroupMembersUpdatedEvent.class));
+    assertThat(event.getMessage(), containsString("1 added, 1 removed"));
+
+    GroupMembersUpdatedEvent membersEvent = (GroupMembersUpdatedEvent) event;
+    assertThat(membersEvent.getAddedMembers().iterator().next().getUuid(), is(TEST_USER_UUID));
+    assertThat(membersEvent.getRemovedMembers().iterator().next().getUuid(),
+        is(account.getUuid()));
+
+    req = ScimGroupPatchRequest.builder().replace(Lists.newArrayList(testAccountRef)).build();
+    groupProvisioning.update(group.getId(), req.getOperations());
+
+    assertThat(logger.getLastEvent(), nullValue());
   }
 
 }
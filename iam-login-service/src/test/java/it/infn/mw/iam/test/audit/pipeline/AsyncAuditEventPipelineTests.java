@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.audit.pipeline;
+
+import static it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline.OverflowPolicy.CALLER_RUNS;
+import static it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline.OverflowPolicy.DROP;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.audit.events.client.ClientRemovedEvent;
+import it.infn.mw.iam.audit.pipeline.AsyncAuditEventPipeline;
+import it.infn.mw.iam.audit.pipeline.AuditEventSink;
+import it.infn.mw.iam.audit.pipeline.AuditEventSinkWriter;
+import it.infn.mw.iam.audit.pipeline.AuditRecord;
+
+public class AsyncAuditEventPipelineTests {
+
+  static class RecordingSink implements AuditEventSink {
+
+    final List<String> records = Collections.synchronizedList(Lists.newArrayList());
+    final List<String> threads = Collections.synchronizedList(Lists.newArrayList());
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final CountDownLatch firstWrite = new CountDownLatch(1);
+    final boolean blocking;
+
+    RecordingSink(boolean blocking) {
+      this.blocking = blocking;
+    }
+
+    @Override
+    public String getName() {
+      return "recording";
+    }
+
+    @Override
+    public void write(List<AuditRecord> batch) {
+      firstWrite.countDown();
+      if (blocking) {
+        try {
+          unblock.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      threads.add(Thread.currentThread().getName());
+      batch.forEach(r -> records.add(r.getSerializedEvent()));
+    }
+  }
+
+  private AuditEventSinkWriter writer(AuditEventSink sink) {
+    return new AuditEventSinkWriter(e -> e.getSource() + ":" + e.getMessage(),
+        Lists.newArrayList(sink));
+  }
+
+  private ClientRemovedEvent event(String clientId) {
+    return new ClientRemovedEvent("test", clientId);
+  }
+
+  @Test
+  public void eventsAreWrittenByTheWorkerThread() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false);
+    AsyncAuditEventPipeline pipeline =
+        new AsyncAuditEventPipeline(writer(sink), 16, 4, DROP, 100);
+    pipeline.start();
+
+    for (int i = 0; i < 10; i++) {
+      pipeline.submit(event("c" + i));
+    }
+
+    pipeline.destroy();
+
+    assertThat(sink.records, hasSize(10));
+    assertThat(sink.records.get(0), is("test:Client 'c0' removed"));
+    assertThat(sink.threads.stream().allMatch(AsyncAuditEventPipeline.WORKER_THREAD_NAME::equals),
+        is(true));
+    assertThat(pipeline.getSubmittedEventsCount(), is(10L));
+    assertThat(pipeline.getWriter().getWrittenEventsCount(), is(10L));
+  }
+
+  @Test
+  public void eventsAreDroppedWhenBufferIsFull() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(true);
+    AsyncAuditEventPipeline pipeline = new AsyncAuditEventPipeline(writer(sink), 2, 1, DROP, 100);
+    pipeline.start();
+
+    pipeline.submit(event("c0"));
+    assertThat(sink.firstWrite.await(10, TimeUnit.SECONDS), is(true));
+
+    // The worker is stuck writing c0, so only two more events fit in the buffer
+    for (int i = 1; i < 5; i++) {
+      pipeline.submit(event("c" + i));
+    }
+
+    sink.unblock.countDown();
+    pipeline.destroy();
+
+    assertThat(pipeline.getDroppedEventsCount(), is(2L));
+    assertThat(sink.records, hasSize(3));
+  }
+
+  @Test
+  public void callerWritesEventsWhenBufferIsFull() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false);
+    AsyncAuditEventPipeline pipeline =
+        new AsyncAuditEventPipeline(writer(sink), 2, 1, CALLER_RUNS, 100);
+
+    // Events submitted before the pipeline is started are written by the caller
+    pipeline.submit(event("c0"));
+
+    assertThat(sink.records, contains("test:Client 'c0' removed"));
+    assertThat(sink.threads, contains(Thread.currentThread().getName()));
+    assertThat(pipeline.getCallerRunsEventsCount(), is(1L));
+
+    pipeline.destroy();
+  }
+
+  @Test
+  public void eventsAreSerializedByTheWorkerThread() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false);
+    List<String> serializingThreads = Collections.synchronizedList(Lists.newArrayList());
+
+    AuditEventSinkWriter writer = new AuditEventSinkWriter(e -> {
+      serializingThreads.add(Thread.currentThread().getName());
+      return e.getSource().toString();
+    }, Lists.newArrayList(sink));
+
+    AsyncAuditEventPipeline pipeline = new AsyncAuditEventPipeline(writer, 16, 4, DROP, 100);
+    pipeline.start();
+
+    pipeline.submit(event("c0"));
+    pipeline.destroy();
+
+    assertThat(sink.records, contains("test"));
+    assertThat(serializingThreads, contains(AsyncAuditEventPipeline.WORKER_THREAD_NAME));
+  }
+
+  @Test
+  public void eventsAreNotSubmittedWhenNoSinkIsEnabled() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false) {
+      @Override
+      public boolean isEnabled() {
+        return false;
+      }
+    };
+
+    AsyncAuditEventPipeline pipeline =
+        new AsyncAuditEventPipeline(writer(sink), 16, 4, DROP, 100);
+    pipeline.start();
+
+    pipeline.submit(event("c0"));
+    pipeline.destroy();
+
+    assertThat(pipeline.isEnabled(), is(false));
+    assertThat(pipeline.getSubmittedEventsCount(), is(0L));
+    assertThat(sink.records, hasSize(0));
+  }
+}
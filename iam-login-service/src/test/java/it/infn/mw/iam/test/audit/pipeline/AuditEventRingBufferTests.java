@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.audit.pipeline;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.audit.pipeline.AuditEventRingBuffer;
+
+public class AuditEventRingBufferTests {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityMustBeAPowerOfTwo() {
+    new AuditEventRingBuffer<String>(10);
+  }
+
+  @Test
+  public void elementsAreDrainedInOrder() {
+    AuditEventRingBuffer<String> buffer = new AuditEventRingBuffer<>(4);
+
+    assertThat(buffer.offer("a"), is(true));
+    assertThat(buffer.offer("b"), is(true));
+    assertThat(buffer.offer("c"), is(true));
+    assertThat(buffer.size(), is(3));
+
+    List<String> drained = Lists.newArrayList();
+    assertThat(buffer.drainTo(drained, 2), is(2));
+    assertThat(drained, contains("a", "b"));
+
+    drained.clear();
+    assertThat(buffer.drainTo(drained, 10), is(1));
+    assertThat(drained, contains("c"));
+    assertThat(buffer.isEmpty(), is(true));
+  }
+
+  @Test
+  public void offerFailsWhenBufferIsFullAndSlotsAreReused() {
+    AuditEventRingBuffer<String> buffer = new AuditEventRingBuffer<>(2);
+
+    assertThat(buffer.offer("a"), is(true));
+    assertThat(buffer.offer("b"), is(true));
+    assertThat(buffer.offer("c"), is(false));
+
+    List<String> drained = Lists.newArrayList();
+    buffer.drainTo(drained, 1);
+
+    assertThat(buffer.offer("c"), is(true));
+    assertThat(buffer.offer("d"), is(false));
+
+    buffer.drainTo(drained, 10);
+    assertThat(drained, contains("a", "b", "c"));
+  }
+
+  @Test
+  public void concurrentProducersDoNotLoseElements() throws InterruptedException {
+    final int producers = 4;
+    final int elementsPerProducer = 10000;
+
+    AuditEventRingBuffer<String> buffer = new AuditEventRingBuffer<>(1024);
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    CountDownLatch done = new CountDownLatch(producers);
+
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      executor.execute(() -> {
+        for (int i = 0; i < elementsPerProducer; i++) {
+          while (!buffer.offer(producer + "-" + i)) {
+            Thread.yield();
+          }
+        }
+        done.countDown();
+      });
+    }
+
+    Set<String> consumed = Sets.newHashSet();
+    List<String> batch = Lists.newArrayList();
+
+    while (consumed.size() < producers * elementsPerProducer) {
+      buffer.drainTo(batch, 128);
+      consumed.addAll(batch);
+      batch.clear();
+    }
+
+    assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+    executor.shutdown();
+
+    assertThat(consumed, hasSize(producers * elementsPerProducer));
+    assertThat(buffer.isEmpty(), is(true));
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.audit.pipeline;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.audit.events.client.ClientRemovedEvent;
+import it.infn.mw.iam.audit.pipeline.AuditRecord;
+import it.infn.mw.iam.audit.pipeline.RollingFileAuditEventSink;
+
+public class RollingFileAuditEventSinkTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<AuditRecord> records(String... values) {
+    List<AuditRecord> records = Lists.newArrayList();
+    for (String v : values) {
+      records.add(new AuditRecord(new ClientRemovedEvent("test", v), v));
+    }
+    return records;
+  }
+
+  @Test
+  public void recordsAreAppendedAndFilesAreRotated() throws IOException {
+    File auditLog = new File(folder.getRoot(), "audit.log");
+
+    // Each record line is 8 bytes long (with a single char line separator)
+    RollingFileAuditEventSink sink =
+        new RollingFileAuditEventSink(auditLog.getAbsolutePath(), 16, 3);
+
+    sink.write(records("record1", "record2"));
+    sink.write(records("record3", "record4"));
+    sink.write(records("record5", "record6", "record7"));
+    sink.close();
+
+    File rotated1 = new File(folder.getRoot(), "audit.log.1");
+    File rotated2 = new File(folder.getRoot(), "audit.log.2");
+    File rotated3 = new File(folder.getRoot(), "audit.log.3");
+
+    assertThat(Files.readAllLines(auditLog.toPath(), UTF_8), contains("record7"));
+    assertThat(Files.readAllLines(rotated1.toPath(), UTF_8), contains("record5", "record6"));
+    assertThat(Files.readAllLines(rotated2.toPath(), UTF_8), contains("record3", "record4"));
+    assertThat(rotated3.exists(), is(false));
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.cache;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.cache.JdbcCacheEvictionBroadcaster;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+public class JdbcCacheEvictionBroadcasterTests {
+
+  public static final String TEST_CACHE = "test-cache";
+
+  public static final long RETENTION_MSEC = 3600000;
+  public static final long LATE_COMMIT_WINDOW_MSEC = 60000;
+
+  private static final String INSERT_EVICTION = "INSERT INTO iam_cache_eviction "
+      + "(id, cache_name, cache_key, creation_time) VALUES (?, ?, ?, ?)";
+
+  @Autowired
+  private DataSource dataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private JdbcCacheEvictionBroadcaster broadcaster;
+
+  private final List<String> evictedKeys = new CopyOnWriteArrayList<>();
+
+  private long baseId;
+
+  @Before
+  public void setup() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("DELETE FROM iam_cache_eviction");
+
+    Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM iam_cache_eviction", Long.class);
+    baseId = maxId == null ? 1000L : maxId + 1000L;
+
+    broadcaster = new JdbcCacheEvictionBroadcaster(jdbcTemplate, Clock.systemDefaultZone(),
+        RETENTION_MSEC, LATE_COMMIT_WINDOW_MSEC);
+    broadcaster.registerEvictionHandler(TEST_CACHE, evictedKeys::add);
+  }
+
+  @After
+  public void teardown() {
+    jdbcTemplate.update("DELETE FROM iam_cache_eviction");
+  }
+
+  private void recordEviction(long id, String key) {
+    jdbcTemplate.update(INSERT_EVICTION, id, TEST_CACHE, key,
+        new Timestamp(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void evictionsRecordedBeforeTheFirstPollAreNotApplied() {
+    recordEviction(baseId, "old");
+
+    broadcaster.processRemoteEvictions();
+    broadcaster.processRemoteEvictions();
+
+    assertThat(evictedKeys, empty());
+  }
+
+  @Test
+  public void lateCommittedEvictionsAreAppliedOnce() {
+    broadcaster.processRemoteEvictions();
+
+    recordEviction(baseId + 10, "first");
+    broadcaster.processRemoteEvictions();
+    assertThat(evictedKeys, contains("first"));
+
+    // An eviction whose id was assigned before the last one seen, but committed after it
+    recordEviction(baseId + 5, "late");
+    broadcaster.processRemoteEvictions();
+    assertThat(evictedKeys, contains("first", "late"));
+
+    broadcaster.processRemoteEvictions();
+    assertThat(evictedKeys, contains("first", "late"));
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.cache;
+
+import static it.infn.mw.iam.core.cache.SharedEntityCacheManager.CACHE_NAME;
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import it.infn.mw.iam.api.scim.updater.UpdaterType;
+import it.infn.mw.iam.audit.events.account.AccountUpdatedEvent;
+import it.infn.mw.iam.audit.events.client.ClientUpdatedEvent;
+import it.infn.mw.iam.audit.events.group.GroupRemovedEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
+import it.infn.mw.iam.core.cache.SharedEntityCacheManager;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SharedEntityCacheManagerTests {
+
+  @Mock
+  EntityManagerFactory emf;
+
+  @Mock
+  JpaEntityManagerFactory jpaEmf;
+
+  @Mock
+  ServerSession session;
+
+  @Mock
+  ClassDescriptor groupDescriptor;
+
+  @Mock
+  Cache cache;
+
+  @Mock
+  CacheEvictionBroadcaster broadcaster;
+
+  SharedEntityCacheManager cacheManager;
+
+  @Before
+  public void setup() {
+    when(emf.unwrap(JpaEntityManagerFactory.class)).thenReturn(jpaEmf);
+    when(emf.getCache()).thenReturn(cache);
+    when(jpaEmf.getServerSession()).thenReturn(session);
+    when(session.getDescriptor(IamGroup.class)).thenReturn(groupDescriptor);
+
+    cacheManager = new SharedEntityCacheManager(emf, broadcaster,
+        asList(IamGroup.class, ClientDetailsEntity.class), 60);
+  }
+
+  @Test
+  public void ttlIsAppliedToSharedEntities() {
+    verify(groupDescriptor)
+      .setCacheInvalidationPolicy(any(TimeToLiveCacheInvalidationPolicy.class));
+    verify(broadcaster).registerEvictionHandler(eq(CACHE_NAME), any());
+  }
+
+  @Test
+  public void groupEventEvictsGroupsLocallyAndRemotely() {
+    cacheManager.onApplicationEvent(new GroupRemovedEvent(this, new IamGroup(), "removed"));
+
+    verify(cache).evict(IamGroup.class);
+    verify(broadcaster).broadcastEviction(CACHE_NAME, IamGroup.class.getName());
+  }
+
+  @Test
+  public void clientEventEvictsClients() {
+    cacheManager.onApplicationEvent(new ClientUpdatedEvent(this, "client"));
+
+    verify(cache).evict(ClientDetailsEntity.class);
+    verify(broadcaster).broadcastEviction(CACHE_NAME, ClientDetailsEntity.class.getName());
+  }
+
+  @Test
+  public void unrelatedEventsAreIgnored() {
+    cacheManager.onApplicationEvent(new AccountUpdatedEvent(this, new IamAccount(),
+        UpdaterType.ACCOUNT_REPLACE_GIVEN_NAME, "updated"));
+
+    verify(cache, never()).evict(any(Class.class));
+    verify(broadcaster, never()).broadcastEviction(eq(CACHE_NAME), anyString());
+  }
+
+  @Test
+  public void remoteEvictionOfUnknownClassIsIgnored() {
+    cacheManager.evictEntityClass("not.an.EntityClass");
+    verify(cache, never()).evict(any(Class.class));
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.cleanup;
+
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.ACCESS_TOKENS;
+import static it.infn.mw.iam.core.cleanup.CleanupTarget.REFRESH_TOKENS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.cleanup.CleanupTarget;
+import it.infn.mw.iam.core.cleanup.CleanupTargetStats;
+import it.infn.mw.iam.core.cleanup.ExpiredEntitiesCleanupEngine;
+import it.infn.mw.iam.persistence.repository.IamExpiredEntitiesRepository;
+import it.infn.mw.iam.persistence.repository.TokenChunkDeletion;
+import it.infn.mw.iam.test.api.tokens.TestTokensUtils;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+public class ExpiredEntitiesCleanupEngineTests extends TestTokensUtils {
+
+  public static final String[] SCOPES = {"openid", "profile", "offline_access"};
+
+  public static final String TEST_CLIENT_ID = "token-lookup-client";
+  public static final String TEST_USERNAME = "test_102";
+
+  public static final int BATCH_SIZE = 2;
+
+  @Autowired
+  private IamExpiredEntitiesRepository expiredEntitiesRepo;
+
+  private ExpiredEntitiesCleanupEngine engine;
+
+  @Before
+  public void setup() {
+    clearAllTokens();
+    engine = new ExpiredEntitiesCleanupEngine(expiredEntitiesRepo, Clock.systemDefaultZone(),
+        BATCH_SIZE, 0, 0);
+  }
+
+  @After
+  public void teardown() {
+    engine.destroy();
+    clearAllTokens();
+  }
+
+  @Test
+  public void expiredAccessTokensAreDeletedInBatches() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    for (int i = 0; i < 5; i++) {
+      buildExpiredAccessToken(client, TEST_USERNAME, SCOPES);
+    }
+    buildAccessToken(client, TEST_USERNAME, SCOPES);
+
+    assertThat(engine.cleanup(ACCESS_TOKENS), equalTo(5L));
+
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+    assertThat(refreshTokenRepository.count(), equalTo(6L));
+
+    CleanupTargetStats stats = engine.getStats(ACCESS_TOKENS);
+    assertThat(stats.isRunning(), equalTo(false));
+    assertThat(stats.getRunCount(), equalTo(1L));
+    assertThat(stats.getDeletedCount(), equalTo(5L));
+    assertThat(stats.getLastRunDeletedCount(), equalTo(5L));
+  }
+
+  @Test
+  public void expiredRefreshTokensAreDeletedWithTheirAccessTokens() {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    buildAccessTokenWithExpiredRefreshToken(client, TEST_USERNAME, SCOPES);
+    buildAccessToken(client, TEST_USERNAME, SCOPES);
+
+    assertThat(engine.cleanup(REFRESH_TOKENS), equalTo(1L));
+
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+    assertThat(refreshTokenRepository.count(), equalTo(1L));
+  }
+
+  @Test
+  public void allTargetsAreCleanedUpInParallel() throws Exception {
+
+    ClientDetailsEntity client = loadTestClient(TEST_CLIENT_ID);
+
+    for (int i = 0; i < 3; i++) {
+      buildExpiredAccessToken(client, TEST_USERNAME, SCOPES);
+    }
+    buildAccessToken(client, TEST_USERNAME, SCOPES);
+
+    engine.cleanupAsync(CleanupTarget.values()).get(10, TimeUnit.SECONDS);
+
+    assertThat(accessTokenRepository.count(), equalTo(1L));
+
+    for (CleanupTarget t : CleanupTarget.values()) {
+      assertThat(engine.getStats(t).getRunCount(), equalTo(1L));
+    }
+
+    assertThat(engine.getStats(ACCESS_TOKENS).getLastRunDeletedCount(), equalTo(3L));
+  }
+
+  @Test
+  public void asyncCleanupFailuresArePropagated() throws Exception {
+
+    IamExpiredEntitiesRepository failingRepo = mock(IamExpiredEntitiesRepository.class);
+    when(failingRepo.deleteExpiredAccessTokens(any(Date.class), anyInt()))
+      .thenThrow(new IllegalStateException("database unavailable"));
+    when(failingRepo.deleteExpiredRefreshTokens(any(Date.class), anyInt()))
+      .thenReturn(TokenChunkDeletion.EMPTY);
+
+    ExpiredEntitiesCleanupEngine failingEngine =
+        new ExpiredEntitiesCleanupEngine(failingRepo, Clock.systemDefaultZone(), BATCH_SIZE, 0, 0);
+
+    try {
+      failingEngine.cleanupAsync(ACCESS_TOKENS, REFRESH_TOKENS).get(10, TimeUnit.SECONDS);
+      throw new AssertionError("Expected the cleanup to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause().getMessage(), equalTo("database unavailable"));
+    } finally {
+      failingEngine.destroy();
+    }
+
+    assertThat(failingEngine.getStats(REFRESH_TOKENS).getRunCount(), equalTo(1L));
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.group;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.group.GroupMembershipDiff;
+import it.infn.mw.iam.core.group.IamGroupMembershipService;
+import it.infn.mw.iam.core.group.IamGroupService;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+@Transactional
+public class DefaultIamGroupMembershipServiceTests {
+
+  private static final String PRODUCTION_GROUP_UUID = "c617d586-54e6-411d-8e38-64967798fa8a";
+  private static final String TEST_USERNAME = "test";
+  private static final String TEST_100_USERNAME = "test_100";
+
+  private static final String SELECT_MEMBERS =
+      "SELECT account_id FROM iam_account_group WHERE group_id = ?";
+
+  @Autowired
+  private IamAccountRepository accountRepo;
+
+  @Autowired
+  private IamGroupService groupService;
+
+  @Autowired
+  private IamGroupMembershipService membershipService;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private IamGroup group;
+  private IamAccountIds testUser;
+  private IamAccountIds test100;
+
+  private IamAccountIds accountIds(String username) {
+    IamAccount account = accountRepo.findByUsername(username)
+      .orElseThrow(() -> new AssertionError("Expected account not found"));
+    return new IamAccountIds(account.getId(), account.getUuid(), account.getUsername());
+  }
+
+  private List<Long> joinTableMembers() {
+    return new JdbcTemplate(dataSource).queryForList(SELECT_MEMBERS, Long.class, group.getId());
+  }
+
+  @Before
+  public void setup() {
+    group = groupService.findByUuid(PRODUCTION_GROUP_UUID)
+      .orElseThrow(() -> new AssertionError("Expected group not found"));
+    testUser = accountIds(TEST_USERNAME);
+    test100 = accountIds(TEST_100_USERNAME);
+
+    assertThat(joinTableMembers(), contains(testUser.getId()));
+  }
+
+  @Test
+  public void testAddMembersReportsOnlyNewMembers() {
+    GroupMembershipDiff diff = membershipService.addMembers(group, asList(testUser, test100));
+
+    assertThat(diff.getAdded(), contains(test100));
+    assertThat(diff.getRemoved(), empty());
+    assertThat(joinTableMembers(), containsInAnyOrder(testUser.getId(), test100.getId()));
+    assertThat(accountRepo.findGroupMemberIds(group.getId()),
+        containsInAnyOrder(testUser, test100));
+  }
+
+  @Test
+  public void testAddingExistingMembersChangesNothing() {
+    GroupMembershipDiff diff = membershipService.addMembers(group, singletonList(testUser));
+
+    assertThat(diff.isEmpty(), is(true));
+    assertThat(joinTableMembers(), contains(testUser.getId()));
+  }
+
+  @Test
+  public void testRemoveMembersReportsOnlyCurrentMembers() {
+    GroupMembershipDiff diff = membershipService.removeMembers(group, asList(testUser, test100));
+
+    assertThat(diff.getAdded(), empty());
+    assertThat(diff.getRemoved(), contains(testUser));
+    assertThat(joinTableMembers(), empty());
+  }
+
+  @Test
+  public void testReplaceMembersWritesTheDifferences() {
+    GroupMembershipDiff diff = membershipService.replaceMembers(group, singletonList(test100));
+
+    assertThat(diff.getAdded(), contains(test100));
+    assertThat(diff.getRemoved(), contains(testUser));
+    assertThat(joinTableMembers(), contains(test100.getId()));
+  }
+
+  @Test
+  public void testReplaceMembersWithTheCurrentMembersChangesNothing() {
+    GroupMembershipDiff diff = membershipService.replaceMembers(group, singletonList(testUser));
+
+    assertThat(diff.isEmpty(), is(true));
+    assertThat(joinTableMembers(), contains(testUser.getId()));
+  }
+
+  @Test
+  public void testRemoveAllMembersEmptiesTheGroup() {
+    GroupMembershipDiff diff = membershipService.removeAllMembers(group);
+
+    assertThat(diff.getAdded(), empty());
+    assertThat(diff.getRemoved(), contains(testUser));
+    assertThat(joinTableMembers(), empty());
+
+    assertThat(membershipService.removeAllMembers(group),
+        sameInstance(GroupMembershipDiff.NO_CHANGES));
+  }
+}
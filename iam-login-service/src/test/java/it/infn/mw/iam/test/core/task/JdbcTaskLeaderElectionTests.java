@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.task;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.task.JdbcTaskLeaderElection;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+public class JdbcTaskLeaderElectionTests {
+
+  public static final Instant NOW = Instant.parse("2020-01-01T00:00:00.00Z");
+  public static final long LEASE_DURATION_MSEC = 60_000;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private JdbcTaskLeaderElection election(String nodeId, Instant now) {
+    return new JdbcTaskLeaderElection(jdbcTemplate, Clock.fixed(now, ZoneId.systemDefault()),
+        nodeId, LEASE_DURATION_MSEC);
+  }
+
+  @Before
+  public void setup() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("DELETE FROM iam_task_lease");
+  }
+
+  @After
+  public void teardown() {
+    jdbcTemplate.update("DELETE FROM iam_task_lease");
+  }
+
+  @Test
+  public void onlyOneNodeIsLeader() {
+    JdbcTaskLeaderElection first = election("first", NOW);
+    JdbcTaskLeaderElection second = election("second", NOW);
+
+    first.renewLease();
+    second.renewLease();
+
+    assertThat(first.isLeader(), is(true));
+    assertThat(second.isLeader(), is(false));
+
+    first.renewLease();
+    second.renewLease();
+
+    assertThat(first.isLeader(), is(true));
+    assertThat(second.isLeader(), is(false));
+  }
+
+  @Test
+  public void expiredLeaseIsTakenOver() {
+    JdbcTaskLeaderElection first = election("first", NOW);
+    first.renewLease();
+
+    JdbcTaskLeaderElection second =
+        election("second", NOW.plusMillis(LEASE_DURATION_MSEC + 1000));
+    second.renewLease();
+
+    assertThat(second.isLeader(), is(true));
+
+    // The previous leader cannot take back a lease held by another node
+    JdbcTaskLeaderElection firstLater =
+        election("first", NOW.plusMillis(LEASE_DURATION_MSEC + 1000));
+    firstLater.renewLease();
+
+    assertThat(firstLater.isLeader(), is(false));
+  }
+
+  @Test
+  public void releasedLeaseIsTakenOver() {
+    JdbcTaskLeaderElection first = election("first", NOW);
+    first.renewLease();
+    first.destroy();
+
+    assertThat(first.isLeader(), is(false));
+
+    JdbcTaskLeaderElection second = election("second", NOW.plusMillis(1000));
+    second.renewLease();
+
+    assertThat(second.isLeader(), is(true));
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.task;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import it.infn.mw.iam.core.task.ManagedTask;
+import it.infn.mw.iam.core.task.TaskFamily;
+import it.infn.mw.iam.core.task.TaskLeaderElection;
+import it.infn.mw.iam.core.task.TaskTimeHistogram;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ManagedTaskTests {
+
+  @Mock
+  TaskLeaderElection leaderElection;
+
+  @Mock
+  Runnable delegate;
+
+  private ManagedTask managedTask(TaskFamily family, Runnable task) {
+    return new ManagedTask("test", family, "test schedule", task, leaderElection);
+  }
+
+  @Test
+  public void taskRunIsRecorded() {
+    when(leaderElection.isLeader()).thenReturn(true);
+    ManagedTask task = managedTask(TaskFamily.CLEANUP, delegate);
+
+    task.run();
+    task.run();
+
+    verify(delegate, times(2)).run();
+    assertThat(task.getRunCount(), is(2L));
+    assertThat(task.getFailureCount(), is(0L));
+    assertThat(task.getDuration().getCount(), is(2L));
+    assertThat(task.isRunning(), is(false));
+  }
+
+  @Test
+  public void taskFailureIsRecorded() {
+    when(leaderElection.isLeader()).thenReturn(true);
+    ManagedTask task = managedTask(TaskFamily.CLEANUP, () -> {
+      throw new IllegalStateException("failure");
+    });
+
+    task.run();
+
+    assertThat(task.getRunCount(), is(1L));
+    assertThat(task.getFailureCount(), is(1L));
+    assertThat(task.getLastError(), is("failure"));
+    assertThat(task.isRunning(), is(false));
+  }
+
+  @Test
+  public void overlappingRunIsSkipped() {
+    when(leaderElection.isLeader()).thenReturn(true);
+    ManagedTask[] task = new ManagedTask[1];
+
+    task[0] = managedTask(TaskFamily.NOTIFICATION, () -> task[0].run());
+    task[0].run();
+
+    assertThat(task[0].getRunCount(), is(1L));
+    assertThat(task[0].getOverlapSkipCount(), is(1L));
+    assertThat(task[0].getLastError(), nullValue());
+  }
+
+  @Test
+  public void leaderOnlyTaskIsSkippedOnFollower() {
+    when(leaderElection.isLeader()).thenReturn(false);
+    ManagedTask task = managedTask(TaskFamily.LIFECYCLE, delegate);
+
+    task.run();
+
+    verify(delegate, never()).run();
+    assertThat(task.getRunCount(), is(0L));
+    assertThat(task.getNotLeaderSkipCount(), is(1L));
+  }
+
+  @Test
+  public void replicaTaskRunsOnFollower() {
+    ManagedTask task = managedTask(TaskFamily.REPLICA, delegate);
+
+    task.run();
+
+    verify(delegate).run();
+    verify(leaderElection, never()).isLeader();
+    assertThat(task.getRunCount(), is(1L));
+  }
+
+  @Test
+  public void runLagIsRecorded() {
+    when(leaderElection.isLeader()).thenReturn(true);
+    ManagedTask task = managedTask(TaskFamily.CLEANUP, delegate);
+
+    final long scheduledTime = System.currentTimeMillis() - 1000;
+    task.trackingTrigger(ctx -> new Date(scheduledTime)).nextExecutionTime(null);
+
+    task.run();
+
+    assertThat(task.getScheduledTime(), is(scheduledTime));
+    assertThat(task.getLag().getCount(), is(1L));
+    assertThat(task.getLag().getMaxMsec(), greaterThanOrEqualTo(1000L));
+  }
+
+  @Test
+  public void histogramBucketsAreCumulative() {
+    TaskTimeHistogram histogram = new TaskTimeHistogram();
+
+    histogram.record(5);
+    histogram.record(50);
+    histogram.record(5000);
+    histogram.record(Long.MAX_VALUE / 2);
+
+    Map<String, Long> buckets = histogram.getBuckets();
+
+    assertThat(histogram.getCount(), is(4L));
+    assertThat(buckets.get("10"), is(1L));
+    assertThat(buckets.get("100"), is(2L));
+    assertThat(buckets.get("1000"), is(2L));
+    assertThat(buckets.get("10000"), is(3L));
+    assertThat(buckets.get("3600000"), is(3L));
+    assertThat(buckets.get("inf"), is(4L));
+  }
+}
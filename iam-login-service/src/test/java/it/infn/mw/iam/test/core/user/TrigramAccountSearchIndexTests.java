@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.user;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.audit.events.account.AccountCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountRemovedEvent;
+import it.infn.mw.iam.core.cache.NullCacheEvictionBroadcaster;
+import it.infn.mw.iam.core.user.search.TrigramAccountSearchIndex;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountSearchRecord;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrigramAccountSearchIndexTests {
+
+  static final String ADMIN_UUID = "73f16d93-2441-4a50-88ff-85360d78c6b5";
+  static final String TEST_UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
+  static final String TEST_100_UUID = "f2ce8cb2-a1db-4884-9ef0-d8842cc02b4a";
+
+  static final Date CREATION_TIME = new Date(0);
+
+  @Mock
+  IamAccountRepository accountRepo;
+
+  TrigramAccountSearchIndex index;
+
+  static IamAccountSearchRecord record(long id, String uuid, String username, String email,
+      String givenName, String familyName) {
+    return new IamAccountSearchRecord(id, uuid, username, email, givenName, familyName,
+        new Date(id));
+  }
+
+  static List<Long> search(TrigramAccountSearchIndex index, String filter, Pageable op) {
+    return index.search(filter, op).getContent();
+  }
+
+  @Before
+  public void setup() {
+    List<IamAccountSearchRecord> records = Lists.newArrayList(
+        record(1L, ADMIN_UUID, "admin", "1_admin@iam.test", "Admin", "User"),
+        record(2L, TEST_UUID, "test", "test@iam.test", "Test", "User"),
+        record(3L, TEST_100_UUID, "test_100", "test_100@iam.test", "Test", "Administrator"));
+
+    when(accountRepo.findSearchRecordsAfterId(eq(0L), any(Pageable.class))).thenReturn(records);
+    when(accountRepo.findSearchRecordsAfterId(eq(3L), any(Pageable.class)))
+      .thenReturn(emptyList());
+
+    index = new TrigramAccountSearchIndex(accountRepo, new NullCacheEvictionBroadcaster());
+  }
+
+  @Test
+  public void indexIsBuiltOnFirstSearch() {
+    assertThat(index.getIndexedAccountsCount(), is(0));
+    assertThat(index.count("admin"), is(2L));
+    assertThat(index.getIndexedAccountsCount(), is(3));
+    verify(accountRepo, times(2)).findSearchRecordsAfterId(anyLong(), any(Pageable.class));
+  }
+
+  @Test
+  public void searchMatchesSubstringsOfAllIndexedAttributes() {
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    assertThat(search(index, "DMIN", op), containsInAnyOrder(1L, 3L));
+    assertThat(search(index, "test_100@", op), contains(3L));
+    assertThat(search(index, "test user", op), contains(2L));
+    assertThat(search(index, "ser", op), containsInAnyOrder(1L, 2L));
+    assertThat(search(index, "346ae278", op), contains(2L));
+    assertThat(search(index, "@iam.test", op), containsInAnyOrder(1L, 2L, 3L));
+    assertThat(search(index, "nobody", op), empty());
+  }
+
+  @Test
+  public void onlyLongOrDashedHexFiltersAreMatchedAgainstUuids() {
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    // "a66" and "cafe" look like hex, but are too short to be treated as uuid fragments
+    assertThat(search(index, "a66", op), empty());
+    assertThat(search(index, "cafe", op), empty());
+    assertThat(search(index, "8a66f", op), empty());
+    assertThat(search(index, "278a66f", op), empty());
+    assertThat(search(index, "ae278a66f", op), contains(2L));
+    assertThat(search(index, "-346", op), contains(2L));
+  }
+
+  @Test
+  public void concurrentFirstSearchesBuildTheIndexOnce() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      List<Future<Long>> counts = Lists.newArrayList();
+      for (int i = 0; i < 8; i++) {
+        counts.add(executor.submit(() -> index.count("admin")));
+      }
+
+      for (Future<Long> count : counts) {
+        assertThat(count.get(), is(2L));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(accountRepo, times(2)).findSearchRecordsAfterId(anyLong(), any(Pageable.class));
+  }
+
+  @Test
+  public void searchMatchesShortFilters() {
+    OffsetPageable op = new OffsetPageable(0, 10);
+
+    assertThat(search(index, "_", op), containsInAnyOrder(1L, 3L));
+    assertThat(search(index, "ad", op), containsInAnyOrder(1L, 3L));
+  }
+
+  @Test
+  public void resultsAreRankedAndThenSorted() {
+    Sort byCreationTime = new Sort(Direction.DESC, "creationTime");
+
+    // exact username matches come before prefix matches
+    assertThat(search(index, "admin", new OffsetPageable(0, 10, byCreationTime)),
+        contains(1L, 3L));
+    assertThat(search(index, "test", new OffsetPageable(0, 10, byCreationTime)),
+        contains(2L, 3L));
+
+    // prefix matches on the family name, sorted by creation time
+    assertThat(search(index, "user", new OffsetPageable(0, 10, byCreationTime)),
+        contains(2L, 1L));
+  }
+
+  @Test
+  public void resultsArePaged() {
+    Sort byUsername = new Sort(Direction.ASC, "username");
+
+    Page<Long> page = index.search("iam.test", new OffsetPageable(1, 1, byUsername));
+
+    assertThat(page.getContent(), contains(2L));
+    assertThat(page.getTotalElements(), is(3L));
+
+    page = index.search("iam.test", new OffsetPageable(3, 1, byUsername));
+
+    assertThat(page.getContent(), empty());
+    assertThat(page.getTotalElements(), is(3L));
+  }
+
+  @Test
+  public void accountEventsUpdateTheIndex() {
+    OffsetPageable op = new OffsetPageable(0, 10);
+    assertThat(search(index, "lennon", op), empty());
+
+    IamAccount account = IamAccount.newAccount();
+    account.setId(4L);
+    account.setUuid("ab9f5d3b-6c6e-4a7c-8b40-6b0f0fbe5c1e");
+    account.setUsername("john_lennon");
+    account.setCreationTime(CREATION_TIME);
+    account.getUserInfo().setEmail("lennon@example.org");
+    account.getUserInfo().setGivenName("John");
+    account.getUserInfo().setFamilyName("Lennon");
+
+    index.onApplicationEvent(new AccountCreatedEvent(this, account, "created"));
+
+    assertThat(search(index, "lennon", op), contains(4L));
+    assertThat(index.getPendingChangesCount(), is(1));
+
+    index.onApplicationEvent(new AccountRemovedEvent(this, account, "removed"));
+    assertThat(search(index, "lennon", op), empty());
+
+    IamAccount admin = IamAccount.newAccount();
+    admin.setId(1L);
+    admin.setUuid(ADMIN_UUID);
+    admin.setUsername("root");
+    admin.setCreationTime(CREATION_TIME);
+    admin.getUserInfo().setEmail("root@iam.test");
+    admin.getUserInfo().setGivenName("Root");
+    admin.getUserInfo().setFamilyName("User");
+
+    index.onApplicationEvent(new AccountCreatedEvent(this, admin, "updated"));
+    assertThat(search(index, "admin", op), contains(3L));
+    assertThat(search(index, "root", op), contains(1L));
+  }
+
+  @Test
+  public void rebuildKeepsOnlyChangesNotInTheDatabase() {
+    when(accountRepo.findSearchRecordByUuid(TEST_UUID))
+      .thenReturn(Optional.of(record(2L, TEST_UUID, "tester", "tester@iam.test", "Test", "User")));
+
+    index.rebuild();
+    index.reindex(TEST_UUID);
+
+    OffsetPageable op = new OffsetPageable(0, 10);
+    assertThat(search(index, "tester", op), contains(2L));
+    assertThat(index.getPendingChangesCount(), is(1));
+
+    index.rebuild();
+    assertThat(index.getPendingChangesCount(), is(0));
+
+    // the database is authoritative after a rebuild
+    assertThat(search(index, "tester", op), empty());
+  }
+}
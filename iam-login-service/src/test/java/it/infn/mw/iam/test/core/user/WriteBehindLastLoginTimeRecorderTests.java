@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.user;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import it.infn.mw.iam.core.user.WriteBehindLastLoginTimeRecorder;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WriteBehindLastLoginTimeRecorderTests {
+
+  public static final Instant NOW = Instant.parse("2020-01-01T00:00:00.00Z");
+  public static final Instant LATER = NOW.plusSeconds(60);
+
+  @Mock
+  IamAccountRepository accountRepo;
+
+  @Mock
+  Clock clock;
+
+  @Captor
+  ArgumentCaptor<Map<String, Date>> batchCaptor;
+
+  WriteBehindLastLoginTimeRecorder recorder;
+
+  @Before
+  public void setup() {
+    when(clock.instant()).thenReturn(NOW);
+    recorder = new WriteBehindLastLoginTimeRecorder(accountRepo, clock, 100, 2);
+  }
+
+  @After
+  public void teardown() {
+    recorder.destroy();
+  }
+
+  @Test
+  public void loginsArePersistedOnlyOnFlush() {
+    recorder.recordLogin("test");
+    recorder.recordLogin("test");
+    recorder.recordLogin("admin");
+
+    verify(accountRepo, never()).touchLastLoginTimes(anyMapOf(String.class, Date.class));
+    assertThat(recorder.getPendingLoginsCount(), is(2));
+
+    recorder.flush();
+
+    verify(accountRepo).touchLastLoginTimes(batchCaptor.capture());
+    assertThat(batchCaptor.getValue().size(), is(2));
+    assertThat(recorder.getPendingLoginsCount(), is(0));
+  }
+
+  @Test
+  public void eachAccountGetsItsOwnLastLoginTime() {
+    recorder.recordLogin("test");
+    when(clock.instant()).thenReturn(LATER);
+    recorder.recordLogin("admin");
+
+    recorder.flush();
+
+    verify(accountRepo).touchLastLoginTimes(batchCaptor.capture());
+    assertThat(batchCaptor.getValue().get("test"), is(Date.from(NOW)));
+    assertThat(batchCaptor.getValue().get("admin"), is(Date.from(LATER)));
+  }
+
+  @Test
+  public void flushSplitsPendingLoginsInBatches() {
+    recorder.recordLogin("user1");
+    recorder.recordLogin("user2");
+    recorder.recordLogin("user3");
+
+    recorder.flush();
+
+    verify(accountRepo, times(2)).touchLastLoginTimes(anyMapOf(String.class, Date.class));
+  }
+
+  @Test
+  public void failedBatchesAreRetriedOnNextFlush() {
+    when(accountRepo.touchLastLoginTimes(anyMapOf(String.class, Date.class)))
+      .thenThrow(new IllegalStateException("database unavailable"))
+      .thenReturn(1);
+
+    recorder.recordLogin("test");
+    recorder.flush();
+    assertThat(recorder.getPendingLoginsCount(), is(1));
+
+    // a login recorded after the failure takes precedence over the one being retried
+    when(clock.instant()).thenReturn(LATER);
+    recorder.recordLogin("test");
+    recorder.flush();
+
+    verify(accountRepo, times(2)).touchLastLoginTimes(batchCaptor.capture());
+    List<Map<String, Date>> batches = batchCaptor.getAllValues();
+    assertThat(batches.get(1).get("test"), is(Date.from(LATER)));
+    assertThat(recorder.getPendingLoginsCount(), is(0));
+  }
+
+  @Test
+  public void fullBufferIsFlushedOffTheLoginThread() throws InterruptedException {
+    recorder.destroy();
+    recorder = new WriteBehindLastLoginTimeRecorder(accountRepo, clock, 2, 10);
+
+    CountDownLatch flushed = new CountDownLatch(1);
+    AtomicReference<String> flushThreadName = new AtomicReference<>();
+
+    when(accountRepo.touchLastLoginTimes(anyMapOf(String.class, Date.class))).thenAnswer(i -> {
+      flushThreadName.set(Thread.currentThread().getName());
+      flushed.countDown();
+      return 2;
+    });
+
+    recorder.recordLogin("user1");
+    recorder.recordLogin("user2");
+
+    assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(flushThreadName.get(), is(WriteBehindLastLoginTimeRecorder.FLUSHER_THREAD_NAME));
+  }
+
+  @Test
+  public void pendingLoginsAreFlushedOnShutdown() {
+    recorder.recordLogin("test");
+    recorder.destroy();
+
+    verify(accountRepo).touchLastLoginTimes(anyMapOf(String.class, Date.class));
+  }
+}
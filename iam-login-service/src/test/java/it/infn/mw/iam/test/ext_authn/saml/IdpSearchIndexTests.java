@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.ext_authn.saml;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.infn.mw.iam.authn.saml.IdpSearchIndex;
+import it.infn.mw.iam.authn.saml.model.IdpDescription;
+
+public class IdpSearchIndexTests {
+
+  public static final String INFN_ENTITY_ID = "https://idp.infn.it/saml2/idp/metadata.php";
+  public static final String UNIMI_ENTITY_ID = "https://idp.unimi.it/idp/shibboleth";
+  public static final String CERN_ENTITY_ID = "https://cern.ch/login";
+  public static final String KIT_ENTITY_ID = "https://idp.scc.kit.edu/idp/shibboleth";
+
+  private IdpSearchIndex index;
+
+  private static IdpSearchIndex.Entry entry(String entityId, List<String> names,
+      List<String> keywords, List<String> domains) {
+    IdpDescription description = new IdpDescription();
+    description.setEntityId(entityId);
+    description.setOrganizationName(names.get(0));
+    return new IdpSearchIndex.Entry(description, names, keywords, domains);
+  }
+
+  private List<String> search(String text) {
+    return index.search(text, 20).stream().map(IdpDescription::getEntityId).collect(toList());
+  }
+
+  @Before
+  public void setup() {
+    index = IdpSearchIndex.build(asList(
+        entry(INFN_ENTITY_ID, asList("INFN", "Istituto Nazionale di Fisica Nucleare"),
+            asList("physics", "research"), asList("infn.it")),
+        entry(UNIMI_ENTITY_ID,
+            asList("Universit\u00e0 degli Studi di Milano", "University of Milan"),
+            asList("university"), asList("unimi.it")),
+        entry(CERN_ENTITY_ID,
+            asList("CERN", "European Organization for Nuclear Research"),
+            asList("physics", "particle"), emptyList()),
+        entry(KIT_ENTITY_ID, asList("Karlsruhe Institute of Technology"), emptyList(),
+            asList("kit.edu"))));
+  }
+
+  @Test
+  public void idpsAreListedInDisplayOrder() {
+    assertThat(index.size(), is(4));
+    assertThat(index.getIdps().stream().map(IdpDescription::getEntityId).collect(toList()),
+        contains(CERN_ENTITY_ID, INFN_ENTITY_ID, KIT_ENTITY_ID, UNIMI_ENTITY_ID));
+  }
+
+  @Test
+  public void searchIsCaseAndAccentInsensitive() {
+    assertThat(search("universita"), contains(UNIMI_ENTITY_ID));
+    assertThat(search("UNIVERSIT\u00c0"), contains(UNIMI_ENTITY_ID));
+  }
+
+  @Test
+  public void searchMatchesNamesInAllLanguages() {
+    assertThat(search("milan"), contains(UNIMI_ENTITY_ID));
+    assertThat(search("nazionale"), contains(INFN_ENTITY_ID));
+  }
+
+  @Test
+  public void searchMatchesKeywordsAndDomains() {
+    assertThat(search("particle"), contains(CERN_ENTITY_ID));
+    assertThat(search("kit.edu"), contains(KIT_ENTITY_ID));
+    assertThat(search("unimi"), contains(UNIMI_ENTITY_ID));
+  }
+
+  @Test
+  public void allQueryWordsMustMatch() {
+    assertThat(search("nuclear research"), contains(CERN_ENTITY_ID, INFN_ENTITY_ID));
+    assertThat(search("milan physics"), empty());
+  }
+
+  @Test
+  public void shortWordsMatchWordPrefixes() {
+    assertThat(search("ka"), contains(KIT_ENTITY_ID));
+    assertThat(search("fi"), contains(INFN_ENTITY_ID));
+    assertThat(search("ru"), empty());
+  }
+
+  @Test
+  public void substringsAreMatched() {
+    assertThat(search("ruhe"), contains(KIT_ENTITY_ID));
+  }
+
+  @Test
+  public void matchesAreRanked() {
+    // An exact keyword match ranks before a name word match
+    assertThat(search("research"), contains(INFN_ENTITY_ID, CERN_ENTITY_ID));
+
+    // A name prefix match ranks before a name word match
+    assertThat(search("in"), contains(INFN_ENTITY_ID, KIT_ENTITY_ID));
+
+    // Equally ranked matches are in display order
+    assertThat(search("physics"), contains(CERN_ENTITY_ID, INFN_ENTITY_ID));
+    assertThat(search("nuclear"), contains(CERN_ENTITY_ID, INFN_ENTITY_ID));
+  }
+
+  @Test
+  public void emptySearchReturnsIdpsInDisplayOrder() {
+    assertThat(index.search("", 2).stream().map(IdpDescription::getEntityId).collect(toList()),
+        contains(CERN_ENTITY_ID, INFN_ENTITY_ID));
+  }
+
+  @Test
+  public void searchResultsAreLimited() {
+    assertThat(index.search("i", 1), hasSize(1));
+  }
+
+  @Test
+  public void entityIdLookupWorks() {
+    assertThat(index.findByEntityId(KIT_ENTITY_ID).get().getOrganizationName(),
+        is("Karlsruhe Institute of Technology"));
+    assertThat(index.findByEntityId("unknown").isPresent(), is(false));
+  }
+}
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.junit.Before;
@@ -43,6 +44,7 @@ import org.opensaml.samlext.saml2mdui.DisplayName;
 import org.opensaml.samlext.saml2mdui.UIInfo;
 import org.springframework.security.saml.metadata.MetadataManager;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.authn.saml.DefaultMetadataLookupService;
@@ -207,4 +209,17 @@ public class MetadataLookupServiceTests {
     idps = service.lookupIdp("unknown");
     assertThat(idps, hasSize(0));
   }
+
+  @Test
+  public void testDefaultIdpListJson() throws IOException {
+
+    DefaultMetadataLookupService service = new DefaultMetadataLookupService(manager);
+
+    IdpDescription[] idps =
+        new ObjectMapper().readValue(service.getDefaultIdpListJson(), IdpDescription[].class);
+
+    assertThat(idps.length, is(4));
+    assertThat(idps[0].getEntityId(), is(IDP1_ENTITY_ID));
+    assertThat(idps[1].getEntityId(), is(IDP2_ENTITY_ID));
+  }
 }
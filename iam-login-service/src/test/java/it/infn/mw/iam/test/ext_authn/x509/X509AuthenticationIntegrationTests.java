@@ -43,6 +43,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import java.time.Instant;
 import java.util.Date;
 
+import javax.persistence.EntityManager;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -60,6 +62,7 @@ import org.springframework.web.context.WebApplicationContext;
 
 import it.infn.mw.iam.IamLoginService;
 import it.infn.mw.iam.authn.x509.IamX509AuthenticationCredential;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 import junit.framework.AssertionFailedError;
@@ -77,6 +80,12 @@ public class X509AuthenticationIntegrationTests extends X509TestSupport {
   @Autowired
   private WebApplicationContext context;
 
+  @Autowired
+  private LastLoginTimeRecorder lastLoginTimeRecorder;
+
+  @Autowired
+  private EntityManager em;
+
   private MockMvc mvc;
 
   @Before
@@ -124,6 +133,9 @@ public class X509AuthenticationIntegrationTests extends X509TestSupport {
     .andExpect(redirectedUrl("/dashboard"))
     .andExpect(authenticated().withUsername("test"));
     
+    lastLoginTimeRecorder.flush();
+    em.clear();
+
     resolvedAccount =
         iamAccountRepo.findByCertificateSubject(TEST_0_SUBJECT).orElseThrow(
             () -> new AssertionError("Expected test user linked with subject " + TEST_0_SUBJECT));
@@ -18,18 +18,25 @@ package it.infn.mw.iam.test.lifecycle;
 import static it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler.LIFECYCLE_STATUS_LABEL;
 import static it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler.LIFECYCLE_TIMESTAMP_LABEL;
 import static java.lang.String.valueOf;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.time.Clock;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.persistence.EntityManager;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -41,8 +48,12 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
 import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.audit.events.account.AccountsDisabledEvent;
+import it.infn.mw.iam.audit.events.account.AccountsEvent;
+import it.infn.mw.iam.audit.events.account.label.AccountsLabelSetEvent;
 import it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler;
 import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
 import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 import it.infn.mw.iam.test.api.TestSupport;
@@ -57,9 +68,20 @@ import it.infn.mw.iam.test.lifecycle.cern.LifecycleTestSupport;
 @Transactional
 @TestPropertySource(
     properties = {"lifecycle.account.expiredAccountPolicy.suspensionGracePeriodDays=7",
-        "lifecycle.account.expiredAccountPolicy.removalGracePeriodDays=30"})
+        "lifecycle.account.expiredAccountPolicy.removalGracePeriodDays=30",
+        "lifecycle.account.expiredAccountsTask.batchSize=5"})
 public class AccountLifecycleTests extends TestSupport implements LifecycleTestSupport {
 
+  public static class AccountsEventRecorder implements ApplicationListener<AccountsEvent> {
+
+    final List<AccountsEvent> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onApplicationEvent(AccountsEvent event) {
+      events.add(event);
+    }
+  }
+
   @Configuration
   public static class TestConfig {
     @Bean
@@ -67,6 +89,11 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     Clock mockClock() {
       return Clock.fixed(NOW, ZoneId.systemDefault());
     }
+
+    @Bean
+    AccountsEventRecorder accountsEventRecorder() {
+      return new AccountsEventRecorder();
+    }
   }
 
   @Autowired
@@ -75,6 +102,16 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
   @Autowired
   private ExpiredAccountsHandler handler;
 
+  @Autowired
+  private EntityManager em;
+
+  @Autowired
+  private AccountsEventRecorder eventRecorder;
+
+  private static List<String> uuids(AccountsEvent event) {
+    return event.getAccounts().stream().map(IamAccountIds::getUuid).collect(toList());
+  }
+
   @Test
   public void testSuspensionGracePeriodWorks() {
     IamAccount testAccount =
@@ -86,6 +123,7 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     repo.save(testAccount);
 
     handler.handleExpiredAccounts();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -113,6 +151,7 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     repo.save(testAccount);
 
     handler.handleExpiredAccounts();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -140,6 +179,7 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     repo.save(testAccount);
 
     handler.handleExpiredAccounts();
+    em.clear();
 
     Optional<IamAccount> account = repo.findByUuid(TEST_USER_UUID);;
 
@@ -152,6 +192,7 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     long accountBefore = repo.count();
 
     handler.handleExpiredAccounts();
+    em.clear();
 
     long accountAfter = repo.count();
 
@@ -178,12 +219,72 @@ public class AccountLifecycleTests extends TestSupport implements LifecycleTestS
     assertThat(touchedAccounts, is(20L));
     
     handler.handleExpiredAccounts();
+    em.clear();
 
     long accountAfter = repo.count();
 
     assertThat(accountAfter, is(accountBefore - 20));
   }
 
+  @Test
+  public void testMultipleBatchesOfAccountsSuspended() {
+
+    Page<IamAccount> accountsPage = repo.findAll(new PageRequest(0, 12));
+
+    for (IamAccount a : accountsPage.getContent()) {
+      a.setEndTime(Date.from(EIGHT_DAYS_AGO));
+      repo.save(a);
+    }
 
+    long suspendedBefore = handler.getStats().getSuspendedCount();
+
+    handler.handleExpiredAccounts();
+    em.clear();
 
+    assertThat(handler.getStats().getSuspendedCount(), is(suspendedBefore + 12));
+    assertThat(handler.getStats().getLastRunProcessedCount(), is(12L));
+
+    for (IamAccount a : accountsPage.getContent()) {
+      IamAccount account = repo.findOne(a.getId());
+
+      assertThat(account.isActive(), is(false));
+
+      Optional<IamLabel> statusLabel = account.getLabelByName(LIFECYCLE_STATUS_LABEL);
+      assertThat(statusLabel.isPresent(), is(true));
+      assertThat(statusLabel.get().getValue(),
+          is(ExpiredAccountsHandler.AccountLifecycleStatus.PENDING_REMOVAL.name()));
+
+      Optional<IamLabel> timestampLabel = account.getLabelByName(LIFECYCLE_TIMESTAMP_LABEL);
+      assertThat(timestampLabel.isPresent(), is(true));
+      assertThat(timestampLabel.get().getValue(), is(valueOf(NOW.toEpochMilli())));
+    }
+  }
+
+  @Test
+  public void testSuspensionPublishesAccountsEvents() {
+    IamAccount testAccount =
+        repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
+
+    testAccount.setEndTime(Date.from(EIGHT_DAYS_AGO));
+    repo.save(testAccount);
+
+    eventRecorder.events.clear();
+    handler.handleExpiredAccounts();
+
+    List<AccountsEvent> disabledEvents = eventRecorder.events.stream()
+      .filter(AccountsDisabledEvent.class::isInstance)
+      .collect(toList());
+
+    assertThat(disabledEvents.size(), is(1));
+    assertThat(uuids(disabledEvents.get(0)), hasItem(TEST_USER_UUID));
+
+    List<String> labelNames = eventRecorder.events.stream()
+      .filter(AccountsLabelSetEvent.class::isInstance)
+      .filter(e -> uuids(e).contains(TEST_USER_UUID))
+      .map(e -> ((AccountsLabelSetEvent) e).getLabel().getName())
+      .collect(toList());
+
+    assertThat(labelNames, hasItem(LIFECYCLE_STATUS_LABEL));
+    assertThat(labelNames, hasItem(LIFECYCLE_TIMESTAMP_LABEL));
+  }
 }
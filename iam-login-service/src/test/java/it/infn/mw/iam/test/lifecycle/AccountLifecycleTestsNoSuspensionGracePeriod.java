@@ -28,6 +28,8 @@ import java.time.ZoneId;
 import java.util.Date;
 import java.util.Optional;
 
+import javax.persistence.EntityManager;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -75,6 +77,9 @@ public class AccountLifecycleTestsNoSuspensionGracePeriod implements LifecycleTe
   @Autowired
   private ExpiredAccountsHandler handler;
 
+  @Autowired
+  private EntityManager em;
+
   @Test
   public void testZeroDaysSuspensionGracePeriod() {
     IamAccount testAccount =
@@ -86,6 +91,7 @@ public class AccountLifecycleTestsNoSuspensionGracePeriod implements LifecycleTe
     repo.save(testAccount);
 
     handler.handleExpiredAccounts();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -19,6 +19,7 @@ import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.HR_DB_AP
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.IGNORE_MESSAGE;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_ACTION;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_CERN_PREFIX;
+import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_FINGERPRINT;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_MESSAGE;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_STATUS;
 import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleHandler.LABEL_TIMESTAMP;
@@ -36,6 +37,8 @@ import java.time.ZoneId;
 import java.util.Optional;
 import java.util.UUID;
 
+import javax.persistence.EntityManager;
+
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -111,6 +114,9 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
 
   @Autowired
   Clock clock;
+
+  @Autowired
+  EntityManager em;
   
   @After
   public void teardown() {
@@ -131,6 +137,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     repo.save(testAccount);
 
     handler.run();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -170,6 +177,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     repo.save(testAccount);
 
     handler.run();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -210,6 +218,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     service.setLabel(testAccount, cernPersonIdLabel());
     
     handler.run();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -248,6 +257,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     service.setLabel(testAccount, actionLabel(DISABLE_ACCOUNT));
 
     handler.run();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -280,6 +290,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     service.setLabel(testAccount, cernPersonIdLabel());
     
     handler.run();
+    em.clear();
     
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -322,6 +333,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     service.setLabel(testAccount, cernPersonIdLabel());
 
     handler.run();
+    em.clear();
 
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -358,6 +370,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     service.setLabel(testAccount, cernIgnoreLabel());
     
     handler.run();
+    em.clear();
     
     testAccount =
         repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
@@ -398,6 +411,7 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     }
 
     handler.run();
+    em.clear();
 
     accountPage = repo.findAll(pageRequest);
 
@@ -425,4 +439,58 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     }
   }
 
+  @Test
+  public void testUnchangedHrRecordIsNotSyncedAgain() {
+    VOPersonDTO voPerson = voPerson("988211");
+
+    when(hrDb.hasValidExperimentParticipation(anyString())).thenReturn(true);
+    when(hrDb.getHrDbPersonRecord(anyString())).thenReturn(voPerson);
+
+    IamAccount testAccount =
+        repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
+
+    service.setLabel(testAccount, cernPersonIdLabel());
+    repo.save(testAccount);
+
+    handler.run();
+    em.clear();
+
+    testAccount =
+        repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
+
+    assertThat(testAccount.getUserInfo().getGivenName(), is(voPerson.getFirstName()));
+    assertThat(
+        testAccount.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_FINGERPRINT).isPresent(),
+        is(true));
+
+    testAccount.getUserInfo().setGivenName("Changed");
+    repo.save(testAccount);
+
+    handler.run();
+    em.clear();
+
+    testAccount =
+        repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
+
+    assertThat(testAccount.getUserInfo().getGivenName(), is("Changed"));
+
+    voPerson.setEmail("changed@hr.cern");
+
+    handler.run();
+    em.clear();
+
+    testAccount =
+        repo.findByUuid(TEST_USER_UUID).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
+
+    assertThat(testAccount.getUserInfo().getGivenName(), is(voPerson.getFirstName()));
+    assertThat(testAccount.getUserInfo().getEmail(), is("changed@hr.cern"));
+
+    Optional<IamLabel> statusLabel =
+        testAccount.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_STATUS);
+    Optional<IamLabel> actionLabel =
+        testAccount.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_ACTION);
+
+    assertThat(statusLabel.get().getValue(), is(CernHrLifecycleHandler.Status.OK.name()));
+    assertThat(actionLabel.get().getValue(), is(CernHrLifecycleHandler.Action.NO_ACTION.name()));
+  }
 }
@@ -30,6 +30,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import java.time.Instant;
 import java.util.Date;
 
+import javax.persistence.EntityManager;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -44,6 +46,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
 import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.user.LastLoginTimeRecorder;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAup;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
@@ -64,6 +67,12 @@ public class LoginTests implements LoginTestSupport {
   @Autowired
   private IamAupRepository aupRepo;
 
+  @Autowired
+  private LastLoginTimeRecorder lastLoginTimeRecorder;
+
+  @Autowired
+  private EntityManager em;
+
   private MockMvc mvc;
 
   @Before
@@ -96,6 +105,9 @@ public class LoginTests implements LoginTestSupport {
       .andExpect(view().name("iam/dashboard"))
       .andReturn();
 
+    lastLoginTimeRecorder.flush();
+    em.clear();
+
     IamAccount adminAccount = accountRepo.findByUsername(ADMIN_USERNAME)
       .orElseThrow(() -> new AssertionError("Admin user not found!"));
 
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.notification;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.subethamail.wiser.Wiser;
+import org.subethamail.wiser.WiserMessage;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.IamDeliveryStatus;
+import it.infn.mw.iam.core.IamNotificationType;
+import it.infn.mw.iam.notification.service.JavaMailNotificationDelivery;
+import it.infn.mw.iam.persistence.model.IamEmailNotification;
+import it.infn.mw.iam.persistence.model.IamNotificationReceiver;
+import it.infn.mw.iam.persistence.repository.IamEmailNotificationRepository;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+import it.infn.mw.iam.test.util.MockSmtpServerUtils;
+
+/**
+ * These tests are not transactional, since claims and delivery outcomes are committed in
+ * transactions of their own, as they would be in production.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+@TestPropertySource(properties = {
+    // @formatter:off
+    "notification.disable=false",
+    "spring.mail.host=localhost",
+    "spring.mail.port=10025",
+    "notification.delivery.batch-size=2",
+    "notification.delivery.messages-per-connection=2"
+    // @formatter:on
+})
+public class JavamailNotificationDeliveryIntegrationTests {
+
+  public static final long CLAIM_TIME = 1_000_000L;
+  public static final long ONE_DAY_MSEC = 86_400_000L;
+
+  @Value("${spring.mail.host}")
+  private String mailHost;
+
+  @Value("${spring.mail.port}")
+  private Integer mailPort;
+
+  @Autowired
+  private JavaMailNotificationDelivery contextDelivery;
+
+  @Autowired
+  private IamEmailNotificationRepository repo;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private List<IamEmailNotification> createdNotifications = Lists.newArrayList();
+
+  private Wiser wiser;
+
+  @Before
+  public void setup() {
+    wiser = MockSmtpServerUtils.startMockSmtpServer(mailHost, mailPort);
+  }
+
+  @After
+  public void teardown() {
+    MockSmtpServerUtils.stopMockSmtpServer(wiser);
+    createdNotifications.forEach(n -> repo.delete(n.getId()));
+  }
+
+  private IamEmailNotification createNotification(String address) {
+    IamEmailNotification notification = new IamEmailNotification();
+
+    notification.setUuid(UUID.randomUUID().toString());
+    notification.setType(IamNotificationType.CONFIRMATION);
+    notification.setSubject("Subject");
+    notification.setBody("Body");
+    notification.setCreationTime(new Date());
+    notification.setDeliveryStatus(IamDeliveryStatus.PENDING);
+    notification
+      .setReceivers(singletonList(IamNotificationReceiver.forAddress(notification, address)));
+
+    notification = repo.save(notification);
+    createdNotifications.add(notification);
+    return notification;
+  }
+
+  private List<String> deliveredTo() {
+    return wiser.getMessages().stream().map(WiserMessage::getEnvelopeReceiver).collect(toList());
+  }
+
+  private int inTransaction(Supplier<Integer> update) {
+    return new TransactionTemplate(transactionManager).execute(status -> update.get());
+  }
+
+  @Test
+  public void testPendingNotificationsAreDeliveredInBatches() {
+
+    List<IamEmailNotification> notifications = asList(createNotification("a@example"),
+        createNotification("b@example"), createNotification("c@example"));
+
+    contextDelivery.sendPendingNotifications();
+
+    assertThat(deliveredTo(), hasItems("a@example", "b@example", "c@example"));
+
+    for (IamEmailNotification n : notifications) {
+      IamEmailNotification delivered = repo.findOne(n.getId());
+      assertThat(delivered.getDeliveryStatus(), is(IamDeliveryStatus.DELIVERED));
+      assertThat(delivered.getDeliveryAttempts(), is(1));
+    }
+  }
+
+  @Test
+  public void testFailedDeliveryIsScheduledForRetry() {
+
+    MockSmtpServerUtils.stopMockSmtpServer(wiser);
+    wiser = null;
+
+    IamEmailNotification notification = createNotification("retry@example");
+
+    contextDelivery.sendPendingNotifications();
+
+    notification = repo.findOne(notification.getId());
+
+    assertThat(notification.getDeliveryStatus(), is(IamDeliveryStatus.DELIVERY_ERROR));
+    assertThat(notification.getDeliveryAttempts(), is(1));
+    assertThat(notification.getNextAttemptTime(), notNullValue());
+    assertThat(notification.getNextAttemptTime().after(notification.getLastUpdate()), is(true));
+
+    wiser = MockSmtpServerUtils.startMockSmtpServer(mailHost, mailPort);
+
+    // The retry is not due yet
+    contextDelivery.sendPendingNotifications();
+
+    assertThat(wiser.getMessages(), empty());
+    assertThat(repo.findOne(notification.getId()).getDeliveryAttempts(), is(1));
+  }
+
+  @Test
+  public void testStaleClaimIsTakenOver() {
+
+    IamEmailNotification notification = createNotification("stale@example");
+    Date longAgo = new Date(System.currentTimeMillis() - ONE_DAY_MSEC);
+
+    assertThat(inTransaction(() -> repo.claimNotification(notification.getId(), longAgo,
+        new Date(longAgo.getTime() - 1000))), is(1));
+
+    contextDelivery.sendPendingNotifications();
+
+    assertThat(deliveredTo(), hasItems("stale@example"));
+    assertThat(repo.findOne(notification.getId()).getDeliveryStatus(),
+        is(IamDeliveryStatus.DELIVERED));
+  }
+
+  @Test
+  public void testOnlyTheCurrentClaimHolderRecordsTheOutcome() {
+
+    final Long id = createNotification("fenced@example").getId();
+    final Date firstClaimTime = new Date(CLAIM_TIME);
+    final Date secondClaimTime = new Date(CLAIM_TIME + ONE_DAY_MSEC);
+
+    assertThat(inTransaction(() -> repo.claimNotification(id, firstClaimTime,
+        new Date(firstClaimTime.getTime() - 1000))), is(1));
+
+    // the first claim goes stale and the notification is claimed again
+    assertThat(inTransaction(() -> repo.claimNotification(id, secondClaimTime,
+        new Date(secondClaimTime.getTime() - 1000))), is(1));
+
+    assertThat(inTransaction(() -> repo.recordDeliveryAttempt(id, firstClaimTime,
+        IamDeliveryStatus.DELIVERY_ERROR, secondClaimTime, secondClaimTime)), is(0));
+    assertThat(inTransaction(() -> repo.recordDeliveryAttempt(id, secondClaimTime,
+        IamDeliveryStatus.DELIVERED, secondClaimTime, null)), is(1));
+
+    IamEmailNotification notification = repo.findOne(id);
+    assertThat(notification.getDeliveryStatus(), is(IamDeliveryStatus.DELIVERED));
+    assertThat(notification.getDeliveryAttempts(), is(1));
+  }
+}
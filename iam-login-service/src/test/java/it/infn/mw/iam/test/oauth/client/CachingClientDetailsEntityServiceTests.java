@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.client;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.repository.OAuth2ClientRepository;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.infn.mw.iam.audit.events.client.ClientUpdatedEvent;
+import it.infn.mw.iam.core.cache.NullCacheEvictionBroadcaster;
+import it.infn.mw.iam.core.oauth.client.CachingClientDetailsEntityService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingClientDetailsEntityServiceTests {
+
+  public static final String CLIENT_ID = "client";
+
+  @Mock
+  OAuth2ClientRepository clientRepo;
+
+  @Mock
+  ClientDetailsEntity client;
+
+  CachingClientDetailsEntityService clientService;
+
+  @Before
+  public void setup() {
+    clientService =
+        new CachingClientDetailsEntityService(new NullCacheEvictionBroadcaster(), 10, 300);
+    ReflectionTestUtils.setField(clientService, null, clientRepo, OAuth2ClientRepository.class);
+  }
+
+  @Test
+  public void loadedClientIsCached() {
+    when(clientRepo.getClientByClientId(CLIENT_ID)).thenReturn(client);
+
+    assertThat(clientService.loadClientByClientId(CLIENT_ID), sameInstance(client));
+    assertThat(clientService.loadClientByClientId(CLIENT_ID), sameInstance(client));
+
+    verify(clientRepo, times(1)).getClientByClientId(CLIENT_ID);
+    assertThat(clientService.getClientCache().stats().hitCount(), is(1L));
+  }
+
+  @Test
+  public void clientEventEvictsCachedClient() {
+    when(clientRepo.getClientByClientId(CLIENT_ID)).thenReturn(client);
+
+    clientService.loadClientByClientId(CLIENT_ID);
+    clientService.onApplicationEvent(new ClientUpdatedEvent(this, CLIENT_ID));
+    clientService.loadClientByClientId(CLIENT_ID);
+
+    verify(clientRepo, times(2)).getClientByClientId(CLIENT_ID);
+  }
+
+  @Test
+  public void clientNotFoundIsNotCached() {
+
+    try {
+      clientService.loadClientByClientId(CLIENT_ID);
+    } catch (InvalidClientException e) {
+      // expected
+    }
+
+    when(clientRepo.getClientByClientId(CLIENT_ID)).thenReturn(client);
+    assertThat(clientService.loadClientByClientId(CLIENT_ID), sameInstance(client));
+    verify(clientRepo, times(2)).getClientByClientId(CLIENT_ID);
+  }
+}
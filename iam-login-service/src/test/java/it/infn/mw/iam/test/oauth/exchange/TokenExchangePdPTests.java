@@ -25,21 +25,28 @@ import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toSet;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.TokenRequest;
 
+import it.infn.mw.iam.audit.events.exchange_policy.ExchangePolicyCreatedEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
 import it.infn.mw.iam.core.oauth.exchange.DefaultTokenExchangePdp;
 import it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult;
 import it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.Decision;
@@ -52,6 +59,8 @@ import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyRepository;
 @RunWith(MockitoJUnitRunner.class)
 public class TokenExchangePdPTests extends TokenExchangePdpTestSupport {
 
+  static final long REFRESH_PERIOD_SECS = 300;
+
   @Spy
   TokenRequest request = buildTokenRequest();
 
@@ -67,7 +76,12 @@ public class TokenExchangePdPTests extends TokenExchangePdpTestSupport {
   @Mock
   ScopeMatcherRegistry scopeMatchersRegistry;
 
-  @InjectMocks
+  @Mock
+  CacheEvictionBroadcaster evictionBroadcaster;
+
+  @Mock
+  Clock clock;
+
   DefaultTokenExchangePdp pdp;
 
   private TokenRequest buildTokenRequest() {
@@ -76,6 +90,9 @@ public class TokenExchangePdPTests extends TokenExchangePdpTestSupport {
 
   @Before
   public void before() {
+    pdp = new DefaultTokenExchangePdp(repo, scopeMatchersRegistry, evictionBroadcaster, clock,
+        REFRESH_PERIOD_SECS);
+
     when(originClient.getClientId()).thenReturn(ORIGIN_CLIENT_ID);
     when(destinationClient.getClientId()).thenReturn(DESTINATION_CLIENT_ID);
     
@@ -241,4 +258,88 @@ public class TokenExchangePdPTests extends TokenExchangePdpTestSupport {
     assertThat(result.message().get(), is("scope exchange not allowed by policy"));
     
   }
+
+  @Test
+  public void policiesAreLoadedOnceAndReloadedOnPolicyEvents() {
+    IamTokenExchangePolicyEntity p1 = buildDenyExamplePolicy(1L, "Deny all exchanges");
+    IamTokenExchangePolicyEntity p2 = buildPermitExamplePolicy(2L, "Allow all exchanges");
+
+    when(repo.findAll()).thenReturn(asList(p1));
+
+    pdp.validateTokenExchange(request, originClient, destinationClient);
+    TokenExchangePdpResult result =
+        pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(Decision.DENY));
+    verify(repo, times(1)).findAll();
+
+    when(repo.findAll()).thenReturn(asList(p2));
+    pdp.onApplicationEvent(new ExchangePolicyCreatedEvent(this, 2L));
+
+    result = pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(Decision.PERMIT));
+    assertThat(result.policy().get().getId(), is(2L));
+    verify(repo, times(2)).findAll();
+    verify(evictionBroadcaster).registerEvictionHandler(eq(DefaultTokenExchangePdp.CACHE_NAME),
+        any());
+    verify(evictionBroadcaster).broadcastEviction(DefaultTokenExchangePdp.CACHE_NAME, "2");
+  }
+
+  @Test
+  public void policiesForOtherClientsAreNotApplicable() {
+    IamTokenExchangePolicyEntity p1 = buildPermitExamplePolicy(1L, "Allow exchanges from other");
+    p1.setOriginClient(buildByIdClientMatcher("other"));
+
+    IamTokenExchangePolicyEntity p2 = buildPermitExamplePolicy(2L, "Allow exchanges to s4 clients");
+    p2.setDestinationClient(buildByScopeClientMatcher("s4"));
+
+    IamTokenExchangePolicyEntity p3 = buildDenyExamplePolicy(3L, "Deny exchanges to s3 clients");
+    p3.setOriginClient(buildByIdClientMatcher("origin"));
+    p3.setDestinationClient(buildByScopeClientMatcher("s3"));
+
+    when(repo.findAll()).thenReturn(asList(p1, p2));
+
+    TokenExchangePdpResult result =
+        pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(NOT_APPLICABLE));
+
+    when(repo.findAll()).thenReturn(asList(p1, p2, p3));
+    pdp.evictPolicies();
+
+    result = pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(Decision.DENY));
+    assertThat(result.policy().get().getId(), is(3L));
+  }
+
+  @Test
+  public void policiesAreReloadedAfterTheRefreshPeriod() {
+    IamTokenExchangePolicyEntity p1 = buildDenyExamplePolicy(1L, "Deny all exchanges");
+    IamTokenExchangePolicyEntity p2 = buildPermitExamplePolicy(2L, "Allow all exchanges");
+
+    final long refreshPeriodMsec = TimeUnit.SECONDS.toMillis(REFRESH_PERIOD_SECS);
+
+    when(clock.millis()).thenReturn(0L);
+    when(repo.findAll()).thenReturn(asList(p1));
+
+    TokenExchangePdpResult result =
+        pdp.validateTokenExchange(request, originClient, destinationClient);
+    assertThat(result.decision(), is(Decision.DENY));
+
+    // A change not propagated by any event is not seen before the refresh period expires
+    when(repo.findAll()).thenReturn(asList(p2));
+    when(clock.millis()).thenReturn(refreshPeriodMsec - 1);
+
+    result = pdp.validateTokenExchange(request, originClient, destinationClient);
+    assertThat(result.decision(), is(Decision.DENY));
+    verify(repo, times(1)).findAll();
+
+    when(clock.millis()).thenReturn(refreshPeriodMsec);
+
+    result = pdp.validateTokenExchange(request, originClient, destinationClient);
+    assertThat(result.decision(), is(Decision.PERMIT));
+    verify(repo, times(2)).findAll();
+  }
 }
@@ -37,8 +37,8 @@ import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.IamLoginService;
 import it.infn.mw.iam.core.oauth.profile.aarc.AarcClaimValueHelper;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 import it.infn.mw.iam.test.core.CoreControllerTestSupport;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -56,7 +56,7 @@ public class AarcClaimValueHelperTests {
   @Autowired
   AarcClaimValueHelper helper;
 
-  IamUserInfo userInfo = mock(IamUserInfo.class);
+  UserInfoSnapshot userInfo = mock(UserInfoSnapshot.class);
 
   @Before
   public void setup() {
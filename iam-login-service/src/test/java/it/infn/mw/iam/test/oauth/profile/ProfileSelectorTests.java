@@ -17,15 +17,22 @@ package it.infn.mw.iam.test.oauth.profile;
 
 import static com.google.common.collect.Sets.newLinkedHashSet;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.oauth2.provider.ClientDetails;
@@ -34,6 +41,8 @@ import org.springframework.security.oauth2.provider.ClientDetailsService;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import it.infn.mw.iam.audit.events.client.ClientUpdatedEvent;
+import it.infn.mw.iam.core.cache.CacheEvictionBroadcaster;
 import it.infn.mw.iam.core.oauth.profile.JWTProfile;
 import it.infn.mw.iam.core.oauth.profile.ScopeAwareProfileResolver;
 
@@ -103,34 +112,97 @@ public class ProfileSelectorTests {
 
     assertThat(profile, is(iamProfile));
 
+    profileResolver.evictProfile(CLIENT_ID);
     when(client.getScope()).thenReturn(
         newLinkedHashSet(() -> Arrays.stream(new String[] {"openid", "iam"}).iterator()));
 
     profile = profileResolver.resolveProfile(CLIENT_ID);
     assertThat(profile, is(iamProfile));
     
+    profileResolver.evictProfile(CLIENT_ID);
     when(client.getScope()).thenReturn(
         newLinkedHashSet(() -> Arrays.stream(new String[] {"openid", "wlcg"}).iterator()));
 
     profile = profileResolver.resolveProfile(CLIENT_ID);
     assertThat(profile, is(wlcgProfile));
     
+    profileResolver.evictProfile(CLIENT_ID);
     when(client.getScope()).thenReturn(
         newLinkedHashSet(() -> Arrays.stream(new String[] {"openid", "wlcg", "iam"}).iterator()));
 
     profile = profileResolver.resolveProfile(CLIENT_ID);
     assertThat(profile, is(iamProfile));
 
+    profileResolver.evictProfile(CLIENT_ID);
     when(client.getScope()).thenReturn(
         newLinkedHashSet(() -> Arrays.stream(new String[] {"openid", "aarc"}).iterator()));
 
     profile = profileResolver.resolveProfile(CLIENT_ID);
     assertThat(profile, is(aarcProfile));
 
+    profileResolver.evictProfile(CLIENT_ID);
     when(client.getScope()).thenReturn(
         newLinkedHashSet(() -> Arrays.stream(new String[] {"openid", "wlcg", "aarc"}).iterator()));
 
     profile = profileResolver.resolveProfile(CLIENT_ID);
     assertThat(profile, is(iamProfile));
   }
+
+  @Test
+  public void resolvedProfileIsCached() throws Exception {
+    when(clientsService.loadClientByClientId(CLIENT_ID)).thenReturn(client);
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "wlcg"));
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+
+    verify(clientsService, times(1)).loadClientByClientId(CLIENT_ID);
+    assertThat(profileResolver.getProfileCache().stats().hitCount(), is(1L));
+    assertThat(profileResolver.getProfileCache().stats().missCount(), is(1L));
+  }
+
+  @Test
+  public void clientEventEvictsCachedProfile() throws Exception {
+    when(clientsService.loadClientByClientId(CLIENT_ID)).thenReturn(client);
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "wlcg"));
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "aarc"));
+    profileResolver.onApplicationEvent(new ClientUpdatedEvent(this, CLIENT_ID));
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(aarcProfile));
+    verify(clientsService, times(2)).loadClientByClientId(CLIENT_ID);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void clientEventsAreBroadcastAndRemoteEvictionsHandled() throws Exception {
+    CacheEvictionBroadcaster broadcaster = mock(CacheEvictionBroadcaster.class);
+    ArgumentCaptor<Consumer<String>> handler =
+        ArgumentCaptor.forClass((Class<Consumer<String>>) (Class<?>) Consumer.class);
+
+    Map<String, JWTProfile> profileMap = Maps.newHashMap();
+    profileMap.put(ScopeAwareProfileResolver.WLCG_PROFILE_ID, wlcgProfile);
+
+    ScopeAwareProfileResolver resolver = new ScopeAwareProfileResolver(iamProfile, profileMap,
+        clientsService, broadcaster, 10, 60);
+
+    verify(broadcaster).registerEvictionHandler(eq(ScopeAwareProfileResolver.CACHE_NAME),
+        handler.capture());
+
+    when(clientsService.loadClientByClientId(CLIENT_ID)).thenReturn(client);
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "wlcg"));
+
+    assertThat(resolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+
+    resolver.onApplicationEvent(new ClientUpdatedEvent(this, CLIENT_ID));
+    verify(broadcaster).broadcastEviction(ScopeAwareProfileResolver.CACHE_NAME, CLIENT_ID);
+
+    assertThat(resolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+
+    // An eviction received from another replica
+    handler.getValue().accept(CLIENT_ID);
+    assertThat(resolver.getProfileCache().getIfPresent(CLIENT_ID), nullValue());
+  }
 }
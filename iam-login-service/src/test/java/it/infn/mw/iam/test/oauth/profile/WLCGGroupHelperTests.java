@@ -43,8 +43,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.core.oauth.profile.wlcg.WLCGGroupHelper;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
 import it.infn.mw.iam.persistence.model.IamGroup;
-import it.infn.mw.iam.persistence.model.IamUserInfo;
 
 @RunWith(MockitoJUnitRunner.class)
 public class WLCGGroupHelperTests {
@@ -53,7 +53,7 @@ public class WLCGGroupHelperTests {
   OAuth2AccessTokenEntity token;
 
   @Mock
-  IamUserInfo userInfo;
+  UserInfoSnapshot userInfo;
 
   WLCGGroupHelper helper = new WLCGGroupHelper();
 
@@ -60,6 +60,29 @@ public class ScopeMatcherTests {
 
   }
 
+  @Test
+  public void testPathMatchHonoursSegmentBoundaries() {
+
+    ScopeMatcher matcher = structuredPathMatcher("read", "/path");
+
+    assertThat(matcher.matches("read:/pathfoo"), is(false));
+    assertThat(matcher.matches("read:/path/"), is(true));
+    assertThat(matcher.matches("read:/path/x"), is(true));
+    assertThat(matcher.matches("readx:/path"), is(false));
+    assertThat(matcher.matches("read"), is(false));
+  }
+
+  @Test
+  public void testPrefixAndPathAreMatchedLiterally() {
+
+    ScopeMatcher matcher = structuredPathMatcher("storage.read", "/.+");
+
+    assertThat(matcher.matches("storageXread:/.+"), is(false));
+    assertThat(matcher.matches("storage.read:/data"), is(false));
+    assertThat(matcher.matches("storage.read:/.+"), is(true));
+    assertThat(matcher.matches("storage.read:/.+/data"), is(true));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testScopeRelativePathDetection() {
 
@@ -18,8 +18,10 @@ package it.infn.mw.iam.test.oauth.scope;
 import static com.google.common.collect.Sets.newHashSet;
 import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
 import static it.infn.mw.iam.core.oauth.scope.matchers.StringEqualsScopeMatcher.stringEqualsMatcher;
+import static it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher.structuredPathMatcher;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.hasSize;
@@ -34,6 +36,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.oauth2.provider.ClientDetails;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
@@ -90,4 +93,36 @@ public class ScopeRegistryTests {
     assertThat(matchers, hasItem(regexpMatcher("^test:/.*$")));
   }
 
+  @Test
+  public void testCustomMatchersAreLookedUpByKind() {
+
+    ScopeMatcher pathMatcher = structuredPathMatcher("storage.read", "/");
+    ScopeMatcher otherPathMatcher = structuredPathMatcher("storage.write", "/");
+    ScopeMatcher equalsMatcher = stringEqualsMatcher("storage.read:/");
+    ScopeMatcher regexpMatcher = regexpMatcher("^storage\\..*$");
+
+    DefaultScopeMatcherRegistry matcherRegistry = new DefaultScopeMatcherRegistry(
+        ImmutableSet.of(pathMatcher, otherPathMatcher, equalsMatcher, regexpMatcher));
+
+    assertThat(matcherRegistry.findMatcherForScope("storage.read:/"), is(pathMatcher));
+    assertThat(matcherRegistry.findMatcherForScope("storage.read:/data"), is(pathMatcher));
+    assertThat(matcherRegistry.findMatcherForScope("storage.write:/data"), is(otherPathMatcher));
+    assertThat(matcherRegistry.findMatcherForScope("storage.stage:/data"), is(regexpMatcher));
+    assertThat(matcherRegistry.findMatcherForScope("openid"), is(stringEqualsMatcher("openid")));
+  }
+
+  @Test
+  public void testFirstMatchingCustomMatcherWins() {
+
+    ScopeMatcher equalsMatcher = stringEqualsMatcher("storage.read:/");
+    ScopeMatcher regexpMatcher = regexpMatcher("^storage\\..*$");
+    ScopeMatcher pathMatcher = structuredPathMatcher("storage.read", "/");
+
+    DefaultScopeMatcherRegistry matcherRegistry = new DefaultScopeMatcherRegistry(
+        ImmutableSet.of(equalsMatcher, regexpMatcher, pathMatcher));
+
+    assertThat(matcherRegistry.findMatcherForScope("storage.read:/"), is(equalsMatcher));
+    assertThat(matcherRegistry.findMatcherForScope("storage.read:/data"), is(regexpMatcher));
+  }
+
 }
@@ -34,6 +34,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -46,6 +47,7 @@ import org.springframework.web.context.WebApplicationContext;
 import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyCreatedEvent;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamScopePolicy;
 import it.infn.mw.iam.persistence.model.PolicyRule;
@@ -82,6 +84,9 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
   @Autowired
   private IamScopePolicyRepository scopePolicyRepo;
 
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
   private MockMvc mvc;
 
   @Before
@@ -90,6 +95,11 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
         MockMvcBuilders.webAppContextSetup(context).alwaysDo(log()).apply(springSecurity()).build();
   }
 
+  void savePolicy(IamScopePolicy policy) {
+    scopePolicyRepo.save(policy);
+    eventPublisher.publishEvent(new ScopePolicyCreatedEvent(this, policy));
+  }
+
   IamAccount findTestAccount() {
     return accountRepo.findByUsername("test")
       .orElseThrow(() -> new AssertionError("Expected test account not found!"));
@@ -105,7 +115,7 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
     up.setRule(PolicyRule.DENY);
     up.setScopes(Sets.newHashSet(SCIM_READ));
 
-    scopePolicyRepo.save(up);
+    savePolicy(up);
 
     String clientId = "password-grant";
     String clientSecret = "secret";
@@ -129,7 +139,7 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
     up.setAccount(testAccount);
     up.setRule(PolicyRule.DENY);
 
-    scopePolicyRepo.save(up);
+    savePolicy(up);
 
     String clientId = "password-grant";
     String clientSecret = "secret";
@@ -155,7 +165,7 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
     up.setRule(PolicyRule.DENY);
     up.setScopes(Sets.newHashSet("read-tasks"));
 
-    scopePolicyRepo.save(up);
+    savePolicy(up);
 
     String clientId = "client";
 
@@ -198,7 +208,7 @@ public class ScopePolicyFilteringIntegrationTests extends ScopePolicyTestUtils {
     up.setScopes(newHashSet("read:/", "write:/"));
     up.setMatchingPolicy(PATH);
 
-    scopePolicyRepo.save(up);
+    savePolicy(up);
 
     String clientId = "client";
 
@@ -17,6 +17,7 @@ package it.infn.mw.iam.test.oauth.scope.pdp;
 
 
 import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
@@ -28,12 +29,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyCreatedEvent;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyDeletedEvent;
 import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicyPDP;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamGroup;
@@ -56,6 +60,13 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
   @Autowired
   ScopePolicyPDP pdp;
 
+  @Autowired
+  ApplicationEventPublisher eventPublisher;
+
+  void savePolicy(IamScopePolicy policy) {
+    policyScopeRepo.save(policy);
+    eventPublisher.publishEvent(new ScopePolicyCreatedEvent(this, policy));
+  }
 
   IamAccount findTestAccount() {
     return accountRepo.findByUsername("test")
@@ -82,7 +93,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.linkAccount(testAccount);
     up.getScopes().add(SCIM_WRITE);
 
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "scim:write"), testAccount);
@@ -100,7 +111,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add(OPENID);
     up.getScopes().add(PROFILE);
 
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet(OPENID, PROFILE, SCIM_WRITE), testAccount);
@@ -121,7 +132,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add(SCIM_WRITE);
     up.linkGroup(firstGroup);
 
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "scim:write"), testAccount);
@@ -143,7 +154,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     gp.setScopes(Sets.newHashSet(OPENID, PROFILE));
     
     
-    policyScopeRepo.save(gp);
+    savePolicy(gp);
     
     Set<String> filteredScopes = pdp
         .filterScopes(Sets.newHashSet("openid", "profile"), testAccount);
@@ -165,13 +176,13 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     gp.linkGroup(firstGroup);
     gp.setScopes(Sets.newHashSet(OPENID, PROFILE));
 
-    policyScopeRepo.save(gp);
+    savePolicy(gp);
 
     IamScopePolicy ap = initPermitScopePolicy();
     ap.linkAccount(testAccount);
     ap.getScopes().add(SCIM_WRITE);
 
-    policyScopeRepo.save(ap);
+    savePolicy(ap);
 
     Set<String> filteredScopes = pdp
       .filterScopes(Sets.newHashSet("openid", "profile", "scim:write", "scim:read"), testAccount);
@@ -193,13 +204,13 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add(SCIM_WRITE);
     up.linkGroup(firstGroup);
     up.setDescription(firstGroup.getName());
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     up = initPermitScopePolicy();
     up.getScopes().add(SCIM_WRITE);
     up.linkGroup(secondGroup);
     up.setDescription(secondGroup.getName());
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "scim:write"), testAccount);
@@ -220,13 +231,13 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add(SCIM_WRITE);
     up.linkGroup(firstGroup);
     up.setDescription(firstGroup.getName());
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     up = initDenyScopePolicy();
     up.getScopes().add(SCIM_WRITE);
     up.linkGroup(secondGroup);
     up.setDescription(secondGroup.getName());
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "scim:write"), testAccount);
@@ -245,7 +256,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add("write:/");
     up.setMatchingPolicy(PATH);
     
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "read:/", "write", "read:/sub/path"), testAccount);
@@ -264,7 +275,7 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     up.getScopes().add("write:/");
     up.setMatchingPolicy(PATH);
     
-    policyScopeRepo.save(up);
+    savePolicy(up);
 
     Set<String> filteredScopes =
         pdp.filterScopes(Sets.newHashSet("openid", "profile", "read:/", "write", "read:/sub/path"), testAccount);
@@ -273,4 +284,48 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     assertThat(filteredScopes, hasItems("openid", "profile", "write", "read:/", "read:/sub/path"));
   }
 
+  @Test
+  public void testDefaultPolicyChangesAreEnforced() {
+
+    IamAccount testAccount = findTestAccount();
+    IamScopePolicy up = initDenyScopePolicy();
+    up.getScopes().add(SCIM_READ);
+
+    savePolicy(up);
+
+    Set<String> filteredScopes =
+        pdp.filterScopes(Sets.newHashSet(OPENID, PROFILE, SCIM_READ), testAccount);
+
+    assertThat(filteredScopes, hasSize(2));
+    assertThat(filteredScopes, hasItems(OPENID, PROFILE));
+
+    policyScopeRepo.delete(up);
+    eventPublisher.publishEvent(new ScopePolicyDeletedEvent(this, up));
+
+    filteredScopes = pdp.filterScopes(Sets.newHashSet(OPENID, PROFILE, SCIM_READ), testAccount);
+
+    assertThat(filteredScopes, hasSize(3));
+    assertThat(filteredScopes, hasItems(OPENID, PROFILE, SCIM_READ));
+  }
+
+  @Test
+  public void testRegexpFiltering() {
+
+    IamAccount testAccount = findTestAccount();
+    IamScopePolicy up = initDenyScopePolicy();
+
+    up.getScopes().add("scim:.*");
+    up.getScopes().add("(read|write):/secret.*");
+    up.setMatchingPolicy(REGEXP);
+
+    savePolicy(up);
+
+    Set<String> filteredScopes = pdp.filterScopes(
+        Sets.newHashSet("openid", "scim:read", "scim:write", "write:/secret/path", "read:/public"),
+        testAccount);
+
+    assertThat(filteredScopes, hasSize(2));
+    assertThat(filteredScopes, hasItems("openid", "read:/public"));
+  }
+
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.userinfo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity.SubjectType;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.service.PairwiseIdentiferService;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.audit.events.account.AccountRestoredEvent;
+import it.infn.mw.iam.audit.events.group.GroupRemovedEvent;
+import it.infn.mw.iam.core.cache.NullCacheEvictionBroadcaster;
+import it.infn.mw.iam.core.userinfo.CachingUserInfoService;
+import it.infn.mw.iam.core.userinfo.UserInfoSnapshot;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingUserInfoServiceTests {
+
+  public static final String USERNAME = "test";
+  public static final String ACCOUNT_UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
+  public static final String CLIENT_ID = "client";
+
+  @Mock
+  IamAccountRepository accountRepo;
+
+  @Mock
+  ClientDetailsEntityService clientService;
+
+  @Mock
+  PairwiseIdentiferService pairwiseIdentifierService;
+
+  @Mock
+  ClientDetailsEntity client;
+
+  IamAccount account;
+
+  CachingUserInfoService userInfoService;
+
+  @Before
+  public void setup() {
+    account = IamAccount.newAccount();
+    account.setUuid(ACCOUNT_UUID);
+    account.setUsername(USERNAME);
+    account.setLastUpdateTime(new Date());
+    account.getUserInfo().setGivenName("Test");
+    account.getUserInfo().setFamilyName("User");
+
+    IamGroup group = new IamGroup();
+    group.setUuid("c617d586-54e6-411d-8e38-649677980001");
+    group.setName("Analysis");
+    account.setGroups(Sets.newHashSet(group));
+
+    when(accountRepo.findByUsername(USERNAME)).thenReturn(Optional.of(account));
+    when(clientService.loadClientByClientId(CLIENT_ID)).thenReturn(client);
+
+    userInfoService = new CachingUserInfoService(accountRepo, clientService,
+        pairwiseIdentifierService, new NullCacheEvictionBroadcaster(), 10, 300);
+  }
+
+  @Test
+  public void snapshotIsCached() {
+    UserInfo ui = userInfoService.getByUsernameAndClientId(USERNAME, CLIENT_ID);
+
+    assertThat(ui.getSub(), is(ACCOUNT_UUID));
+    assertThat(ui.getName(), is("Test User"));
+    assertThat(((UserInfoSnapshot) ui).getGroups().iterator().next().getName(), is("Analysis"));
+
+    assertThat(userInfoService.getByUsernameAndClientId(USERNAME, CLIENT_ID), sameInstance(ui));
+    verify(accountRepo, times(1)).findByUsername(USERNAME);
+  }
+
+  @Test
+  public void unknownUserIsNotCached() {
+    when(accountRepo.findByUsername("unknown")).thenReturn(Optional.empty());
+
+    assertThat(userInfoService.getByUsername("unknown"), nullValue());
+    assertThat(userInfoService.getSnapshotCache().size(), is(0L));
+  }
+
+  @Test
+  public void accountEventEvictsSnapshot() {
+    userInfoService.getByUsername(USERNAME);
+    userInfoService.onApplicationEvent(new AccountRestoredEvent(this, account));
+    userInfoService.getByUsername(USERNAME);
+
+    verify(accountRepo, times(2)).findByUsername(USERNAME);
+  }
+
+  @Test
+  public void evictionByUuidFollowsRenames() {
+    userInfoService.getByUsername(USERNAME);
+
+    IamAccount renamed = IamAccount.newAccount();
+    renamed.setUuid(ACCOUNT_UUID);
+    renamed.setUsername("renamed");
+    renamed.setLastUpdateTime(new Date());
+    renamed.getUserInfo().setGivenName("Test");
+    renamed.getUserInfo().setFamilyName("User");
+    when(accountRepo.findByUsername("renamed")).thenReturn(Optional.of(renamed));
+
+    // The snapshot cached under the old username goes when the new one is cached
+    userInfoService.getByUsername("renamed");
+    assertThat(userInfoService.getSnapshotCache().getIfPresent(USERNAME), nullValue());
+
+    userInfoService.evictSnapshots(ACCOUNT_UUID);
+    assertThat(userInfoService.getSnapshotCache().size(), is(0L));
+  }
+
+  @Test
+  public void evictionOfUncachedAccountLeavesOtherSnapshots() {
+    userInfoService.getByUsername(USERNAME);
+    userInfoService.evictSnapshots("c617d586-54e6-411d-8e38-649677980002");
+
+    assertThat(userInfoService.getSnapshotCache().size(), is(1L));
+  }
+
+  @Test
+  public void groupEventFlushesSnapshots() {
+    userInfoService.getByUsername(USERNAME);
+    userInfoService.onApplicationEvent(
+        new GroupRemovedEvent(this, account.getGroups().iterator().next(), "Group removed"));
+
+    assertThat(userInfoService.getSnapshotCache().size(), is(0L));
+  }
+
+  @Test
+  public void pairwiseSubjectDoesNotAffectCachedSnapshot() {
+    when(client.getSubjectType()).thenReturn(SubjectType.PAIRWISE);
+    when(pairwiseIdentifierService.getIdentifier(any(UserInfo.class),
+        any(ClientDetailsEntity.class))).thenReturn("pairwise-sub");
+
+    UserInfo ui = userInfoService.getByUsernameAndClientId(USERNAME, CLIENT_ID);
+
+    assertThat(ui.getSub(), is("pairwise-sub"));
+    assertThat(userInfoService.getByUsername(USERNAME).getSub(), is(ACCOUNT_UUID));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshotCannotBeModified() {
+    userInfoService.getByUsername(USERNAME).setSub("another-sub");
+  }
+}
@@ -15,7 +15,9 @@
  */
 package it.infn.mw.iam.test.scim;
 
+import static it.infn.mw.iam.api.scim.controller.ScimUserController.NDJSON_CONTENT_TYPE;
 import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_CONTENT_TYPE;
+import static it.infn.mw.iam.test.scim.ScimUtils.getBulkLocation;
 import static it.infn.mw.iam.test.scim.ScimUtils.getMeLocation;
 import static it.infn.mw.iam.test.scim.ScimUtils.getUserLocation;
 import static it.infn.mw.iam.test.scim.ScimUtils.getUsersLocation;
@@ -33,6 +35,7 @@ import org.springframework.web.context.WebApplicationContext;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.infn.mw.iam.api.scim.model.ScimBulkRequest;
 import it.infn.mw.iam.api.scim.model.ScimUser;
 import it.infn.mw.iam.api.scim.model.ScimUserPatchRequest;
 import it.infn.mw.iam.api.scim.model.ScimPatchOperation.ScimPatchOperationType;
@@ -88,6 +91,17 @@ public class ScimRestUtilsMvc extends RestUtils {
     return doGet(getUsersLocation(), SCIM_CONTENT_TYPE, OK);
   }
 
+  public ResultActions exportUsers() throws Exception {
+
+    return doGet(getUsersLocation() + "/export", NDJSON_CONTENT_TYPE, OK);
+  }
+
+  public ResultActions postBulk(ScimBulkRequest request, HttpStatus expectedStatus)
+      throws Exception {
+
+    return doPost(getBulkLocation(), request, SCIM_CONTENT_TYPE, expectedStatus);
+  }
+
   public ScimUser getMe() throws Exception {
 
     return mapper.readValue(getMe(OK).andExpect(content().contentType(SCIM_CONTENT_TYPE))
@@ -46,6 +46,11 @@ public class ScimUtils {
     return SCIM_ENDPOINT_BASEURL + "/Me";
   }
 
+  public static String getBulkLocation() {
+
+    return SCIM_ENDPOINT_BASEURL + "/Bulk";
+  }
+
   public static String getUserLocation(String uuid) {
 
     return getUsersLocation() + "/" + uuid;
@@ -104,6 +109,26 @@ public class ScimUtils {
       return this;
     }
 
+    public ParamsBuilder cursor(String cursor) {
+      params.add("cursor", cursor);
+      return this;
+    }
+
+    public ParamsBuilder filter(String filter) {
+      params.add("filter", filter);
+      return this;
+    }
+
+    public ParamsBuilder sortBy(String sortBy) {
+      params.add("sortBy", sortBy);
+      return this;
+    }
+
+    public ParamsBuilder sortOrder(String sortOrder) {
+      params.add("sortOrder", sortOrder);
+      return this;
+    }
+
     public ParamsBuilder attributes(String attributes) {
       params.add("attributes", attributes);
       return this;
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.scim.filter;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import it.infn.mw.iam.api.scim.exception.ScimInvalidFilterException;
+import it.infn.mw.iam.api.scim.provisioning.filter.AttributeExpression;
+import it.infn.mw.iam.api.scim.provisioning.filter.LogicalExpression;
+import it.infn.mw.iam.api.scim.provisioning.filter.NotExpression;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterExpression;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterOperator;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterParser;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterSchema;
+import it.infn.mw.iam.api.scim.provisioning.filter.ValuePathExpression;
+
+public class ScimFilterParserTests {
+
+  @Test
+  public void testAttributeExpression() {
+    ScimFilterExpression e = ScimFilterParser.parse("userName eq \"test\"");
+
+    assertThat(e, instanceOf(AttributeExpression.class));
+    AttributeExpression ae = (AttributeExpression) e;
+    assertThat(ae.getAttributePath(), equalTo("userName"));
+    assertThat(ae.getOperator(), equalTo(ScimFilterOperator.EQ));
+    assertThat(ae.getValue(), equalTo("test"));
+  }
+
+  @Test
+  public void testKeywordsAreCaseInsensitive() {
+    ScimFilterExpression e = ScimFilterParser.parse("userName Eq \"a\" AND active EQ TRUE");
+
+    assertThat(e.toString(), equalTo("(userName eq \"a\" and active eq true)"));
+  }
+
+  @Test
+  public void testValueTypes() {
+    assertThat(((AttributeExpression) ScimFilterParser.parse("active eq false")).getValue(),
+        equalTo(Boolean.FALSE));
+    assertThat(((AttributeExpression) ScimFilterParser.parse("title eq null")).getValue(),
+        nullValue());
+    assertThat(((AttributeExpression) ScimFilterParser.parse("x gt 10.5")).getValue(),
+        equalTo(new BigDecimal("10.5")));
+    assertThat(((AttributeExpression) ScimFilterParser.parse("title pr")).getOperator(),
+        equalTo(ScimFilterOperator.PR));
+  }
+
+  @Test
+  public void testStringEscapes() {
+    ScimFilterExpression e = ScimFilterParser.parse("displayName eq \"a \\\"quoted\\\" \\u0041\"");
+
+    assertThat(((AttributeExpression) e).getValue(), equalTo("a \"quoted\" A"));
+  }
+
+  @Test
+  public void testPrecedence() {
+    ScimFilterExpression e = ScimFilterParser.parse("a eq \"1\" or b eq \"2\" and c eq \"3\"");
+
+    assertThat(e.toString(), equalTo("(a eq \"1\" or (b eq \"2\" and c eq \"3\"))"));
+
+    e = ScimFilterParser.parse("(a eq \"1\" or b eq \"2\") and c eq \"3\"");
+    assertThat(e.toString(), equalTo("((a eq \"1\" or b eq \"2\") and c eq \"3\")"));
+  }
+
+  @Test
+  public void testNotExpression() {
+    ScimFilterExpression e = ScimFilterParser.parse("not (userName sw \"test\")");
+
+    assertThat(e, instanceOf(NotExpression.class));
+  }
+
+  @Test
+  public void testValuePathExpression() {
+    ScimFilterExpression e =
+        ScimFilterParser.parse("groups[display eq \"Production\" or value eq \"x\"]");
+
+    assertThat(e, instanceOf(ValuePathExpression.class));
+    ValuePathExpression vp = (ValuePathExpression) e;
+    assertThat(vp.getAttributePath(), equalTo("groups"));
+    assertThat(vp.getFilter(), instanceOf(LogicalExpression.class));
+  }
+
+  @Test
+  public void testSchemaQualifiedAttributes() {
+    ScimFilterSchema.USERS
+      .resolve("urn:ietf:params:scim:schemas:core:2.0:User:userName");
+    ScimFilterSchema.USERS
+      .resolve("urn:indigo-dc:scim:schemas:IndigoUser:sshKeys.fingerprint");
+    ScimFilterSchema.USERS.resolve("EMAILS");
+  }
+
+  @Test
+  public void testIndexedFilters() {
+    assertThat(ScimFilterSchema.USERS.isIndexed(ScimFilterParser.parse("userName eq \"x\"")),
+        is(true));
+    assertThat(ScimFilterSchema.USERS.isIndexed(ScimFilterParser.parse("userName sw \"x\"")),
+        is(true));
+    assertThat(ScimFilterSchema.USERS.isIndexed(ScimFilterParser.parse("emails co \"x\"")),
+        is(false));
+    assertThat(ScimFilterSchema.USERS
+      .isIndexed(ScimFilterParser.parse("emails co \"x\" and userName sw \"t\"")), is(true));
+    assertThat(ScimFilterSchema.USERS
+      .isIndexed(ScimFilterParser.parse("emails co \"x\" or userName sw \"t\"")), is(false));
+    assertThat(ScimFilterSchema.USERS
+      .isIndexed(ScimFilterParser.parse("not (userName eq \"x\")")), is(false));
+    assertThat(ScimFilterSchema.USERS
+      .isIndexed(ScimFilterParser.parse("groups[display eq \"Production\"]")), is(true));
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testUnknownAttributeIsRejected() {
+    ScimFilterSchema.USERS.isIndexed(ScimFilterParser.parse("password eq \"x\""));
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testUnknownOperatorIsRejected() {
+    ScimFilterParser.parse("userName like \"x\"");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testMissingValueIsRejected() {
+    ScimFilterParser.parse("userName eq");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testUnterminatedStringIsRejected() {
+    ScimFilterParser.parse("userName eq \"test");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testUnbalancedParenthesesAreRejected() {
+    ScimFilterParser.parse("(userName eq \"test\"");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testTrailingTokensAreRejected() {
+    ScimFilterParser.parse("userName eq \"test\" \"other\"");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testNestedValuePathsAreRejected() {
+    ScimFilterParser.parse("groups[members[value eq \"x\"]]");
+  }
+
+  @Test(expected = ScimInvalidFilterException.class)
+  public void testTooManyConditionsAreRejected() {
+    StringBuilder sb = new StringBuilder("userName eq \"0\"");
+    for (int i = 1; i <= ScimFilterParser.MAX_ATTRIBUTE_EXPRESSIONS; i++) {
+      sb.append(" or userName eq \"").append(i).append("\"");
+    }
+    ScimFilterParser.parse(sb.toString());
+  }
+}
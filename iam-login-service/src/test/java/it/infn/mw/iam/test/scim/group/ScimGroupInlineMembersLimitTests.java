@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.scim.group;
+
+import static it.infn.mw.iam.api.scim.model.ScimConstants.INDIGO_GROUP_SCHEMA;
+import static it.infn.mw.iam.api.scim.model.ScimConstants.SCIM_CONTENT_TYPE;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.group.IamGroupMembershipService;
+import it.infn.mw.iam.core.group.IamGroupService;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+import it.infn.mw.iam.test.scim.ScimUtils;
+import it.infn.mw.iam.test.util.WithMockOAuthUser;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+@Transactional
+@TestPropertySource(properties = {"iam.scim.group.inline-members-limit=1"})
+@WithMockOAuthUser(clientId = "scim-client-rw", scopes = {"scim:read"})
+public class ScimGroupInlineMembersLimitTests {
+
+  private static final String PRODUCTION_GROUP_UUID = "c617d586-54e6-411d-8e38-64967798fa8a";
+  private static final String TEST_USER_UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
+  private static final String TEST_100_USERNAME = "test_100";
+
+  @Autowired
+  private WebApplicationContext context;
+
+  @Autowired
+  private IamAccountRepository accountRepo;
+
+  @Autowired
+  private IamGroupService groupService;
+
+  @Autowired
+  private IamGroupMembershipService membershipService;
+
+  private MockMvc mvc;
+
+  @Before
+  public void setup() {
+    mvc = MockMvcBuilders.webAppContextSetup(context)
+      .apply(springSecurity())
+      .alwaysDo(log())
+      .build();
+  }
+
+  @Test
+  public void testMembersBeyondTheLimitAreLeftToTheMembersSubResource() throws Exception {
+
+    IamGroup group = groupService.findByUuid(PRODUCTION_GROUP_UUID)
+      .orElseThrow(() -> new AssertionError("Expected group not found"));
+    IamAccount account = accountRepo.findByUsername(TEST_100_USERNAME)
+      .orElseThrow(() -> new AssertionError("Expected account not found"));
+
+    membershipService.addMembers(group, singletonList(
+        new IamAccountIds(account.getId(), account.getUuid(), account.getUsername())));
+
+    //@formatter:off
+    mvc.perform(get(ScimUtils.getGroupLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.members", hasSize(1)))
+      .andExpect(jsonPath("$.members[0].value", equalTo(TEST_USER_UUID)))
+      .andExpect(jsonPath("$." + INDIGO_GROUP_SCHEMA + ".memberCount", equalTo(2)))
+      .andExpect(jsonPath("$." + INDIGO_GROUP_SCHEMA + ".membersLocation",
+          endsWith("/scim/Groups/" + PRODUCTION_GROUP_UUID + "/members")));
+    //@formatter:on
+  }
+
+  @Test
+  public void testMembersWithinTheLimitAreAllListed() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(ScimUtils.getGroupLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.members", hasSize(1)))
+      .andExpect(jsonPath("$." + INDIGO_GROUP_SCHEMA + ".memberCount").doesNotExist())
+      .andExpect(jsonPath("$." + INDIGO_GROUP_SCHEMA + ".membersLocation").doesNotExist());
+    //@formatter:on
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.scim.group;
+
+import static it.infn.mw.iam.api.scim.model.ScimConstants.SCIM_CONTENT_TYPE;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.api.scim.model.ScimListResponse;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+import it.infn.mw.iam.test.scim.ScimUtils;
+import it.infn.mw.iam.test.util.WithMockOAuthUser;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {IamLoginService.class, CoreControllerTestSupport.class})
+@WebAppConfiguration
+@Transactional
+@WithMockOAuthUser(clientId = "scim-client-rw", scopes = {"scim:read"})
+public class ScimGroupMembersTests {
+
+  private static final String PRODUCTION_GROUP_UUID = "c617d586-54e6-411d-8e38-64967798fa8a";
+  private static final String EMPTY_GROUP_UUID = "c617d586-54e6-411d-8e38-649677980001";
+  private static final String TEST_USER_UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
+
+  @Autowired
+  private WebApplicationContext context;
+
+  private MockMvc mvc;
+
+  @Before
+  public void setup() {
+    mvc = MockMvcBuilders.webAppContextSetup(context)
+      .apply(springSecurity())
+      .alwaysDo(log())
+      .build();
+  }
+
+  private String membersLocation(String groupUuid) {
+    return ScimUtils.getGroupLocation(groupUuid) + "/members";
+  }
+
+  @Test
+  public void testGroupMembersAreSerialized() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(ScimUtils.getGroupLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.members", hasSize(1)))
+      .andExpect(jsonPath("$.members[0].value", equalTo(TEST_USER_UUID)))
+      .andExpect(jsonPath("$.members[0].display", equalTo("Test User")))
+      .andExpect(jsonPath("$.members[0].$ref", endsWith("/scim/Users/" + TEST_USER_UUID)));
+    //@formatter:on
+  }
+
+  @Test
+  public void testGroupMembersCanBeExcluded() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(ScimUtils.getGroupLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE)
+        .param("excludedAttributes", "members"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.id", equalTo(PRODUCTION_GROUP_UUID)))
+      .andExpect(jsonPath("$.members").doesNotExist());
+    //@formatter:on
+  }
+
+  @Test
+  public void testGroupMembersSubResource() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(membersLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.schemas", contains(ScimListResponse.SCHEMA)))
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.itemsPerPage", equalTo(1)))
+      .andExpect(jsonPath("$.startIndex", equalTo(1)))
+      .andExpect(jsonPath("$.Resources", hasSize(1)))
+      .andExpect(jsonPath("$.Resources[0].value", equalTo(TEST_USER_UUID)))
+      .andExpect(jsonPath("$.Resources[0].display", equalTo("Test User")));
+    //@formatter:on
+  }
+
+  @Test
+  public void testGroupMembersSubResourceCountOnly() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(membersLocation(PRODUCTION_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE)
+        .param("count", "0"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.Resources").doesNotExist());
+    //@formatter:on
+  }
+
+  @Test
+  public void testEmptyGroupMembersSubResource() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(membersLocation(EMPTY_GROUP_UUID))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.totalResults", equalTo(0)));
+    //@formatter:on
+  }
+
+  @Test
+  public void testUnknownGroupMembersSubResource() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(membersLocation("unknown-group"))
+        .contentType(SCIM_CONTENT_TYPE))
+      .andExpect(status().isNotFound());
+    //@formatter:on
+  }
+}
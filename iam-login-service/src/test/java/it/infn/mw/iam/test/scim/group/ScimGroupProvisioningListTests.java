@@ -223,4 +223,43 @@ public class ScimGroupProvisioningListTests {
       .andExpect(jsonPath("$.Resources", hasSize(equalTo(count))));
     //@formatter:on
   }
+
+  @Test
+  public void testDisplayNameFilter() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(GROUP_URI)
+        .contentType(SCIM_CONTENT_TYPE)
+        .param("filter", "displayName sw \"Test-00\""))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.totalResults", equalTo(9)))
+      .andExpect(jsonPath("$.Resources", hasSize(equalTo(9))));
+    //@formatter:on
+  }
+
+  @Test
+  public void testMembersFilter() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(GROUP_URI)
+        .contentType(SCIM_CONTENT_TYPE)
+        .param("filter", "members.display eq \"test\"")
+        .param("sortBy", "displayName"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.totalResults", equalTo(2)))
+      .andExpect(jsonPath("$.Resources[0].displayName", equalTo("Analysis")))
+      .andExpect(jsonPath("$.Resources[1].displayName", equalTo("Production")));
+    //@formatter:on
+  }
+
+  @Test
+  public void testInvalidFilter() throws Exception {
+
+    //@formatter:off
+    mvc.perform(get(GROUP_URI)
+        .contentType(SCIM_CONTENT_TYPE)
+        .param("filter", "userName eq \"test\""))
+      .andExpect(status().isBadRequest());
+    //@formatter:on
+  }
 }
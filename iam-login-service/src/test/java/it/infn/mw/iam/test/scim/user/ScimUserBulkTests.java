@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.scim.user;
+
+import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_CLIENT_ID;
+import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_READ_SCOPE;
+import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_WRITE_SCOPE;
+import static it.infn.mw.iam.test.scim.ScimUtils.buildUser;
+import static it.infn.mw.iam.test.scim.ScimUtils.buildUserWithPassword;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.api.scim.model.ScimBulkOperation;
+import it.infn.mw.iam.api.scim.model.ScimBulkRequest;
+import it.infn.mw.iam.api.scim.model.ScimUser;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+import it.infn.mw.iam.test.scim.ScimRestUtilsMvc;
+import it.infn.mw.iam.test.util.WithMockOAuthUser;
+import it.infn.mw.iam.test.util.oauth.MockOAuth2Filter;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(
+    classes = {IamLoginService.class, CoreControllerTestSupport.class, ScimRestUtilsMvc.class})
+@WebAppConfiguration
+@Transactional
+@WithMockOAuthUser(clientId = SCIM_CLIENT_ID, scopes = {SCIM_READ_SCOPE, SCIM_WRITE_SCOPE})
+public class ScimUserBulkTests {
+
+  @Autowired
+  private IamAccountRepository accountRepo;
+
+  @Autowired
+  private PasswordEncoder encoder;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  @Autowired
+  private ScimRestUtilsMvc scimUtils;
+
+  @Autowired
+  private MockOAuth2Filter mockOAuth2Filter;
+
+  @After
+  public void teardown() {
+    mockOAuth2Filter.cleanupSecurityContext();
+  }
+
+  private ScimBulkOperation postUser(String bulkId, ScimUser user) {
+    return new ScimBulkOperation("POST", bulkId, "/Users", mapper.valueToTree(user));
+  }
+
+  private ScimBulkRequest bulkRequest(Integer failOnErrors, ScimBulkOperation... ops) {
+    return new ScimBulkRequest(null, failOnErrors, Lists.newArrayList(ops));
+  }
+
+  @Test
+  public void testBulkUserCreation() throws Exception {
+
+    ScimBulkRequest request = bulkRequest(null,
+        postUser("u1",
+            buildUserWithPassword("bulk_user_1", "password", "bulk1@example.org", "Bulk", "One")),
+        postUser("u2", buildUser("bulk_user_2", "bulk2@example.org", "Bulk", "Two")),
+        postUser("u3", buildUser("bulk_user_3", "bulk3@example.org", "Bulk", "Three")));
+
+    scimUtils.postBulk(request, HttpStatus.OK)
+      .andExpect(jsonPath("$.schemas[0]",
+          equalTo("urn:ietf:params:scim:api:messages:2.0:BulkResponse")))
+      .andExpect(jsonPath("$.Operations", hasSize(3)))
+      .andExpect(jsonPath("$.Operations[0].bulkId", equalTo("u1")))
+      .andExpect(jsonPath("$.Operations[0].method", equalTo("POST")))
+      .andExpect(jsonPath("$.Operations[0].status", equalTo("201")))
+      .andExpect(jsonPath("$.Operations[0].location", containsString("/scim/Users/")))
+      .andExpect(jsonPath("$.Operations[1].status", equalTo("201")))
+      .andExpect(jsonPath("$.Operations[2].status", equalTo("201")));
+
+    IamAccount account = accountRepo.findByUsername("bulk_user_1")
+      .orElseThrow(() -> new AssertionError("Expected account not found"));
+
+    assertThat(account.getUserInfo().getEmail(), equalTo("bulk1@example.org"));
+    assertThat(account.getUserInfo().getEmailVerified(), is(true));
+    assertThat(encoder.matches("password", account.getPassword()), is(true));
+    assertThat(account.getAuthorities(), hasSize(1));
+
+    assertThat(accountRepo.findByUsername("bulk_user_2").isPresent(), is(true));
+    assertThat(accountRepo.findByUsername("bulk_user_3").isPresent(), is(true));
+  }
+
+  @Test
+  public void testBulkUserCreationReportsConflicts() throws Exception {
+
+    ScimBulkRequest request = bulkRequest(null,
+        postUser("existing-username", buildUser("test", "bulk1@example.org", "Bulk", "One")),
+        postUser("existing-email", buildUser("bulk_user_2", "test@iam.test", "Bulk", "Two")),
+        postUser("valid", buildUser("bulk_user_3", "bulk3@example.org", "Bulk", "Three")),
+        postUser("duplicate-email", buildUser("bulk_user_4", "bulk3@example.org", "Bulk", "Four")),
+        postUser("existing-oidc-id",
+            ScimUser.builder("bulk_user_5")
+              .buildEmail("bulk5@example.org")
+              .buildName("Bulk", "Five")
+              .buildOidcId("urn:test-oidc-issuer", "test-user")
+              .build()));
+
+    scimUtils.postBulk(request, HttpStatus.OK)
+      .andExpect(jsonPath("$.Operations", hasSize(5)))
+      .andExpect(jsonPath("$.Operations[0].status", equalTo("409")))
+      .andExpect(jsonPath("$.Operations[0].response.detail",
+          equalTo("A user with username 'test' already exists")))
+      .andExpect(jsonPath("$.Operations[1].status", equalTo("409")))
+      .andExpect(jsonPath("$.Operations[2].status", equalTo("201")))
+      .andExpect(jsonPath("$.Operations[3].status", equalTo("409")))
+      .andExpect(jsonPath("$.Operations[4].status", equalTo("409")));
+
+    assertThat(accountRepo.findByUsername("bulk_user_2").isPresent(), is(false));
+    assertThat(accountRepo.findByUsername("bulk_user_3").isPresent(), is(true));
+    assertThat(accountRepo.findByUsername("bulk_user_4").isPresent(), is(false));
+    assertThat(accountRepo.findByUsername("bulk_user_5").isPresent(), is(false));
+  }
+
+  @Test
+  public void testFailOnErrorsStopsProcessing() throws Exception {
+
+    ScimBulkRequest request = bulkRequest(1,
+        postUser("u1", buildUser("bulk_user_1", "bulk1@example.org", "Bulk", "One")),
+        postUser("u2", buildUser("test", "bulk2@example.org", "Bulk", "Two")),
+        postUser("u3", buildUser("bulk_user_3", "bulk3@example.org", "Bulk", "Three")));
+
+    scimUtils.postBulk(request, HttpStatus.OK)
+      .andExpect(jsonPath("$.Operations", hasSize(2)))
+      .andExpect(jsonPath("$.Operations[0].status", equalTo("201")))
+      .andExpect(jsonPath("$.Operations[1].status", equalTo("409")));
+
+    assertThat(accountRepo.findByUsername("bulk_user_1").isPresent(), is(true));
+    assertThat(accountRepo.findByUsername("bulk_user_3").isPresent(), is(false));
+  }
+
+  @Test
+  public void testInvalidOperationsAreReported() throws Exception {
+
+    ScimBulkRequest request = bulkRequest(null,
+        new ScimBulkOperation("DELETE", null, "/Users/some-id", null),
+        postUser(null, buildUser("bulk_user_1", "bulk1@example.org", "Bulk", "One")),
+        postUser("u3", buildUser(null, "bulk3@example.org", "Bulk", "Three")),
+        postUser("u4", buildUser("bulk_user_4", "bulk4@example.org", "Bulk", "Four")),
+        postUser("u4", buildUser("bulk_user_5", "bulk5@example.org", "Bulk", "Five")));
+
+    scimUtils.postBulk(request, HttpStatus.OK)
+      .andExpect(jsonPath("$.Operations", hasSize(5)))
+      .andExpect(jsonPath("$.Operations[0].status", equalTo("400")))
+      .andExpect(jsonPath("$.Operations[1].status", equalTo("400")))
+      .andExpect(jsonPath("$.Operations[2].status", equalTo("400")))
+      .andExpect(jsonPath("$.Operations[3].status", equalTo("201")))
+      .andExpect(jsonPath("$.Operations[4].status", equalTo("400")))
+      .andExpect(jsonPath("$.Operations[4].response.detail", equalTo("Duplicate bulkId: u4")));
+  }
+
+  @Test
+  public void testTooManyOperationsAreRejected() throws Exception {
+
+    List<ScimBulkOperation> ops = Lists.newArrayList();
+
+    for (int i = 0; i < 1001; i++) {
+      ops.add(postUser("u" + i,
+          buildUser("bulk_user_" + i, "bulk" + i + "@example.org", "Bulk", "User")));
+    }
+
+    scimUtils.postBulk(new ScimBulkRequest(null, null, ops), HttpStatus.PAYLOAD_TOO_LARGE);
+
+    assertThat(accountRepo.findByUsername("bulk_user_0").isPresent(), is(false));
+  }
+
+  @Test
+  public void testEmptyBulkRequestIsRejected() throws Exception {
+
+    scimUtils.postBulk(bulkRequest(null), HttpStatus.BAD_REQUEST);
+  }
+}
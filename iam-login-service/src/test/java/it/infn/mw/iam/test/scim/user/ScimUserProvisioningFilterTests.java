@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.scim.user;
+
+import static it.infn.mw.iam.test.TestUtils.TOTAL_USERS_COUNT;
+import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_CLIENT_ID;
+import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_READ_SCOPE;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.api.scim.provisioning.filter.ScimFilterSchema;
+import it.infn.mw.iam.test.core.CoreControllerTestSupport;
+import it.infn.mw.iam.test.scim.ScimRestUtilsMvc;
+import it.infn.mw.iam.test.scim.ScimUtils.ParamsBuilder;
+import it.infn.mw.iam.test.util.WithMockOAuthUser;
+import it.infn.mw.iam.test.util.oauth.MockOAuth2Filter;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(
+    classes = {IamLoginService.class, CoreControllerTestSupport.class, ScimRestUtilsMvc.class})
+@WebAppConfiguration
+@WithMockOAuthUser(clientId = SCIM_CLIENT_ID, scopes = {SCIM_READ_SCOPE})
+public class ScimUserProvisioningFilterTests {
+
+  @Autowired
+  private ScimRestUtilsMvc scimUtils;
+
+  @Autowired
+  private MockOAuth2Filter mockOAuth2Filter;
+
+  @After
+  public void teardown() {
+    mockOAuth2Filter.cleanupSecurityContext();
+  }
+
+  @Test
+  public void testUserNameEqFilter() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName eq \"test\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.Resources", hasSize(1)))
+      .andExpect(jsonPath("$.Resources[0].userName", equalTo("test")));
+  }
+
+  @Test
+  public void testSchemaQualifiedAttribute() throws Exception {
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("urn:ietf:params:scim:schemas:core:2.0:User:userName eq \"test\"")
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)));
+  }
+
+  @Test
+  public void testUserNamePrefixFilter() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName sw \"test_1\"").count(10).build())
+      .andExpect(jsonPath("$.totalResults", equalTo(100)))
+      .andExpect(jsonPath("$.Resources", hasSize(10)));
+  }
+
+  @Test
+  public void testEmailContainsFilterIsCapped() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("emails.value co \"@test.org\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(248)))
+      .andExpect(
+          jsonPath("$.itemsPerPage", equalTo(ScimFilterSchema.UNINDEXED_FILTER_MAX_PAGE_SIZE)));
+  }
+
+  @Test
+  public void testUserNameAndEmailFiltersIgnoreCase() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName eq \"TeSt\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.Resources[0].userName", equalTo("test")));
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName sw \"TEST_1\"").count(10).build())
+      .andExpect(jsonPath("$.totalResults", equalTo(100)));
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("emails.value co \"@TEST.org\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(248)));
+  }
+
+  @Test
+  public void testLikeWildcardsAreEscaped() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName sw \"test%\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(0)));
+  }
+
+  @Test
+  public void testGroupMembershipFilter() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("groups.display eq \"Production\"").build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.Resources[0].userName", equalTo("test")));
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("groups[display eq \"Production\" or display eq \"Analysis\"]")
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)));
+  }
+
+  @Test
+  public void testCredentialFilters() throws Exception {
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("urn:indigo-dc:scim:schemas:IndigoUser:oidcIds[issuer eq "
+            + "\"urn:test-oidc-issuer\" and subject eq \"test-user\"]")
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(1)))
+      .andExpect(jsonPath("$.Resources[0].userName", equalTo("test")));
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("oidcIds[issuer eq \"urn:test-oidc-issuer\" and "
+            + "subject eq \"105440632287425289613\"]")
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(0)));
+  }
+
+  @Test
+  public void testLogicalOperators() throws Exception {
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("userName eq \"test\" or userName eq \"admin\"")
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(2)));
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("not (userName sw \"test_\")")
+        .count(0)
+        .build())
+      .andExpect(jsonPath("$.totalResults", equalTo(TOTAL_USERS_COUNT - 248)));
+  }
+
+  @Test
+  public void testSortBy() throws Exception {
+
+    scimUtils
+      .getUsers(ParamsBuilder.builder()
+        .filter("userName sw \"test_\"")
+        .sortBy("userName")
+        .sortOrder("descending")
+        .count(1)
+        .build())
+      .andExpect(jsonPath("$.Resources[0].userName", equalTo("test_347")));
+  }
+
+  @Test
+  public void testInvalidFilters() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().filter("userName eq").build(), BAD_REQUEST);
+    scimUtils.getUsers(ParamsBuilder.builder().filter("password eq \"x\"").build(), BAD_REQUEST);
+    scimUtils.getUsers(ParamsBuilder.builder().filter("active co \"x\"").build(), BAD_REQUEST);
+    scimUtils.getUsers(ParamsBuilder.builder().filter("meta.created gt \"yesterday\"").build(),
+        BAD_REQUEST);
+    scimUtils.getUsers(ParamsBuilder.builder().sortBy("groups.display").build(), BAD_REQUEST);
+  }
+}
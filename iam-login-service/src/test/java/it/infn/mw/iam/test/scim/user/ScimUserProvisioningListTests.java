@@ -22,7 +22,14 @@ import static it.infn.mw.iam.test.scim.ScimUtils.SCIM_READ_SCOPE;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+import java.util.List;
+import java.util.Set;
+
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,6 +37,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+import com.jayway.jsonpath.JsonPath;
+
 import it.infn.mw.iam.IamLoginService;
 import it.infn.mw.iam.api.scim.model.ScimListResponse;
 import it.infn.mw.iam.test.core.CoreControllerTestSupport;
@@ -51,6 +65,9 @@ public class ScimUserProvisioningListTests {
   @Autowired
   private MockOAuth2Filter mockOAuth2Filter;
 
+  @Autowired
+  private ObjectMapper mapper;
+
   @After
   public void teardown() {
     mockOAuth2Filter.cleanupSecurityContext();
@@ -156,4 +173,90 @@ public class ScimUserProvisioningListTests {
         .andExpect(jsonPath("$.schemas", contains(SCHEMA)))
         .andExpect(jsonPath("$.Resources", hasSize(equalTo(5))));
   }
+
+  @Test
+  public void testCursorPagination() throws Exception {
+
+    String firstPage = scimUtils.getUsers(ParamsBuilder.builder().cursor("").count(10).build())
+      .andExpect(jsonPath("$.totalResults", equalTo(TOTAL_USERS_COUNT)))
+      .andExpect(jsonPath("$.itemsPerPage", equalTo(10)))
+      .andExpect(jsonPath("$.startIndex").doesNotExist())
+      .andExpect(jsonPath("$.Resources", hasSize(equalTo(10))))
+      .andExpect(jsonPath("$.nextCursor").exists())
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+
+    String nextCursor = JsonPath.read(firstPage, "$.nextCursor");
+    List<String> firstPageIds = JsonPath.read(firstPage, "$.Resources[*].id");
+
+    String secondPage =
+        scimUtils.getUsers(ParamsBuilder.builder().cursor(nextCursor).count(10).build())
+          .andExpect(jsonPath("$.Resources", hasSize(equalTo(10))))
+          .andExpect(jsonPath("$.nextCursor", not(equalTo(nextCursor))))
+          .andReturn()
+          .getResponse()
+          .getContentAsString();
+
+    List<String> secondPageIds = JsonPath.read(secondPage, "$.Resources[*].id");
+
+    assertThat(Sets.intersection(Sets.newHashSet(firstPageIds), Sets.newHashSet(secondPageIds)),
+        hasSize(0));
+  }
+
+  @Test
+  public void testCursorPaginationWalksAllUsers() throws Exception {
+
+    Set<String> ids = Sets.newHashSet();
+    String cursor = "";
+    int pages = 0;
+
+    while (cursor != null) {
+      String page = scimUtils.getUsers(ParamsBuilder.builder().cursor(cursor).count(100).build())
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+      ids.addAll(JsonPath.<List<String>>read(page, "$.Resources[*].id"));
+      cursor = mapper.readTree(page).path("nextCursor").textValue();
+      pages++;
+    }
+
+    assertThat(ids, hasSize(TOTAL_USERS_COUNT));
+    assertThat(pages, equalTo(3));
+  }
+
+  @Test
+  public void testCursorCountIsLimitedToOneThousand() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().cursor("").count(5000).build())
+      .andExpect(jsonPath("$.itemsPerPage", equalTo(TOTAL_USERS_COUNT)))
+      .andExpect(jsonPath("$.Resources", hasSize(equalTo(TOTAL_USERS_COUNT))))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  public void testInvalidCursorIsRejected() throws Exception {
+
+    scimUtils.getUsers(ParamsBuilder.builder().cursor("not-a-cursor").build(), BAD_REQUEST);
+  }
+
+  @Test
+  public void testExportStreamsAllUsers() throws Exception {
+
+    String content =
+        scimUtils.exportUsers().andReturn().getResponse().getContentAsString();
+
+    List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(content);
+    assertThat(lines, hasSize(TOTAL_USERS_COUNT));
+
+    Set<String> ids = Sets.newHashSet();
+    for (String line : lines) {
+      JsonNode user = mapper.readTree(line);
+      assertThat(user.has("password"), equalTo(false));
+      ids.add(user.get("id").textValue());
+    }
+
+    assertThat(ids, hasSize(TOTAL_USERS_COUNT));
+  }
 }
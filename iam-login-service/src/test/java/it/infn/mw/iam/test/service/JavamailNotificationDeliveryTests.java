@@ -18,31 +18,43 @@ package it.infn.mw.iam.test.service;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItemInArray;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.google.common.collect.Lists;
 
 import it.infn.mw.iam.core.IamDeliveryStatus;
 import it.infn.mw.iam.core.time.TimeProvider;
@@ -63,6 +75,10 @@ public class JavamailNotificationDeliveryTests {
   public static final String IAM_MAIL_FROM = "iam@test.example";
   public static final String IAM_ADMIN_ADDRESS = "admin@test.example";
 
+  public static final long NOW = 1_000_500L;
+  public static final long CLAIM_TIME = 1_000_000L;
+  public static final Long NOTIFICATION_ID = 1L;
+
   @Mock
   JavaMailSender mailSender;
 
@@ -73,100 +89,175 @@ public class JavamailNotificationDeliveryTests {
   TimeProvider timeProvider;
 
   @Mock
-  NotificationProperties properties;
+  PlatformTransactionManager txManager;
+
+  NotificationProperties properties = new NotificationProperties();
 
-  @InjectMocks
   private JavaMailNotificationDelivery delivery;
 
+  private List<SimpleMailMessage> sentMessages = Lists.newArrayList();
+
   @Captor
   ArgumentCaptor<IamDeliveryStatus> statusArgumentCaptor;
 
   @Captor
-  ArgumentCaptor<SimpleMailMessage> messageArgumentCaptor;
-  
+  ArgumentCaptor<Date> nextAttemptTimeCaptor;
+
   @Before
   public void setup() {
 
-    when(properties.getMailFrom()).thenReturn(IAM_MAIL_FROM);
-    when(properties.getAdminAddress()).thenReturn(IAM_ADMIN_ADDRESS);
-  }
-
+    properties.setMailFrom(IAM_MAIL_FROM);
+    properties.setAdminAddress(IAM_ADMIN_ADDRESS);
 
-  @Test
-  public void testNoMessageDelivery() {
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING)).thenReturn(emptyList());
+    when(timeProvider.currentTimeMillis()).thenReturn(NOW);
 
-    delivery.sendPendingNotifications();
-    verifyZeroInteractions(mailSender);
+    doAnswer(invocation -> {
+      for (Object arg : invocation.getArguments()) {
+        if (arg instanceof SimpleMailMessage[]) {
+          sentMessages.addAll(asList((SimpleMailMessage[]) arg));
+        } else {
+          sentMessages.add((SimpleMailMessage) arg);
+        }
+      }
+      return null;
+    }).when(mailSender).send((SimpleMailMessage[]) anyVararg());
 
+    delivery = new JavaMailNotificationDelivery(mailSender, notificationRepo, properties,
+        timeProvider, txManager);
   }
 
-  @Test
-  public void testMessageIsDelivered() {
+  @After
+  public void teardown() {
+    delivery.destroy();
+  }
 
-    String randomUuid = UUID.randomUUID().toString();
-    Date currentTime = new Date();
+  private IamEmailNotification pendingNotification(int deliveryAttempts) {
     IamEmailNotification notification = mock(IamEmailNotification.class);
     IamNotificationReceiver receiver = mock(IamNotificationReceiver.class);
 
     when(receiver.getIamEmailNotification()).thenReturn(notification);
     when(receiver.getEmailAddress()).thenReturn(TEST_0_EMAIL);
 
-    when(notification.getBody()).thenReturn("Body");
-    when(notification.getSubject()).thenReturn("Subject");
+    when(notification.getId()).thenReturn(NOTIFICATION_ID);
+    when(notification.getBody()).thenReturn(TEST_EMAIL_BODY);
+    when(notification.getSubject()).thenReturn(TEST_EMAIL_SUBJECT);
     when(notification.getDeliveryStatus()).thenReturn(IamDeliveryStatus.PENDING);
-    when(notification.getCreationTime()).thenReturn(currentTime);
-    when(notification.getUuid()).thenReturn(randomUuid);
+    when(notification.getDeliveryAttempts()).thenReturn(deliveryAttempts);
+    when(notification.getCreationTime()).thenReturn(new Date());
+    when(notification.getUuid()).thenReturn(UUID.randomUUID().toString());
+    when(notification.getReceivers()).thenReturn(asList(receiver));
 
+    when(notificationRepo.findDeliverableNotificationIds(any(Date.class), any(Date.class),
+        any(Pageable.class))).thenReturn(asList(NOTIFICATION_ID));
+    when(notificationRepo.claimNotification(eq(NOTIFICATION_ID), any(Date.class),
+        any(Date.class))).thenReturn(1);
+    when(notificationRepo.findAll(asList(NOTIFICATION_ID))).thenReturn(asList(notification));
+    when(notificationRepo.recordDeliveryAttempt(eq(NOTIFICATION_ID), any(Date.class),
+        any(IamDeliveryStatus.class), any(Date.class), any(Date.class))).thenReturn(1);
 
-    when(notification.getReceivers()).thenReturn(asList(receiver));
+    return notification;
+  }
+
+  private void verifyDeliveryAttemptRecorded() {
+    verify(notificationRepo).recordDeliveryAttempt(eq(NOTIFICATION_ID), eq(new Date(CLAIM_TIME)),
+        statusArgumentCaptor.capture(), eq(new Date(NOW)), nextAttemptTimeCaptor.capture());
+  }
+
+  @Test
+  public void testNoMessageDelivery() {
+    when(notificationRepo.findDeliverableNotificationIds(any(Date.class), any(Date.class),
+        any(Pageable.class))).thenReturn(emptyList());
+
+    delivery.sendPendingNotifications();
+    verifyZeroInteractions(mailSender);
+
+  }
+
+  @Test
+  public void testMessageIsDelivered() {
 
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING))
-      .thenReturn(asList(notification));
+    pendingNotification(0);
 
     delivery.sendPendingNotifications();
 
-    verify(notification).setDeliveryStatus(statusArgumentCaptor.capture());
-    verify(mailSender).send(messageArgumentCaptor.capture());
+    verifyDeliveryAttemptRecorded();
 
     assertThat(statusArgumentCaptor.getValue(), is(IamDeliveryStatus.DELIVERED));
-    assertThat(messageArgumentCaptor.getValue().getFrom(), equalTo(IAM_MAIL_FROM));
-    assertThat(messageArgumentCaptor.getValue().getSubject(), equalTo(TEST_EMAIL_SUBJECT));
-    assertThat(messageArgumentCaptor.getValue().getText(), equalTo(TEST_EMAIL_BODY));
-    assertThat(messageArgumentCaptor.getValue().getTo(), arrayWithSize(1));
-    assertThat(messageArgumentCaptor.getValue().getTo(), hasItemInArray(TEST_0_EMAIL));
+    assertThat(nextAttemptTimeCaptor.getValue(), nullValue());
 
+    assertThat(sentMessages, hasSize(1));
+    assertThat(sentMessages.get(0).getFrom(), equalTo(IAM_MAIL_FROM));
+    assertThat(sentMessages.get(0).getSubject(), equalTo(TEST_EMAIL_SUBJECT));
+    assertThat(sentMessages.get(0).getText(), equalTo(TEST_EMAIL_BODY));
+    assertThat(sentMessages.get(0).getTo(), arrayWithSize(1));
+    assertThat(sentMessages.get(0).getTo(), hasItemInArray(TEST_0_EMAIL));
+
+    assertThat(delivery.getDeliveredCount(), is(1L));
+    assertThat(delivery.getLastRunDeliveredCount(), is(1L));
   }
 
   @Test
   public void testDeliveryErrorIsPropagated() {
-    String randomUuid = UUID.randomUUID().toString();
-    Date currentTime = new Date();
-    IamEmailNotification notification = Mockito.mock(IamEmailNotification.class);
-    IamNotificationReceiver receiver = Mockito.mock(IamNotificationReceiver.class);
 
-    when(receiver.getIamEmailNotification()).thenReturn(notification);
-    when(receiver.getEmailAddress()).thenReturn(TEST_0_EMAIL);
+    pendingNotification(0);
 
-    when(notification.getBody()).thenReturn("Body");
-    when(notification.getSubject()).thenReturn("Subject");
-    when(notification.getDeliveryStatus()).thenReturn(IamDeliveryStatus.PENDING);
-    when(notification.getCreationTime()).thenReturn(currentTime);
-    when(notification.getUuid()).thenReturn(randomUuid);
+    doThrow(new MailSendException("Error sending email")).when(mailSender)
+      .send((SimpleMailMessage[]) anyVararg());
+
+    delivery.sendPendingNotifications();
+
+    verifyDeliveryAttemptRecorded();
+
+    assertThat(statusArgumentCaptor.getValue(), is(IamDeliveryStatus.DELIVERY_ERROR));
+    assertThat(nextAttemptTimeCaptor.getValue(),
+        is(new Date(NOW + properties.getDelivery().getInitialRetryDelayMsec())));
+    assertThat(delivery.getFailedCount(), is(1L));
+  }
+
+  @Test
+  public void testRetryDelayGrowsExponentially() {
+
+    pendingNotification(2);
 
     doThrow(new MailSendException("Error sending email")).when(mailSender)
-      .send(Mockito.any(SimpleMailMessage.class));
+      .send((SimpleMailMessage[]) anyVararg());
 
-    when(notification.getReceivers()).thenReturn(asList(receiver));
+    delivery.sendPendingNotifications();
 
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING))
-      .thenReturn(asList(notification));
+    verifyDeliveryAttemptRecorded();
+
+    assertThat(nextAttemptTimeCaptor.getValue(),
+        is(new Date(NOW + 4 * properties.getDelivery().getInitialRetryDelayMsec())));
+  }
+
+  @Test
+  public void testNoRetryAfterMaxAttempts() {
+
+    pendingNotification(properties.getDelivery().getMaxAttempts() - 1);
+
+    doThrow(new MailSendException("Error sending email")).when(mailSender)
+      .send((SimpleMailMessage[]) anyVararg());
 
     delivery.sendPendingNotifications();
-    verify(notification).setDeliveryStatus(statusArgumentCaptor.capture());
-    verify(mailSender).send(messageArgumentCaptor.capture());
-    
+
+    verifyDeliveryAttemptRecorded();
+
     assertThat(statusArgumentCaptor.getValue(), is(IamDeliveryStatus.DELIVERY_ERROR));
+    assertThat(nextAttemptTimeCaptor.getValue(), nullValue());
   }
 
+  @Test
+  public void testNotificationClaimedElsewhereIsNotDelivered() {
+
+    pendingNotification(0);
+
+    when(notificationRepo.claimNotification(eq(NOTIFICATION_ID), any(Date.class),
+        any(Date.class))).thenReturn(0);
+
+    delivery.sendPendingNotifications();
+
+    verifyZeroInteractions(mailSender);
+    verify(notificationRepo, never()).recordDeliveryAttempt(anyLong(), any(Date.class),
+        any(IamDeliveryStatus.class), any(Date.class), any(Date.class));
+  }
 }
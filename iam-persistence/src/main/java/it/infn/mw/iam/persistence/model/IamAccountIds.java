@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.model;
+
+/**
+ * A read-only projection holding the identifiers of an account, used to reason about sets of
+ * accounts (e.g. group memberships) without loading the accounts.
+ */
+public class IamAccountIds {
+
+  private final Long id;
+  private final String uuid;
+  private final String username;
+
+  public IamAccountIds(Long id, String uuid, String username) {
+    this.id = id;
+    this.uuid = uuid;
+    this.username = username;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  @Override
+  public int hashCode() {
+    return id == null ? 0 : id.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    IamAccountIds other = (IamAccountIds) obj;
+    return id == null ? other.id == null : id.equals(other.id);
+  }
+
+  @Override
+  public String toString() {
+    return username;
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.model;
+
+import java.util.Date;
+
+/**
+ * A read-only projection holding the account fields the account lifecycle handlers need, used to
+ * scan large sets of accounts without loading the accounts.
+ */
+public class IamAccountLifecycleRecord {
+
+  private final Long id;
+  private final String uuid;
+  private final String username;
+  private final Date endTime;
+  private final boolean active;
+
+  public IamAccountLifecycleRecord(Long id, String uuid, String username, Date endTime,
+      boolean active) {
+    this.id = id;
+    this.uuid = uuid;
+    this.username = username;
+    this.endTime = endTime;
+    this.active = active;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public Date getEndTime() {
+    return endTime;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+
+  @Override
+  public String toString() {
+    return username;
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.model;
+
+import java.util.Date;
+
+/**
+ * A read-only projection of the account attributes matched and sorted on by the account search,
+ * used to build search indexes without loading the accounts.
+ */
+public class IamAccountSearchRecord {
+
+  private final Long id;
+  private final String uuid;
+  private final String username;
+  private final String email;
+  private final String givenName;
+  private final String familyName;
+  private final Date creationTime;
+
+  public IamAccountSearchRecord(Long id, String uuid, String username, String email,
+      String givenName, String familyName, Date creationTime) {
+    this.id = id;
+    this.uuid = uuid;
+    this.username = username;
+    this.email = email;
+    this.givenName = givenName;
+    this.familyName = familyName;
+    this.creationTime = creationTime;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public String getGivenName() {
+    return givenName;
+  }
+
+  public String getFamilyName() {
+    return familyName;
+  }
+
+  public Date getCreationTime() {
+    return creationTime;
+  }
+}
@@ -77,6 +77,13 @@ public class IamEmailNotification implements Serializable{
   @Column(name = "last_update", nullable = true)
   private Date lastUpdate;
 
+  @Column(name = "delivery_attempts", nullable = false)
+  private int deliveryAttempts = 0;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "next_attempt_time", nullable = true)
+  private Date nextAttemptTime;
+
   public IamEmailNotification() {
     // empty on purpose
   }
@@ -155,6 +162,22 @@ public class IamEmailNotification implements Serializable{
     this.lastUpdate = lastUpdate;
   }
 
+  public int getDeliveryAttempts() {
+    return deliveryAttempts;
+  }
+
+  public void setDeliveryAttempts(int deliveryAttempts) {
+    this.deliveryAttempts = deliveryAttempts;
+  }
+
+  public Date getNextAttemptTime() {
+    return nextAttemptTime;
+  }
+
+  public void setNextAttemptTime(Date nextAttemptTime) {
+    this.nextAttemptTime = nextAttemptTime;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2019
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.model;
+
+import static it.infn.mw.iam.core.NameUtils.getFormatted;
+
+/**
+ * A read-only projection of a group member account, holding only what is needed to reference
+ * the member, so that group members can be listed without loading the member accounts.
+ */
+public class IamGroupMemberRef {
+
+  private final String uuid;
+  private final String givenName;
+  private final String middleName;
+  private final String familyName;
+
+  public IamGroupMemberRef(String uuid, String givenName, String middleName, String familyName) {
+    this.uuid = uuid;
+    this.givenName = givenName;
+    this.middleName = middleName;
+    this.familyName = familyName;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public String getName() {
+    return getFormatted(givenName, middleName, familyName);
+  }
+}
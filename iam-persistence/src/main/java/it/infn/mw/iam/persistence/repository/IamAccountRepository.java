@@ -15,21 +15,49 @@
  */
 package it.infn.mw.iam.persistence.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.QueryHint;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
 import it.infn.mw.iam.persistence.model.IamAccount;
-
-
-public interface IamAccountRepository
-    extends PagingAndSortingRepository<IamAccount, Long>, IamAccountRepositoryCustom {
+import it.infn.mw.iam.persistence.model.IamAccountIds;
+import it.infn.mw.iam.persistence.model.IamAccountLifecycleRecord;
+import it.infn.mw.iam.persistence.model.IamAccountSearchRecord;
+import it.infn.mw.iam.persistence.model.IamGroupMemberRef;
+import it.infn.mw.iam.persistence.model.IamOidcId;
+import it.infn.mw.iam.persistence.model.IamSamlId;
+
+
+public interface IamAccountRepository extends PagingAndSortingRepository<IamAccount, Long>,
+    JpaSpecificationExecutor<IamAccount>, IamAccountRepositoryCustom {
+
+  /**
+   * Returns the accounts whose id is greater than the given id, ordered by id. Used for keyset
+   * pagination: the cost of a page does not depend on its position, and the account
+   * associations are fetched with a few batch queries for the whole page.
+   */
+  @Query("select a from IamAccount a where a.id > :lastId order by a.id asc")
+  @QueryHints({@QueryHint(name = "eclipselink.batch.type", value = "IN"),
+      @QueryHint(name = "eclipselink.batch", value = "a.userInfo"),
+      @QueryHint(name = "eclipselink.batch", value = "a.authorities"),
+      @QueryHint(name = "eclipselink.batch", value = "a.groups"),
+      @QueryHint(name = "eclipselink.batch", value = "a.samlIds"),
+      @QueryHint(name = "eclipselink.batch", value = "a.oidcIds"),
+      @QueryHint(name = "eclipselink.batch", value = "a.sshKeys"),
+      @QueryHint(name = "eclipselink.batch", value = "a.x509Certificates"),
+      @QueryHint(name = "eclipselink.batch", value = "a.aupSignature")})
+  List<IamAccount> findAccountsAfterId(@Param("lastId") Long lastId, Pageable op);
 
   Optional<IamAccount> findByUuid(@Param("uuid") String uuid);
 
@@ -70,6 +98,50 @@ public interface IamAccountRepository
   @Query("select a from IamAccount a join a.x509Certificates c where c.certificate = :certificate")
   Optional<IamAccount> findByCertificate(@Param("certificate") String certificate);
 
+  @Query("select a.uuid from IamAccount a where a.uuid in :uuids")
+  List<String> findExistingUuids(@Param("uuids") Collection<String> uuids);
+
+  @Query("select a.username from IamAccount a where a.username in :usernames")
+  List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+  @Query("select ui.email from IamAccount a join a.userInfo ui where ui.email in :emails")
+  List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+  @Query("select oi from IamAccount a join a.oidcIds oi where oi.subject in :subjects")
+  List<IamOidcId> findBoundOidcIdsBySubject(@Param("subjects") Collection<String> subjects);
+
+  @Query("select si from IamAccount a join a.samlIds si where si.userId in :userIds")
+  List<IamSamlId> findBoundSamlIdsByUserId(@Param("userIds") Collection<String> userIds);
+
+  @Query("select sk.value from IamAccount a join a.sshKeys sk where sk.value in :values")
+  List<String> findBoundSshKeyValues(@Param("values") Collection<String> values);
+
+  @Query("select c.subjectDn from IamAccount a join a.x509Certificates c "
+      + "where c.subjectDn in :subjects")
+  List<String> findBoundCertificateSubjects(@Param("subjects") Collection<String> subjects);
+
+  String GROUP_MEMBER_REF_QUERY = "select new it.infn.mw.iam.persistence.model.IamGroupMemberRef("
+      + "a.uuid, ui.givenName, ui.middleName, ui.familyName) from IamAccount a join a.groups g "
+      + "join a.userInfo ui where g.id = :groupId order by a.id";
+
+  String GROUP_MEMBER_COUNT_QUERY =
+      "select count(a) from IamAccount a join a.groups g where g.id = :groupId";
+
+  @Query(value = GROUP_MEMBER_REF_QUERY, countQuery = GROUP_MEMBER_COUNT_QUERY)
+  Page<IamGroupMemberRef> findGroupMemberRefs(@Param("groupId") Long groupId, Pageable op);
+
+  @Query(GROUP_MEMBER_COUNT_QUERY)
+  long countByGroupId(@Param("groupId") Long groupId);
+
+  String ACCOUNT_IDS = "select new it.infn.mw.iam.persistence.model.IamAccountIds("
+      + "a.id, a.uuid, a.username) from IamAccount a ";
+
+  @Query(ACCOUNT_IDS + "where a.uuid in :uuids")
+  List<IamAccountIds> findAccountIdsByUuid(@Param("uuids") Collection<String> uuids);
+
+  @Query(ACCOUNT_IDS + "join a.groups g where g.id = :groupId")
+  List<IamAccountIds> findGroupMemberIds(@Param("groupId") Long groupId);
+
   @Query("select a from IamAccount a join a.groups ag where ag.id = :groupId")
   List<IamAccount> findByGroupId(@Param("groupId") Long groupId);
 
@@ -84,15 +156,73 @@ public interface IamAccountRepository
   List<IamAccount> findProvisionedAccountsWithLastLoginTimeBeforeTimestamp(
       @Param("timestamp") Date timestamp);
 
-  @Query("select a from IamAccount a join a.userInfo ui where lower(ui.email) LIKE lower(concat('%', :filter, '%')) or lower(a.username) LIKE lower(concat('%', :filter, '%')) or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) or lower(concat(ui.givenName, ' ', ui.familyName)) LIKE lower(concat('%', :filter, '%'))")
+  String ACCOUNT_FILTER = "from IamAccount a join a.userInfo ui "
+      + "where lower(ui.email) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(a.username) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(concat(ui.givenName, ' ', ui.familyName)) LIKE lower(concat('%', :filter, '%'))";
+
+  @Query("select a " + ACCOUNT_FILTER)
   Page<IamAccount> findByFilter(@Param("filter") String filter, Pageable op);
 
-  @Query("select count(a) from IamAccount a join a.userInfo ui where lower(ui.email) LIKE lower(concat('%', :filter, '%')) or lower(a.username) LIKE lower(concat('%', :filter, '%')) or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) or lower(concat(ui.givenName, ' ', ui.familyName)) LIKE lower(concat('%', :filter, '%'))")
+  @Query("select count(a) " + ACCOUNT_FILTER)
   long countByFilter(@Param("filter") String filter);
 
+  /**
+   * Returns a page of the accounts matching the given filter, without counting the total
+   * number of matching accounts.
+   */
+  @Query("select a " + ACCOUNT_FILTER)
+  List<IamAccount> listAccountsByFilter(@Param("filter") String filter, Pageable op);
+
+  /**
+   * Returns a page of accounts, without counting the total number of accounts.
+   */
+  @Query("select a from IamAccount a")
+  List<IamAccount> listAccounts(Pageable op);
+
+  String ACCOUNT_SEARCH_RECORD =
+      "select new it.infn.mw.iam.persistence.model.IamAccountSearchRecord(a.id, a.uuid, "
+          + "a.username, ui.email, ui.givenName, ui.familyName, a.creationTime) "
+          + "from IamAccount a join a.userInfo ui ";
+
+  @Query(ACCOUNT_SEARCH_RECORD + "where a.id > :lastId order by a.id")
+  List<IamAccountSearchRecord> findSearchRecordsAfterId(@Param("lastId") Long lastId,
+      Pageable op);
+
+  @Query(ACCOUNT_SEARCH_RECORD + "where a.uuid = :uuid")
+  Optional<IamAccountSearchRecord> findSearchRecordByUuid(@Param("uuid") String uuid);
+
+  @Query(ACCOUNT_SEARCH_RECORD + "where a.uuid in :uuids")
+  List<IamAccountSearchRecord> findSearchRecordsByUuids(@Param("uuids") Collection<String> uuids);
+
   @Query("select a from IamAccount a where a.endTime < :timestamp")
   Page<IamAccount> findExpiredAccountsAtTimestamp(@Param("timestamp") Date timestamp, Pageable op);
 
+  String ACCOUNT_LIFECYCLE_RECORD =
+      "select new it.infn.mw.iam.persistence.model.IamAccountLifecycleRecord("
+          + "a.id, a.uuid, a.username, a.endTime, a.active) from IamAccount a ";
+
+  /**
+   * Returns the first accounts expired at the given timestamp, ordered by (endTime, id). Used,
+   * together with {@link #findExpiredAccountRecordsAfter(Date, Date, Long, Pageable)}, to scan the
+   * expired accounts by keyset.
+   */
+  @Query(ACCOUNT_LIFECYCLE_RECORD
+      + "where a.endTime < :timestamp order by a.endTime asc, a.id asc")
+  List<IamAccountLifecycleRecord> findExpiredAccountRecords(@Param("timestamp") Date timestamp,
+      Pageable op);
+
+  /**
+   * Returns the accounts expired at the given timestamp that follow the (lastEndTime, lastId)
+   * key, ordered by (endTime, id).
+   */
+  @Query(ACCOUNT_LIFECYCLE_RECORD + "where a.endTime < :timestamp and (a.endTime > :lastEndTime "
+      + "or (a.endTime = :lastEndTime and a.id > :lastId)) order by a.endTime asc, a.id asc")
+  List<IamAccountLifecycleRecord> findExpiredAccountRecordsAfter(
+      @Param("timestamp") Date timestamp, @Param("lastEndTime") Date lastEndTime,
+      @Param("lastId") Long lastId, Pageable op);
+
   @Query("select a from IamAccount a join a.labels label where label.prefix = :prefix and label.name = :name")
   Page<IamAccount> findByLabelPrefixAndName(@Param("prefix") String prefix,
       @Param("name") String name, Pageable op);
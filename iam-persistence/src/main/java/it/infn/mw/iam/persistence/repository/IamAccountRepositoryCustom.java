@@ -15,14 +15,52 @@
  */
 package it.infn.mw.iam.persistence.repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
 import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.model.IamSamlId;
 
 public interface IamAccountRepositoryCustom {
   
   Optional<IamAccount> findBySamlId(IamSamlId samlId);  
   void touchLastLoginTimeForUserWithUsername(String username);
+
+  int touchLastLoginTimeForUsersWithUsernames(Collection<String> usernames, Date lastLoginTime);
+
+  /**
+   * Sets the last login time of each of the given accounts, keyed by username, in a single
+   * transaction. Each statement updates up to 500 accounts, setting each account's own login time
+   * with a <code>CASE</code> expression.
+   */
+  int touchLastLoginTimes(Map<String, Date> lastLoginTimes);
+
+  /**
+   * Returns a page of the accounts matching the given specification, without counting the
+   * total number of matching accounts.
+   */
+  List<IamAccount> listAccountsMatching(Specification<IamAccount> spec, Pageable op);
+
+  /**
+   * Sets the given label on the accounts with the given ids, replacing any label with the same
+   * prefix and name, without loading the accounts. Pending changes are flushed before the update.
+   * The persistence context is not cleared: callers holding managed copies of the updated
+   * accounts must refresh them, or clear the persistence context, to see the change.
+   */
+  int setLabelForAccounts(Collection<Long> accountIds, IamLabel label);
+
+  /**
+   * Disables the accounts with the given ids, without loading the accounts. Pending changes are
+   * flushed before the update; as for {@link #setLabelForAccounts(Collection, IamLabel)}, managed
+   * copies of the updated accounts are left untouched.
+   */
+  int disableAccounts(Collection<Long> accountIds, Date lastUpdateTime);
   
 }
@@ -16,21 +16,51 @@
 package it.infn.mw.iam.persistence.repository;
 
 
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.joining;
+
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Iterables;
 
 import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.model.IamSamlId;
 
 @Component
 public class IamAccountRepositoryImpl implements IamAccountRepositoryCustom {
 
+  private static final String LABEL_INSERT_ROW_TEMPLATE = "(?1, ?2, ?3, %d)";
+
+  // Two parameters per account, well below the limits of the supported databases
+  private static final int LAST_LOGIN_TIME_UPDATE_CHUNK_SIZE = 500;
+
   @Autowired
   IamAccountRepository repo;
 
+  @PersistenceContext
+  EntityManager em;
+
   @Override
   public Optional<IamAccount> findBySamlId(IamSamlId samlId) {
     return repo.findBySamlId(samlId.getIdpId(), samlId.getAttributeId(), 
@@ -40,10 +70,145 @@ public class IamAccountRepositoryImpl implements IamAccountRepositoryCustom {
 
   @Override
   public void touchLastLoginTimeForUserWithUsername(String username) {
-    repo.findByUsername(username).ifPresent( a -> {
-      a.setLastLoginTime(new Date());
-      repo.save(a);
-    });
+    touchLastLoginTimeForUsersWithUsernames(singleton(username), new Date());
+  }
+
+  @Override
+  @Transactional
+  public int touchLastLoginTimeForUsersWithUsernames(Collection<String> usernames,
+      Date lastLoginTime) {
+
+    if (usernames.isEmpty()) {
+      return 0;
+    }
+
+    return em
+      .createQuery(
+          "update IamAccount a set a.lastLoginTime = :lastLoginTime where a.username in :usernames")
+      .setParameter("lastLoginTime", lastLoginTime)
+      .setParameter("usernames", usernames)
+      .executeUpdate();
+  }
+
+  private int touchLastLoginTimesChunk(List<Map.Entry<String, Date>> chunk) {
+
+    StringBuilder sql = new StringBuilder("update iam_account set last_login_time = case username");
+
+    for (int i = 0; i < chunk.size(); i++) {
+      sql.append(String.format(" when ?%d then ?%d", 2 * i + 1, 2 * i + 2));
+    }
+
+    sql.append(" end where username in (");
+
+    for (int i = 0; i < chunk.size(); i++) {
+      sql.append(i == 0 ? "" : ", ").append('?').append(2 * i + 1);
+    }
+
+    Query update = em.createNativeQuery(sql.append(')').toString());
+
+    for (int i = 0; i < chunk.size(); i++) {
+      update.setParameter(2 * i + 1, chunk.get(i).getKey());
+      update.setParameter(2 * i + 2, chunk.get(i).getValue(), TemporalType.TIMESTAMP);
+    }
+
+    return update.executeUpdate();
+  }
+
+  @Override
+  @Transactional
+  public int touchLastLoginTimes(Map<String, Date> lastLoginTimes) {
+
+    int updatedAccounts = 0;
+
+    for (List<Map.Entry<String, Date>> chunk : Iterables.partition(lastLoginTimes.entrySet(),
+        LAST_LOGIN_TIME_UPDATE_CHUNK_SIZE)) {
+      updatedAccounts += touchLastLoginTimesChunk(chunk);
+    }
+
+    return updatedAccounts;
   }
 
+  @Override
+  public List<IamAccount> listAccountsMatching(Specification<IamAccount> spec, Pageable op) {
+
+    CriteriaBuilder cb = em.getCriteriaBuilder();
+    CriteriaQuery<IamAccount> query = cb.createQuery(IamAccount.class);
+    Root<IamAccount> root = query.from(IamAccount.class);
+    query.select(root);
+
+    if (spec != null) {
+      Predicate predicate = spec.toPredicate(root, query, cb);
+      if (predicate != null) {
+        query.where(predicate);
+      }
+    }
+
+    if (op.getSort() != null) {
+      query.orderBy(QueryUtils.toOrders(op.getSort(), root, cb));
+    }
+
+    return em.createQuery(query)
+      .setFirstResult(op.getOffset())
+      .setMaxResults(op.getPageSize())
+      .getResultList();
+  }
+
+  private static String idList(Collection<Long> ids) {
+    // Ids are numbers, so they can be inlined safely
+    return ids.stream().map(String::valueOf).collect(joining(","));
+  }
+
+  @Override
+  @Transactional
+  public int setLabelForAccounts(Collection<Long> accountIds, IamLabel label) {
+
+    if (accountIds.isEmpty()) {
+      return 0;
+    }
+
+    em.flush();
+
+    String prefixCondition = label.getPrefix() == null ? "prefix is null" : "prefix = ?2";
+
+    Query delete = em.createNativeQuery(String.format(
+        "delete from iam_account_labels where account_id in (%s) and name = ?1 and %s",
+        idList(accountIds), prefixCondition));
+    delete.setParameter(1, label.getName());
+
+    if (label.getPrefix() != null) {
+      delete.setParameter(2, label.getPrefix());
+    }
+
+    delete.executeUpdate();
+
+    String rows = accountIds.stream()
+      .map(id -> String.format(LABEL_INSERT_ROW_TEMPLATE, id))
+      .collect(joining(","));
+
+    return em
+      .createNativeQuery(
+          "insert into iam_account_labels (name, prefix, val, account_id) values " + rows)
+      .setParameter(1, label.getName())
+      .setParameter(2, label.getPrefix())
+      .setParameter(3, label.getValue())
+      .executeUpdate();
+  }
+
+  @Override
+  @Transactional
+  public int disableAccounts(Collection<Long> accountIds, Date lastUpdateTime) {
+
+    if (accountIds.isEmpty()) {
+      return 0;
+    }
+
+    em.flush();
+
+    return em
+      .createQuery("update IamAccount a set a.active = false, a.lastUpdateTime = :lastUpdateTime "
+          + "where a.id in :ids")
+      .setParameter("lastUpdateTime", lastUpdateTime)
+      .setParameter("ids", accountIds)
+      .executeUpdate();
+  }
 }
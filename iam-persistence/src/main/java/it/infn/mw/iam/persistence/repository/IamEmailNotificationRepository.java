@@ -20,7 +20,9 @@ import java.util.List;
 
 import javax.persistence.LockModeType;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -32,6 +34,17 @@ import it.infn.mw.iam.persistence.model.IamEmailNotification;
 public interface IamEmailNotificationRepository
     extends PagingAndSortingRepository<IamEmailNotification, Long> {
 
+  String STATUS = "it.infn.mw.iam.core.IamDeliveryStatus.";
+
+  /**
+   * Matches the notifications that can be claimed for delivery: pending notifications, failed
+   * notifications whose next attempt is due, and notifications claimed before the stale claim time
+   * and never completed (e.g., because the claiming replica stopped).
+   */
+  String DELIVERABLE_NOTIFICATION = "(n.deliveryStatus = " + STATUS + "PENDING "
+      + "or (n.deliveryStatus = " + STATUS + "DELIVERY_ERROR and n.nextAttemptTime <= :now) "
+      + "or (n.deliveryStatus = " + STATUS + "IN_PROGRESS and n.lastUpdate < :staleClaimTime))";
+
   @Lock(LockModeType.PESSIMISTIC_WRITE)
   List<IamEmailNotification> findByDeliveryStatus(IamDeliveryStatus deliveryStatus);
 
@@ -46,4 +59,33 @@ public interface IamEmailNotificationRepository
   Integer countByDeliveryStatus(IamDeliveryStatus deliveryStatus);
 
   List<IamEmailNotification> findByNotificationType(IamNotificationType notificationType);
+
+  @Query("select n.id from IamEmailNotification n where " + DELIVERABLE_NOTIFICATION
+      + " order by n.id asc")
+  List<Long> findDeliverableNotificationIds(@Param("now") Date now,
+      @Param("staleClaimTime") Date staleClaimTime, Pageable op);
+
+  /**
+   * Claims a notification for delivery, moving it to the IN_PROGRESS status. Returns 0 if the
+   * notification is no longer deliverable, e.g. because another replica claimed it first.
+   */
+  @Modifying
+  @Query("update IamEmailNotification n set n.deliveryStatus = " + STATUS + "IN_PROGRESS, "
+      + "n.lastUpdate = :now where n.id = :id and " + DELIVERABLE_NOTIFICATION)
+  int claimNotification(@Param("id") Long id, @Param("now") Date now,
+      @Param("staleClaimTime") Date staleClaimTime);
+
+  /**
+   * Records the outcome of a delivery attempt for a notification claimed at the given claim time.
+   * Returns 0 if the claim is no longer held, i.e. because it went stale and the notification has
+   * been claimed again, so that only the current claim holder records the outcome.
+   */
+  @Modifying(clearAutomatically = true)
+  @Query("update IamEmailNotification n set n.deliveryStatus = :status, n.lastUpdate = :now, "
+      + "n.deliveryAttempts = n.deliveryAttempts + 1, n.nextAttemptTime = :nextAttemptTime "
+      + "where n.id = :id and n.deliveryStatus = " + STATUS + "IN_PROGRESS "
+      + "and n.lastUpdate = :claimTime")
+  int recordDeliveryAttempt(@Param("id") Long id, @Param("claimTime") Date claimTime,
+      @Param("status") IamDeliveryStatus status, @Param("now") Date now,
+      @Param("nextAttemptTime") Date nextAttemptTime);
 }
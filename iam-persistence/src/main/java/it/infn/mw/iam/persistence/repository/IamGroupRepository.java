@@ -20,12 +20,14 @@ import java.util.Optional;
 import java.util.Set;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 import it.infn.mw.iam.persistence.model.IamGroup;
 
-public interface IamGroupRepository extends PagingAndSortingRepository<IamGroup, Long> {
+public interface IamGroupRepository
+    extends PagingAndSortingRepository<IamGroup, Long>, JpaSpecificationExecutor<IamGroup> {
 
   Optional<IamGroup> findByUuid(@Param("uuid") String uuid);
 
@@ -50,4 +52,11 @@ public interface IamGroupRepository extends PagingAndSortingRepository<IamGroup,
 
   long countByNameIgnoreCaseContainingOrUuidIgnoreCaseContaining(@Param("name") String name,
       @Param("uuid") String uuid);
+
+  @Query("select g from IamGroup g where lower(g.name) like lower(concat('%', :filter, '%')) "
+      + "or lower(g.uuid) like lower(concat('%', :filter, '%'))")
+  List<IamGroup> listGroupsByFilter(@Param("filter") String filter, Pageable op);
+
+  @Query("select g from IamGroup g")
+  List<IamGroup> listGroups(Pageable op);
 }
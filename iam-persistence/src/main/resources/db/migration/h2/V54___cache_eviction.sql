@@ -0,0 +1,10 @@
+CREATE TABLE iam_cache_eviction
+(
+    ID BIGINT IDENTITY NOT NULL,
+    cache_name VARCHAR(64) NOT NULL,
+    cache_key VARCHAR(256),
+    creation_time TIMESTAMP NOT NULL,
+    PRIMARY KEY (ID)
+);
+
+CREATE INDEX ice_ct_idx ON iam_cache_eviction(creation_time);
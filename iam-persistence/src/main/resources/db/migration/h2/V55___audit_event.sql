@@ -0,0 +1,14 @@
+CREATE TABLE iam_audit_event
+(
+    ID BIGINT IDENTITY NOT NULL,
+    event_time TIMESTAMP NOT NULL,
+    category VARCHAR(64) NOT NULL,
+    principal VARCHAR(255),
+    type VARCHAR(128) NOT NULL,
+    message VARCHAR(1024),
+    data CLOB,
+    PRIMARY KEY (ID)
+);
+
+CREATE INDEX iae_et_idx ON iam_audit_event(event_time);
+CREATE INDEX iae_p_idx ON iam_audit_event(principal);
@@ -0,0 +1,4 @@
+ALTER TABLE iam_email_notification ADD COLUMN delivery_attempts INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE iam_email_notification ADD COLUMN next_attempt_time TIMESTAMP;
+
+CREATE INDEX ien_ds_nat_idx ON iam_email_notification(delivery_status, next_attempt_time);
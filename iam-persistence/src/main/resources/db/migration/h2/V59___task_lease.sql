@@ -0,0 +1,7 @@
+CREATE TABLE iam_task_lease
+(
+    name VARCHAR(64) NOT NULL,
+    owner VARCHAR(256) NOT NULL,
+    expiration_time TIMESTAMP NOT NULL,
+    PRIMARY KEY (name)
+);
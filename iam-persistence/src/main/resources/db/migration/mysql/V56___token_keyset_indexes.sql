@@ -0,0 +1,18 @@
+ALTER TABLE access_token ADD COLUMN user_name VARCHAR(128);
+ALTER TABLE refresh_token ADD COLUMN user_name VARCHAR(128);
+
+UPDATE access_token t JOIN authentication_holder ah ON t.auth_holder_id = ah.id
+  JOIN saved_user_auth sua ON ah.user_auth_id = sua.id SET t.user_name = sua.name
+  WHERE CHAR_LENGTH(sua.name) <= 128;
+
+UPDATE refresh_token t JOIN authentication_holder ah ON t.auth_holder_id = ah.id
+  JOIN saved_user_auth sua ON ah.user_auth_id = sua.id SET t.user_name = sua.name
+  WHERE CHAR_LENGTH(sua.name) <= 128;
+
+CREATE INDEX at_exp_id_idx ON access_token(expiration, id);
+CREATE INDEX at_un_exp_id_idx ON access_token(user_name, expiration, id);
+CREATE INDEX at_ci_exp_id_idx ON access_token(client_id, expiration, id);
+
+CREATE INDEX rt_exp_id_idx ON refresh_token(expiration, id);
+CREATE INDEX rt_un_exp_id_idx ON refresh_token(user_name, expiration, id);
+CREATE INDEX rt_ci_exp_id_idx ON refresh_token(client_id, expiration, id);
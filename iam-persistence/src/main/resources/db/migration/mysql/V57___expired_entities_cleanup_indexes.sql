@@ -0,0 +1,10 @@
+CREATE INDEX at_rti_idx ON access_token(refresh_token_id);
+CREATE INDEX at_asi_idx ON access_token(approved_site_id);
+CREATE INDEX atp_ati_idx ON access_token_permissions(access_token_id);
+
+CREATE INDEX as_td_idx ON approved_site(timeout_date);
+CREATE INDEX ass_oi_idx ON approved_site_scope(owner_id);
+
+CREATE INDEX dc_exp_idx ON device_code(expiration);
+CREATE INDEX dcs_oi_idx ON device_code_scope(owner_id);
+CREATE INDEX dcrp_oi_idx ON device_code_request_parameter(owner_id);
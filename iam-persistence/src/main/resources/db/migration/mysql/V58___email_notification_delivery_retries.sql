@@ -0,0 +1,4 @@
+ALTER TABLE iam_email_notification ADD COLUMN delivery_attempts INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE iam_email_notification ADD COLUMN next_attempt_time TIMESTAMP NULL DEFAULT NULL;
+
+CREATE INDEX ien_ds_nat_idx ON iam_email_notification(delivery_status, next_attempt_time);